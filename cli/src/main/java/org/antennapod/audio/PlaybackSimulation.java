@@ -0,0 +1,375 @@
+package org.antennapod.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays a WAVE file through the decode loop and the Sonic pipeline of SonicAudioPlayer
+ * on a plain JVM, with stand-ins for MediaExtractor, MediaCodec and AudioTrack, and measures
+ * how the loop keeps up: how fast it runs, how often the sink runs empty, and how long it takes
+ * to play again after a seek. The stand-in codec only passes samples through, but takes a
+ * configurable time to do so. In virtual time, which is the default, a simulation runs as fast
+ * as the machine allows and its results do not depend on the load of the machine.
+ */
+public class PlaybackSimulation {
+
+    private float mSpeed = 1.0f;
+    private float mPitch = 1.0f;
+    private boolean mDownMix;
+    private boolean mRealTime;
+    private long mDecoderLatencyUs = 5000;
+    private long mDecoderJitterUs;
+    private int mSinkBufferMs = 200;
+    private long mSeed = 1;
+    private float mHistorySeconds;
+    private long mPrefetchSkipMs;
+    private long mPrefetchWindowMs;
+    private int mPrefetchBudgetKb;
+    private boolean mSkipSilence;
+    private boolean mAccurateSeek;
+    private float mSilenceThresholdDb;
+    private int mMinSilenceMs;
+    // Pairs of playback time and position to seek to, in milliseconds
+    private final List<long[]> mSeeks = new ArrayList<long[]>();
+
+    /**
+     * Statistics of a finished simulation.
+     */
+    public static class Result {
+        private final long mPlayedFrames;
+        private final int mSampleRate;
+        private final long mPlaybackNanos;
+        private final long mElapsedNanos;
+        private final int mUnderruns;
+        private final long mUnderrunUs;
+        private final long mLatenessUs;
+        private final long[] mSeekLatenciesUs;
+        private final PlaybackMetrics mMetrics;
+        private final long mSilenceSavedUs;
+
+        Result(long playedFrames, int sampleRate, long playbackNanos, long elapsedNanos,
+               int underruns, long underrunUs, long latenessUs, long[] seekLatenciesUs,
+               PlaybackMetrics metrics, long silenceSavedUs) {
+            mPlayedFrames = playedFrames;
+            mSampleRate = sampleRate;
+            mPlaybackNanos = playbackNanos;
+            mElapsedNanos = elapsedNanos;
+            mUnderruns = underruns;
+            mUnderrunUs = underrunUs;
+            mLatenessUs = latenessUs;
+            mSeekLatenciesUs = seekLatenciesUs;
+            mMetrics = metrics;
+            mSilenceSavedUs = silenceSavedUs;
+        }
+
+        /**
+         * @return Duration of the audio that was written to the sink, in milliseconds
+         */
+        public long getOutputDurationMs() {
+            return mPlayedFrames * 1000 / mSampleRate;
+        }
+
+        /**
+         * @return How long playback took by the clock of the simulation, in milliseconds
+         */
+        public long getPlaybackMs() {
+            return mPlaybackNanos / 1000000;
+        }
+
+        /**
+         * @return How long the simulation actually took, in milliseconds
+         */
+        public long getElapsedMs() {
+            return mElapsedNanos / 1000000;
+        }
+
+        /**
+         * @return Actual time divided by the duration of the output, so 0.1 means the loop could
+         * play ten times faster than real time
+         */
+        public double getRealTimeFactor() {
+            return mPlayedFrames == 0 ? 0.0 : mElapsedNanos * (double) mSampleRate / (mPlayedFrames * 1000000000.0);
+        }
+
+        /**
+         * @return The number of gaps in playback because the sink ran empty
+         */
+        public int getUnderruns() {
+            return mUnderruns;
+        }
+
+        public long getUnderrunMs() {
+            return mUnderrunUs / 1000;
+        }
+
+        /**
+         * @return How much the sink's buffer had drained at worst when the loop wrote to it
+         * again, once it had been full, in microseconds. This is the jitter the buffer absorbed;
+         * once it reaches the buffer size, playback has gaps.
+         */
+        public long getMaxLatenessUs() {
+            return mLatenessUs;
+        }
+
+        /**
+         * @return For every seek, the time until the first samples of the new position were
+         * written to the sink, in microseconds
+         */
+        public long[] getSeekLatenciesUs() {
+            return mSeekLatenciesUs;
+        }
+
+        /**
+         * @return The metrics of the decode loop. Decoding, Sonic and writes to the sink are
+         * timed by the clock of the simulation, so Sonic only takes time in real time.
+         */
+        public PlaybackMetrics getMetrics() {
+            return mMetrics;
+        }
+
+        /**
+         * @return How much shorter the input plays with its silences skipped, as the silence
+         * map told before playback, in milliseconds; 0 if silences were not skipped
+         */
+        public long getSilenceSavedMs() {
+            return mSilenceSavedUs / 1000;
+        }
+    }
+
+    public void setSpeed(float speed) {
+        mSpeed = speed;
+    }
+
+    public void setPitch(float pitch) {
+        mPitch = pitch;
+    }
+
+    public void setDownMix(boolean downMix) {
+        mDownMix = downMix;
+    }
+
+    /**
+     * Runs the simulation in real time instead of virtual time, so the time Sonic takes counts
+     * as well.
+     */
+    public void setRealTime(boolean realTime) {
+        mRealTime = realTime;
+    }
+
+    /**
+     * Sets how long the stand-in codec takes per access unit of about 25 ms.
+     *
+     * @param jitterUs The time varies randomly by up to this much either way
+     */
+    public void setDecoderLatency(long latencyUs, long jitterUs) {
+        mDecoderLatencyUs = latencyUs;
+        mDecoderJitterUs = jitterUs;
+    }
+
+    /**
+     * Sets how much audio the sink buffers. A device's AudioTrack typically holds 100 to 300 ms.
+     */
+    public void setSinkBufferMs(int sinkBufferMs) {
+        mSinkBufferMs = sinkBufferMs;
+    }
+
+    /**
+     * Sets the seed of the codec's jitter, simulations with the same seed run the same.
+     */
+    public void setSeed(long seed) {
+        mSeed = seed;
+    }
+
+    /**
+     * Keeps the last <code>seconds</code> of decoded audio, so seeks back into it are played
+     * from memory, see MediaPlayer.setRewindHistorySeconds().
+     */
+    public void setHistorySeconds(float seconds) {
+        mHistorySeconds = seconds;
+    }
+
+    /**
+     * Decodes ahead the audio seeks forward by <code>skipMs</code> land in, see
+     * MediaPlayer.setForwardPrefetch(). The prefetcher runs on a thread of its own at its own
+     * pace, so in virtual time, where playback runs much faster, its windows are seldom ready.
+     */
+    public void setForwardPrefetch(long skipMs, long windowMs, int budgetKb) {
+        mPrefetchSkipMs = skipMs;
+        mPrefetchWindowMs = windowMs;
+        mPrefetchBudgetKb = budgetKb;
+    }
+
+    /**
+     * Finds the silences of the input before playback, and skips them, see
+     * MediaPlayer.setSkipSilence().
+     */
+    public void setSkipSilence(float thresholdDb, int minSilenceMs) {
+        mSkipSilence = true;
+        mSilenceThresholdDb = thresholdDb;
+        mMinSilenceMs = minSilenceMs;
+    }
+
+    /**
+     * Makes seeks land exactly on the position, see MediaPlayer.setAccurateSeek().
+     */
+    public void setAccurateSeek(boolean accurateSeek) {
+        mAccurateSeek = accurateSeek;
+    }
+
+    /**
+     * Seeks to <code>positionMs</code> once playback has run for <code>atMs</code>. Seeks
+     * happen in the order they were added.
+     */
+    public void addSeek(long atMs, long positionMs) {
+        mSeeks.add(new long[]{atMs, positionMs});
+    }
+
+    /**
+     * Plays <code>input</code> to its end.
+     *
+     * @throws IOException If the input is no supported WAVE file or could not be read
+     */
+    public Result run(final File input) throws IOException {
+        final Clock clock = mRealTime ? Clock.SYSTEM : new VirtualClock();
+        final WavExtractor extractor = WavExtractor.open(input.getPath());
+        try {
+            TrackFormat format = extractor.selectAudioTrack();
+            final SimulatedDecoder decoder = new SimulatedDecoder(clock, extractor.getMaxUnitSize(),
+                    mDecoderLatencyUs, mDecoderJitterUs, mSeed);
+            decoder.configure(format);
+            final SonicPipeline pipeline = new SonicPipeline(
+                    SimulatedAudioSink.factory(clock, mSinkBufferMs), clock);
+            PlaybackMetrics metrics = new PlaybackMetrics();
+            pipeline.setMetrics(metrics);
+            pipeline.setSpeed(mSpeed);
+            pipeline.setPitch(mPitch);
+            pipeline.setDownMix(mDownMix);
+            pipeline.setHistorySeconds(mHistorySeconds);
+            pipeline.configure(format.getSampleRate(), format.getChannelCount(), format.isFloatPcm());
+            final SimulatedAudioSink sink = (SimulatedAudioSink) pipeline.getSink();
+            SilenceMap silenceMap = mSkipSilence ? findSilences(input) : null;
+            pipeline.setSilenceMap(silenceMap);
+            final Prefetcher prefetcher = startPrefetching(input, pipeline, extractor);
+
+            final long startNanos = clock.nanoTime();
+            final long[] seekLatencies = new long[mSeeks.size()];
+            DecodeLoop.Host host = new DecodeLoop.Host() {
+                private int mNextSeek;
+                private long mSeekNanos = -1;
+
+                @Override
+                public boolean shouldContinue() {
+                    return true;
+                }
+
+                // Called on every pass of the loop, so seeks are done here
+                @Override
+                public boolean waitWhilePaused() {
+                    if (mSeekNanos >= 0 && sink.getWrittenFrames() > 0) {
+                        seekLatencies[mNextSeek - 1] = (clock.nanoTime() - mSeekNanos) / 1000;
+                        mSeekNanos = -1;
+                    }
+                    if (mNextSeek < mSeeks.size()
+                            && clock.nanoTime() - startNanos >= mSeeks.get(mNextSeek)[0] * 1000000) {
+                        long positionUs = mSeeks.get(mNextSeek)[1] * 1000;
+                        sink.pause();
+                        sink.flush();
+                        pipeline.flush();
+                        boolean fromMemory = pipeline.replayFrom(positionUs);
+                        if (!fromMemory && prefetcher != null) {
+                            PcmHistory window = prefetcher.take(positionUs);
+                            fromMemory = window != null
+                                    && pipeline.playPrefetched(window, positionUs);
+                        }
+                        if (!fromMemory && mAccurateSeek) {
+                            pipeline.seekAccurately(positionUs);
+                        } else if (!fromMemory) {
+                            decoder.flush();
+                            extractor.seekTo(positionUs);
+                        }
+                        sink.play();
+                        mSeekNanos = clock.nanoTime();
+                        mNextSeek++;
+                    }
+                    return false;
+                }
+
+                @Override
+                public void onError(IOException e) {
+                    // Only WAVE files read without a codec report errors this way
+                }
+            };
+            long elapsedStart = System.nanoTime();
+            sink.play();
+            DecodeLoop loop = new DecodeLoop(host, pipeline, clock, extractor, decoder);
+            loop.setPreRollUs(format.getPreRollUs());
+            try {
+                loop.run();
+            } finally {
+                if (prefetcher != null) {
+                    prefetcher.release();
+                }
+            }
+            return new Result(sink.getTotalWrittenFrames(), format.getSampleRate(),
+                    clock.nanoTime() - startNanos, System.nanoTime() - elapsedStart,
+                    sink.getUnderrunCount(), sink.getUnderrunTimeUs(), sink.getMaxLatenessUs(),
+                    seekLatencies, metrics,
+                    silenceMap != null ? silenceMap.getTimeSavedUs(0) : 0);
+        } finally {
+            extractor.release();
+        }
+    }
+
+    // Decodes the input once beforehand, the way EpisodeAnalysis does on a device
+    private SilenceMap findSilences(File input) throws IOException {
+        WavExtractor extractor = WavExtractor.open(input.getPath());
+        try {
+            TrackFormat format = extractor.selectAudioTrack();
+            SimulatedDecoder decoder = new SimulatedDecoder(Clock.SYSTEM,
+                    extractor.getMaxUnitSize(), 0, 0, mSeed);
+            decoder.configure(format);
+            SilenceDetector detector = new SilenceDetector(mSilenceThresholdDb, mMinSilenceMs);
+            new AnalysisPass(extractor, decoder, format).run(detector);
+            return detector.createSilenceMap();
+        } finally {
+            extractor.release();
+        }
+    }
+
+    // Runs a prefetcher with an extractor and a codec of its own, which decodes without delay
+    private Prefetcher startPrefetching(final File input, final SonicPipeline pipeline,
+                                        final WavExtractor extractor) {
+        if (mPrefetchWindowMs <= 0) {
+            return null;
+        }
+        Prefetcher prefetcher = new Prefetcher(new Prefetcher.Source() {
+            @Override
+            public Extractor openExtractor() throws IOException {
+                return WavExtractor.open(input.getPath());
+            }
+
+            @Override
+            public Decoder createDecoder(TrackFormat format) {
+                SimulatedDecoder decoder = new SimulatedDecoder(Clock.SYSTEM,
+                        extractor.getMaxUnitSize(), 0, 0, mSeed);
+                decoder.configure(format);
+                decoder.start();
+                return decoder;
+            }
+
+            @Override
+            public long getPositionUs() {
+                return pipeline.getPositionUs(extractor.getSampleTime());
+            }
+        }, Clock.SYSTEM, mPrefetchSkipMs * 1000, mPrefetchWindowMs * 1000,
+                mPrefetchBudgetKb * 1024L);
+        Thread t = new Thread(prefetcher, "Prefetcher");
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.setDaemon(true);
+        t.start();
+        return prefetcher;
+    }
+
+}
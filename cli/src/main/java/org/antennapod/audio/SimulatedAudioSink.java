@@ -0,0 +1,251 @@
+package org.antennapod.audio;
+
+/**
+ * Stand-in for a streaming AudioTrack on a plain JVM. It plays nothing, but drains its buffer
+ * at the sample rate by the time of its {@link Clock}, blocks writes until there is room, and
+ * counts underruns: the gaps in playback when its buffer ran empty and more samples came later.
+ * Running empty at the end, or before a flush, is no underrun.
+ */
+class SimulatedAudioSink implements AudioSink {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final Clock mClock;
+    private final int mSampleRate;
+    private final int mChannels;
+    private final int mBufferFrames;
+    private final boolean mFloatPcm;
+    // Frames written and played since the start or the last flush
+    private long mWrittenFrames;
+    private long mPlayedFrames;
+    // Time up to which playback is accounted for, and the fraction of a frame left over
+    private long mUpdateNanos;
+    private long mRemainder;
+    private boolean mPlaying;
+    private boolean mStopping;
+    private boolean mStarving;
+    private long mStarvingNanos;
+    private int mUnderruns;
+    private long mUnderrunNanos;
+    private long mTotalWrittenFrames;
+    // Whether the buffer was full since the start or the last flush, and the fewest frames it
+    // held afterwards when more were written
+    private boolean mFilled;
+    private long mLowestBufferedFrames = -1;
+
+    SimulatedAudioSink(Clock clock, int sampleRate, int channels, int bufferFrames,
+                       boolean floatPcm) {
+        mClock = clock;
+        mSampleRate = sampleRate;
+        mChannels = channels;
+        mBufferFrames = bufferFrames;
+        mFloatPcm = floatPcm;
+    }
+
+    /**
+     * @return A factory for sinks that buffer <code>bufferMs</code> milliseconds of audio, and
+     * play float samples when asked to
+     */
+    static Factory factory(final Clock clock, final int bufferMs) {
+        return new Factory() {
+            @Override
+            public AudioSink createSink(int sampleRate, int channels, boolean floatPcm) {
+                return new SimulatedAudioSink(clock, sampleRate, channels,
+                        Math.max(1, sampleRate * bufferMs / 1000), floatPcm);
+            }
+        };
+    }
+
+    // Moves the playback position to the current time
+    private void update() {
+        long now = mClock.nanoTime();
+        if (mPlaying) {
+            long elapsed = (now - mUpdateNanos) * mSampleRate + mRemainder;
+            long frames = elapsed / NANOS_PER_SECOND;
+            mRemainder = elapsed % NANOS_PER_SECOND;
+            long buffered = mWrittenFrames - mPlayedFrames;
+            if (frames < buffered) {
+                mPlayedFrames += frames;
+            } else {
+                mPlayedFrames = mWrittenFrames;
+                if (mStopping) {
+                    mPlaying = false;
+                    mStopping = false;
+                } else if (frames > buffered && mWrittenFrames > 0) {
+                    mStarving = true;
+                    mStarvingNanos += (frames - buffered) * NANOS_PER_SECOND / mSampleRate;
+                }
+            }
+        }
+        mUpdateNanos = now;
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int size) {
+        int frameSize = (mFloatPcm ? 4 : 2) * mChannels;
+        return writeFrames(size / frameSize) * frameSize;
+    }
+
+    @Override
+    public int write(short[] data, int offset, int size) {
+        return writeFrames(size / mChannels) * mChannels;
+    }
+
+    @Override
+    public int write(float[] data, int offset, int size) {
+        return writeFrames(size / mChannels) * mChannels;
+    }
+
+    @Override
+    public boolean isFloatPcm() {
+        return mFloatPcm;
+    }
+
+    private int writeFrames(int frames) {
+        int remaining = frames;
+        while (remaining > 0) {
+            long waitFrames;
+            synchronized (this) {
+                update();
+                long room = mBufferFrames - (mWrittenFrames - mPlayedFrames);
+                if (room == 0) {
+                    mFilled = true;
+                } else if (mFilled && mPlaying && (mLowestBufferedFrames < 0
+                        || mBufferFrames - room < mLowestBufferedFrames)) {
+                    mLowestBufferedFrames = mBufferFrames - room;
+                }
+                if (room > 0) {
+                    long written = Math.min(room, remaining);
+                    mWrittenFrames += written;
+                    mTotalWrittenFrames += written;
+                    if (mStarving) {
+                        mStarving = false;
+                        mUnderruns++;
+                        mUnderrunNanos += mStarvingNanos;
+                        mStarvingNanos = 0;
+                    }
+                    remaining -= written;
+                    continue;
+                }
+                if (!mPlaying) {
+                    // A paused AudioTrack would block until it plays again
+                    break;
+                }
+                waitFrames = Math.min(remaining, Math.max(1, mBufferFrames / 4));
+            }
+            try {
+                mClock.sleep(waitFrames * NANOS_PER_SECOND / mSampleRate);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return frames - remaining;
+    }
+
+    @Override
+    public synchronized void play() {
+        update();
+        mPlaying = true;
+        mStopping = false;
+    }
+
+    @Override
+    public synchronized void pause() {
+        update();
+        mPlaying = false;
+        mStopping = false;
+    }
+
+    @Override
+    public synchronized void flush() {
+        update();
+        mWrittenFrames = 0;
+        mPlayedFrames = 0;
+        mStarving = false;
+        mStarvingNanos = 0;
+        mFilled = false;
+    }
+
+    @Override
+    public synchronized void stop() {
+        update();
+        if (mPlaying) {
+            mStopping = true;
+        }
+    }
+
+    @Override
+    public synchronized void release() {
+        mPlaying = false;
+        mStopping = false;
+    }
+
+    @Override
+    public synchronized int getPlaybackHeadPosition() {
+        update();
+        return (int) mPlayedFrames;
+    }
+
+    @Override
+    public int getAudioSessionId() {
+        return 0;
+    }
+
+    @Override
+    public void setVolume(float leftVolume, float rightVolume) {
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return mChannels;
+    }
+
+    /**
+     * @return The number of gaps in playback
+     */
+    @Override
+    public synchronized int getUnderrunCount() {
+        update();
+        return mUnderruns;
+    }
+
+    /**
+     * @return The length of all gaps in playback, in microseconds
+     */
+    synchronized long getUnderrunTimeUs() {
+        update();
+        return mUnderrunNanos / 1000;
+    }
+
+    /**
+     * @return How much of the buffer had drained at worst when more frames were written, once it
+     * had been full, in microseconds. That is how late the writer came back at worst.
+     */
+    synchronized long getMaxLatenessUs() {
+        if (mLowestBufferedFrames < 0) {
+            return 0;
+        }
+        return (mBufferFrames - mLowestBufferedFrames) * 1000000 / mSampleRate;
+    }
+
+    /**
+     * @return The number of frames written since the sink was created, flushed ones included
+     */
+    synchronized long getTotalWrittenFrames() {
+        return mTotalWrittenFrames;
+    }
+
+    /**
+     * @return The number of frames written since the start or the last flush
+     */
+    synchronized long getWrittenFrames() {
+        return mWrittenFrames;
+    }
+
+}
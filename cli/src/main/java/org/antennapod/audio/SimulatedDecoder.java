@@ -0,0 +1,193 @@
+package org.antennapod.audio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+/**
+ * Stand-in for MediaCodec on a plain JVM, for the "audio/raw" units of a {@link WavExtractor}.
+ * The samples pass through unchanged, but a decoded buffer is only handed out a set latency,
+ * give or take a random jitter, after its input was queued. Like a real codec it has a few
+ * buffers only, so the decode loop has to keep up with it, and it reports the output format
+ * before the first decoded buffer.
+ */
+class SimulatedDecoder implements Decoder {
+
+    private static final int BUFFER_COUNT = 4;
+
+    private static class Output {
+        int index;
+        int size;
+        long presentationTimeUs;
+        int flags;
+        long readyNanos;
+    }
+
+    private final Clock mClock;
+    private final long mLatencyNanos;
+    private final long mJitterNanos;
+    private final Random mRandom;
+    private final ByteBuffer[] mInputBuffers = new ByteBuffer[BUFFER_COUNT];
+    private final ByteBuffer[] mOutputBuffers = new ByteBuffer[BUFFER_COUNT];
+    private final boolean[] mInputDequeued = new boolean[BUFFER_COUNT];
+    private final boolean[] mOutputInUse = new boolean[BUFFER_COUNT];
+    // Decoded buffers in order, each with the time it becomes available
+    private final ArrayDeque<Output> mPending = new ArrayDeque<Output>();
+    private TrackFormat mFormat;
+    private boolean mFormatReported;
+    private long mLastReadyNanos;
+
+    /**
+     * @param bufferSize Size of the input and output buffers, at least the largest access unit
+     * @param seed       Seed of the jitter, so runs can be repeated
+     */
+    SimulatedDecoder(Clock clock, int bufferSize, long latencyUs, long jitterUs, long seed) {
+        mClock = clock;
+        mLatencyNanos = latencyUs * 1000;
+        mJitterNanos = jitterUs * 1000;
+        mRandom = new Random(seed);
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            mInputBuffers[i] = ByteBuffer.allocate(bufferSize);
+            mOutputBuffers[i] = ByteBuffer.allocate(bufferSize);
+        }
+    }
+
+    @Override
+    public void configure(TrackFormat format) {
+        if (!WavExtractor.MIME.equals(format.getMime())) {
+            throw new IllegalArgumentException("Cannot decode " + format.getMime());
+        }
+        mFormat = format;
+    }
+
+    @Override
+    public void start() {
+        if (mFormat == null) {
+            throw new IllegalStateException("Not configured");
+        }
+    }
+
+    @Override
+    public int dequeueInputBuffer(long timeoutUs) {
+        // Input is decoded right away, so an input buffer is only useful with an output free
+        if (freeOutput() >= 0) {
+            for (int i = 0; i < BUFFER_COUNT; i++) {
+                if (!mInputDequeued[i]) {
+                    mInputDequeued[i] = true;
+                    mInputBuffers[i].clear();
+                    return i;
+                }
+            }
+        }
+        sleep(timeoutUs * 1000);
+        return INFO_TRY_AGAIN_LATER;
+    }
+
+    private int freeOutput() {
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            if (!mOutputInUse[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        return mInputBuffers[index];
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        int outputIndex = freeOutput();
+        if (!mInputDequeued[index] || outputIndex < 0) {
+            throw new IllegalStateException("Input buffer " + index + " was not dequeued");
+        }
+        mInputDequeued[index] = false;
+        ByteBuffer input = mInputBuffers[index].duplicate();
+        input.limit(offset + size);
+        input.position(offset);
+        ByteBuffer output = mOutputBuffers[outputIndex];
+        output.clear();
+        output.put(input);
+        mOutputInUse[outputIndex] = true;
+
+        Output decoded = new Output();
+        decoded.index = outputIndex;
+        decoded.size = size;
+        decoded.presentationTimeUs = presentationTimeUs;
+        decoded.flags = flags;
+        long jitter = mJitterNanos > 0 ? (long) ((mRandom.nextDouble() * 2.0 - 1.0) * mJitterNanos) : 0;
+        // Buffers come out in the order they went in
+        decoded.readyNanos = Math.max(mLastReadyNanos,
+                mClock.nanoTime() + Math.max(0, mLatencyNanos + jitter));
+        mLastReadyNanos = decoded.readyNanos;
+        mPending.add(decoded);
+    }
+
+    @Override
+    public int dequeueOutputBuffer(BufferInfo info, long timeoutUs) {
+        Output next = mPending.peek();
+        long waitNanos = next != null ? next.readyNanos - mClock.nanoTime() : Long.MAX_VALUE;
+        if (waitNanos > timeoutUs * 1000) {
+            sleep(timeoutUs * 1000);
+            return INFO_TRY_AGAIN_LATER;
+        }
+        sleep(waitNanos);
+        if (!mFormatReported) {
+            mFormatReported = true;
+            return INFO_OUTPUT_FORMAT_CHANGED;
+        }
+        mPending.poll();
+        info.set(0, next.size, next.presentationTimeUs, next.flags);
+        ByteBuffer output = mOutputBuffers[next.index];
+        output.position(0);
+        output.limit(next.size);
+        return next.index;
+    }
+
+    private void sleep(long nanos) {
+        try {
+            mClock.sleep(nanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        return mOutputBuffers[index];
+    }
+
+    @Override
+    public TrackFormat getOutputFormat() {
+        return new TrackFormat(WavExtractor.MIME, mFormat.getSampleRate(), mFormat.getChannelCount(),
+                -1, mFormat.isFloatPcm(), null);
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index) {
+        mOutputInUse[index] = false;
+    }
+
+    @Override
+    public void flush() {
+        mPending.clear();
+        for (int i = 0; i < BUFFER_COUNT; i++) {
+            mInputDequeued[i] = false;
+            mOutputInUse[i] = false;
+        }
+        mLastReadyNanos = 0;
+    }
+
+    @Override
+    public void stop() {
+        flush();
+    }
+
+    @Override
+    public void release() {
+        flush();
+    }
+
+}
@@ -0,0 +1,25 @@
+package org.antennapod.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link Clock} that does not wait at all, but moves its time forward by what it was asked
+ * to wait. Used to simulate playback without spending the time playback takes.
+ */
+class VirtualClock implements Clock {
+
+    private final AtomicLong mNanos = new AtomicLong();
+
+    @Override
+    public long nanoTime() {
+        return mNanos.get();
+    }
+
+    @Override
+    public void sleep(long nanos) {
+        if (nanos > 0) {
+            mNanos.addAndGet(nanos);
+        }
+    }
+
+}
@@ -0,0 +1,131 @@
+package org.antennapod.audio;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stand-in for MediaExtractor on a plain JVM. Serves the samples of a WAVE file as "audio/raw"
+ * access units of a fixed number of frames, each of them a sync sample, like the frames of a
+ * compressed format. Samples that are not 16 bit are served as floats, the way codecs that
+ * decode to float do.
+ */
+class WavExtractor implements Extractor {
+
+    static final String MIME = "audio/raw";
+    // Frames per access unit, as many as an MP3 frame has
+    static final int UNIT_FRAMES = 1152;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final WavHeader mHeader;
+    private final ByteBuffer mUnit;
+    private final float[] mFloats;
+    // First frame of the current access unit
+    private long mFrame;
+
+    private WavExtractor(RandomAccessFile file, WavHeader header) {
+        mFile = file;
+        mChannel = file.getChannel();
+        mHeader = header;
+        mUnit = ByteBuffer.allocate(UNIT_FRAMES * header.getFrameSize());
+        mFloats = header.is16Bit() ? null : new float[UNIT_FRAMES * header.getChannels()];
+    }
+
+    /**
+     * @throws IOException If the file could not be read, or is no WAVE file in a supported
+     *                     format
+     */
+    static WavExtractor open(String path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        WavHeader header = null;
+        try {
+            header = WavHeader.read(file.getChannel());
+        } finally {
+            if (header == null) {
+                file.close();
+            }
+        }
+        if (header == null) {
+            throw new IOException("Not a WAVE file: " + path);
+        }
+        return new WavExtractor(file, header);
+    }
+
+    @Override
+    public TrackFormat selectAudioTrack() {
+        return new TrackFormat(MIME, mHeader.getSampleRate(), mHeader.getChannels(),
+                mHeader.getDurationUs(), !mHeader.is16Bit(), null);
+    }
+
+    /**
+     * @return The largest access unit in bytes
+     */
+    int getMaxUnitSize() {
+        return UNIT_FRAMES * mHeader.getChannels() * (mHeader.is16Bit() ? 2 : 4);
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        int frames = (int) Math.min(UNIT_FRAMES, mHeader.getFrameCount() - mFrame);
+        if (frames <= 0) {
+            return -1;
+        }
+        mUnit.clear();
+        mUnit.limit(frames * mHeader.getFrameSize());
+        long position = mHeader.getDataOffset() + mFrame * mHeader.getFrameSize();
+        try {
+            while (mUnit.hasRemaining()) {
+                if (mChannel.read(mUnit, position + mUnit.position()) < 0) {
+                    return -1;
+                }
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+        mUnit.flip();
+        ByteBuffer out = buffer.duplicate();
+        out.position(offset);
+        if (mFloats == null) {
+            out.put(mUnit);
+            return frames * mHeader.getFrameSize();
+        }
+        mHeader.toFloat(mUnit, mFloats, frames);
+        int samples = frames * mHeader.getChannels();
+        out.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(mFloats, 0, samples);
+        return samples * 4;
+    }
+
+    @Override
+    public long getSampleTime() {
+        if (mFrame >= mHeader.getFrameCount()) {
+            return -1;
+        }
+        return mFrame * 1000000L / mHeader.getSampleRate();
+    }
+
+    @Override
+    public boolean advance() {
+        mFrame = Math.min(mFrame + UNIT_FRAMES, mHeader.getFrameCount());
+        return mFrame < mHeader.getFrameCount();
+    }
+
+    @Override
+    public void seekTo(long timeUs) {
+        long frame = Math.max(0, Math.min(mHeader.getFrameCount(),
+                timeUs * mHeader.getSampleRate() / 1000000L));
+        mFrame = frame - frame % UNIT_FRAMES;
+    }
+
+    @Override
+    public void release() {
+        try {
+            mFile.close();
+        } catch (IOException e) {
+            // Nothing left to do with the file
+        }
+    }
+
+}
@@ -0,0 +1,192 @@
+package org.antennapod.audio.cli;
+
+import org.vinuxproject.sonic.ParallelSonic;
+import org.vinuxproject.sonic.Sonic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Changes the speed of a whole WAVE file with {@link ParallelSonic} on pools of one up to the
+ * given number of threads, and compares it with a single {@link Sonic} stream. For every speed
+ * it prints how long the stream took, and for every pool size how long the parallel version
+ * took, how that scales from one thread, and how many frames longer or shorter its output is
+ * than the stream's.
+ */
+public class ParallelTool {
+
+    private static final String USAGE = "Usage: parallel-tool [options] <input.wav>\n"
+            + "  --threads <n>             Use pools of up to this many threads, default the\n"
+            + "                            number of processors\n"
+            + "  --speeds <a,b,...>        Speeds to change to, default 1.5,2.0,3.0\n"
+            + "  --runs <n>                Take the fastest of this many runs, default 3";
+
+    public static void main(String[] args) {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        float[] speeds = {1.5f, 2.0f, 3.0f};
+        int runs = 3;
+        File input = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("--") && i + 1 < args.length) {
+                    String value = args[++i];
+                    if ("--threads".equals(arg)) {
+                        maxThreads = Integer.parseInt(value);
+                    } else if ("--speeds".equals(arg)) {
+                        String[] values = value.split(",");
+                        speeds = new float[values.length];
+                        for (int j = 0; j < values.length; j++) {
+                            speeds[j] = Float.parseFloat(values[j]);
+                        }
+                    } else if ("--runs".equals(arg)) {
+                        runs = Integer.parseInt(value);
+                    } else {
+                        usage("Unknown option " + arg);
+                    }
+                } else if (input == null) {
+                    input = new File(arg);
+                } else {
+                    usage("Too many arguments");
+                }
+            }
+        } catch (RuntimeException e) {
+            usage("Invalid argument: " + e.getMessage());
+        }
+        if (input == null || maxThreads < 1 || runs < 1) {
+            usage(null);
+        }
+
+        Pcm pcm = null;
+        try {
+            pcm = Pcm.read(input);
+        } catch (IOException e) {
+            System.err.println("Reading failed: " + e.getMessage());
+            System.exit(1);
+        }
+        int frames = pcm.mSamples.length / pcm.mChannels;
+        System.out.println(String.format(Locale.US, "%d processors, %.1f s of audio",
+                Runtime.getRuntime().availableProcessors(), frames / (double) pcm.mSampleRate));
+        for (float speed : speeds) {
+            int streamFrames = 0;
+            long streamNanos = Long.MAX_VALUE;
+            for (int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                streamFrames = stream(pcm, speed);
+                streamNanos = Math.min(streamNanos, System.nanoTime() - start);
+            }
+            System.out.println(String.format(Locale.US, "%.2fx: one stream %.0f ms, %d frames",
+                    speed, streamNanos / 1000000.0, streamFrames));
+            long singleNanos = 0;
+            for (int threads = 1; threads <= maxThreads; threads++) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                int parallelFrames = 0;
+                long parallelNanos = Long.MAX_VALUE;
+                try {
+                    for (int run = 0; run < runs; run++) {
+                        long start = System.nanoTime();
+                        parallelFrames = ParallelSonic.changeShortSpeed(pcm.mSamples, frames, speed,
+                                1.0f, 1.0f, 1.0f, false, pcm.mSampleRate, pcm.mChannels, pool).length
+                                / pcm.mChannels;
+                        parallelNanos = Math.min(parallelNanos, System.nanoTime() - start);
+                    }
+                } finally {
+                    pool.shutdown();
+                }
+                if (threads == 1) {
+                    singleNanos = parallelNanos;
+                }
+                System.out.println(String.format(Locale.US,
+                        "  %d threads: %.0f ms, %.2fx one thread, %.2fx the stream, %+d frames",
+                        threads, parallelNanos / 1000000.0, singleNanos / (double) parallelNanos,
+                        streamNanos / (double) parallelNanos, parallelFrames - streamFrames));
+            }
+        }
+    }
+
+    // Changes the speed in one stream, fed in chunks like during playback
+    private static int stream(Pcm pcm, float speed) {
+        Sonic sonic = new Sonic(pcm.mSampleRate, pcm.mChannels);
+        sonic.setSpeed(speed);
+        int chunk = 4096 * pcm.mChannels;
+        short[] input = new short[chunk];
+        short[] output = new short[2 * chunk];
+        int frames = 0;
+        for (int position = 0; position < pcm.mSamples.length; position += chunk) {
+            int length = Math.min(chunk, pcm.mSamples.length - position);
+            System.arraycopy(pcm.mSamples, position, input, 0, length);
+            sonic.writeShortToStream(input, length / pcm.mChannels);
+            frames += drain(sonic, output, pcm.mChannels);
+        }
+        sonic.flushStream();
+        return frames + drain(sonic, output, pcm.mChannels);
+    }
+
+    private static int drain(Sonic sonic, short[] output, int channels) {
+        int frames = 0;
+        int read;
+        while ((read = sonic.readShortFromStream(output, output.length / channels)) > 0) {
+            frames += read;
+        }
+        return frames;
+    }
+
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+    // A whole file as 16 bit samples
+    private static class Pcm {
+        private final short[] mSamples;
+        private final int mSampleRate;
+        private final int mChannels;
+
+        private Pcm(short[] samples, int sampleRate, int channels) {
+            mSamples = samples;
+            mSampleRate = sampleRate;
+            mChannels = channels;
+        }
+
+        static Pcm read(File file) throws IOException {
+            AudioInputStream in;
+            try {
+                in = AudioSystem.getAudioInputStream(file);
+            } catch (UnsupportedAudioFileException e) {
+                throw new IOException(e.getMessage());
+            }
+            AudioFormat format = in.getFormat();
+            AudioFormat pcm16 = new AudioFormat(format.getSampleRate(), 16, format.getChannels(),
+                    true, false);
+            InputStream converted = AudioSystem.getAudioInputStream(pcm16, in);
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[65536];
+                int read;
+                while ((read = converted.read(buffer)) > 0) {
+                    bytes.write(buffer, 0, read);
+                }
+                short[] samples = new short[bytes.size() / 2];
+                ByteBuffer.wrap(bytes.toByteArray()).order(ByteOrder.LITTLE_ENDIAN)
+                        .asShortBuffer().get(samples);
+                return new Pcm(samples, (int) format.getSampleRate(), format.getChannels());
+            } finally {
+                converted.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.antennapod.audio.cli;
+
+import org.antennapod.audio.PlaybackSimulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Command line front end of {@link PlaybackSimulation}.
+ */
+public class PlaybackTool {
+
+    private static final String USAGE = "Usage: playback-tool [options] <input.wav>\n"
+            + "  --speed <factor>          Change speed, keeping the pitch\n"
+            + "  --pitch <factor>          Change pitch, keeping the speed\n"
+            + "  --downmix                 Mix the input down to mono\n"
+            + "  --latency <us>            Time the codec takes per access unit\n"
+            + "  --jitter <us>             Random variation of the codec's time\n"
+            + "  --buffer <ms>             Audio the sink buffers\n"
+            + "  --seed <n>                Seed of the codec's jitter\n"
+            + "  --seek <at ms>:<to ms>    Seek to a position after playing for a while\n"
+            + "  --accurate-seek           Seek exactly instead of to the sync sample before\n"
+            + "  --skip-silence <dB>:<ms>  Skip silences below a level that last long enough\n"
+            + "  --history <s>             Decoded audio kept for seeks back into it\n"
+            + "  --prefetch <skip ms>:<window ms>:<budget kB>\n"
+            + "                            Decode ahead where skips forward land\n"
+            + "  --real-time               Run in real time instead of virtual time";
+
+    public static void main(String[] args) {
+        PlaybackSimulation simulation = new PlaybackSimulation();
+        long latencyUs = 5000;
+        long jitterUs = 0;
+        File input = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--downmix".equals(arg)) {
+                    simulation.setDownMix(true);
+                } else if ("--real-time".equals(arg)) {
+                    simulation.setRealTime(true);
+                } else if ("--accurate-seek".equals(arg)) {
+                    simulation.setAccurateSeek(true);
+                } else if (arg.startsWith("--") && i + 1 < args.length) {
+                    String value = args[++i];
+                    if ("--speed".equals(arg)) {
+                        simulation.setSpeed(Float.parseFloat(value));
+                    } else if ("--pitch".equals(arg)) {
+                        simulation.setPitch(Float.parseFloat(value));
+                    } else if ("--latency".equals(arg)) {
+                        latencyUs = Long.parseLong(value);
+                    } else if ("--jitter".equals(arg)) {
+                        jitterUs = Long.parseLong(value);
+                    } else if ("--buffer".equals(arg)) {
+                        simulation.setSinkBufferMs(Integer.parseInt(value));
+                    } else if ("--seed".equals(arg)) {
+                        simulation.setSeed(Long.parseLong(value));
+                    } else if ("--history".equals(arg)) {
+                        simulation.setHistorySeconds(Float.parseFloat(value));
+                    } else if ("--prefetch".equals(arg)) {
+                        String[] prefetch = value.split(":");
+                        simulation.setForwardPrefetch(Long.parseLong(prefetch[0]),
+                                Long.parseLong(prefetch[1]), Integer.parseInt(prefetch[2]));
+                    } else if ("--skip-silence".equals(arg)) {
+                        String[] silence = value.split(":");
+                        simulation.setSkipSilence(Float.parseFloat(silence[0]),
+                                Integer.parseInt(silence[1]));
+                    } else if ("--seek".equals(arg)) {
+                        String[] seek = value.split(":");
+                        simulation.addSeek(Long.parseLong(seek[0]), Long.parseLong(seek[1]));
+                    } else {
+                        usage("Unknown option " + arg);
+                    }
+                } else if (input == null) {
+                    input = new File(arg);
+                } else {
+                    usage("Too many arguments");
+                }
+            }
+        } catch (RuntimeException e) {
+            usage("Invalid argument: " + e.getMessage());
+        }
+        if (input == null) {
+            usage(null);
+        }
+        simulation.setDecoderLatency(latencyUs, jitterUs);
+
+        try {
+            PlaybackSimulation.Result result = simulation.run(input);
+            System.out.println(String.format(Locale.US,
+                    "Played %.1f s of audio in %.1f s, simulated in %.2f s, real-time factor %.4f",
+                    result.getOutputDurationMs() / 1000.0,
+                    result.getPlaybackMs() / 1000.0,
+                    result.getElapsedMs() / 1000.0,
+                    result.getRealTimeFactor()));
+            System.out.println(String.format(Locale.US, "Underruns: %d, %d ms in total",
+                    result.getUnderruns(), result.getUnderrunMs()));
+            System.out.println("Metrics: " + result.getMetrics());
+            if (result.getSilenceSavedMs() > 0) {
+                System.out.println(String.format(Locale.US, "Silences skipped: %.1f s",
+                        result.getSilenceSavedMs() / 1000.0));
+            }
+            long[] seekLatencies = result.getSeekLatenciesUs();
+            for (int i = 0; i < seekLatencies.length; i++) {
+                System.out.println(String.format(Locale.US, "Seek %d: %.1f ms until playing again",
+                        i + 1, seekLatencies[i] / 1000.0));
+            }
+        } catch (IOException e) {
+            System.err.println("Simulation failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+}
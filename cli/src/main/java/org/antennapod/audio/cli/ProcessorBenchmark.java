@@ -0,0 +1,131 @@
+package org.antennapod.audio.cli;
+
+import org.antennapod.audio.AudioProcessor;
+import org.antennapod.audio.AudioProcessorChain;
+import org.antennapod.audio.SpeechCompressor;
+import org.antennapod.audio.SpeechEqualizer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times the speech processors on buffers like those the player hands them, backed by an array
+ * and direct. For every processor it prints the nanoseconds per sample and how many times
+ * faster than real time one core runs it.
+ */
+public class ProcessorBenchmark {
+
+    private static final String USAGE = "Usage: processor-benchmark [options]\n"
+            + "  --rate <hz>               Sample rate, default 44100\n"
+            + "  --channels <n>            Channels, default 2\n"
+            + "  --frames <n>              Frames per buffer, default 2048\n"
+            + "  --millis <ms>             Time each measurement runs, default 1000";
+
+    public static void main(String[] args) {
+        int sampleRate = 44100;
+        int channels = 2;
+        int frames = 2048;
+        long millis = 1000;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("--") && i + 1 < args.length) {
+                    String value = args[++i];
+                    if ("--rate".equals(arg)) {
+                        sampleRate = Integer.parseInt(value);
+                    } else if ("--channels".equals(arg)) {
+                        channels = Integer.parseInt(value);
+                    } else if ("--frames".equals(arg)) {
+                        frames = Integer.parseInt(value);
+                    } else if ("--millis".equals(arg)) {
+                        millis = Long.parseLong(value);
+                    } else {
+                        usage("Unknown option " + arg);
+                    }
+                } else {
+                    usage("Unknown argument " + arg);
+                }
+            }
+        } catch (RuntimeException e) {
+            usage("Invalid argument: " + e.getMessage());
+        }
+        if (channels < 1 || frames < 1) {
+            usage(null);
+        }
+
+        short[] noise = new short[frames * channels];
+        Random random = new Random(1);
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = (short) (random.nextGaussian() * 4000);
+        }
+        ShortBuffer heap = ShortBuffer.allocate(noise.length);
+        ShortBuffer direct = ByteBuffer.allocateDirect(2 * noise.length)
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+        String[] names = {"compressor", "equalizer", "both"};
+        for (int i = 0; i < names.length; i++) {
+            for (ShortBuffer buffer : new ShortBuffer[] {heap, direct}) {
+                AudioProcessor processor = createProcessor(i);
+                processor.configure(sampleRate, channels);
+                double nanos = nanosPerSample(processor, buffer, noise, millis);
+                System.out.println(String.format(Locale.US,
+                        "%s, %s buffer: %.2f ns per sample, %.0fx real time", names[i],
+                        buffer.isDirect() ? "direct" : "heap", nanos,
+                        1e9 / (nanos * sampleRate * channels)));
+            }
+        }
+    }
+
+    private static AudioProcessor createProcessor(int index) {
+        switch (index) {
+            case 0:
+                return new SpeechCompressor();
+            case 1:
+                return new SpeechEqualizer();
+            default:
+                return new AudioProcessorChain(new SpeechEqualizer(), new SpeechCompressor());
+        }
+    }
+
+    // Refills the buffer from noise before every call, so the filters don't decay to silence
+    private static double nanosPerSample(AudioProcessor processor, ShortBuffer buffer,
+                                         short[] noise, long millis) {
+        // Warm up, so the JIT has compiled the loops before they are timed
+        long end = System.nanoTime() + millis * 1000000 / 4;
+        while (System.nanoTime() < end) {
+            fill(buffer, noise);
+            processor.process(buffer);
+        }
+        long fillNanos = 0;
+        long calls = 0;
+        long start = System.nanoTime();
+        end = start + millis * 1000000;
+        long now;
+        do {
+            long fillStart = System.nanoTime();
+            fill(buffer, noise);
+            long processStart = System.nanoTime();
+            fillNanos += processStart - fillStart;
+            processor.process(buffer);
+            calls++;
+            now = System.nanoTime();
+        } while (now < end);
+        return (now - start - fillNanos) / (double) (calls * noise.length);
+    }
+
+    private static void fill(ShortBuffer buffer, short[] noise) {
+        buffer.clear();
+        buffer.put(noise);
+        buffer.flip();
+    }
+
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+}
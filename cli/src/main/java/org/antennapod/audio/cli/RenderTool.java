@@ -0,0 +1,93 @@
+package org.antennapod.audio.cli;
+
+import org.antennapod.audio.SonicRenderer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Command line front end of {@link SonicRenderer}.
+ */
+public class RenderTool {
+
+    private static final String USAGE = "Usage: render-tool [options] <input> <output.wav>\n"
+            + "  --speed <factor>          Change speed, keeping the pitch\n"
+            + "  --pitch <factor>          Change pitch, keeping the speed\n"
+            + "  --rate <factor>           Change speed and pitch together\n"
+            + "  --volume <factor>         Scale the volume\n"
+            + "  --downmix                 Mix the input down to mono\n"
+            + "  --start <ms>              Start at this position of the input\n"
+            + "  --end <ms>                Stop at this position of the input\n"
+            + "  --raw <rate>:<channels>   Input is 16 bit little-endian PCM without header";
+
+    public static void main(String[] args) {
+        SonicRenderer renderer = new SonicRenderer();
+        long startMs = 0;
+        long endMs = -1;
+        File input = null;
+        File output = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--downmix".equals(arg)) {
+                    renderer.setDownMix(true);
+                } else if (arg.startsWith("--") && i + 1 < args.length) {
+                    String value = args[++i];
+                    if ("--speed".equals(arg)) {
+                        renderer.setSpeed(Float.parseFloat(value));
+                    } else if ("--pitch".equals(arg)) {
+                        renderer.setPitch(Float.parseFloat(value));
+                    } else if ("--rate".equals(arg)) {
+                        renderer.setRate(Float.parseFloat(value));
+                    } else if ("--volume".equals(arg)) {
+                        renderer.setVolume(Float.parseFloat(value));
+                    } else if ("--start".equals(arg)) {
+                        startMs = Long.parseLong(value);
+                    } else if ("--end".equals(arg)) {
+                        endMs = Long.parseLong(value);
+                    } else if ("--raw".equals(arg)) {
+                        String[] format = value.split(":");
+                        renderer.setRawInput(Integer.parseInt(format[0]), Integer.parseInt(format[1]));
+                    } else {
+                        usage("Unknown option " + arg);
+                    }
+                } else if (input == null) {
+                    input = new File(arg);
+                } else if (output == null) {
+                    output = new File(arg);
+                } else {
+                    usage("Too many arguments");
+                }
+            }
+        } catch (RuntimeException e) {
+            usage("Invalid argument: " + e.getMessage());
+        }
+        if (output == null) {
+            usage(null);
+        }
+        renderer.setRange(startMs, endMs);
+
+        try {
+            SonicRenderer.Result result = renderer.render(input, output);
+            System.out.println(String.format(Locale.US,
+                    "Rendered %.1f s of audio into %.1f s in %.2f s, real-time factor %.4f",
+                    result.getInputDurationMs() / 1000.0,
+                    result.getOutputDurationMs() / 1000.0,
+                    result.getElapsedMs() / 1000.0,
+                    result.getRealTimeFactor()));
+        } catch (IOException e) {
+            System.err.println("Rendering failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+}
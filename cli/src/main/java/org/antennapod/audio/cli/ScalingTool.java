@@ -0,0 +1,268 @@
+package org.antennapod.audio.cli;
+
+import org.antennapod.audio.PlaybackSimulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs several {@link PlaybackSimulation}s at once, like a main player next to preview players,
+ * and reports how they scale. For every number of streams from one up to the given maximum it
+ * prints the CPU time the streams took per second of audio, how much faster than real time they
+ * ran together, GC pauses and the longest stall of a thread that only sleeps, and for each
+ * stream its underruns and how late its loop came back to the sink at worst. Streams cycle
+ * through the given speeds and input files, so they can differ in speed and format.
+ */
+public class ScalingTool {
+
+    private static final String USAGE = "Usage: scaling-tool [options] <input.wav>...\n"
+            + "  --streams <n>             Run up to this many streams at once, default the\n"
+            + "                            number of processors\n"
+            + "  --speeds <a,b,...>        Speeds of the streams, default 1.0,1.5,2.0\n"
+            + "  --latency <us>            Time the codec takes per access unit\n"
+            + "  --buffer <ms>             Audio the sink buffers\n"
+            + "  --virtual                 Run as fast as possible instead of in real time";
+
+    // Interval at which the hiccup thread wakes up
+    private static final long HICCUP_INTERVAL_NANOS = 1000000;
+
+    public static void main(String[] args) {
+        int maxStreams = Runtime.getRuntime().availableProcessors();
+        float[] speeds = {1.0f, 1.5f, 2.0f};
+        long latencyUs = 5000;
+        int bufferMs = 200;
+        boolean realTime = true;
+        List<File> inputs = new ArrayList<File>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if ("--virtual".equals(arg)) {
+                    realTime = false;
+                } else if (arg.startsWith("--") && i + 1 < args.length) {
+                    String value = args[++i];
+                    if ("--streams".equals(arg)) {
+                        maxStreams = Integer.parseInt(value);
+                    } else if ("--speeds".equals(arg)) {
+                        String[] values = value.split(",");
+                        speeds = new float[values.length];
+                        for (int j = 0; j < values.length; j++) {
+                            speeds[j] = Float.parseFloat(values[j]);
+                        }
+                    } else if ("--latency".equals(arg)) {
+                        latencyUs = Long.parseLong(value);
+                    } else if ("--buffer".equals(arg)) {
+                        bufferMs = Integer.parseInt(value);
+                    } else {
+                        usage("Unknown option " + arg);
+                    }
+                } else {
+                    inputs.add(new File(arg));
+                }
+            }
+        } catch (RuntimeException e) {
+            usage("Invalid argument: " + e.getMessage());
+        }
+        if (inputs.isEmpty() || maxStreams < 1) {
+            usage(null);
+        }
+
+        System.out.println(String.format(Locale.US, "%d processors, %s time",
+                Runtime.getRuntime().availableProcessors(), realTime ? "real" : "virtual"));
+        double singleThroughput = 0.0;
+        for (int streams = 1; streams <= maxStreams; streams++) {
+            Stream[] running = new Stream[streams];
+            for (int i = 0; i < streams; i++) {
+                PlaybackSimulation simulation = new PlaybackSimulation();
+                simulation.setSpeed(speeds[i % speeds.length]);
+                simulation.setRealTime(realTime);
+                simulation.setDecoderLatency(latencyUs, 0);
+                simulation.setSinkBufferMs(bufferMs);
+                simulation.setSeed(i + 1);
+                running[i] = new Stream(simulation, inputs.get(i % inputs.size()));
+            }
+            Run run = new Run(running);
+            try {
+                run.execute();
+            } catch (IOException e) {
+                System.err.println("Simulation failed: " + e.getMessage());
+                System.exit(1);
+            }
+            double throughput = run.getAudioMs() / (double) run.getElapsedMs();
+            if (streams == 1) {
+                singleThroughput = throughput;
+            }
+            System.out.println(String.format(Locale.US,
+                    "%d streams: %.4f CPU s per audio s, %.1fx real time (%.2fx one stream), "
+                            + "GC %d pauses %d ms, longest stall %.1f ms",
+                    streams, run.getCpuMs() / (double) run.getAudioMs(), throughput,
+                    throughput / singleThroughput, run.getGcCount(), run.getGcMs(),
+                    run.getMaxHiccupNanos() / 1000000.0));
+            for (int i = 0; i < streams; i++) {
+                PlaybackSimulation.Result result = running[i].mResult;
+                System.out.println(String.format(Locale.US,
+                        "  %s at %.2fx: %d underruns, %d ms in total, %.1f ms late at worst",
+                        running[i].mInput.getName(), speeds[i % speeds.length],
+                        result.getUnderruns(), result.getUnderrunMs(),
+                        result.getMaxLatenessUs() / 1000.0));
+            }
+        }
+    }
+
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+    // A simulation on its own thread, which measures the CPU time it takes
+    private static class Stream implements Runnable {
+        private final PlaybackSimulation mSimulation;
+        private final File mInput;
+        private PlaybackSimulation.Result mResult;
+        private IOException mError;
+        private long mCpuNanos;
+
+        Stream(PlaybackSimulation simulation, File input) {
+            mSimulation = simulation;
+            mInput = input;
+        }
+
+        @Override
+        public void run() {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            try {
+                mResult = mSimulation.run(mInput);
+            } catch (IOException e) {
+                mError = e;
+            }
+            mCpuNanos = threads.getCurrentThreadCpuTime() - cpuStart;
+        }
+    }
+
+    // Streams run together, with the GC and a hiccup thread watched meanwhile
+    private static class Run {
+        private final Stream[] mStreams;
+        private volatile boolean mRunning;
+        private volatile long mMaxHiccupNanos;
+        private long mElapsedNanos;
+        private long mGcCount;
+        private long mGcMs;
+
+        Run(Stream[] streams) {
+            mStreams = streams;
+        }
+
+        void execute() throws IOException {
+            mRunning = true;
+            Thread hiccups = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // Whatever keeps a thread that only sleeps from running on time, the GC or
+                    // the scheduler, keeps the decode loops from running as well
+                    long last = System.nanoTime();
+                    while (mRunning) {
+                        try {
+                            Thread.sleep(HICCUP_INTERVAL_NANOS / 1000000);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        long now = System.nanoTime();
+                        long hiccup = now - last - HICCUP_INTERVAL_NANOS;
+                        if (hiccup > mMaxHiccupNanos) {
+                            mMaxHiccupNanos = hiccup;
+                        }
+                        last = now;
+                    }
+                }
+            }, "hiccups");
+            hiccups.setDaemon(true);
+
+            long gcCount = -collectionCount();
+            long gcMs = -collectionMs();
+            Thread[] threads = new Thread[mStreams.length];
+            for (int i = 0; i < threads.length; i++) {
+                threads[i] = new Thread(mStreams[i], "stream-" + i);
+            }
+            long start = System.nanoTime();
+            hiccups.start();
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            try {
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while waiting for the streams");
+            } finally {
+                mRunning = false;
+            }
+            mElapsedNanos = System.nanoTime() - start;
+            mGcCount = gcCount + collectionCount();
+            mGcMs = gcMs + collectionMs();
+            for (Stream stream : mStreams) {
+                if (stream.mError != null) {
+                    throw stream.mError;
+                }
+            }
+        }
+
+        private static long collectionCount() {
+            long count = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+            }
+            return count;
+        }
+
+        private static long collectionMs() {
+            long ms = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ms += Math.max(0, gc.getCollectionTime());
+            }
+            return ms;
+        }
+
+        long getAudioMs() {
+            long ms = 0;
+            for (Stream stream : mStreams) {
+                ms += stream.mResult.getOutputDurationMs();
+            }
+            return ms;
+        }
+
+        long getCpuMs() {
+            long nanos = 0;
+            for (Stream stream : mStreams) {
+                nanos += stream.mCpuNanos;
+            }
+            return nanos / 1000000;
+        }
+
+        long getElapsedMs() {
+            return Math.max(1, mElapsedNanos / 1000000);
+        }
+
+        long getGcCount() {
+            return mGcCount;
+        }
+
+        long getGcMs() {
+            return mGcMs;
+        }
+
+        long getMaxHiccupNanos() {
+            return mMaxHiccupNanos;
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package org.vinuxproject.sonic;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Times the cross-fades of {@link Sonic}, which work on float samples with ramp tables, against
+ * the 16 bit division per sample they replaced. For every channel count and segment length it
+ * prints the nanoseconds per sample of Sonic.overlapAdd() and Sonic.overlapAddWithSeparation()
+ * and of the previous loops, how far their outputs differ in 16 bit steps, and how long
+ * building the ramp tables for every pitch period takes on a new stream. Lives in the package
+ * of Sonic to reach the cross-fades, which are not public.
+ */
+public class OverlapAddBenchmark {
+
+    private static final String USAGE = "Usage: overlap-add-benchmark [options]\n"
+            + "  --rate <hz>               Sample rate the ramp tables are built for, default 44100\n"
+            + "  --channels <a,b,...>      Channel counts, default 1,2\n"
+            + "  --lengths <a,b,...>       Segment lengths in frames, default 110,220,441,678\n"
+            + "  --millis <ms>             Time each measurement runs, default 500";
+
+    // Frames between the two segments overlapAddWithSeparation() is timed with, as a fraction
+    // of the segment length
+    private static final int SEPARATION_DIVISOR = 4;
+
+    private static int sSink;
+
+    public static void main(String[] args) {
+        int sampleRate = 44100;
+        int[] channelCounts = {1, 2};
+        int[] lengths = {110, 220, 441, 678};
+        long millis = 500;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("--") && i + 1 < args.length) {
+                    String value = args[++i];
+                    if ("--rate".equals(arg)) {
+                        sampleRate = Integer.parseInt(value);
+                    } else if ("--channels".equals(arg)) {
+                        channelCounts = parseList(value);
+                    } else if ("--lengths".equals(arg)) {
+                        lengths = parseList(value);
+                    } else if ("--millis".equals(arg)) {
+                        millis = Long.parseLong(value);
+                    } else {
+                        usage("Unknown option " + arg);
+                    }
+                } else {
+                    usage("Unknown argument " + arg);
+                }
+            }
+        } catch (RuntimeException e) {
+            usage("Invalid argument: " + e.getMessage());
+        }
+
+        for (int channels : channelCounts) {
+            System.out.println(String.format(Locale.US,
+                    "%d channels: building the ramp tables of a new stream takes %.3f ms", channels,
+                    timeRampTables(sampleRate, channels, millis) / 1000000.0));
+            for (int length : lengths) {
+                benchmark(new Sonic(sampleRate, channels), channels, length, millis);
+            }
+        }
+    }
+
+    private static void benchmark(final Sonic sonic, final int channels, final int length,
+                                  long millis) {
+        final int separation = length / SEPARATION_DIVISOR;
+        final short[] down = noise(length * channels, 1);
+        final short[] up = noise((length + separation) * channels, 2);
+        final short[] out = new short[(length + separation) * channels];
+        final short[] expected = new short[out.length];
+        final float[] floatDown = toFloat(down);
+        final float[] floatUp = toFloat(up);
+        final float[] floatOut = new float[out.length];
+
+        overlapAdd(length, channels, expected, down, up);
+        sonic.overlapAdd(length, channels, floatOut, 0, floatDown, 0, floatUp, 0);
+        int difference = maxDifference(expected, floatOut, length * channels);
+        overlapAddWithSeparation(length, channels, separation, expected, down, up);
+        sonic.overlapAddWithSeparation(length, channels, separation, floatOut, 0, floatDown, 0,
+                floatUp, 0);
+        int separatedDifference = maxDifference(expected, floatOut, out.length);
+
+        double previous = nanosPerCall(new Runnable() {
+            @Override
+            public void run() {
+                overlapAdd(length, channels, out, down, up);
+            }
+        }, millis) / (length * channels);
+        double current = nanosPerCall(new Runnable() {
+            @Override
+            public void run() {
+                sonic.overlapAdd(length, channels, floatOut, 0, floatDown, 0, floatUp, 0);
+            }
+        }, millis) / (length * channels);
+        double previousSeparated = nanosPerCall(new Runnable() {
+            @Override
+            public void run() {
+                overlapAddWithSeparation(length, channels, separation, out, down, up);
+            }
+        }, millis) / ((length + separation) * channels);
+        double currentSeparated = nanosPerCall(new Runnable() {
+            @Override
+            public void run() {
+                sonic.overlapAddWithSeparation(length, channels, separation, floatOut, 0,
+                        floatDown, 0, floatUp, 0);
+            }
+        }, millis) / ((length + separation) * channels);
+        System.out.println(String.format(Locale.US,
+                "  %d frames: overlapAdd %.2f ns per sample, before %.2f (%.1fx), differs by %d;"
+                        + " with separation %.2f, before %.2f (%.1fx), differs by %d",
+                length, current, previous, previous / current, difference, currentSeparated,
+                previousSeparated, previousSeparated / currentSeparated, separatedDifference));
+    }
+
+    // Nanoseconds it takes a new stream to build the ramps of every pitch period
+    private static double timeRampTables(final int sampleRate, final int channels, long millis) {
+        final int minPeriod = sampleRate / 400;
+        final int maxPeriod = sampleRate / 65;
+        final Sonic[] streams = new Sonic[1];
+        long total = 0;
+        int runs = 0;
+        long end = System.nanoTime() + millis * 1000000;
+        while (System.nanoTime() < end || runs < 3) {
+            streams[0] = new Sonic(sampleRate, channels);
+            long start = System.nanoTime();
+            for (int period = minPeriod; period <= maxPeriod; period++) {
+                sSink += streams[0].getRamp(period).length;
+            }
+            total += System.nanoTime() - start;
+            runs++;
+        }
+        return total / (double) runs;
+    }
+
+    private static double nanosPerCall(Runnable call, long millis) {
+        // Warm up, so the JIT has compiled the loop before it is timed
+        long end = System.nanoTime() + millis * 1000000 / 4;
+        while (System.nanoTime() < end) {
+            call.run();
+        }
+        long calls = 0;
+        long start = System.nanoTime();
+        end = start + millis * 1000000;
+        long now;
+        do {
+            for (int i = 0; i < 100; i++) {
+                call.run();
+            }
+            calls += 100;
+            now = System.nanoTime();
+        } while (now < end);
+        return (now - start) / (double) calls;
+    }
+
+    // The cross-fade as Sonic did it before the ramp tables
+    private static void overlapAdd(int numSamples, int numChannels, short out[],
+                                   short rampDown[], short rampUp[]) {
+        for (int i = 0; i < numChannels; i++) {
+            int o = i;
+            int u = i;
+            int d = i;
+            for (int t = 0; t < numSamples; t++) {
+                out[o] = (short) ((rampDown[d] * (numSamples - t) + rampUp[u] * t) / numSamples);
+                o += numChannels;
+                d += numChannels;
+                u += numChannels;
+            }
+        }
+    }
+
+    // The separated cross-fade as Sonic did it before the ramp tables
+    private static void overlapAddWithSeparation(int numSamples, int numChannels, int separation,
+                                                 short out[], short rampDown[], short rampUp[]) {
+        for (int i = 0; i < numChannels; i++) {
+            int o = i;
+            int u = i;
+            int d = i;
+            for (int t = 0; t < numSamples + separation; t++) {
+                if (t < separation) {
+                    out[o] = (short) (rampDown[d] * (numSamples - t) / numSamples);
+                    d += numChannels;
+                } else if (t < numSamples) {
+                    out[o] = (short) ((rampDown[d] * (numSamples - t) + rampUp[u] * (t - separation)) / numSamples);
+                    d += numChannels;
+                    u += numChannels;
+                } else {
+                    out[o] = (short) (rampUp[u] * (t - separation) / numSamples);
+                    u += numChannels;
+                }
+                o += numChannels;
+            }
+        }
+    }
+
+    private static int maxDifference(short[] a, float[] b, int length) {
+        int max = 0;
+        for (int i = 0; i < length; i++) {
+            max = Math.max(max, Math.abs(a[i] - Math.round(b[i] * 32768.0f)));
+        }
+        return max;
+    }
+
+    private static float[] toFloat(short[] samples) {
+        float[] floats = new float[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            floats[i] = samples[i] / 32768.0f;
+        }
+        return floats;
+    }
+
+    private static short[] noise(int length, long seed) {
+        Random random = new Random(seed);
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (random.nextGaussian() * 8000);
+        }
+        return samples;
+    }
+
+    private static int[] parseList(String value) {
+        String[] values = value.split(",");
+        int[] list = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            list[i] = Integer.parseInt(values[i]);
+        }
+        return list;
+    }
+
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+}
@@ -0,0 +1,252 @@
+package org.antennapod.audio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeLoopTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    // Ten seconds of mono 16 bit samples, each of which holds the position of its frame
+    private static final int FRAMES = 10 * SAMPLE_RATE;
+    private static final long UNIT_US = WavExtractor.UNIT_FRAMES * 1000000L / SAMPLE_RATE;
+    // Sync samples are a second apart, like the seek points of a compressed stream
+    private static final long SYNC_INTERVAL_US = 1000000;
+    // Between two access units, and far enough from the sync sample before it for the
+    // pre-roll to skip some
+    private static final long TARGET_US = 5512300;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("seek", ".wav");
+        writeWav(mFile);
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Test
+    public void preRollCoversTheFormats() {
+        assertEquals(100000, format("audio/raw").getPreRollUs());
+        assertEquals(100000, format("audio/flac").getPreRollUs());
+        assertEquals(150000, format("audio/mp4a-latm").getPreRollUs());
+        assertEquals(200000, format("audio/mpeg").getPreRollUs());
+        assertEquals(200000, format("audio/opus").getPreRollUs());
+        assertEquals(200000, format("audio/vorbis").getPreRollUs());
+        assertEquals(-1, format("audio/x-unknown").getPreRollUs());
+    }
+
+    @Test
+    public void accurateSeekSkipsSamplesBeforeThePreRoll() throws IOException {
+        Seek seek = new Seek(true);
+        seek.run();
+        long preRollUs = seek.mFormat.getPreRollUs();
+        assertTrue(preRollUs > 0);
+        assertFalse(seek.mQueuedUs.isEmpty());
+        for (long timeUs : seek.mQueuedUs) {
+            // No sample that ends before the pre-roll reaches the decoder
+            assertTrue(timeUs + " us", timeUs + UNIT_US > TARGET_US - preRollUs);
+        }
+        // The sample that holds the target is decoded
+        long firstUs = seek.mQueuedUs.get(0);
+        assertTrue(firstUs + " us", firstUs <= TARGET_US);
+        assertTrue(firstUs > syncSampleUs());
+        seek.assertPlayedFromTheTarget();
+    }
+
+    @Test
+    public void accurateSeekWithoutPreRollDecodesFromTheSyncSample() throws IOException {
+        Seek seek = new Seek(false);
+        seek.run();
+        assertEquals(syncSampleUs(), (long) seek.mQueuedUs.get(0));
+        seek.assertPlayedFromTheTarget();
+    }
+
+    // The sync sample before the target, where the extractor goes to
+    private long syncSampleUs() throws IOException {
+        Extractor extractor = new SparseSyncExtractor(WavExtractor.open(mFile.getPath()));
+        try {
+            extractor.seekTo(TARGET_US);
+            return extractor.getSampleTime();
+        } finally {
+            extractor.release();
+        }
+    }
+
+    private static TrackFormat format(String mime) {
+        return new TrackFormat(mime, SAMPLE_RATE, 2, -1, false, null);
+    }
+
+    // Plays the file for a second, seeks accurately to TARGET_US, and plays on for a bit
+    private class Seek implements DecodeLoop.Host {
+        final TrackFormat mFormat;
+        final List<Long> mQueuedUs = new ArrayList<Long>();
+        private final Extractor mExtractor;
+        private final SimulatedDecoder mDecoder;
+        private final SonicPipelineTest.RecordingSink mSink = new SonicPipelineTest.RecordingSink();
+        private final SonicPipeline mPipeline;
+        private final boolean mPreRoll;
+        private final Clock mClock = new VirtualClock();
+        // Frames the sink got before the seek, or -1 before the seek
+        private int mFramesBeforeSeek = -1;
+        // Whether the loop flushed the decoder for the seek
+        private boolean mSeeked;
+        private int mPositionChecks;
+
+        Seek(boolean preRoll) throws IOException {
+            mPreRoll = preRoll;
+            mExtractor = new SparseSyncExtractor(WavExtractor.open(mFile.getPath()));
+            mFormat = mExtractor.selectAudioTrack();
+            mDecoder = new SimulatedDecoder(mClock, 2 * WavExtractor.UNIT_FRAMES, 0, 0, 1) {
+                @Override
+                public void queueInputBuffer(int index, int offset, int size,
+                                             long presentationTimeUs, int flags) {
+                    if (mSeeked && size > 0) {
+                        mQueuedUs.add(presentationTimeUs);
+                    }
+                    super.queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+                }
+
+                @Override
+                public void flush() {
+                    mSeeked = mFramesBeforeSeek >= 0;
+                    super.flush();
+                }
+            };
+            mDecoder.configure(mFormat);
+            mPipeline = new SonicPipeline(new AudioSink.Factory() {
+                @Override
+                public AudioSink createSink(int sampleRate, int channels, boolean floatPcm) {
+                    mSink.mChannels = channels;
+                    return mSink;
+                }
+            }, mClock);
+            mPipeline.configure(SAMPLE_RATE, 1, false);
+        }
+
+        void run() {
+            DecodeLoop loop = new DecodeLoop(this, mPipeline, mClock, mExtractor, mDecoder);
+            if (mPreRoll) {
+                loop.setPreRollUs(mFormat.getPreRollUs());
+            }
+            try {
+                loop.run();
+            } finally {
+                mExtractor.release();
+            }
+            assertTrue(mPositionChecks > 0);
+        }
+
+        @Override
+        public boolean shouldContinue() {
+            return mFramesBeforeSeek < 0 || mSink.mFrames < mFramesBeforeSeek + SAMPLE_RATE;
+        }
+
+        @Override
+        public boolean waitWhilePaused() {
+            if (mFramesBeforeSeek < 0 && mSink.mFrames >= SAMPLE_RATE) {
+                mPipeline.flush();
+                mPipeline.seekAccurately(TARGET_US);
+                mFramesBeforeSeek = mSink.mFrames;
+            }
+            if (mFramesBeforeSeek >= 0 && mSink.mFrames == mFramesBeforeSeek) {
+                // Until the target is played, the position stays there, not at the sync
+                // sample the extractor went back to
+                assertEquals(TARGET_US, mPipeline.getPositionUs(mExtractor.getSampleTime()));
+                mPositionChecks++;
+            }
+            return false;
+        }
+
+        @Override
+        public void onError(IOException e) {
+            throw new AssertionError(e);
+        }
+
+        // Asserts that the sink got what came before the seek, and then the target on
+        void assertPlayedFromTheTarget() {
+            assertTrue(mSeeked);
+            for (int i = 0; i < mFramesBeforeSeek; i++) {
+                assertEquals((short) i, mSink.mSamples[i]);
+            }
+            long targetFrame = (TARGET_US * SAMPLE_RATE + 500000) / 1000000;
+            assertTrue(mSink.mFrames > mFramesBeforeSeek);
+            for (int i = mFramesBeforeSeek; i < mSink.mFrames; i++) {
+                assertEquals("frame " + i, (short) (targetFrame + i - mFramesBeforeSeek),
+                        mSink.mSamples[i]);
+            }
+        }
+    }
+
+    // Seeks to whole seconds only
+    private static class SparseSyncExtractor implements Extractor {
+        private final Extractor mExtractor;
+
+        SparseSyncExtractor(Extractor extractor) {
+            mExtractor = extractor;
+        }
+
+        @Override
+        public TrackFormat selectAudioTrack() throws IOException {
+            return mExtractor.selectAudioTrack();
+        }
+
+        @Override
+        public int readSampleData(ByteBuffer buffer, int offset) {
+            return mExtractor.readSampleData(buffer, offset);
+        }
+
+        @Override
+        public long getSampleTime() {
+            return mExtractor.getSampleTime();
+        }
+
+        @Override
+        public boolean advance() {
+            return mExtractor.advance();
+        }
+
+        @Override
+        public void seekTo(long timeUs) {
+            mExtractor.seekTo(timeUs - timeUs % SYNC_INTERVAL_US);
+        }
+
+        @Override
+        public void release() {
+            mExtractor.release();
+        }
+    }
+
+    private static void writeWav(File file) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = out.getChannel();
+            WavHeader.write(channel, 1, SAMPLE_RATE, 2L * FRAMES);
+            ByteBuffer data = ByteBuffer.allocate(2 * FRAMES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < FRAMES; i++) {
+                data.putShort((short) i);
+            }
+            data.flip();
+            channel.write(data, channel.size());
+        } finally {
+            out.close();
+        }
+    }
+}
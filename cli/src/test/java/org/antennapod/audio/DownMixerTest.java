@@ -0,0 +1,101 @@
+package org.antennapod.audio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DownMixerTest {
+
+    private static final int LEVEL = 10000;
+    // Front channels at unity, centre and surrounds at -3 dB, normalised so the sum is unity
+    private static final double SIDE = 1.0 / (1.0 + 2 * 0.7071);
+    private static final double MIDDLE = 0.7071 / (1.0 + 2 * 0.7071);
+
+    @Test
+    public void mixesFivePointOneToStereo() {
+        DownMixer mixer = new DownMixer(6, 2);
+        // FL, FR, C, LFE, SL, SR
+        double[][] expected = {
+                {SIDE, 0}, {0, SIDE}, {MIDDLE, MIDDLE}, {0, 0}, {MIDDLE, 0}, {0, MIDDLE},
+        };
+        for (int channel = 0; channel < 6; channel++) {
+            short[] frame = new short[6];
+            frame[channel] = LEVEL;
+            short[] out = mix(mixer, frame);
+            assertEquals("left of channel " + channel, LEVEL * expected[channel][0], out[0], 1.0);
+            assertEquals("right of channel " + channel, LEVEL * expected[channel][1], out[1], 1.0);
+        }
+    }
+
+    @Test
+    public void mixesStereoToMono() {
+        DownMixer mixer = new DownMixer(2, 1);
+        assertEquals(LEVEL / 2, mix(mixer, new short[] {LEVEL, 0})[0], 1);
+        assertEquals(LEVEL / 2, mix(mixer, new short[] {0, LEVEL})[0], 1);
+        assertEquals(4000, mix(mixer, new short[] {LEVEL, -2000})[0], 1);
+        assertEquals(0, mix(mixer, new short[] {LEVEL, -LEVEL})[0], 1);
+    }
+
+    @Test
+    public void fullScaleInputDoesNotWrapAround() {
+        for (int inputChannels = 1; inputChannels <= 8; inputChannels++) {
+            for (int outputChannels = 1; outputChannels <= 2; outputChannels++) {
+                DownMixer mixer = new DownMixer(inputChannels, outputChannels);
+                short[] loud = new short[inputChannels];
+                short[] quiet = new short[inputChannels];
+                for (int channel = 0; channel < inputChannels; channel++) {
+                    loud[channel] = Short.MAX_VALUE;
+                    quiet[channel] = Short.MIN_VALUE;
+                }
+                String layout = inputChannels + " to " + outputChannels;
+                for (short sample : mix(mixer, loud)) {
+                    // The coefficients are rounded down, so the sum may fall short a little
+                    assertTrue(layout + ": " + sample, sample > 32700);
+                }
+                for (short sample : mix(mixer, quiet)) {
+                    assertTrue(layout + ": " + sample, sample < -32700);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void stopsWhenTheOutputIsFull() {
+        DownMixer mixer = new DownMixer(6, 2);
+        ShortBuffer in = ShortBuffer.allocate(6 * 10);
+        ShortBuffer out = ShortBuffer.allocate(2 * 4 + 1);
+        assertEquals(4, mixer.mix(in, out));
+        assertEquals(6 * 4, in.position());
+        assertEquals(2 * 4, out.position());
+    }
+
+    // Mixes frames of interleaved samples through each of the three entry points, which have
+    // to agree, and returns the result
+    private static short[] mix(DownMixer mixer, short[] frames) {
+        int count = frames.length / mixer.getInputChannels();
+        short[] fromArray = new short[count * mixer.getOutputChannels()];
+        mixer.mix(frames, 0, fromArray, 0, count);
+
+        ByteBuffer bytes = ByteBuffer.allocateDirect(2 * frames.length).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(frames);
+        // Into a buffer without an array of its own
+        ShortBuffer fromBytes = ByteBuffer.allocateDirect(2 * fromArray.length)
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+        assertEquals(count, mixer.mix(bytes, fromBytes));
+        assertEquals(bytes.capacity(), bytes.position());
+
+        ShortBuffer fromShorts = ShortBuffer.allocate(fromArray.length);
+        assertEquals(count, mixer.mix(ShortBuffer.wrap(frames), fromShorts));
+
+        for (int i = 0; i < fromArray.length; i++) {
+            assertEquals(fromArray[i], fromBytes.get(i));
+            assertEquals(fromArray[i], fromShorts.get(i));
+        }
+        return fromArray;
+    }
+}
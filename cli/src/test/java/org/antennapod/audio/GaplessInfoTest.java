@@ -0,0 +1,238 @@
+package org.antennapod.audio;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class GaplessInfoTest {
+
+    // MPEG 1 layer III, 128 kbit/s, 44.1 kHz, joint stereo, 417 bytes per frame
+    private static final int MP3_HEADER = 0xFFFB9064;
+    private static final int MP3_FRAME_LENGTH = 417;
+    // The Xing header follows the 32 bytes of side information
+    private static final int XING_OFFSET = 4 + 32;
+    private static final String SMPB = " 00000000 00000840 000001CA 00000000001FDC76 00000000"
+            + " 00000000 00000000 00000000 00000000 00000000 00000000 00000000";
+
+    @Test
+    public void parsesLameTag() {
+        GaplessInfo info = GaplessInfo.parseMp3Frame(ByteBuffer.wrap(infoFrame(576, 1000, 100)));
+        assertNotNull(info);
+        // The decoder adds 529 frames in front of the encoder delay
+        assertEquals(576 + 529, info.getStartFrame());
+        assertEquals(100 * 1152 - 576 - 1000 + 576 + 529, info.getEndFrame());
+    }
+
+    @Test
+    public void readsLameTagOfFile() throws IOException {
+        GaplessInfo info = read(concat(infoFrame(576, 1000, 100), cbrFrames(3)));
+        assertNotNull(info);
+        assertEquals(1105, info.getStartFrame());
+        assertEquals(114729, info.getEndFrame());
+    }
+
+    @Test
+    public void readsLameTagAfterId3Tag() throws IOException {
+        GaplessInfo info = read(concat(id3Tag(300), infoFrame(576, 1000, 100), cbrFrames(3)));
+        assertNotNull(info);
+        assertEquals(1105, info.getStartFrame());
+        assertEquals(114729, info.getEndFrame());
+    }
+
+    @Test
+    public void cbrFileWithoutTagHasNone() throws IOException {
+        assertNull(read(cbrFrames(8)));
+        assertNull(read(concat(id3Tag(300), cbrFrames(8))));
+    }
+
+    @Test
+    public void parsesItunSmpb() {
+        GaplessInfo info = GaplessInfo.parseSmpb(SMPB);
+        assertNotNull(info);
+        assertEquals(0x840, info.getStartFrame());
+        assertEquals(0x840 + 0x1FDC76, info.getEndFrame());
+    }
+
+    @Test
+    public void rejectsInvalidItunSmpb() {
+        assertNull(GaplessInfo.parseSmpb(""));
+        assertNull(GaplessInfo.parseSmpb("00000000 00000840"));
+        assertNull(GaplessInfo.parseSmpb("00000000 zz 000001CA 00000000001FDC76"));
+        assertNull(GaplessInfo.parseSmpb("00000000 00000000 00000000 0000000000000000"));
+    }
+
+    @Test
+    public void readsItunSmpbOfMp4() throws IOException {
+        GaplessInfo info = read(mp4(SMPB));
+        assertNotNull(info);
+        assertEquals(0x840, info.getStartFrame());
+        assertEquals(0x840 + 0x1FDC76, info.getEndFrame());
+    }
+
+    @Test
+    public void mp4WithoutItunSmpbHasNone() throws IOException {
+        byte[] other = box("----", box("mean", fullBox("com.apple.iTunes")),
+                box("name", fullBox("iTunNORM")), box("data", fullBox(new byte[4], " 1 2 3 4")));
+        byte[] file = concat(box("ftyp", ascii("M4A ")),
+                box("moov", box("udta", box("meta", new byte[4], box("ilst", other)))));
+        assertNull(read(file));
+    }
+
+    @Test
+    public void truncatedInputDoesNotThrow() throws IOException {
+        byte[] frame = infoFrame(576, 1000, 100);
+        for (int length = 0; length <= frame.length; length++) {
+            GaplessInfo.parseMp3Frame(ByteBuffer.wrap(Arrays.copyOf(frame, length)));
+        }
+        byte[] mp3 = concat(id3Tag(300), frame);
+        for (int length = 0; length <= mp3.length; length += 5) {
+            read(Arrays.copyOf(mp3, length));
+        }
+        byte[] mp4 = mp4(SMPB);
+        for (int length = 0; length <= mp4.length; length++) {
+            read(Arrays.copyOf(mp4, length));
+        }
+    }
+
+    @Test
+    public void corruptInputDoesNotThrow() throws IOException {
+        // Box sizes that are too small, too large, or 64 bit and negative
+        byte[] mp4 = mp4(SMPB);
+        for (int position = 0; position + 4 <= mp4.length; position++) {
+            for (int size : new int[] {0, 1, 3, 0x7FFFFFFF, 0xFFFFFFFF}) {
+                byte[] corrupt = mp4.clone();
+                ByteBuffer.wrap(corrupt).putInt(position, size);
+                read(corrupt);
+            }
+            byte[] corrupt = mp4.clone();
+            ByteBuffer.wrap(corrupt).putInt(position, 1);
+            if (position + 16 <= corrupt.length) {
+                ByteBuffer.wrap(corrupt).putLong(position + 8, Long.MAX_VALUE);
+            }
+            read(corrupt);
+        }
+        // An ID3 tag that claims to be larger than the file
+        byte[] tag = id3Tag(0);
+        tag[6] = 0x7F;
+        assertNull(read(concat(tag, infoFrame(576, 1000, 100))));
+        // Xing flags that promise more than the frame holds
+        byte[] frame = infoFrame(576, 1000, 100);
+        ByteBuffer.wrap(frame).putInt(XING_OFFSET + 4, 0xFFFFFFFF);
+        GaplessInfo.parseMp3Frame(ByteBuffer.wrap(frame, 0, XING_OFFSET + 20).slice());
+    }
+
+    // An MP3 frame with an Info header and a LAME tag, as LAME writes it in front of the audio
+    private static byte[] infoFrame(int delay, int padding, int frames) {
+        ByteBuffer frame = ByteBuffer.allocate(MP3_FRAME_LENGTH);
+        frame.putInt(MP3_HEADER);
+        frame.position(XING_OFFSET);
+        frame.put(ascii("Info"));
+        // Frames, bytes, table of contents, quality
+        frame.putInt(0x0F);
+        frame.putInt(frames);
+        frame.putInt(frames * MP3_FRAME_LENGTH);
+        frame.position(frame.position() + 100 + 4);
+        int lame = frame.position();
+        frame.put(ascii("LAME3.100"));
+        frame.put(lame + 21, (byte) (delay >> 4));
+        frame.put(lame + 22, (byte) ((delay & 0xF) << 4 | padding >> 8));
+        frame.put(lame + 23, (byte) padding);
+        return frame.array();
+    }
+
+    // Frames of a constant bitrate file, without any tag
+    private static byte[] cbrFrames(int count) {
+        ByteBuffer frames = ByteBuffer.allocate(count * MP3_FRAME_LENGTH);
+        for (int i = 0; i < count; i++) {
+            frames.putInt(i * MP3_FRAME_LENGTH, MP3_HEADER);
+        }
+        return frames.array();
+    }
+
+    // An ID3v2.4 tag of size bytes after its header
+    private static byte[] id3Tag(int size) {
+        byte[] tag = new byte[10 + size];
+        tag[0] = 'I';
+        tag[1] = 'D';
+        tag[2] = '3';
+        tag[3] = 4;
+        tag[6] = (byte) ((size >> 21) & 0x7F);
+        tag[7] = (byte) ((size >> 14) & 0x7F);
+        tag[8] = (byte) ((size >> 7) & 0x7F);
+        tag[9] = (byte) (size & 0x7F);
+        return tag;
+    }
+
+    // The boxes iTunes writes the iTunSMPB entry in: moov/udta/meta/ilst/----
+    private static byte[] mp4(String smpb) {
+        byte[] entry = box("----", box("mean", fullBox("com.apple.iTunes")),
+                box("name", fullBox("iTunSMPB")), box("data", fullBox(new byte[4], smpb)));
+        byte[] other = box("----", box("mean", fullBox("com.apple.iTunes")),
+                box("name", fullBox("iTunNORM")), box("data", fullBox(new byte[4], " 1 2 3 4")));
+        return concat(box("ftyp", ascii("M4A ")), box("free", new byte[16]),
+                box("moov", box("mvhd", new byte[100]),
+                        box("udta", box("meta", new byte[4], box("hdlr", new byte[25]),
+                                box("ilst", other, entry)))));
+    }
+
+    private static byte[] box(String type, byte[]... content) {
+        byte[] body = concat(content);
+        ByteBuffer box = ByteBuffer.allocate(8 + body.length);
+        box.putInt(8 + body.length);
+        box.put(ascii(type));
+        box.put(body);
+        return box.array();
+    }
+
+    // Content of a box with version and flags in front
+    private static byte[] fullBox(String value) {
+        return concat(new byte[4], ascii(value));
+    }
+
+    private static byte[] fullBox(byte[] header, String value) {
+        return concat(new byte[4], header, ascii(value));
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(Charset.forName("US-ASCII"));
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static GaplessInfo read(byte[] content) throws IOException {
+        File file = File.createTempFile("gapless", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                return GaplessInfo.read(in.getChannel());
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.antennapod.audio;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import static org.junit.Assert.assertEquals;
+
+public class LoudnessAnalyzerTest {
+
+    private static final int SAMPLE_RATE = 44100;
+
+    @Test
+    public void sineIsMeasuredAtItsLevel() {
+        // A 1 kHz sine at full scale measures -3.01 LUFS
+        LoudnessAnalyzer analyzer = new LoudnessAnalyzer();
+        analyzer.configure(SAMPLE_RATE, 1);
+        short[] samples = sine(10 * SAMPLE_RATE, 0.1);
+        analyzer.process(samples, samples.length);
+        assertEquals(-23.01, analyzer.getIntegratedLoudness(), 0.1);
+        assertEquals(10000, analyzer.getDurationMs());
+    }
+
+    @Test
+    public void gainTableReachesTheTarget() {
+        LoudnessAnalyzer analyzer = new LoudnessAnalyzer(SAMPLE_RATE, 1);
+        short[] samples = sine(10 * SAMPLE_RATE, 0.1);
+        analyzer.process(samples, samples.length);
+        GainTable table = analyzer.createGainTable(GainTable.DEFAULT_TARGET_LOUDNESS);
+        double gainDb = 20.0 * Math.log10(table.getGain(5000000));
+        assertEquals(GainTable.DEFAULT_TARGET_LOUDNESS + 23.01, gainDb, 0.1);
+    }
+
+    @Test
+    public void analysisPassMatchesDirectAnalysis() throws IOException {
+        short[] samples = sine(20 * SAMPLE_RATE, 0.05);
+        for (int i = 8 * SAMPLE_RATE; i < 12 * SAMPLE_RATE; i++) {
+            samples[i] *= 4;
+        }
+        LoudnessAnalyzer direct = new LoudnessAnalyzer(SAMPLE_RATE, 1);
+        direct.process(samples, samples.length);
+
+        File file = File.createTempFile("loudness", ".wav");
+        try {
+            write(file, samples);
+            WavExtractor extractor = WavExtractor.open(file.getPath());
+            try {
+                TrackFormat format = extractor.selectAudioTrack();
+                SimulatedDecoder decoder = new SimulatedDecoder(Clock.SYSTEM,
+                        extractor.getMaxUnitSize(), 0, 0, 1);
+                decoder.configure(format);
+                LoudnessAnalyzer analyzer = new LoudnessAnalyzer();
+                new AnalysisPass(extractor, decoder, format).run(analyzer);
+                assertEquals(direct.getIntegratedLoudness(), analyzer.getIntegratedLoudness(),
+                        1e-9);
+                GainTable expected = direct.createGainTable(GainTable.DEFAULT_TARGET_LOUDNESS);
+                GainTable actual = analyzer.createGainTable(GainTable.DEFAULT_TARGET_LOUDNESS);
+                for (long timeUs = 0; timeUs < 20000000; timeUs += 250000) {
+                    assertEquals(expected.getGain(timeUs), actual.getGain(timeUs), 0.0f);
+                }
+            } finally {
+                extractor.release();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static short[] sine(int length, double amplitude) {
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) Math.round(amplitude * 32767.0
+                    * Math.sin(2.0 * Math.PI * 1000.0 * i / SAMPLE_RATE));
+        }
+        return samples;
+    }
+
+    private static void write(File file, short[] samples) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(2 * samples.length).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(samples);
+        AudioFormat format = new AudioFormat(SAMPLE_RATE, 16, 1, true, false);
+        AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(bytes.array()),
+                format, samples.length);
+        AudioSystem.write(in, AudioFileFormat.Type.WAVE, file);
+    }
+}
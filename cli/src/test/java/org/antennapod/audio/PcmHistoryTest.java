@@ -0,0 +1,115 @@
+package org.antennapod.audio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PcmHistoryTest {
+
+    // One frame per millisecond, so times and frames are easy to tell apart
+    private static final int SAMPLE_RATE = 1000;
+    private static final int CAPACITY = 1000;
+
+    @Test
+    public void wrapsAroundKeepingTheNewestFrames() {
+        PcmHistory history = createHistory();
+        for (int frame = 0; frame < 1200; frame += 400) {
+            append(history, frame, 400);
+        }
+        assertEquals(200, history.getStartFrame());
+        assertEquals(1200, history.getEndFrame());
+        assertFalse(history.contains(199000));
+        assertTrue(history.contains(200000));
+        assertTrue(history.contains(1199000));
+        assertFalse(history.contains(1200000));
+        assertFrames(history, 200, CAPACITY);
+        // Across the end of the ring
+        assertFrames(history, 900, 300);
+    }
+
+    @Test
+    public void readsNothingOutsideTheHistory() {
+        PcmHistory history = createHistory();
+        append(history, 1000, 400);
+        byte[] dst = new byte[2 * CAPACITY];
+        assertEquals(0, history.read(999, dst, CAPACITY));
+        assertEquals(0, history.read(1400, dst, CAPACITY));
+        assertEquals(100, history.read(1300, dst, CAPACITY));
+    }
+
+    @Test
+    public void toleratesRoundedTimes() {
+        PcmHistory history = createHistory();
+        append(history, 0, 400);
+        // The codec rounded the time of the next buffer by a millisecond
+        ByteBuffer buffer = frames(400, 400);
+        history.append(buffer, 0, buffer.capacity(), 401000);
+        assertEquals(0, history.getStartFrame());
+        assertEquals(800, history.getEndFrame());
+        assertFrames(history, 0, 800);
+    }
+
+    @Test
+    public void startsAnewAfterAGap() {
+        PcmHistory history = createHistory();
+        append(history, 0, 400);
+        append(history, 600, 100);
+        assertEquals(600, history.getStartFrame());
+        assertEquals(700, history.getEndFrame());
+        assertFrames(history, 600, 100);
+    }
+
+    @Test
+    public void keepsTheEndOfABufferLargerThanTheHistory() {
+        PcmHistory history = createHistory();
+        append(history, 0, 2500);
+        assertEquals(1500, history.getStartFrame());
+        assertEquals(2500, history.getEndFrame());
+        assertFrames(history, 1500, CAPACITY);
+    }
+
+    @Test
+    public void leavesTheBufferAsItWas() {
+        PcmHistory history = createHistory();
+        ByteBuffer buffer = frames(0, 400);
+        buffer.position(100);
+        buffer.limit(700);
+        history.append(buffer, 200, 400, 100000);
+        assertEquals(100, buffer.position());
+        assertEquals(700, buffer.limit());
+        assertFrames(history, 100, 200);
+    }
+
+    private static PcmHistory createHistory() {
+        return new PcmHistory(SAMPLE_RATE, 2, CAPACITY / (float) SAMPLE_RATE);
+    }
+
+    // Appends frames first to first + count, each of which holds its own position
+    private static void append(PcmHistory history, int first, int count) {
+        ByteBuffer buffer = frames(first, count);
+        history.append(buffer, 0, buffer.capacity(), first * 1000000L / SAMPLE_RATE);
+    }
+
+    private static ByteBuffer frames(int first, int count) {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * count).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            buffer.putShort((short) (first + i));
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static void assertFrames(PcmHistory history, int first, int count) {
+        byte[] dst = new byte[2 * count];
+        assertEquals(count, history.read(first, dst, count));
+        ByteBuffer frames = ByteBuffer.wrap(dst).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            assertEquals(first + i, frames.getShort());
+        }
+    }
+}
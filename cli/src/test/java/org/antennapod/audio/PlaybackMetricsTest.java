@@ -0,0 +1,188 @@
+package org.antennapod.audio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackMetricsTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    // Frames per chunk read from the file, about 23 ms
+    private static final int CHUNK_FRAMES = 1024;
+    // Every reading of the clock moves it on by this much, so each stage seems to take it
+    private static final long STEP_NANOS = 10000;
+
+    @Test
+    public void recordsDecodeSonicAndWriteTimes() throws IOException {
+        SteppingClock clock = new SteppingClock();
+        BlockingSink sink = new BlockingSink(clock);
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        int chunks = play(clock, sink, metrics, 1.0f, SAMPLE_RATE);
+
+        // Reading a chunk from the file is the decode time, one step between two readings
+        PlaybackMetrics.Histogram decode = metrics.getDecodeTime();
+        assertEquals(chunks, decode.getCount());
+        assertEquals(chunks * STEP_NANOS, decode.getTotalNanos());
+        assertEquals(chunks, decode.getBucket(0));
+        assertEquals(chunks, metrics.getSonicTime().getCount());
+        assertEquals(chunks, metrics.getSonicTime().getBucket(0));
+
+        // Each write blocks as long as its frames play, which is about 23 ms
+        PlaybackMetrics.Histogram write = metrics.getWriteTime();
+        assertEquals(sink.mWrites, write.getCount());
+        assertEquals(SAMPLE_RATE, metrics.getWrittenFrames());
+        long chunkUs = CHUNK_FRAMES * 1000000L / SAMPLE_RATE;
+        assertEquals(chunkUs, write.getMaxUs(), 1 + STEP_NANOS / 1000);
+        // A second of audio in all
+        assertEquals(1000000000L, write.getTotalNanos(), write.getCount() * STEP_NANOS + 1000000);
+        int bucket = bucketOf(write, chunkUs);
+        assertEquals(SAMPLE_RATE / CHUNK_FRAMES, write.getBucket(bucket));
+        assertEquals(write.getBucketBoundUs(bucket), write.getPercentileUs(0.95));
+
+        assertEquals(SAMPLE_RATE * 2L, metrics.getExtractedBytes());
+        // Decoding and Sonic took two steps per chunk of 23 ms
+        assertEquals(2.0 * chunks * STEP_NANOS / 1000000000.0, metrics.getRealTimeFactor(), 1e-6);
+    }
+
+    @Test
+    public void reportsTheUnderrunsOfTheSink() throws IOException {
+        SteppingClock clock = new SteppingClock();
+        BlockingSink sink = new BlockingSink(clock);
+        sink.mUnderrunEvery = 10;
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        assertEquals(-1, metrics.getUnderruns());
+        play(clock, sink, metrics, 1.0f, SAMPLE_RATE);
+        assertTrue(sink.mUnderruns > 0);
+        assertEquals(sink.mUnderruns, metrics.getUnderruns());
+        metrics.reset();
+        assertEquals(-1, metrics.getUnderruns());
+        assertEquals(0, metrics.getWriteTime().getCount());
+    }
+
+    @Test
+    public void countsFramesWaitingInSonic() throws IOException {
+        SteppingClock clock = new SteppingClock();
+        BlockingSink sink = new BlockingSink(clock);
+        PlaybackMetrics metrics = new PlaybackMetrics();
+        play(clock, sink, metrics, 2.0f, SAMPLE_RATE);
+        // Sonic keeps back what its pitch search looks ahead at, about 25 ms at 44.1 kHz,
+        // until it is flushed at the end
+        assertTrue(metrics.getMaxPendingFrames() > 0);
+        assertTrue(metrics.getMaxPendingFrames() < CHUNK_FRAMES + SAMPLE_RATE / 25);
+        assertEquals(0, metrics.getPendingFrames());
+        assertEquals(SAMPLE_RATE / 2, metrics.getWrittenFrames(), 2 * CHUNK_FRAMES);
+    }
+
+    // Plays a mono file of the given length through a pipeline with metrics, and returns
+    // the number of chunks read
+    private static int play(Clock clock, final BlockingSink sink, PlaybackMetrics metrics,
+                            float speed, int frames) throws IOException {
+        File file = File.createTempFile("metrics", ".wav");
+        try {
+            writeWav(file, frames);
+            WavSource source = WavSource.open(file.getPath());
+            try {
+                SonicPipeline pipeline = new SonicPipeline(new AudioSink.Factory() {
+                    @Override
+                    public AudioSink createSink(int sampleRate, int channels, boolean floatPcm) {
+                        sink.mChannels = channels;
+                        return sink;
+                    }
+                }, clock);
+                // Set before Sonic is created, so it starts at the speed instead of ramping to it
+                pipeline.setSpeed(speed);
+                pipeline.configure(SAMPLE_RATE, 1, false);
+                pipeline.setMetrics(metrics);
+                int chunks = 1;
+                while (pipeline.write(source, CHUNK_FRAMES)) {
+                    chunks++;
+                }
+                return chunks;
+            } finally {
+                source.release();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static int bucketOf(PlaybackMetrics.Histogram histogram, long us) {
+        int bucket = 0;
+        while (us > histogram.getBucketBoundUs(bucket)) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static void writeWav(File file, int frames) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = out.getChannel();
+            WavHeader.write(channel, 1, SAMPLE_RATE, 2L * frames);
+            ByteBuffer data = ByteBuffer.allocate(2 * frames).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < frames; i++) {
+                data.putShort((short) (8000 * Math.sin(2.0 * Math.PI * 440.0 * i / SAMPLE_RATE)));
+            }
+            data.flip();
+            channel.write(data, channel.size());
+        } finally {
+            out.close();
+        }
+    }
+
+    private static class SteppingClock implements Clock {
+        private long mNanos;
+
+        @Override
+        public long nanoTime() {
+            long nanos = mNanos;
+            mNanos += STEP_NANOS;
+            return nanos;
+        }
+
+        @Override
+        public void sleep(long nanos) {
+            mNanos += nanos;
+        }
+    }
+
+    // Blocks each write for as long as its frames play, and runs empty every mUnderrunEvery
+    // writes if that is set
+    private static class BlockingSink extends SonicPipelineTest.RecordingSink {
+        private final Clock mClock;
+        int mUnderrunEvery;
+        int mUnderruns;
+        int mWrites;
+
+        BlockingSink(Clock clock) {
+            mClock = clock;
+        }
+
+        @Override
+        public int write(short[] data, int offset, int size) {
+            mWrites++;
+            if (mUnderrunEvery > 0 && mWrites % mUnderrunEvery == 0) {
+                mUnderruns++;
+            }
+            try {
+                mClock.sleep(size / mChannels * 1000000000L / SAMPLE_RATE);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+            return super.write(data, offset, size);
+        }
+
+        @Override
+        public int getUnderrunCount() {
+            return mUnderruns;
+        }
+    }
+}
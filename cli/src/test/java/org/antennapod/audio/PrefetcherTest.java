@@ -0,0 +1,250 @@
+package org.antennapod.audio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PrefetcherTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    // Twenty seconds of mono 16 bit samples, each of which holds the position of its frame
+    private static final int FRAMES = 20 * SAMPLE_RATE;
+    private static final long SKIP_US = 10000000;
+    private static final long WINDOW_US = 2000000;
+    private static final long WINDOW_BYTES = WINDOW_US * SAMPLE_RATE / 1000000 * 2;
+    // How long a window may take to be decoded before a test gives up on it
+    private static final long TIMEOUT_MS = 10000;
+
+    private File mFile;
+    private volatile long mPositionUs;
+    private volatile long mDecoderLatencyUs;
+    private volatile boolean mDecoderReleased;
+    private Thread mThread;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("prefetch", ".wav");
+        writeWav(mFile);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (mThread != null) {
+            mThread.join(TIMEOUT_MS);
+        }
+        mFile.delete();
+    }
+
+    @Test
+    public void decodesAheadOfThePosition() throws InterruptedException {
+        Prefetcher prefetcher = start(2 * WINDOW_BYTES);
+        try {
+            assertWindow(takeFilled(prefetcher, SKIP_US), SKIP_US);
+
+            // The window moves on with playback
+            mPositionUs = 5000000;
+            assertWindow(takeFilled(prefetcher, mPositionUs + SKIP_US), mPositionUs + SKIP_US);
+            assertNull(prefetcher.take(SKIP_US));
+        } finally {
+            prefetcher.release();
+        }
+    }
+
+    @Test
+    public void decodesAtTheNextChapterMarks() throws InterruptedException {
+        Prefetcher prefetcher = start(3 * WINDOW_BYTES);
+        // The first mark is too close to the position to be worth it, the last is past the end
+        prefetcher.setChapterMarks(new long[] {7000000, 1000000, 3000000, 30000000});
+        try {
+            assertWindow(takeFilled(prefetcher, 3000000), 3000000);
+            assertWindow(takeFilled(prefetcher, 7000000), 7000000);
+            assertNull(prefetcher.take(1500000));
+        } finally {
+            prefetcher.release();
+        }
+    }
+
+    @Test
+    public void decodesOnlyWhatTheBudgetAllows() throws InterruptedException {
+        // Room for the window ahead and one chapter
+        Prefetcher prefetcher = start(2 * WINDOW_BYTES);
+        prefetcher.setChapterMarks(new long[] {3000000, 7000000});
+        try {
+            takeFilled(prefetcher, 3000000);
+            // The mark is still ahead, so it is decoded again before any later one
+            takeFilled(prefetcher, 3000000);
+            assertNull(prefetcher.take(8900000));
+            assertNull(prefetcher.take(7000000));
+        } finally {
+            prefetcher.release();
+        }
+
+        // Not even the window ahead fits
+        Prefetcher starved = start(WINDOW_BYTES - 1);
+        try {
+            Thread.sleep(300);
+            assertNull(starved.take(SKIP_US));
+        } finally {
+            starved.release();
+        }
+    }
+
+    @Test
+    public void stopsDecodingWhenReleased() throws InterruptedException {
+        // Slow enough that a window takes seconds, so release() comes while decoding
+        mDecoderLatencyUs = 20000;
+        Prefetcher prefetcher = start(2 * WINDOW_BYTES);
+        Thread.sleep(100);
+        prefetcher.release();
+        mThread.join(TIMEOUT_MS);
+        assertFalse(mThread.isAlive());
+        assertTrue(mDecoderReleased);
+        // The windows are dropped with the thread
+        assertNull(prefetcher.take(SKIP_US));
+        assertNull(prefetcher.take(SKIP_US + 100000));
+    }
+
+    @Test
+    public void windowIsReplayedByThePipeline() throws InterruptedException {
+        Prefetcher prefetcher = start(2 * WINDOW_BYTES);
+        PcmHistory window;
+        try {
+            window = takeFilled(prefetcher, SKIP_US);
+        } finally {
+            prefetcher.release();
+        }
+
+        // A pipeline for another format does not take the window
+        SonicPipelineTest.RecordingSink stereo = new SonicPipelineTest.RecordingSink();
+        assertFalse(createPipeline(stereo, 2).playPrefetched(window, SKIP_US));
+
+        SonicPipelineTest.RecordingSink sink = new SonicPipelineTest.RecordingSink();
+        SonicPipeline pipeline = createPipeline(sink, 1);
+        long positionUs = SKIP_US + 500000;
+        assertFalse(pipeline.playPrefetched(window, window.toTimeUs(window.getEndFrame())));
+        assertTrue(pipeline.playPrefetched(window, positionUs));
+        assertTrue(pipeline.isReplaying());
+        assertEquals(positionUs, pipeline.getReplayPositionUs(), 1000000 / SAMPLE_RATE);
+        // Decoding goes on where the window ends
+        assertEquals(window.toTimeUs(window.getEndFrame()), pipeline.takePendingSeekUs());
+        assertEquals(-1, pipeline.takePendingSeekUs());
+
+        while (pipeline.isReplaying()) {
+            pipeline.writeReplay(1024);
+        }
+        // Flushes what Sonic holds back
+        SonicPipelineTest.write(pipeline, new short[0],
+                window.toTimeUs(window.getEndFrame()), true);
+        long first = window.toFrame(positionUs);
+        assertEquals(window.getEndFrame() - first, sink.mFrames);
+        for (int i = 0; i < sink.mFrames; i++) {
+            assertEquals((short) (first + i), sink.mSamples[i]);
+        }
+    }
+
+    private Prefetcher start(long budgetBytes) {
+        Prefetcher prefetcher = new Prefetcher(new Prefetcher.Source() {
+            @Override
+            public Extractor openExtractor() throws IOException {
+                return WavExtractor.open(mFile.getPath());
+            }
+
+            @Override
+            public Decoder createDecoder(TrackFormat format) {
+                SimulatedDecoder decoder = new SimulatedDecoder(Clock.SYSTEM,
+                        2 * WavExtractor.UNIT_FRAMES, mDecoderLatencyUs, 0, 1) {
+                    @Override
+                    public void release() {
+                        mDecoderReleased = true;
+                        super.release();
+                    }
+                };
+                decoder.configure(format);
+                decoder.start();
+                return decoder;
+            }
+
+            @Override
+            public long getPositionUs() {
+                return mPositionUs;
+            }
+        }, Clock.SYSTEM, SKIP_US, WINDOW_US, budgetBytes);
+        mThread = new Thread(prefetcher, "Prefetcher");
+        mThread.start();
+        return prefetcher;
+    }
+
+    private static SonicPipeline createPipeline(final SonicPipelineTest.RecordingSink sink,
+                                                int channels) {
+        SonicPipeline pipeline = new SonicPipeline(new AudioSink.Factory() {
+            @Override
+            public AudioSink createSink(int sampleRate, int channels, boolean floatPcm) {
+                sink.mChannels = channels;
+                return sink;
+            }
+        }, Clock.SYSTEM);
+        pipeline.configure(SAMPLE_RATE, channels, false);
+        return pipeline;
+    }
+
+    // Waits until the window from startUs on holds its last frame, and takes it
+    private static PcmHistory takeFilled(Prefetcher prefetcher, long startUs)
+            throws InterruptedException {
+        long lastUs = (toFrame(startUs + WINDOW_US) - 1) * 1000000 / SAMPLE_RATE;
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        PcmHistory window;
+        while ((window = prefetcher.take(lastUs)) == null) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("No window holds " + lastUs + " us");
+            }
+            Thread.sleep(10);
+        }
+        return window;
+    }
+
+    // Asserts that the window holds exactly the frames the file has from startUs on
+    private static void assertWindow(PcmHistory window, long startUs) {
+        assertEquals(toFrame(startUs), window.getStartFrame());
+        assertEquals(toFrame(startUs + WINDOW_US), window.getEndFrame());
+        int frames = (int) (window.getEndFrame() - window.getStartFrame());
+        byte[] bytes = new byte[2 * frames];
+        assertEquals(frames, window.read(window.getStartFrame(), bytes, frames));
+        ByteBuffer samples = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < frames; i++) {
+            assertEquals((short) (window.getStartFrame() + i), samples.getShort());
+        }
+    }
+
+    private static long toFrame(long timeUs) {
+        return timeUs * SAMPLE_RATE / 1000000;
+    }
+
+    private static void writeWav(File file) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = out.getChannel();
+            WavHeader.write(channel, 1, SAMPLE_RATE, 2L * FRAMES);
+            ByteBuffer data = ByteBuffer.allocate(2 * FRAMES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < FRAMES; i++) {
+                data.putShort((short) i);
+            }
+            data.flip();
+            channel.write(data, channel.size());
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.antennapod.audio;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class SilenceMapTest {
+
+    // Silences from 1 s to 2 s, 5 s to 5.5 s and 9 s to 12 s
+    private final SilenceMap mMap = new SilenceMap(-50.0f, 500,
+            new int[] {1000, 2000, 5000, 5500, 9000, 12000});
+
+    @Test
+    public void indexOfFindsTheSilenceATimeLiesIn() {
+        assertEquals(-1, mMap.indexOf(0));
+        assertEquals(-1, mMap.indexOf(999999));
+        assertEquals(0, mMap.indexOf(1000000));
+        assertEquals(0, mMap.indexOf(1999999));
+        // The end belongs to the sound after the silence
+        assertEquals(-1, mMap.indexOf(2000000));
+        assertEquals(1, mMap.indexOf(5250000));
+        assertEquals(-1, mMap.indexOf(8000000));
+        assertEquals(2, mMap.indexOf(9000000));
+        assertEquals(2, mMap.indexOf(11999999));
+        assertEquals(-1, mMap.indexOf(12000000));
+        assertEquals(-1, mMap.indexOf(60000000));
+    }
+
+    @Test
+    public void indexOfInAnEmptyMap() {
+        assertEquals(-1, new SilenceMap(-50.0f, 500, new int[0]).indexOf(1000000));
+    }
+
+    @Test
+    public void timeSavedCountsSilencesAfterThePosition() {
+        assertEquals(4500000, mMap.getTimeSavedUs(0));
+        assertEquals(4500000, mMap.getTimeSavedUs(1000000));
+        // Halfway through the first silence
+        assertEquals(4000000, mMap.getTimeSavedUs(1500000));
+        assertEquals(3500000, mMap.getTimeSavedUs(2000000));
+        assertEquals(1000000, mMap.getTimeSavedUs(11000000));
+        assertEquals(0, mMap.getTimeSavedUs(12000000));
+        assertEquals(0, mMap.getTimeSavedUs(60000000));
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        File file = File.createTempFile("silence", ".silence");
+        try {
+            mMap.write(file);
+            SilenceMap read = SilenceMap.read(file);
+            assertEquals(mMap.getThresholdDb(), read.getThresholdDb(), 0.0f);
+            assertEquals(mMap.getMinSilenceMs(), read.getMinSilenceMs());
+            assertEquals(mMap.getSilenceCount(), read.getSilenceCount());
+            for (int i = 0; i < mMap.getSilenceCount(); i++) {
+                assertEquals(mMap.getStartUs(i), read.getStartUs(i));
+                assertEquals(mMap.getEndUs(i), read.getEndUs(i));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package org.antennapod.audio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SonicPipelineTest {
+
+    private static final int SAMPLE_RATE = 44100;
+
+    @Test
+    public void stagesMayShortenTheOutput() {
+        RecordingSink sink = new RecordingSink();
+        SonicPipeline pipeline = createPipeline(sink, 1);
+        pipeline.setAudioProcessors(new SilenceTrimmer());
+        short[] samples = new short[SAMPLE_RATE];
+        Random random = new Random(1);
+        for (int i = 0; i < samples.length / 2; i++) {
+            samples[i] = (short) (1000 + random.nextInt(8000));
+        }
+        write(pipeline, samples, 0, true);
+        assertEquals(samples.length / 2, sink.mFrames);
+    }
+
+    @Test
+    public void stagesMayGiveOutWhatTheyHeldBack() {
+        RecordingSink sink = new RecordingSink();
+        SonicPipeline pipeline = createPipeline(sink, 1);
+        pipeline.setAudioProcessors(new HoldBack(300), new HoldBack(200));
+        short[] samples = new short[4096];
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < samples.length; j++) {
+                samples[j] = (short) (i * samples.length + j);
+            }
+            write(pipeline, samples, i * 4096L * 1000000 / SAMPLE_RATE, false);
+        }
+        assertEquals(4 * samples.length, sink.mFrames);
+        for (int i = 0; i < sink.mFrames; i++) {
+            assertEquals(i, sink.mSamples[i]);
+        }
+    }
+
+    @Test
+    public void stagesAreFlushedOnTheWritingThread() throws InterruptedException {
+        RecordingSink sink = new RecordingSink();
+        final SonicPipeline pipeline = createPipeline(sink, 1);
+        FlushCounter counter = new FlushCounter();
+        pipeline.setAudioProcessors(counter);
+        Thread seeker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pipeline.flush();
+            }
+        });
+        seeker.start();
+        seeker.join();
+        assertEquals(0, counter.mFlushes);
+        write(pipeline, new short[1024], 0, false);
+        assertEquals(1, counter.mFlushes);
+        assertEquals(Thread.currentThread(), counter.mFlushThread);
+        write(pipeline, new short[1024], 0, false);
+        assertEquals(1, counter.mFlushes);
+    }
+
+    @Test
+    public void floatSamplesStayFloatUpToTheSink() {
+        RecordingSink sink = new RecordingSink();
+        SonicPipeline pipeline = createPipeline(sink, 1, true);
+        float[] samples = sine(4096, 1.5f);
+        write(pipeline, samples, 0, true);
+        assertTrue(sink.isFloatPcm());
+        assertEquals(samples.length, sink.mFrames);
+        for (int i = 0; i < samples.length; i++) {
+            assertEquals(samples[i], sink.mFloatSamples[i], 0.0f);
+        }
+    }
+
+    @Test
+    public void floatSamplesAreClippedForA16BitSink() {
+        RecordingSink sink = new RecordingSink();
+        sink.mCanPlayFloat = false;
+        SonicPipeline pipeline = createPipeline(sink, 1, true);
+        float[] samples = sine(4096, 1.5f);
+        write(pipeline, samples, 0, true);
+        assertFalse(sink.isFloatPcm());
+        assertEquals(samples.length, sink.mFrames);
+        for (int i = 0; i < samples.length; i++) {
+            float expected = Math.max(-1.0f, Math.min(32767.0f / 32768.0f, samples[i]));
+            assertEquals(expected, sink.mSamples[i] / 32768.0f, 1.0f / 32768.0f);
+        }
+    }
+
+    @Test
+    public void encoderDelayAndPaddingAreTrimmed() {
+        RecordingSink sink = new RecordingSink();
+        SonicPipeline pipeline = createPipeline(sink, 2);
+        pipeline.setGaplessInfo(new GaplessInfo(1105, 9000));
+        for (int i = 0; i < 3; i++) {
+            writeFrames(pipeline, 2, i * 4096, 4096, i == 2);
+        }
+        assertFrames(sink, 2, 1105, 9000 - 1105);
+    }
+
+    @Test
+    public void encoderDelayIsTrimmedWithoutPadding() {
+        RecordingSink sink = new RecordingSink();
+        SonicPipeline pipeline = createPipeline(sink, 1);
+        pipeline.setGaplessInfo(new GaplessInfo(5000, -1));
+        for (int i = 0; i < 3; i++) {
+            writeFrames(pipeline, 1, i * 4096, 4096, i == 2);
+        }
+        assertFrames(sink, 1, 5000, 3 * 4096 - 5000);
+    }
+
+    @Test
+    public void skippedSilenceIsDiscarded() {
+        RecordingSink sink = new RecordingSink();
+        SonicPipeline pipeline = createPipeline(sink, 2);
+        // A silence from 50 ms to 100 ms, frames 2205 to 4410
+        pipeline.setSilenceMap(new SilenceMap(-50.0f, 50, new int[] {50, 100}));
+        writeFrames(pipeline, 2, 0, 1024, false);
+        writeFrames(pipeline, 2, 1024, 1024, false);
+        // The extractor reached the buffer of frame 3072, which lies in the silence, and is
+        // seeked past it. The decoder still gives out the buffer it had before.
+        assertEquals(100000, pipeline.skipSilence(3072 * 1000000L / SAMPLE_RATE));
+        writeFrames(pipeline, 2, 2048, 1024, false);
+        writeFrames(pipeline, 2, 4410, 1024, true);
+        assertEquals(2205 + 1024, sink.mFrames);
+        assertFramesAt(sink, 2, 0, 0, 2205);
+        assertFramesAt(sink, 2, 2205, 4410, 1024);
+    }
+
+    @Test
+    public void silenceIsSkippedOnce() {
+        RecordingSink sink = new RecordingSink();
+        SonicPipeline pipeline = createPipeline(sink, 1);
+        pipeline.setSilenceMap(new SilenceMap(-50.0f, 50, new int[] {50, 100}));
+        assertEquals(100000, pipeline.skipSilence(60000));
+        assertEquals(-1, pipeline.skipSilence(60000));
+        pipeline.flush();
+        assertEquals(100000, pipeline.skipSilence(60000));
+    }
+
+    static SonicPipeline createPipeline(RecordingSink sink, int channels) {
+        return createPipeline(sink, channels, false);
+    }
+
+    static SonicPipeline createPipeline(final RecordingSink sink, int channels,
+                                        boolean floatInput) {
+        SonicPipeline pipeline = new SonicPipeline(new AudioSink.Factory() {
+            @Override
+            public AudioSink createSink(int sampleRate, int channels, boolean floatPcm) {
+                sink.mChannels = channels;
+                sink.mFloatPcm = floatPcm && sink.mCanPlayFloat;
+                return sink;
+            }
+        }, Clock.SYSTEM);
+        pipeline.configure(SAMPLE_RATE, channels, floatInput);
+        return pipeline;
+    }
+
+    static void write(SonicPipeline pipeline, short[] samples, long timeUs, boolean end) {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * samples.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asShortBuffer().put(samples);
+        Decoder.BufferInfo info = new Decoder.BufferInfo();
+        info.set(0, buffer.capacity(), timeUs, end ? Decoder.BUFFER_FLAG_END_OF_STREAM : 0);
+        pipeline.write(buffer, info);
+    }
+
+    static void write(SonicPipeline pipeline, float[] samples, long timeUs, boolean end) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * samples.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(samples);
+        Decoder.BufferInfo info = new Decoder.BufferInfo();
+        info.set(0, buffer.capacity(), timeUs, end ? Decoder.BUFFER_FLAG_END_OF_STREAM : 0);
+        pipeline.write(buffer, info);
+    }
+
+    // Writes frames first to first + count, each sample of which holds the position of its
+    // frame, negated in odd channels
+    static void writeFrames(SonicPipeline pipeline, int channels, int first, int count,
+                            boolean end) {
+        short[] samples = new short[count * channels];
+        for (int i = 0; i < samples.length; i++) {
+            int frame = first + i / channels;
+            samples[i] = (short) (i % channels == 0 ? frame : -frame);
+        }
+        write(pipeline, samples, first * 1000000L / SAMPLE_RATE, end);
+    }
+
+    // Asserts that the sink got frames first to first + count, as writeFrames() wrote them
+    static void assertFrames(RecordingSink sink, int channels, int first, int count) {
+        assertEquals(count, sink.mFrames);
+        assertFramesAt(sink, channels, 0, first, count);
+    }
+
+    // Asserts that the frames the sink got from position at on are first to first + count
+    static void assertFramesAt(RecordingSink sink, int channels, int at, int first, int count) {
+        for (int i = 0; i < count * channels; i++) {
+            int frame = first + i / channels;
+            assertEquals(i % channels == 0 ? frame : -frame, sink.mSamples[at * channels + i]);
+        }
+    }
+
+    private static float[] sine(int length, float amplitude) {
+        float[] samples = new float[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = amplitude * (float) Math.sin(2.0 * Math.PI * 440.0 * i / SAMPLE_RATE);
+        }
+        return samples;
+    }
+
+    // Keeps what is written, 16 bit samples in mSamples and floats in mFloatSamples
+    static class RecordingSink implements AudioSink {
+        int mChannels;
+        int mFrames;
+        boolean mCanPlayFloat = true;
+        boolean mFloatPcm;
+        short[] mSamples = new short[65536];
+        float[] mFloatSamples = new float[65536];
+        private int mLength;
+
+        @Override
+        public int write(byte[] data, int offset, int size) {
+            short[] samples = new short[size / 2];
+            ByteBuffer.wrap(data, offset, size).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer()
+                    .get(samples);
+            write(samples, 0, samples.length);
+            return size;
+        }
+
+        @Override
+        public int write(short[] data, int offset, int size) {
+            if (mLength + size > mSamples.length) {
+                mSamples = Arrays.copyOf(mSamples, Math.max(2 * mSamples.length, mLength + size));
+            }
+            System.arraycopy(data, offset, mSamples, mLength, size);
+            mLength += size;
+            mFrames = mLength / mChannels;
+            return size;
+        }
+
+        @Override
+        public int write(float[] data, int offset, int size) {
+            if (mLength + size > mFloatSamples.length) {
+                mFloatSamples = Arrays.copyOf(mFloatSamples,
+                        Math.max(2 * mFloatSamples.length, mLength + size));
+            }
+            System.arraycopy(data, offset, mFloatSamples, mLength, size);
+            mLength += size;
+            mFrames = mLength / mChannels;
+            return size;
+        }
+
+        @Override
+        public boolean isFloatPcm() {
+            return mFloatPcm;
+        }
+
+        @Override
+        public void play() {
+        }
+
+        @Override
+        public void pause() {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void release() {
+        }
+
+        @Override
+        public int getPlaybackHeadPosition() {
+            return 0;
+        }
+
+        @Override
+        public int getAudioSessionId() {
+            return 0;
+        }
+
+        @Override
+        public void setVolume(float leftVolume, float rightVolume) {
+        }
+
+        @Override
+        public int getSampleRate() {
+            return SAMPLE_RATE;
+        }
+
+        @Override
+        public int getChannelCount() {
+            return mChannels;
+        }
+
+        @Override
+        public int getUnderrunCount() {
+            return -1;
+        }
+    }
+
+    // Base for the stages below, which only handle mono 16 bit samples
+    private abstract static class MonoStage implements AudioProcessor {
+
+        @Override
+        public void configure(int sampleRate, int channels) {
+        }
+
+        @Override
+        public void process(FloatBuffer samples) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public int getLatencyFrames() {
+            return 0;
+        }
+    }
+
+    // Drops every frame that is exactly silent
+    private static class SilenceTrimmer extends MonoStage {
+
+        @Override
+        public void process(ShortBuffer samples) {
+            int out = samples.position();
+            for (int i = samples.position(); i < samples.limit(); i++) {
+                short sample = samples.get(i);
+                if (sample != 0) {
+                    samples.put(out++, sample);
+                }
+            }
+            samples.limit(out);
+        }
+    }
+
+    // Holds the last frames of every other buffer back, and gives them out with the next
+    private static class HoldBack extends MonoStage {
+        private final short[] mHeld;
+        private boolean mHolding;
+
+        HoldBack(int frames) {
+            mHeld = new short[frames];
+        }
+
+        @Override
+        public void process(ShortBuffer samples) {
+            int start = samples.position();
+            int length = samples.remaining();
+            mHolding = !mHolding;
+            if (mHolding) {
+                samples.position(start + length - mHeld.length);
+                samples.get(mHeld);
+                samples.position(start);
+                samples.limit(start + length - mHeld.length);
+                return;
+            }
+            short[] input = new short[length];
+            samples.get(input);
+            samples.clear();
+            samples.position(start);
+            samples.put(mHeld);
+            samples.put(input);
+            samples.flip();
+            samples.position(start);
+        }
+
+        @Override
+        public int getLatencyFrames() {
+            return mHeld.length;
+        }
+    }
+
+    private static class FlushCounter extends MonoStage {
+        int mFlushes;
+        Thread mFlushThread;
+
+        @Override
+        public void process(ShortBuffer samples) {
+        }
+
+        @Override
+        public void flush() {
+            mFlushes++;
+            mFlushThread = Thread.currentThread();
+        }
+    }
+}
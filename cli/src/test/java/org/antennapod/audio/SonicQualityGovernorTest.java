@@ -0,0 +1,61 @@
+package org.antennapod.audio;
+
+import org.junit.Test;
+import org.vinuxproject.sonic.Sonic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SonicQualityGovernorTest {
+
+    private static final int SAMPLE_RATE = 44100;
+
+    @Test
+    public void fasterSpeedLowersQualityAtOnce() {
+        SonicQualityGovernor governor = new SonicQualityGovernor(Sonic.QUALITY_FULL);
+        for (int i = 0; i < 20; i++) {
+            assertFalse(measure(governor, 0.2f, 1.0f));
+        }
+        assertTrue(governor.update(0, 0, SAMPLE_RATE, 3.0f));
+        assertEquals(Sonic.QUALITY_DOWNSAMPLED, governor.getQuality());
+    }
+
+    @Test
+    public void fasterSpeedWithHeadroomKeepsQuality() {
+        SonicQualityGovernor governor = new SonicQualityGovernor(Sonic.QUALITY_FULL);
+        for (int i = 0; i < 20; i++) {
+            measure(governor, 0.1f, 1.0f);
+        }
+        assertFalse(governor.update(0, 0, SAMPLE_RATE, 3.0f));
+        assertEquals(Sonic.QUALITY_FULL, governor.getQuality());
+    }
+
+    @Test
+    public void fasterSpeedLeavesTierNotMeasuredYet() {
+        SonicQualityGovernor governor = new SonicQualityGovernor(Sonic.QUALITY_DOWNSAMPLED);
+        boolean raised = false;
+        for (int i = 0; i < 20 && !raised; i++) {
+            raised = measure(governor, 0.05f, 1.0f);
+        }
+        assertTrue(raised);
+        assertEquals(Sonic.QUALITY_FULL, governor.getQuality());
+        assertTrue(governor.update(0, 0, SAMPLE_RATE, 2.0f));
+        assertEquals(Sonic.QUALITY_DOWNSAMPLED, governor.getQuality());
+    }
+
+    @Test
+    public void slowerSpeedKeepsQuality() {
+        SonicQualityGovernor governor = new SonicQualityGovernor(Sonic.QUALITY_DOWNSAMPLED);
+        for (int i = 0; i < 20; i++) {
+            measure(governor, 0.2f, 3.0f);
+        }
+        assertFalse(governor.update(0, 0, SAMPLE_RATE, 1.0f));
+        assertEquals(Sonic.QUALITY_DOWNSAMPLED, governor.getQuality());
+    }
+
+    // Reports a quarter of a second of output that took Sonic load of its duration
+    private static boolean measure(SonicQualityGovernor governor, float load, float speed) {
+        return governor.update((long) (load * 250000000L), SAMPLE_RATE / 4, SAMPLE_RATE, speed);
+    }
+}
@@ -0,0 +1,215 @@
+package org.antennapod.audio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class SonicRendererTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final double FREQUENCY = 440.0;
+    // Two seconds of input
+    private static final int FRAMES = 2 * SAMPLE_RATE;
+    // Sonic trims or adds up to a pitch period at the ends, 20 ms covers the lowest pitch
+    private static final int TOLERANCE = SAMPLE_RATE / 50;
+
+    private File mInput;
+    private File mOutput;
+
+    @Before
+    public void setUp() throws IOException {
+        mInput = File.createTempFile("input", ".wav");
+        mOutput = File.createTempFile("output", ".wav");
+    }
+
+    @After
+    public void tearDown() {
+        mInput.delete();
+        mOutput.delete();
+    }
+
+    @Test
+    public void rendersAtTwiceTheSpeed() throws IOException {
+        writeWav(mInput, 2);
+        SonicRenderer renderer = new SonicRenderer();
+        renderer.setSpeed(2.0f);
+        SonicRenderer.Result result = renderer.render(mInput, mOutput);
+
+        assertEquals(FRAMES, result.getInputFrames());
+        assertEquals(2000, result.getInputDurationMs());
+        assertEquals(FRAMES / 2, result.getOutputFrames(), TOLERANCE);
+        assertEquals(1000, result.getOutputDurationMs(), 1000 * TOLERANCE / SAMPLE_RATE);
+
+        WavHeader header = readHeader(mOutput);
+        assertEquals(WavHeader.FORMAT_PCM, header.getFormat());
+        assertEquals(2, header.getChannels());
+        assertEquals(SAMPLE_RATE, header.getSampleRate());
+        assertEquals(16, header.getBitsPerSample());
+        assertEquals(WavHeader.CANONICAL_LENGTH, header.getDataOffset());
+        assertEquals(result.getOutputFrames(), header.getFrameCount());
+        assertEquals(WavHeader.CANONICAL_LENGTH + header.getDataLength(), mOutput.length());
+        // Sped up, not resampled, so the tone keeps its pitch
+        assertEquals(FREQUENCY, frequencyOf(mOutput, header, 0), FREQUENCY / 50);
+        assertEquals(FREQUENCY, frequencyOf(mOutput, header, 1), FREQUENCY / 50);
+    }
+
+    @Test
+    public void rendersOnlyTheRange() throws IOException {
+        writeWav(mInput, 1);
+        SonicRenderer renderer = new SonicRenderer();
+        renderer.setRange(500, 1250);
+        SonicRenderer.Result result = renderer.render(mInput, mOutput);
+        assertEquals(SAMPLE_RATE * 3 / 4, result.getInputFrames());
+        assertEquals(SAMPLE_RATE * 3 / 4, result.getOutputFrames(), TOLERANCE);
+        assertEquals(result.getOutputFrames(), readHeader(mOutput).getFrameCount());
+
+        // A range past the end renders nothing, and still leaves a valid file
+        renderer.setRange(5000, -1);
+        result = renderer.render(mInput, mOutput);
+        assertEquals(0, result.getInputFrames());
+        assertEquals(0, result.getOutputFrames());
+        assertEquals(0, readHeader(mOutput).getDataLength());
+    }
+
+    @Test
+    public void mixesFloatInputDown() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(8 * FRAMES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < FRAMES; i++) {
+            float sample = (float) (0.25 * Math.sin(2.0 * Math.PI * FREQUENCY * i / SAMPLE_RATE));
+            data.putFloat(sample);
+            data.putFloat(sample);
+        }
+        write(mInput, WavHeaderTest.riff(WavHeaderTest.fmt(WavHeader.FORMAT_IEEE_FLOAT, 2,
+                SAMPLE_RATE, 32), WavHeaderTest.chunk("data", data.array())));
+        SonicRenderer renderer = new SonicRenderer();
+        renderer.setDownMix(true);
+        renderer.setSpeed(2.0f);
+        SonicRenderer.Result result = renderer.render(mInput, mOutput);
+        WavHeader header = readHeader(mOutput);
+        assertEquals(1, header.getChannels());
+        assertEquals(16, header.getBitsPerSample());
+        assertEquals(result.getOutputFrames(), header.getFrameCount());
+        assertEquals(FRAMES / 2, header.getFrameCount(), TOLERANCE);
+        assertEquals(FREQUENCY, frequencyOf(mOutput, header, 0), FREQUENCY / 50);
+    }
+
+    @Test
+    public void rendersRawInput() throws IOException {
+        writeWav(mInput, 1);
+        File raw = File.createTempFile("input", ".pcm");
+        try {
+            // The same samples without their header
+            RandomAccessFile in = new RandomAccessFile(mInput, "r");
+            byte[] samples = new byte[2 * FRAMES];
+            try {
+                in.seek(WavHeader.CANONICAL_LENGTH);
+                in.readFully(samples);
+            } finally {
+                in.close();
+            }
+            write(raw, samples);
+            SonicRenderer renderer = new SonicRenderer();
+            renderer.setRawInput(SAMPLE_RATE, 1);
+            renderer.setSpeed(2.0f);
+            SonicRenderer.Result result = renderer.render(raw, mOutput);
+            assertEquals(FRAMES, result.getInputFrames());
+            assertEquals(result.getOutputFrames(), readHeader(mOutput).getFrameCount());
+            assertEquals(FRAMES / 2, result.getOutputFrames(), TOLERANCE);
+        } finally {
+            raw.delete();
+        }
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        write(mInput, new byte[1000]);
+        try {
+            new SonicRenderer().render(mInput, mOutput);
+            fail("Rendered a file that is no WAVE file");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    // Writes a 440 Hz tone of FRAMES frames, the same in every channel
+    private static void writeWav(File file, int channels) throws IOException {
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = out.getChannel();
+            WavHeader.write(channel, channels, SAMPLE_RATE, 2L * channels * FRAMES);
+            ByteBuffer data = ByteBuffer.allocate(2 * channels * FRAMES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < FRAMES; i++) {
+                short sample = (short) (8000 * Math.sin(2.0 * Math.PI * FREQUENCY * i / SAMPLE_RATE));
+                for (int c = 0; c < channels; c++) {
+                    data.putShort(sample);
+                }
+            }
+            data.flip();
+            channel.write(data, channel.size());
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static WavHeader readHeader(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            WavHeader header = WavHeader.read(in.getChannel());
+            assertNotNull(header);
+            return header;
+        } finally {
+            in.close();
+        }
+    }
+
+    // Estimates the frequency of a channel of a 16 bit file from its rising zero crossings
+    private static double frequencyOf(File file, WavHeader header, int channel) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            ByteBuffer data = ByteBuffer.allocate((int) header.getDataLength()).order(ByteOrder.LITTLE_ENDIAN);
+            in.getChannel().read(data, header.getDataOffset());
+            data.flip();
+            int channels = header.getChannels();
+            int first = -1;
+            int last = -1;
+            int crossings = 0;
+            short previous = data.getShort(2 * channel);
+            for (int frame = 1; frame < header.getFrameCount(); frame++) {
+                short sample = data.getShort(2 * (frame * channels + channel));
+                if (previous < 0 && sample >= 0) {
+                    if (first < 0) {
+                        first = frame;
+                    } else {
+                        crossings++;
+                    }
+                    last = frame;
+                }
+                previous = sample;
+            }
+            return crossings * (double) header.getSampleRate() / (last - first);
+        } finally {
+            in.close();
+        }
+    }
+}
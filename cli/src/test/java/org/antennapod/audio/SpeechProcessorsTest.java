@@ -0,0 +1,122 @@
+package org.antennapod.audio;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SpeechProcessorsTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final int CHANNELS = 2;
+
+    @Test
+    public void directBuffersMatchHeapBuffers() {
+        short[] noise = noise(4096 * CHANNELS);
+        for (int i = 0; i < 2; i++) {
+            ShortBuffer heap = ShortBuffer.wrap(noise.clone());
+            ShortBuffer direct = ByteBuffer.allocateDirect(2 * noise.length)
+                    .order(ByteOrder.nativeOrder()).asShortBuffer();
+            direct.put(noise).flip();
+            process(i, heap);
+            process(i, direct);
+            short[] fromDirect = new short[noise.length];
+            direct.get(fromDirect);
+            assertArrayEquals(heap.array(), fromDirect);
+        }
+    }
+
+    @Test
+    public void slicesOnlyChangeTheirOwnSamples() {
+        short[] noise = noise(4096 * CHANNELS);
+        for (int i = 0; i < 2; i++) {
+            short[] whole = noise.clone();
+            ShortBuffer buffer = ShortBuffer.wrap(whole);
+            buffer.position(1024 * CHANNELS);
+            buffer.limit(3072 * CHANNELS);
+            ShortBuffer slice = buffer.slice();
+            short[] expected = new short[2048 * CHANNELS];
+            System.arraycopy(noise, 1024 * CHANNELS, expected, 0, expected.length);
+            ShortBuffer alone = ShortBuffer.wrap(expected);
+            process(i, slice);
+            process(i, alone);
+            short[] inside = new short[expected.length];
+            System.arraycopy(whole, 1024 * CHANNELS, inside, 0, inside.length);
+            assertArrayEquals(expected, inside);
+            for (int j = 0; j < 1024 * CHANNELS; j++) {
+                if (whole[j] != noise[j] || whole[whole.length - 1 - j] != noise[noise.length - 1 - j]) {
+                    throw new AssertionError("Sample " + j + " outside the slice changed");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void floatSamplesMatchShortSamples() {
+        // Quiet enough that neither path clips
+        short[] noise = noise(4096 * CHANNELS);
+        for (int j = 0; j < noise.length; j++) {
+            noise[j] /= 4;
+        }
+        for (int i = 0; i < 3; i++) {
+            float[] floats = new float[noise.length];
+            for (int j = 0; j < noise.length; j++) {
+                floats[j] = noise[j] / 32768.0f;
+            }
+            ShortBuffer shorts = ShortBuffer.wrap(noise.clone());
+            FloatBuffer direct = ByteBuffer.allocateDirect(4 * noise.length)
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+            direct.put(floats).flip();
+            process(i, shorts);
+            process(i, direct);
+            for (int j = 0; j < noise.length; j++) {
+                // The 16 bit path rounds towards zero after every stage, and the compressor
+                // raises what the equalizer rounded off by its makeup gain
+                assertEquals(shorts.get(j), direct.get(j) * 32768.0f, 3.0f);
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void compressorNeedsConfiguring() {
+        new SpeechCompressor().process(ShortBuffer.wrap(noise(64)));
+    }
+
+    private static void process(int index, ShortBuffer samples) {
+        AudioProcessor processor = createProcessor(index);
+        processor.configure(SAMPLE_RATE, CHANNELS);
+        processor.process(samples);
+    }
+
+    private static void process(int index, FloatBuffer samples) {
+        AudioProcessor processor = createProcessor(index);
+        processor.configure(SAMPLE_RATE, CHANNELS);
+        processor.process(samples);
+    }
+
+    private static AudioProcessor createProcessor(int index) {
+        switch (index) {
+            case 0:
+                return new SpeechCompressor();
+            case 1:
+                return new SpeechEqualizer();
+            default:
+                return new AudioProcessorChain(new SpeechEqualizer(), new SpeechCompressor());
+        }
+    }
+
+    private static short[] noise(int length) {
+        Random random = new Random(1);
+        short[] samples = new short[length];
+        for (int i = 0; i < length; i++) {
+            samples[i] = (short) (random.nextGaussian() * 8000);
+        }
+        return samples;
+    }
+}
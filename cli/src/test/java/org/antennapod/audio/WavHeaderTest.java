@@ -0,0 +1,249 @@
+package org.antennapod.audio;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class WavHeaderTest {
+
+    private static final int FORMAT_ADPCM = 2;
+    private static final int FORMAT_MPEG_LAYER_3 = 0x55;
+
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        File file = File.createTempFile("header", ".wav");
+        try {
+            RandomAccessFile out = new RandomAccessFile(file, "rw");
+            try {
+                WavHeader.write(out.getChannel(), 2, 44100, 4000);
+                out.setLength(WavHeader.CANONICAL_LENGTH + 4000);
+                WavHeader header = WavHeader.read(out.getChannel());
+                assertEquals(WavHeader.FORMAT_PCM, header.getFormat());
+                assertEquals(2, header.getChannels());
+                assertEquals(44100, header.getSampleRate());
+                assertEquals(16, header.getBitsPerSample());
+                assertEquals(WavHeader.CANONICAL_LENGTH, header.getDataOffset());
+                assertEquals(4000, header.getDataLength());
+                assertEquals(1000, header.getFrameCount());
+            } finally {
+                out.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void skipsChunksBeforeTheData() throws IOException {
+        byte[] list = chunk("LIST", ascii("INFOISFT\u0005\0\0\0Lavf"));
+        WavHeader header = read(riff(chunk("JUNK", new byte[28]), fmt(WavHeader.FORMAT_PCM, 1,
+                8000, 16), list, chunk("fact", new byte[4]), chunk("data", new byte[100])));
+        assertEquals(8000, header.getSampleRate());
+        assertEquals(12 + 36 + 24 + list.length + 12 + 8, header.getDataOffset());
+        assertEquals(100, header.getDataLength());
+    }
+
+    @Test
+    public void skipsThePaddingOfOddSizedChunks() throws IOException {
+        // Three bytes of content and a padding byte
+        byte[] odd = chunk("note", new byte[] {1, 2, 3});
+        assertEquals(8 + 4, odd.length);
+        WavHeader header = read(riff(fmt(WavHeader.FORMAT_PCM, 2, 44100, 16), odd,
+                chunk("data", new byte[400])));
+        assertEquals(12 + 24 + 12 + 8, header.getDataOffset());
+        assertEquals(400, header.getDataLength());
+    }
+
+    @Test
+    public void readsExtensibleFormats() throws IOException {
+        WavHeader pcm = read(riff(extensible(WavHeader.FORMAT_PCM, 6, 48000, 24),
+                chunk("data", new byte[18 * 10])));
+        assertEquals(WavHeader.FORMAT_PCM, pcm.getFormat());
+        assertEquals(6, pcm.getChannels());
+        assertEquals(24, pcm.getBitsPerSample());
+        assertEquals(10, pcm.getFrameCount());
+
+        WavHeader ieeeFloat = read(riff(extensible(WavHeader.FORMAT_IEEE_FLOAT, 2, 48000, 32),
+                chunk("data", new byte[8 * 10])));
+        assertEquals(WavHeader.FORMAT_IEEE_FLOAT, ieeeFloat.getFormat());
+        assertEquals(10, ieeeFloat.getFrameCount());
+    }
+
+    @Test
+    public void convertsFloatSamples() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        data.putFloat(0.5f).putFloat(-0.25f).putFloat(1.5f).putFloat(-1.0f);
+        WavHeader header = read(riff(fmt(WavHeader.FORMAT_IEEE_FLOAT, 2, 44100, 32),
+                chunk("data", data.array())));
+        assertEquals(32, header.getBitsPerSample());
+        assertEquals(2, header.getFrameCount());
+        float[] samples = new float[4];
+        data.clear();
+        assertEquals(2, header.toFloat(data, samples, 10));
+        // Float samples are passed on as they are, even out of range ones
+        assertEquals(0.5f, samples[0], 0.0f);
+        assertEquals(-0.25f, samples[1], 0.0f);
+        assertEquals(1.5f, samples[2], 0.0f);
+        assertEquals(-1.0f, samples[3], 0.0f);
+    }
+
+    @Test
+    public void convertsIntegerSamples() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(6).order(ByteOrder.LITTLE_ENDIAN);
+        // 0x400000 and -0x800000 as 24 bit samples
+        data.put(new byte[] {0, 0, 0x40, 0, 0, (byte) 0x80});
+        WavHeader header = read(riff(fmt(WavHeader.FORMAT_PCM, 1, 44100, 24),
+                chunk("data", data.array())));
+        float[] samples = new float[2];
+        data.clear();
+        assertEquals(2, header.toFloat(data, samples, 2));
+        assertEquals(0.5f, samples[0], 0.0f);
+        assertEquals(-1.0f, samples[1], 0.0f);
+    }
+
+    @Test
+    public void rejectsCompressedFormats() throws IOException {
+        assertUnsupported(riff(fmt(FORMAT_ADPCM, 1, 8000, 4), chunk("data", new byte[100])));
+        assertUnsupported(riff(fmt(FORMAT_MPEG_LAYER_3, 2, 44100, 0),
+                chunk("data", new byte[100])));
+        assertUnsupported(riff(extensible(FORMAT_ADPCM, 2, 44100, 4),
+                chunk("data", new byte[100])));
+        // Double precision floats and 12 bit integers are no formats Sonic is given
+        assertUnsupported(riff(fmt(WavHeader.FORMAT_IEEE_FLOAT, 1, 44100, 64),
+                chunk("data", new byte[100])));
+        assertUnsupported(riff(fmt(WavHeader.FORMAT_PCM, 1, 44100, 12),
+                chunk("data", new byte[100])));
+    }
+
+    @Test
+    public void rejectsBrokenFiles() throws IOException {
+        assertUnsupported(riff(chunk("data", new byte[100]), fmt(WavHeader.FORMAT_PCM, 1, 8000,
+                16)));
+        assertUnsupported(riff(fmt(WavHeader.FORMAT_PCM, 1, 8000, 16)));
+        assertUnsupported(riff(chunk("fmt ", new byte[8])));
+        assertUnsupported(riff(fmt(WavHeader.FORMAT_PCM, 0, 8000, 16),
+                chunk("data", new byte[100])));
+    }
+
+    @Test
+    public void otherFilesAreNoWaveFiles() throws IOException {
+        assertNull(read(new byte[0]));
+        assertNull(read(ascii("RIFF")));
+        assertNull(read(concat(ascii("RIFX"), new byte[4], ascii("WAVE"))));
+        assertNull(read(concat(ascii("RIFF"), new byte[4], ascii("AVI "))));
+    }
+
+    @Test
+    public void cutsTheDataOfUnfinishedRecordings() throws IOException {
+        byte[] data = chunk("data", new byte[101]);
+        // The recorder never wrote the length
+        ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).putInt(4, 0);
+        WavHeader header = read(riff(fmt(WavHeader.FORMAT_PCM, 2, 8000, 16), data));
+        // To whole frames, without the padding byte
+        assertEquals(100, header.getDataLength());
+
+        data = chunk("data", new byte[100]);
+        ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).putInt(4, 0x7FFFFFF0);
+        header = read(riff(fmt(WavHeader.FORMAT_PCM, 2, 8000, 16), data));
+        assertEquals(100, header.getDataLength());
+    }
+
+    private static void assertUnsupported(byte[] file) {
+        try {
+            read(file);
+            fail("Read an unsupported file");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    static byte[] riff(byte[]... chunks) {
+        byte[] body = concat(chunks);
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(ascii("RIFF"));
+        header.putInt(4 + body.length);
+        header.put(ascii("WAVE"));
+        return concat(header.array(), body);
+    }
+
+    static byte[] chunk(String id, byte[] content) {
+        ByteBuffer chunk = ByteBuffer.allocate(8 + content.length + (content.length & 1))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        chunk.put(ascii(id));
+        chunk.putInt(content.length);
+        chunk.put(content);
+        return chunk.array();
+    }
+
+    static byte[] fmt(int format, int channels, int sampleRate, int bits) {
+        return chunk("fmt ", formatFields(16, format, channels, sampleRate, bits).array());
+    }
+
+    // A WAVE_FORMAT_EXTENSIBLE format chunk for the given sub format
+    private static byte[] extensible(int subFormat, int channels, int sampleRate, int bits) {
+        ByteBuffer fields = formatFields(40, 0xFFFE, channels, sampleRate, bits);
+        fields.putShort((short) 22);
+        fields.putShort((short) bits);
+        // Channel mask, then the GUID, which starts with the sub format
+        fields.putInt(channels == 6 ? 0x3F : 0x3);
+        fields.putShort((short) subFormat);
+        fields.put(new byte[] {0, 0, 0, 0, 0x10, 0, (byte) 0x80, 0, 0, (byte) 0xAA, 0, 0x38,
+                (byte) 0x9B, 0x71});
+        return chunk("fmt ", fields.array());
+    }
+
+    private static ByteBuffer formatFields(int length, int format, int channels,
+                                           int sampleRate, int bits) {
+        ByteBuffer fields = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        fields.putShort((short) format);
+        fields.putShort((short) channels);
+        fields.putInt(sampleRate);
+        fields.putInt(sampleRate * channels * bits / 8);
+        fields.putShort((short) (channels * bits / 8));
+        fields.putShort((short) bits);
+        return fields;
+    }
+
+    static byte[] ascii(String value) {
+        return value.getBytes(Charset.forName("ISO-8859-1"));
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static WavHeader read(byte[] content) throws IOException {
+        File file = File.createTempFile("header", ".wav");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                return WavHeader.read(in.getChannel());
+            } finally {
+                in.close();
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
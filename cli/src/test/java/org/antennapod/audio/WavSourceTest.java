@@ -0,0 +1,156 @@
+package org.antennapod.audio;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class WavSourceTest {
+
+    // 20 us per frame, so every frame has a time of its own
+    private static final int SAMPLE_RATE = 50000;
+    // 24 bit stereo, so a 1 MiB window is no whole number of frames
+    private static final int FRAME_SIZE = 6;
+    private static final int WINDOW_FRAMES = (1 << 20) / FRAME_SIZE;
+    // Three windows and a bit
+    private static final int FRAMES = 3 * WINDOW_FRAMES + 1234;
+
+    private File mFile;
+    private WavSource mSource;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("source", ".wav");
+        writeWav(mFile, FRAMES);
+        mSource = WavSource.open(mFile.getPath());
+    }
+
+    @After
+    public void tearDown() {
+        mSource.release();
+        mFile.delete();
+    }
+
+    @Test
+    public void readsAllFramesThroughTheWindows() throws IOException {
+        int frame = 0;
+        int shortReads = 0;
+        ByteBuffer chunk;
+        while ((chunk = mSource.read(1000)) != null) {
+            int frames = chunk.remaining() / FRAME_SIZE;
+            assertEquals(0, chunk.remaining() % FRAME_SIZE);
+            if (frames < 1000 && frame + frames < FRAMES) {
+                // A read stops at the end of a window, and the next one starts a new window
+                assertEquals(0, (frame + frames) % WINDOW_FRAMES);
+                shortReads++;
+            }
+            assertFrames(chunk, frame);
+            frame += frames;
+        }
+        assertEquals(FRAMES, frame);
+        assertEquals(3, shortReads);
+        assertNull(mSource.read(1000));
+    }
+
+    @Test
+    public void readsAcrossTheWindowAfterASeek() throws IOException {
+        mSource.seekTo(timeOf(WINDOW_FRAMES - 10));
+        assertEquals(timeOf(WINDOW_FRAMES - 10), mSource.getSampleTime());
+        // The window starts at the seek position, so this read does not reach its end
+        ByteBuffer chunk = mSource.read(100);
+        assertEquals(100 * FRAME_SIZE, chunk.remaining());
+        assertFrames(chunk, WINDOW_FRAMES - 10);
+
+        mSource.seekTo(0);
+        assertFrames(mSource.read(100), 0);
+        // Within the window mapped from the start, so the read stops at its end
+        mSource.seekTo(timeOf(WINDOW_FRAMES - 10));
+        chunk = mSource.read(100);
+        assertEquals(10 * FRAME_SIZE, chunk.remaining());
+        assertFrames(chunk, WINDOW_FRAMES - 10);
+        assertEquals(timeOf(WINDOW_FRAMES), mSource.getSampleTime());
+        chunk = mSource.read(100);
+        assertEquals(100 * FRAME_SIZE, chunk.remaining());
+        assertFrames(chunk, WINDOW_FRAMES);
+    }
+
+    @Test
+    public void seeksBackBeforeTheMappedWindow() throws IOException {
+        mSource.seekTo(timeOf(2 * WINDOW_FRAMES + 5));
+        assertFrames(mSource.read(100), 2 * WINDOW_FRAMES + 5);
+        mSource.seekTo(timeOf(WINDOW_FRAMES + 7));
+        assertFrames(mSource.read(100), WINDOW_FRAMES + 7);
+        mSource.seekTo(timeOf(3));
+        assertFrames(mSource.read(100), 3);
+    }
+
+    @Test
+    public void seeksAreClampedToTheData() throws IOException {
+        mSource.seekTo(-1000);
+        assertEquals(0, mSource.getSampleTime());
+        assertFrames(mSource.read(1), 0);
+        mSource.seekTo(timeOf(FRAMES - 2));
+        ByteBuffer chunk = mSource.read(100);
+        assertEquals(2 * FRAME_SIZE, chunk.remaining());
+        assertFrames(chunk, FRAMES - 2);
+        assertNull(mSource.read(100));
+        mSource.seekTo(timeOf(FRAMES + 1000));
+        assertEquals(timeOf(FRAMES), mSource.getSampleTime());
+        assertNull(mSource.read(100));
+    }
+
+    private static long timeOf(int frame) {
+        return frame * 1000000L / SAMPLE_RATE;
+    }
+
+    // Checks that each frame holds its index on the left and the negated index on the right
+    private static void assertFrames(ByteBuffer chunk, int first) {
+        chunk = chunk.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        for (int frame = first; chunk.hasRemaining(); frame++) {
+            assertEquals("frame " + frame, frame, readInt24(chunk));
+            assertEquals("frame " + frame, -frame, readInt24(chunk));
+        }
+    }
+
+    private static int readInt24(ByteBuffer buffer) {
+        int low = buffer.get() & 0xFF;
+        int middle = buffer.get() & 0xFF;
+        return buffer.get() << 16 | middle << 8 | low;
+    }
+
+    private static void writeWav(File file, int frames) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(FRAME_SIZE * frames).order(ByteOrder.LITTLE_ENDIAN);
+        for (int frame = 0; frame < frames; frame++) {
+            putInt24(data, frame);
+            putInt24(data, -frame);
+        }
+        data.flip();
+        byte[] header = WavHeaderTest.riff(WavHeaderTest.fmt(WavHeader.FORMAT_PCM, 2, SAMPLE_RATE,
+                24), WavHeaderTest.chunk("data", new byte[0]));
+        ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).putInt(header.length - 4,
+                data.remaining());
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = out.getChannel();
+            channel.write(ByteBuffer.wrap(header));
+            channel.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void putInt24(ByteBuffer buffer, int value) {
+        buffer.put((byte) value);
+        buffer.put((byte) (value >> 8));
+        buffer.put((byte) (value >> 16));
+    }
+}
@@ -0,0 +1,89 @@
+package org.antennapod.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class WaveformPeaksTest {
+
+    // A peak is exactly 16 ms, so columns can start and end where peaks do
+    private static final int SAMPLE_RATE = 32000;
+    private static final int FRAMES_PER_PEAK = 512;
+    // 4096 peaks give levels of 4096, 2048 and 1024 peaks
+    private static final int PEAKS = 4096;
+    // The only peak that is not silent
+    private static final int LOUD_PEAK = 3000;
+
+    private final WaveformPeaks mPeaks = createPeaks();
+
+    @Test
+    public void hasLevelsDownToAboutAThousandPeaks() {
+        assertEquals(3, mPeaks.getLevelCount());
+        assertEquals(PEAKS, mPeaks.getPeakCount(0));
+        assertEquals(PEAKS / 2, mPeaks.getPeakCount(1));
+        assertEquals(PEAKS / 4, mPeaks.getPeakCount(2));
+    }
+
+    @Test
+    public void levelIsTheCoarsestWithAPeakPerColumn() {
+        assertEquals(0, mPeaks.getLevel(1));
+        assertEquals(0, mPeaks.getLevel(2 * FRAMES_PER_PEAK - 1));
+        assertEquals(1, mPeaks.getLevel(2 * FRAMES_PER_PEAK));
+        assertEquals(1, mPeaks.getLevel(4 * FRAMES_PER_PEAK - 1));
+        assertEquals(2, mPeaks.getLevel(4 * FRAMES_PER_PEAK));
+        // There is no coarser level
+        assertEquals(2, mPeaks.getLevel(1000 * FRAMES_PER_PEAK));
+    }
+
+    @Test
+    public void zoomedOutPeaksShowTheLoudPeakInItsColumn() {
+        float[] mins = new float[100];
+        float[] maxs = new float[100];
+        mPeaks.getPeaks(0, mPeaks.getDurationUs(), mins, maxs);
+        int column = (int) ((long) LOUD_PEAK * FRAMES_PER_PEAK * mins.length
+                / ((long) PEAKS * FRAMES_PER_PEAK));
+        for (int i = 0; i < mins.length; i++) {
+            float expected = i == column ? 0.8f : 0.0f;
+            assertEquals("column " + i, -expected, mins[i], 0.01f);
+            assertEquals("column " + i, expected, maxs[i], 0.01f);
+        }
+    }
+
+    @Test
+    public void zoomedInPeaksAreTheFinestLevel() {
+        float[] mins = new float[8];
+        float[] maxs = new float[8];
+        // A column per peak, the loud one in the middle
+        long startUs = (LOUD_PEAK - 4L) * FRAMES_PER_PEAK * 1000000 / SAMPLE_RATE;
+        long endUs = (LOUD_PEAK + 4L) * FRAMES_PER_PEAK * 1000000 / SAMPLE_RATE;
+        mPeaks.getPeaks(startUs, endUs, mins, maxs);
+        for (int i = 0; i < mins.length; i++) {
+            assertEquals("column " + i, i == 4 ? 0.8f : 0.0f, maxs[i], 0.01f);
+        }
+    }
+
+    @Test
+    public void columnsAfterTheEndAreSilent() {
+        float[] mins = new float[100];
+        float[] maxs = new float[100];
+        mPeaks.getPeaks(0, 2 * mPeaks.getDurationUs(), mins, maxs);
+        for (int i = 50; i < maxs.length; i++) {
+            assertEquals(0.0f, mins[i], 0.0f);
+            assertEquals(0.0f, maxs[i], 0.0f);
+        }
+    }
+
+    private static WaveformPeaks createPeaks() {
+        WaveformAnalyzer analyzer = new WaveformAnalyzer();
+        analyzer.configure(SAMPLE_RATE, 1);
+        float[] silence = new float[FRAMES_PER_PEAK];
+        float[] loud = new float[FRAMES_PER_PEAK];
+        for (int i = 0; i < loud.length; i++) {
+            loud[i] = i % 2 == 0 ? 0.8f : -0.8f;
+        }
+        for (int peak = 0; peak < PEAKS; peak++) {
+            analyzer.process(peak == LOUD_PEAK ? loud : silence, FRAMES_PER_PEAK);
+        }
+        return analyzer.createPeaks();
+    }
+}
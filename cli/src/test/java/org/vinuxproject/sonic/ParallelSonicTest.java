@@ -0,0 +1,84 @@
+package org.vinuxproject.sonic;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the parallel speed change stays within a tolerance of a single stream.
+ */
+public class ParallelSonicTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    private static final float[] SPEEDS = {0.75f, 1.5f, 2.0f, 3.0f};
+
+    private static ForkJoinPool sPool;
+
+    // Without pauses, so the cuts fall into the voice
+    private final short[] speech = SpeechSignal.generate(SAMPLE_RATE, 20.0f, false);
+
+    @BeforeClass
+    public static void createPool() {
+        // More segments than one thread gets, whatever the machine
+        sPool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void shutDownPool() {
+        sPool.shutdown();
+    }
+
+    @Test
+    public void lengthMatchesStream() {
+        for (float speed : SPEEDS) {
+            short[] parallel = changeSpeed(speed);
+            short[] stream = stream(speed);
+            // Within 10 ms
+            assertEquals("At " + speed + "x", stream.length, parallel.length, SAMPLE_RATE / 100);
+        }
+    }
+
+    @Test
+    public void outputIsCloseToStream() {
+        for (float speed : SPEEDS) {
+            double snr = SonicQualityTest.spectralSnr(stream(speed), changeSpeed(speed));
+            assertTrue("At " + speed + "x, " + snr + " dB", snr >= 10.0);
+        }
+    }
+
+    @Test
+    public void stereoChannelsStayApart() {
+        short[] stereo = new short[2 * speech.length];
+        for (int i = 0; i < speech.length; i++) {
+            stereo[2 * i] = speech[i];
+        }
+        short[] output = ParallelSonic.changeShortSpeed(stereo, speech.length, 2.0f, 1.0f, 1.0f,
+                1.0f, false, SAMPLE_RATE, 2, sPool);
+        long left = 0;
+        for (int i = 0; i < output.length; i += 2) {
+            left += Math.abs(output[i]);
+            assertEquals(0, output[i + 1]);
+        }
+        assertTrue(left > 0);
+    }
+
+    private short[] changeSpeed(float speed) {
+        return ParallelSonic.changeShortSpeed(speech, speech.length, speed, 1.0f, 1.0f, 1.0f,
+                false, SAMPLE_RATE, 1, sPool);
+    }
+
+    private short[] stream(float speed) {
+        Sonic sonic = new Sonic(SAMPLE_RATE, 1);
+        sonic.setSpeed(speed);
+        sonic.writeShortToStream(speech, speech.length);
+        sonic.flushStream();
+        short[] output = new short[sonic.samplesAvailable()];
+        sonic.readShortFromStream(output, output.length);
+        return output;
+    }
+}
@@ -0,0 +1,166 @@
+package org.vinuxproject.sonic;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the predicted pitch period search with the full search, on synthetic speech where
+ * the pitch is known.
+ */
+public class SonicQualityTest {
+
+    private static final int SAMPLE_RATE = 44100;
+    // Pitch is looked for every 10 ms, as often as a stream at normal speed would
+    private static final int HOP = SAMPLE_RATE / 100;
+    private static final int MAX_PERIOD = SAMPLE_RATE / 65;
+    private static final int FRAME = 1024;
+
+    private final short[] speech = SpeechSignal.generate(SAMPLE_RATE, 6.0f);
+    // The speech as Sonic keeps it internally
+    private final float[] floatSpeech = toFloat(speech);
+
+    @Test
+    public void predictedPeriodsAgreeWithFullSearch() {
+        Sonic full = new Sonic(SAMPLE_RATE, 1);
+        full.setQuality(Sonic.QUALITY_FULL);
+        Sonic predicted = new Sonic(SAMPLE_RATE, 1);
+        predicted.setQuality(Sonic.QUALITY_PREDICTED);
+        int voiced = 0;
+        int fullRight = 0;
+        int predictedRight = 0;
+        int agreeing = 0;
+        for (int position = 0; position + 2 * MAX_PERIOD < speech.length; position += HOP) {
+            int fullPeriod = full.findPitchPeriod(floatSpeech, position, true);
+            int predictedPeriod = predicted.findPitchPeriod(floatSpeech, position, true);
+            if (!isVoiced(position)) {
+                continue;
+            }
+            double truePeriod = SAMPLE_RATE / SpeechSignal.getPitch(
+                    (position + fullPeriod) / (double) SAMPLE_RATE);
+            voiced++;
+            if (isClose(fullPeriod, truePeriod)) {
+                fullRight++;
+                if (isClose(predictedPeriod, fullPeriod)) {
+                    agreeing++;
+                }
+            }
+            if (isClose(predictedPeriod, truePeriod)) {
+                predictedRight++;
+            }
+        }
+        String counts = voiced + " voiced, full search right " + fullRight + ", predicted right "
+                + predictedRight + ", agreeing " + agreeing;
+        assertTrue(counts, fullRight >= voiced * 2 / 3);
+        assertTrue(counts, predictedRight >= fullRight * 95 / 100);
+        assertTrue(counts, agreeing >= fullRight * 4 / 5);
+    }
+
+    @Test
+    public void predictedOutputIsAsCloseToFullSearchAsDownSampled() {
+        for (float speed : new float[] {0.75f, 1.5f, 2.0f, 3.0f}) {
+            short[] full = changeSpeed(Sonic.QUALITY_FULL, speed);
+            double predicted = spectralSnr(full, changeSpeed(Sonic.QUALITY_PREDICTED, speed));
+            double downSampled = spectralSnr(full, changeSpeed(Sonic.QUALITY_DOWNSAMPLED, speed));
+            String snrs = "At " + speed + "x, predicted " + predicted + " dB, down sampled "
+                    + downSampled + " dB";
+            assertTrue(snrs, predicted >= 8.0);
+            assertTrue(snrs, predicted >= downSampled - 2.0);
+        }
+    }
+
+    // Whether the signal is loud enough for its pitch to mean something
+    private boolean isVoiced(int position) {
+        long energy = 0;
+        for (int i = position; i < position + 2 * MAX_PERIOD; i++) {
+            energy += speech[i] * speech[i];
+        }
+        return energy / (2 * MAX_PERIOD) > 1000 * 1000;
+    }
+
+    private static float[] toFloat(short[] samples) {
+        float[] floats = new float[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            floats[i] = samples[i] / 32768.0f;
+        }
+        return floats;
+    }
+
+    private static boolean isClose(double period, double expected) {
+        return Math.abs(period - expected) <= 0.03 * expected;
+    }
+
+    private short[] changeSpeed(int quality, float speed) {
+        Sonic sonic = new Sonic(SAMPLE_RATE, 1);
+        sonic.setQuality(quality);
+        sonic.setSpeed(speed);
+        sonic.writeShortToStream(speech, speech.length);
+        sonic.flushStream();
+        short[] output = new short[sonic.samplesAvailable()];
+        sonic.readShortFromStream(output, output.length);
+        return output;
+    }
+
+    // Signal to noise ratio in dB of the magnitude spectra of output against those of
+    // reference, over frames of about 23 ms.  Outputs that choose different pitch periods
+    // splice the input in different places and drift apart by a few periods, so comparing
+    // them sample by sample would count that as noise.
+    static double spectralSnr(short[] reference, short[] output) {
+        double[] re = new double[FRAME];
+        double[] im = new double[FRAME];
+        double[] magnitudes = new double[FRAME / 2];
+        double signal = 0;
+        double noise = 0;
+        int length = Math.min(reference.length, output.length);
+        for (int start = 0; start + FRAME <= length; start += FRAME) {
+            spectrum(reference, start, re, im);
+            for (int k = 0; k < FRAME / 2; k++) {
+                magnitudes[k] = Math.hypot(re[k], im[k]);
+            }
+            spectrum(output, start, re, im);
+            for (int k = 0; k < FRAME / 2; k++) {
+                double error = Math.hypot(re[k], im[k]) - magnitudes[k];
+                signal += magnitudes[k] * magnitudes[k];
+                noise += error * error;
+            }
+        }
+        return 10 * Math.log10(signal / noise);
+    }
+
+    // Hann windowed FFT of FRAME samples
+    private static void spectrum(short[] samples, int start, double[] re, double[] im) {
+        for (int i = 0; i < FRAME; i++) {
+            re[i] = samples[start + i] * (0.5 - 0.5 * Math.cos(2 * Math.PI * i / FRAME));
+            im[i] = 0;
+        }
+        for (int i = 1, j = 0; i < FRAME; i++) {
+            int bit = FRAME >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                double t = re[i];
+                re[i] = re[j];
+                re[j] = t;
+            }
+        }
+        for (int size = 2; size <= FRAME; size <<= 1) {
+            double angle = -2 * Math.PI / size;
+            for (int i = 0; i < FRAME; i += size) {
+                for (int k = 0; k < size / 2; k++) {
+                    double wr = Math.cos(angle * k);
+                    double wi = Math.sin(angle * k);
+                    int a = i + k;
+                    int b = a + size / 2;
+                    double tr = re[b] * wr - im[b] * wi;
+                    double ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.vinuxproject.sonic;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SonicRampTest {
+
+    private static final int SAMPLE_RATE = 22050;
+    private static final int CHUNK = 1024;
+
+    private final short[] speech = SpeechSignal.generate(SAMPLE_RATE, 4.0f);
+    private final short[] output = new short[8 * CHUNK];
+    private int position;
+
+    @Test
+    public void rampEndingAtNormalSpeedKeepsFollowingTheTarget() {
+        Sonic sonic = new Sonic(SAMPLE_RATE, 1);
+        sonic.setSpeed(2.0f);
+        sonic.setRampPeriods(4);
+        process(sonic, SAMPLE_RATE);
+
+        sonic.setTargetSpeed(1.0f);
+        process(sonic, SAMPLE_RATE / 2);
+        assertEquals(1.0f, sonic.getSpeed(), 0.0f);
+        assertEquals(1.0, ratio(sonic, SAMPLE_RATE), 0.01);
+
+        sonic.setTargetSpeed(2.0f);
+        process(sonic, SAMPLE_RATE / 2);
+        assertEquals(2.0f, sonic.getSpeed(), 0.0f);
+        assertEquals(2.0, ratio(sonic, SAMPLE_RATE), 0.05);
+    }
+
+    @Test
+    public void rampThroughNormalSpeedReachesTheTarget() {
+        Sonic sonic = new Sonic(SAMPLE_RATE, 1);
+        sonic.setSpeed(0.5f);
+        sonic.setRampPeriods(8);
+        process(sonic, SAMPLE_RATE / 2);
+
+        sonic.setTargetSpeed(2.0f);
+        process(sonic, SAMPLE_RATE / 2);
+        assertEquals(2.0f, sonic.getSpeed(), 0.0f);
+        assertEquals(2.0, ratio(sonic, SAMPLE_RATE), 0.05);
+    }
+
+    @Test
+    public void pitchRampEndsWithTheRateOfTheNewPitch() {
+        Sonic sonic = new Sonic(SAMPLE_RATE, 1);
+        sonic.setPitch(1.5f);
+        process(sonic, SAMPLE_RATE / 2);
+
+        sonic.setTargetPitch(1.0f);
+        process(sonic, SAMPLE_RATE / 2);
+        assertEquals(1.0f, sonic.getPitch(), 0.0f);
+        assertEquals(1.0, ratio(sonic, SAMPLE_RATE), 0.01);
+    }
+
+    // Writes input to the stream and drains its output
+    private int process(Sonic sonic, int numSamples) {
+        int read = 0;
+        for (int end = position + numSamples; position < end; position += CHUNK) {
+            int count = Math.min(CHUNK, end - position);
+            short[] chunk = new short[count];
+            System.arraycopy(speech, position % (speech.length - CHUNK), chunk, 0, count);
+            sonic.writeShortToStream(chunk, count);
+            int n;
+            while ((n = sonic.readShortFromStream(output, output.length)) > 0) {
+                read += n;
+            }
+        }
+        return read;
+    }
+
+    // Input over output samples for the next stretch of input
+    private double ratio(Sonic sonic, int numSamples) {
+        return (double) numSamples / process(sonic, numSamples);
+    }
+}
@@ -0,0 +1,91 @@
+package org.vinuxproject.sonic;
+
+import java.util.Random;
+
+/**
+ * Synthetic voiced speech for the tests: a glottal pulse train whose pitch glides between 100
+ * and 180 Hz with some jitter, shaped by two formant resonators over breath noise and cut into
+ * syllables with short pauses. Deterministic, so results compare across runs.
+ */
+final class SpeechSignal {
+
+    private SpeechSignal() {
+    }
+
+    /**
+     * @return seconds of mono 16 bit speech at the given sample rate
+     */
+    static short[] generate(int sampleRate, float seconds) {
+        return generate(sampleRate, seconds, true);
+    }
+
+    /**
+     * @param pauses Whether every fourth syllable is a pause, otherwise syllables only dip to
+     *               a tenth of their level in between
+     * @return seconds of mono 16 bit speech at the given sample rate
+     */
+    static short[] generate(int sampleRate, float seconds, boolean pauses) {
+        int numSamples = (int) (sampleRate * seconds);
+        short[] samples = new short[numSamples];
+        Resonator first = new Resonator(sampleRate, 700, 90);
+        Resonator second = new Resonator(sampleRate, 1220, 110);
+        Random random = new Random(1);
+        double phase = 1.0;
+        double jitter = 1.0;
+        double shimmer = 1.0;
+        for (int i = 0; i < numSamples; i++) {
+            double t = (double) i / sampleRate;
+            double pitch = getPitch(t);
+            phase += pitch * jitter / sampleRate;
+            // Breath noise, and pulses that vary a little in length and strength
+            double pulse = 0.02 * random.nextGaussian();
+            if (phase >= 1.0) {
+                phase -= 1.0;
+                pulse += shimmer;
+                jitter = 1.0 + 0.01 * random.nextGaussian();
+                shimmer = 1.0 + 0.1 * random.nextGaussian();
+            }
+            // Syllables of 250 ms, every fourth followed by a pause of the same length
+            double syllable = (t % 0.25) / 0.25;
+            double envelope;
+            if (!pauses) {
+                envelope = 0.1 + 0.9 * Math.sin(Math.PI * syllable);
+            } else if (((int) (t / 0.25)) % 4 == 3) {
+                envelope = 0;
+            } else {
+                envelope = Math.sin(Math.PI * syllable);
+            }
+            double value = first.filter(pulse) + 0.6 * second.filter(pulse);
+            samples[i] = (short) Math.max(-32768, Math.min(32767, value * envelope * 2500));
+        }
+        return samples;
+    }
+
+    /**
+     * @return the pitch in Hz at the given time, without jitter
+     */
+    static double getPitch(double seconds) {
+        return 140 + 40 * Math.sin(2 * Math.PI * 0.7 * seconds);
+    }
+
+    // Two pole resonator
+    private static final class Resonator {
+        private final double a1;
+        private final double a2;
+        private double y1;
+        private double y2;
+
+        Resonator(int sampleRate, double frequency, double bandwidth) {
+            double r = Math.exp(-Math.PI * bandwidth / sampleRate);
+            a1 = 2 * r * Math.cos(2 * Math.PI * frequency / sampleRate);
+            a2 = -r * r;
+        }
+
+        double filter(double x) {
+            double y = x + a1 * y1 + a2 * y2;
+            y2 = y1;
+            y1 = y;
+            return y;
+        }
+    }
+}
@@ -16,7 +16,6 @@ package org.antennapod.audio;
 
 import android.content.Context;
 import android.net.Uri;
-import android.util.Log;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -104,7 +103,7 @@ public abstract class AbstractAudioPlayer {
 
     public void muteNextOnPrepare() {
         lockMuteOnPreparedCount.lock();
-        Log.d(MPI_TAG, "muteNextOnPrepare()");
+        PlayerLog.d(MPI_TAG, "muteNextOnPrepare()");
         try {
             this.muteOnPreparedCount++;
         } finally {
@@ -116,7 +115,7 @@ public abstract class AbstractAudioPlayer {
 
     public void muteNextSeek() {
         lockMuteOnSeekCount.lock();
-        Log.d(MPI_TAG, "muteNextOnSeek()");
+        PlayerLog.d(MPI_TAG, "muteNextOnSeek()");
         try {
             this.muteOnSeekCount++;
         } finally {
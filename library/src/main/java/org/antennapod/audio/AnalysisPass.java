@@ -0,0 +1,129 @@
+package org.antennapod.audio;
+
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Decodes a whole track as fast as the codec allows and hands the samples to analysers, for
+ * summaries of an episode that are made once and kept, apart from playback. Uses the same
+ * {@link Extractor} and {@link Decoder} as the decode loop, but neither Sonic nor a sink. Meant
+ * to run on a background thread, which is interrupted to cancel the pass.
+ */
+class AnalysisPass {
+
+    interface Analyzer {
+
+        /**
+         * Called before the first samples, and again if the decoded format changes.
+         */
+        void configure(int sampleRate, int channels);
+
+        /**
+         * Analyses <code>frames</code> frames of interleaved 16 bit samples.
+         */
+        void process(short[] samples, int frames);
+
+        /**
+         * Analyses <code>frames</code> frames of interleaved float samples between -1 and 1.
+         */
+        void process(float[] samples, int frames);
+
+    }
+
+    private static final long DEQUEUE_TIMEOUT_US = 10000;
+
+    private final Extractor mExtractor;
+    private final Decoder mDecoder;
+    private TrackFormat mFormat;
+    private short[] mShorts;
+    private float[] mFloats;
+
+    /**
+     * @param extractor Extractor with the audio track selected, at the position to start from
+     * @param decoder   Decoder configured for the track, not started yet
+     * @param format    Format of the track
+     */
+    AnalysisPass(Extractor extractor, Decoder decoder, TrackFormat format) {
+        mExtractor = extractor;
+        mDecoder = decoder;
+        mFormat = format;
+    }
+
+    /**
+     * Decodes up to the end of the track. The decoder is stopped afterwards.
+     *
+     * @throws InterruptedIOException If the thread was interrupted
+     */
+    void run(Analyzer... analyzers) throws InterruptedIOException {
+        for (Analyzer analyzer : analyzers) {
+            analyzer.configure(mFormat.getSampleRate(), mFormat.getChannelCount());
+        }
+        Decoder.BufferInfo info = new Decoder.BufferInfo();
+        boolean sawInputEOS = false;
+        boolean sawOutputEOS = false;
+        mDecoder.start();
+        try {
+            while (!sawOutputEOS) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("Analysis cancelled");
+                }
+                if (!sawInputEOS) {
+                    int index = mDecoder.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                    if (index >= 0) {
+                        int size = mExtractor.readSampleData(mDecoder.getInputBuffer(index), 0);
+                        if (size < 0) {
+                            sawInputEOS = true;
+                            mDecoder.queueInputBuffer(index, 0, 0, 0,
+                                    Decoder.BUFFER_FLAG_END_OF_STREAM);
+                        } else {
+                            mDecoder.queueInputBuffer(index, 0, size, mExtractor.getSampleTime(), 0);
+                            mExtractor.advance();
+                        }
+                    }
+                }
+                int res = mDecoder.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+                if (res == Decoder.INFO_OUTPUT_FORMAT_CHANGED) {
+                    mFormat = mDecoder.getOutputFormat();
+                    for (Analyzer analyzer : analyzers) {
+                        analyzer.configure(mFormat.getSampleRate(), mFormat.getChannelCount());
+                    }
+                } else if (res >= 0) {
+                    ByteBuffer buffer = mDecoder.getOutputBuffer(res).duplicate();
+                    buffer.limit(info.offset + info.size);
+                    buffer.position(info.offset);
+                    process(buffer, analyzers);
+                    mDecoder.releaseOutputBuffer(res);
+                    sawOutputEOS = (info.flags & Decoder.BUFFER_FLAG_END_OF_STREAM) != 0;
+                }
+            }
+        } finally {
+            mDecoder.stop();
+        }
+    }
+
+    private void process(ByteBuffer buffer, Analyzer[] analyzers) {
+        ByteBuffer samples = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int channels = mFormat.getChannelCount();
+        if (mFormat.isFloatPcm()) {
+            int count = samples.remaining() / 4;
+            if (mFloats == null || mFloats.length < count) {
+                mFloats = new float[count];
+            }
+            samples.asFloatBuffer().get(mFloats, 0, count);
+            for (Analyzer analyzer : analyzers) {
+                analyzer.process(mFloats, count / channels);
+            }
+        } else {
+            int count = samples.remaining() / 2;
+            if (mShorts == null || mShorts.length < count) {
+                mShorts = new short[count];
+            }
+            samples.asShortBuffer().get(mShorts, 0, count);
+            for (Analyzer analyzer : analyzers) {
+                analyzer.process(mShorts, count / channels);
+            }
+        }
+    }
+
+}
@@ -19,7 +19,6 @@ import android.media.MediaPlayer;
 import android.media.PlaybackParams;
 import android.net.Uri;
 import android.os.Build;
-import android.util.Log;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
@@ -51,7 +50,7 @@ public class AndroidAudioPlayer extends AbstractAudioPlayer {
 
     private final MediaPlayer.OnCompletionListener onCompletionListener = new MediaPlayer.OnCompletionListener() {
         public void onCompletion(MediaPlayer mp) {
-            Log.d(AMP_TAG, "onCompletionListener being called");
+            PlayerLog.d(AMP_TAG, "onCompletionListener being called");
             if (owningMediaPlayer != null) {
                 owningMediaPlayer.lock.lock();
                 try {
@@ -106,7 +105,7 @@ public class AndroidAudioPlayer extends AbstractAudioPlayer {
     // The others it just didn't make sense to have a setOnXListener that didn't use the parameter
     private final MediaPlayer.OnPreparedListener onPreparedListener = new MediaPlayer.OnPreparedListener() {
         public void onPrepared(MediaPlayer mp) {
-            Log.d(AMP_TAG, "Calling onPreparedListener.onPrepared()");
+            PlayerLog.d(AMP_TAG, "Calling onPreparedListener.onPrepared()");
             if (AndroidAudioPlayer.this.owningMediaPlayer != null) {
                 AndroidAudioPlayer.this.lockMuteOnPreparedCount.lock();
                 try {
@@ -114,14 +113,14 @@ public class AndroidAudioPlayer extends AbstractAudioPlayer {
                         AndroidAudioPlayer.this.muteOnPreparedCount--;
                     } else {
                         AndroidAudioPlayer.this.muteOnPreparedCount = 0;
-                        Log.d(AMP_TAG, "Invoking AndroidMediaPlayer.this.owningMediaPlayer.onPreparedListener.onPrepared");
+                        PlayerLog.d(AMP_TAG, "Invoking AndroidMediaPlayer.this.owningMediaPlayer.onPreparedListener.onPrepared");
                         AndroidAudioPlayer.this.owningMediaPlayer.onPreparedListener.onPrepared(AndroidAudioPlayer.this.owningMediaPlayer);
                     }
                 } finally {
                     AndroidAudioPlayer.this.lockMuteOnPreparedCount.unlock();
                 }
                 if (owningMediaPlayer.mpi != AndroidAudioPlayer.this) {
-                    Log.d(AMP_TAG, "owningMediaPlayer has changed implementation");
+                    PlayerLog.d(AMP_TAG, "owningMediaPlayer has changed implementation");
                 }
             }
         }
@@ -164,7 +163,7 @@ public class AndroidAudioPlayer extends AbstractAudioPlayer {
         mp.setOnCompletionListener(this.onCompletionListener);
         mp.setOnErrorListener(this.onErrorListener);
         mp.setOnInfoListener(this.onInfoListener);
-        Log.d(AMP_TAG, "Setting prepared listener to this.onPreparedListener");
+        PlayerLog.d(AMP_TAG, "Setting prepared listener to this.onPreparedListener");
         mp.setOnPreparedListener(this.onPreparedListener);
         mp.setOnSeekCompleteListener(this.onSeekCompleteListener);
     }
@@ -270,10 +269,10 @@ public class AndroidAudioPlayer extends AbstractAudioPlayer {
     @Override
     public void prepare() throws IllegalStateException, IOException {
         owningMediaPlayer.lock.lock();
-        Log.d(AMP_TAG, "prepare()");
+        PlayerLog.d(AMP_TAG, "prepare()");
         try {
             mp.prepare();
-            Log.d(AMP_TAG, "Finish prepare()");
+            PlayerLog.d(AMP_TAG, "Finish prepare()");
         } finally {
             owningMediaPlayer.lock.unlock();
         }
@@ -289,7 +288,7 @@ public class AndroidAudioPlayer extends AbstractAudioPlayer {
         owningMediaPlayer.lock.lock();
         try {
             if (mp != null) {
-                Log.d(AMP_TAG, "mp.release()");
+                PlayerLog.d(AMP_TAG, "mp.release()");
                 mp.release();
             }
         } catch (IllegalStateException e) {
@@ -305,7 +304,7 @@ public class AndroidAudioPlayer extends AbstractAudioPlayer {
         try {
             mp.reset();
         } catch (IllegalStateException e) {
-            Log.e(AMP_TAG, Log.getStackTraceString(e));
+            PlayerLog.e(AMP_TAG, e);
         } finally {
             owningMediaPlayer.lock.unlock();
         }
@@ -337,7 +336,7 @@ public class AndroidAudioPlayer extends AbstractAudioPlayer {
             throws IllegalArgumentException, IllegalStateException, IOException {
         owningMediaPlayer.lock.lock();
         try {
-            Log.d(AMP_TAG, "setDataSource(context, " + uri.toString() + ")");
+            PlayerLog.d(AMP_TAG, "setDataSource(context, %s)", uri);
             mp.setDataSource(context, uri, getHeaders());
         } finally {
             owningMediaPlayer.lock.unlock();
@@ -349,7 +348,7 @@ public class AndroidAudioPlayer extends AbstractAudioPlayer {
             IllegalStateException, IOException {
         owningMediaPlayer.lock.lock();
         try {
-            Log.d(AMP_TAG, "setDataSource(" + path + ")");
+            PlayerLog.d(AMP_TAG, "setDataSource(%s)", path);
 
             // setDataSource(String, Map) is annotated @hide.
             // Hack around with reflection to call the method.
@@ -358,11 +357,11 @@ public class AndroidAudioPlayer extends AbstractAudioPlayer {
                 method.invoke(mp, path, getHeaders());
                 return;
             } catch (NoSuchMethodException e) {
-                e.printStackTrace();
+                PlayerLog.w(AMP_TAG, e);
             } catch (IllegalAccessException e) {
-                e.printStackTrace();
+                PlayerLog.w(AMP_TAG, e);
             } catch (InvocationTargetException e) {
-                e.printStackTrace();
+                PlayerLog.w(AMP_TAG, e);
             }
             // Fall-back without headers
             mp.setDataSource(path);
@@ -398,7 +397,9 @@ public class AndroidAudioPlayer extends AbstractAudioPlayer {
 
     @Override
     public void setPlaybackPitch(float f) {
-        Log.d(AMP_TAG, "setPlaybackPitch(" + f + ")");
+        if (PlayerLog.DEBUG) {
+            PlayerLog.d(AMP_TAG, "setPlaybackPitch(%s)", f);
+        }
         if (Build.VERSION.SDK_INT < 23) {
             return;
         }
@@ -409,7 +410,9 @@ public class AndroidAudioPlayer extends AbstractAudioPlayer {
 
     @Override
     public void setPlaybackSpeed(float f) {
-        Log.d(AMP_TAG, "setPlaybackSpeed(" + f + ")");
+        if (PlayerLog.DEBUG) {
+            PlayerLog.d(AMP_TAG, "setPlaybackSpeed(%s)", f);
+        }
         if (Build.VERSION.SDK_INT < 23) {
             return;
         }
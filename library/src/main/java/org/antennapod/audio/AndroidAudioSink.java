@@ -0,0 +1,168 @@
+package org.antennapod.audio;
+
+import android.annotation.TargetApi;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Build;
+
+/**
+ * {@link AudioSink} on top of a streaming AudioTrack.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class AndroidAudioSink implements AudioSink {
+
+    static final Factory FACTORY = new Factory() {
+        @Override
+        public AudioSink createSink(int sampleRate, int channels, boolean floatPcm) {
+            return create(sampleRate, channels, floatPcm);
+        }
+    };
+
+    private final AudioTrack mTrack;
+    private final boolean mFloatPcm;
+
+    private AndroidAudioSink(AudioTrack track, boolean floatPcm) {
+        mTrack = track;
+        mFloatPcm = floatPcm;
+    }
+
+    /**
+     * Creates a track with a buffer of four times the minimum size, or less if that fails.
+     * Float tracks are only created on API 21 and later, before that the track takes 16 bit
+     * samples.
+     *
+     * @throws IllegalStateException If no track could be created
+     */
+    static AndroidAudioSink create(int sampleRate, int channels, boolean floatPcm) {
+        floatPcm = floatPcm && Build.VERSION.SDK_INT >= 21;
+        int channelConfig = findFormatFromChannels(channels);
+        int encoding = floatPcm ? AudioFormat.ENCODING_PCM_FLOAT : AudioFormat.ENCODING_PCM_16BIT;
+        int minBufferSize = AudioTrack.getMinBufferSize(sampleRate, channelConfig, encoding);
+        for (int i = 4; i >= 1; i--) {
+            int bufferSize = minBufferSize * i;
+
+            AudioTrack audioTrack = null;
+            try {
+                audioTrack = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate,
+                        channelConfig, encoding, bufferSize, AudioTrack.MODE_STREAM);
+                if (audioTrack.getState() == AudioTrack.STATE_INITIALIZED) {
+                    return new AndroidAudioSink(audioTrack, floatPcm);
+                } else {
+                    audioTrack.release();
+                }
+            } catch (IllegalArgumentException e) {
+                if (audioTrack != null) {
+                    audioTrack.release();
+                }
+            }
+        }
+        throw new IllegalStateException("Could not create buffer for AudioTrack");
+    }
+
+    private static int findFormatFromChannels(int numChannels) {
+        switch (numChannels) {
+            case 1:
+                return AudioFormat.CHANNEL_OUT_MONO;
+            case 2:
+                return AudioFormat.CHANNEL_OUT_STEREO;
+            case 3:
+                return AudioFormat.CHANNEL_OUT_STEREO | AudioFormat.CHANNEL_OUT_FRONT_CENTER;
+            case 4:
+                return AudioFormat.CHANNEL_OUT_QUAD;
+            case 5:
+                return AudioFormat.CHANNEL_OUT_QUAD | AudioFormat.CHANNEL_OUT_FRONT_CENTER;
+            case 6:
+                return AudioFormat.CHANNEL_OUT_5POINT1;
+            case 7:
+                return AudioFormat.CHANNEL_OUT_5POINT1 | AudioFormat.CHANNEL_OUT_BACK_CENTER;
+            case 8:
+                if (Build.VERSION.SDK_INT >= 23) {
+                    return AudioFormat.CHANNEL_OUT_7POINT1_SURROUND;
+                } else {
+                    return -1;
+                }
+            default:
+                return -1; // Error
+        }
+    }
+
+    @Override
+    public int write(byte[] data, int offset, int size) {
+        return mTrack.write(data, offset, size);
+    }
+
+    @Override
+    public int write(short[] data, int offset, int size) {
+        return mTrack.write(data, offset, size);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    @Override
+    public int write(float[] data, int offset, int size) {
+        return mTrack.write(data, offset, size, AudioTrack.WRITE_BLOCKING);
+    }
+
+    @Override
+    public boolean isFloatPcm() {
+        return mFloatPcm;
+    }
+
+    @Override
+    public void play() {
+        mTrack.play();
+    }
+
+    @Override
+    public void pause() {
+        mTrack.pause();
+    }
+
+    @Override
+    public void flush() {
+        mTrack.flush();
+    }
+
+    @Override
+    public void stop() {
+        mTrack.stop();
+    }
+
+    @Override
+    public void release() {
+        mTrack.release();
+    }
+
+    @Override
+    public int getPlaybackHeadPosition() {
+        return mTrack.getPlaybackHeadPosition();
+    }
+
+    @Override
+    public int getAudioSessionId() {
+        return mTrack.getAudioSessionId();
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public void setVolume(float leftVolume, float rightVolume) {
+        mTrack.setStereoVolume(leftVolume, rightVolume);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return mTrack.getSampleRate();
+    }
+
+    @Override
+    public int getChannelCount() {
+        return mTrack.getChannelCount();
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    @Override
+    public int getUnderrunCount() {
+        return Build.VERSION.SDK_INT >= 24 ? mTrack.getUnderrunCount() : -1;
+    }
+
+}
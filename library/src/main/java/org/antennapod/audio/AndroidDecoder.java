@@ -0,0 +1,117 @@
+package org.antennapod.audio;
+
+import android.annotation.TargetApi;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.os.Build;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link Decoder} on top of MediaCodec. Uses the buffer arrays of MediaCodec, which are all
+ * there is before API 21, and keeps them up to date itself.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+@SuppressWarnings("deprecation")
+class AndroidDecoder implements Decoder {
+
+    private static final String TAG = "PCM";
+
+    private final MediaCodec mCodec;
+    private final MediaCodec.BufferInfo mInfo = new MediaCodec.BufferInfo();
+    private ByteBuffer[] mInputBuffers;
+    private ByteBuffer[] mOutputBuffers;
+
+    private AndroidDecoder(MediaCodec codec) {
+        mCodec = codec;
+    }
+
+    static AndroidDecoder create(String mime) throws IOException {
+        return new AndroidDecoder(MediaCodec.createDecoderByType(mime));
+    }
+
+    @Override
+    public void configure(TrackFormat format) {
+        mCodec.configure((MediaFormat) format.getPlatformFormat(), null, null, 0);
+    }
+
+    @Override
+    public void start() {
+        mCodec.start();
+        mInputBuffers = mCodec.getInputBuffers();
+        mOutputBuffers = mCodec.getOutputBuffers();
+    }
+
+    @Override
+    public int dequeueInputBuffer(long timeoutUs) {
+        return mCodec.dequeueInputBuffer(timeoutUs);
+    }
+
+    @Override
+    public ByteBuffer getInputBuffer(int index) {
+        return mInputBuffers[index];
+    }
+
+    @Override
+    public void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags) {
+        mCodec.queueInputBuffer(index, offset, size, presentationTimeUs, flags);
+    }
+
+    @Override
+    public int dequeueOutputBuffer(BufferInfo info, long timeoutUs) {
+        int res = mCodec.dequeueOutputBuffer(mInfo, timeoutUs);
+        if (res >= 0) {
+            info.set(mInfo.offset, mInfo.size, mInfo.presentationTimeUs, mInfo.flags);
+        } else if (res == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
+            mOutputBuffers = mCodec.getOutputBuffers();
+            PlayerLog.d(TAG, "Output buffers changed");
+        } else if (res == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+            mOutputBuffers = mCodec.getOutputBuffers();
+        }
+        return res;
+    }
+
+    @Override
+    public ByteBuffer getOutputBuffer(int index) {
+        return mOutputBuffers[index];
+    }
+
+    @Override
+    public TrackFormat getOutputFormat() {
+        MediaFormat format = mCodec.getOutputFormat();
+        PlayerLog.d(TAG, "Output format has changed to %s", format);
+        return new TrackFormat(format.getString(MediaFormat.KEY_MIME),
+                format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                format.getInteger(MediaFormat.KEY_CHANNEL_COUNT), -1, isFloatOutput(format), format);
+    }
+
+    // Float tracks play from API 21 on, but codecs only tell their PCM encoding from API 24
+    private static boolean isFloatOutput(MediaFormat format) {
+        return Build.VERSION.SDK_INT >= 24 && format.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                && format.getInteger(MediaFormat.KEY_PCM_ENCODING) == AudioFormat.ENCODING_PCM_FLOAT;
+    }
+
+    @Override
+    public void releaseOutputBuffer(int index) {
+        mOutputBuffers[index].clear();
+        mCodec.releaseOutputBuffer(index, false);
+    }
+
+    @Override
+    public void flush() {
+        mCodec.flush();
+    }
+
+    @Override
+    public void stop() {
+        mCodec.stop();
+    }
+
+    @Override
+    public void release() {
+        mCodec.release();
+    }
+
+}
@@ -0,0 +1,89 @@
+package org.antennapod.audio;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Build;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * {@link Extractor} on top of MediaExtractor.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class AndroidExtractor implements Extractor {
+
+    // Keys of MediaFormat.KEY_ENCODER_DELAY and KEY_ENCODER_PADDING, which are public only
+    // from API 30 on, but set by the extractors of older releases already
+    private static final String KEY_ENCODER_DELAY = "encoder-delay";
+    private static final String KEY_ENCODER_PADDING = "encoder-padding";
+
+    private final MediaExtractor mExtractor = new MediaExtractor();
+
+    void setDataSource(String path, Map<String, String> headers) throws IOException {
+        mExtractor.setDataSource(path, headers);
+    }
+
+    void setDataSource(Context context, Uri uri, Map<String, String> headers) throws IOException {
+        mExtractor.setDataSource(context, uri, headers);
+    }
+
+    @Override
+    public TrackFormat selectAudioTrack() throws IOException {
+        int trackNum = -1;
+        for (int i = 0; i < mExtractor.getTrackCount(); i++) {
+            String mime = mExtractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (trackNum < 0 && mime.startsWith("audio/")) {
+                trackNum = i;
+            } else {
+                mExtractor.unselectTrack(i);
+            }
+        }
+        if (trackNum < 0) {
+            throw new IOException("No audio track found");
+        }
+        MediaFormat format = mExtractor.getTrackFormat(trackNum);
+        mExtractor.selectTrack(trackNum);
+        return new TrackFormat(format.getString(MediaFormat.KEY_MIME),
+                format.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                format.getInteger(MediaFormat.KEY_CHANNEL_COUNT),
+                format.getLong(MediaFormat.KEY_DURATION), false, format,
+                getInteger(format, KEY_ENCODER_DELAY) > 0
+                        || getInteger(format, KEY_ENCODER_PADDING) > 0);
+    }
+
+    // The codec cuts off the frames these keys give itself, when it is configured with them
+    private static int getInteger(MediaFormat format, String key) {
+        return format.containsKey(key) ? format.getInteger(key) : 0;
+    }
+
+    @Override
+    public int readSampleData(ByteBuffer buffer, int offset) {
+        return mExtractor.readSampleData(buffer, offset);
+    }
+
+    @Override
+    public long getSampleTime() {
+        return mExtractor.getSampleTime();
+    }
+
+    @Override
+    public boolean advance() {
+        return mExtractor.advance();
+    }
+
+    @Override
+    public void seekTo(long timeUs) {
+        mExtractor.seekTo(timeUs, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+    }
+
+    @Override
+    public void release() {
+        mExtractor.release();
+    }
+
+}
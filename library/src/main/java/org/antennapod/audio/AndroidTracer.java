@@ -0,0 +1,49 @@
+package org.antennapod.audio;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * {@link PlaybackTrace.Tracer} on top of android.os.Trace. Sections need API 18, async
+ * sections and counters API 29; below that they are left out.
+ */
+@TargetApi(Build.VERSION_CODES.Q)
+class AndroidTracer implements PlaybackTrace.Tracer {
+
+    @Override
+    public void beginSection(String name) {
+        if (Build.VERSION.SDK_INT >= 18) {
+            Trace.beginSection(name);
+        }
+    }
+
+    @Override
+    public void endSection() {
+        if (Build.VERSION.SDK_INT >= 18) {
+            Trace.endSection();
+        }
+    }
+
+    @Override
+    public void beginAsyncSection(String name, int cookie) {
+        if (Build.VERSION.SDK_INT >= 29) {
+            Trace.beginAsyncSection(name, cookie);
+        }
+    }
+
+    @Override
+    public void endAsyncSection(String name, int cookie) {
+        if (Build.VERSION.SDK_INT >= 29) {
+            Trace.endAsyncSection(name, cookie);
+        }
+    }
+
+    @Override
+    public void setCounter(String name, long value) {
+        if (Build.VERSION.SDK_INT >= 29) {
+            Trace.setCounter(name, value);
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package org.antennapod.audio;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * A processing stage for the PCM that {@link SonicAudioPlayer} writes to the AudioTrack, after
+ * speed and pitch have been changed. Stages keep the channel count, and are called for every
+ * buffer on the decoder thread, so they must not allocate memory once configured. Samples are
+ * 16 bit, or floats between -1 and 1 where the AudioTrack takes those.
+ */
+public interface AudioProcessor {
+
+    /**
+     * Prepares the stage for interleaved samples of the given format. Called before the first
+     * buffer and whenever the format changes; this is the place to allocate state.
+     */
+    void configure(int sampleRate, int channels);
+
+    /**
+     * Processes the whole frames between position and limit of <code>samples</code>, and
+     * leaves its output between position and limit of the same buffer. The output may be
+     * shorter than the input, e.g. if the stage trims silence, or longer by up to
+     * {@link #getLatencyFrames()} frames it held back before; callers leave that much room
+     * up to the capacity. The buffer is writable, but may be direct instead of backed by an
+     * array.
+     */
+    void process(ShortBuffer samples);
+
+    /**
+     * Same as {@link #process(ShortBuffer)}, for float samples.
+     */
+    void process(FloatBuffer samples);
+
+    /**
+     * Drops any state that depends on earlier samples, e.g. after a seek. Called on the
+     * decoder thread, before the first buffer from the new position.
+     */
+    void flush();
+
+    /**
+     * @return The delay the stage adds to the signal, in frames, which is also the most
+     * frames it holds back from one call to the next
+     */
+    int getLatencyFrames();
+
+}
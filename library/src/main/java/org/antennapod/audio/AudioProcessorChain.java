@@ -0,0 +1,59 @@
+package org.antennapod.audio;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Runs a fixed sequence of {@link AudioProcessor}s one after another on the same buffer. Each
+ * stage gets the output the one before left between position and limit.
+ */
+public class AudioProcessorChain implements AudioProcessor {
+
+    private final AudioProcessor[] mProcessors;
+
+    public AudioProcessorChain(AudioProcessor... processors) {
+        mProcessors = processors.clone();
+    }
+
+    public boolean isEmpty() {
+        return mProcessors.length == 0;
+    }
+
+    @Override
+    public void configure(int sampleRate, int channels) {
+        for (AudioProcessor processor : mProcessors) {
+            processor.configure(sampleRate, channels);
+        }
+    }
+
+    @Override
+    public void process(ShortBuffer samples) {
+        for (AudioProcessor processor : mProcessors) {
+            processor.process(samples);
+        }
+    }
+
+    @Override
+    public void process(FloatBuffer samples) {
+        for (AudioProcessor processor : mProcessors) {
+            processor.process(samples);
+        }
+    }
+
+    @Override
+    public void flush() {
+        for (AudioProcessor processor : mProcessors) {
+            processor.flush();
+        }
+    }
+
+    @Override
+    public int getLatencyFrames() {
+        int latency = 0;
+        for (AudioProcessor processor : mProcessors) {
+            latency += processor.getLatencyFrames();
+        }
+        return latency;
+    }
+
+}
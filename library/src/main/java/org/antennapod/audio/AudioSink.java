@@ -0,0 +1,75 @@
+package org.antennapod.audio;
+
+/**
+ * Where decoded 16 bit or float samples are played, the part of AudioTrack the player uses.
+ * Writes block until the samples fit into the buffer. {@link AndroidAudioSink} wraps
+ * AudioTrack; the cli module has a stand-in for it on a plain JVM.
+ */
+interface AudioSink {
+
+    interface Factory {
+        /**
+         * @param floatPcm Whether the sink should play float samples. Sinks that cannot are
+         *                 created for 16 bit samples, see {@link AudioSink#isFloatPcm()}.
+         */
+        AudioSink createSink(int sampleRate, int channels, boolean floatPcm);
+    }
+
+    /**
+     * @return The number of bytes written
+     */
+    int write(byte[] data, int offset, int size);
+
+    /**
+     * @return The number of samples written
+     */
+    int write(short[] data, int offset, int size);
+
+    /**
+     * Only for sinks that play float samples. Samples beyond full scale are clipped by the
+     * sink.
+     *
+     * @return The number of samples written
+     */
+    int write(float[] data, int offset, int size);
+
+    /**
+     * @return Whether the sink plays float samples, and not 16 bit ones
+     */
+    boolean isFloatPcm();
+
+    void play();
+
+    void pause();
+
+    /**
+     * Drops the samples that were written but not played yet.
+     */
+    void flush();
+
+    /**
+     * Stops once the samples that were written are played.
+     */
+    void stop();
+
+    void release();
+
+    /**
+     * @return The number of frames played since playback started or was flushed
+     */
+    int getPlaybackHeadPosition();
+
+    int getAudioSessionId();
+
+    void setVolume(float leftVolume, float rightVolume);
+
+    int getSampleRate();
+
+    int getChannelCount();
+
+    /**
+     * @return The number of times the sink ran empty while playing, or -1 if it does not know
+     */
+    int getUnderrunCount();
+
+}
@@ -0,0 +1,31 @@
+package org.antennapod.audio;
+
+/**
+ * Source of time for the decode loop and the stand-ins of the media layer. On a device this is
+ * always {@link #SYSTEM}; simulations in the cli module can use a virtual clock, which only
+ * moves when something waits on it, to run faster than real time and still see the same timing.
+ */
+interface Clock {
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleep(long nanos) throws InterruptedException {
+            if (nanos > 0) {
+                Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+            }
+        }
+    };
+
+    long nanoTime();
+
+    /**
+     * Waits for <code>nanos</code> nanoseconds of this clock's time.
+     */
+    void sleep(long nanos) throws InterruptedException;
+
+}
@@ -0,0 +1,246 @@
+package org.antennapod.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The loop that reads samples from an {@link Extractor}, decodes them with a {@link Decoder}
+ * and plays them through a {@link SonicPipeline}, or reads them from a {@link WavSource}, which
+ * needs no decoding. It does not depend on Android, so simulations on a plain JVM run it with
+ * stand-ins for the media classes. Whoever runs the loop controls it through a {@link Host}.
+ */
+class DecodeLoop implements Runnable {
+
+    // Frames handed from a WAVE file or the history of decoded samples to Sonic at a time
+    private static final int CHUNK_FRAMES = 4096;
+    private static final long DEQUEUE_TIMEOUT_US = 200;
+    // Interval at which the sink is checked for having played everything at the end
+    private static final long DRAIN_POLL_NANOS = 100000000L;
+
+    interface Host {
+
+        /**
+         * @return false once the loop should stop
+         */
+        boolean shouldContinue();
+
+        /**
+         * Blocks while playback is paused.
+         *
+         * @return Whether playback was paused
+         */
+        boolean waitWhilePaused();
+
+        void onError(IOException e);
+
+    }
+
+    private final Host mHost;
+    private final SonicPipeline mPipeline;
+    private final Clock mClock;
+    private final Extractor mExtractor;
+    private final Decoder mDecoder;
+    private final WavSource mWavSource;
+    private long mPreRollUs = -1;
+    private volatile boolean mReachedEnd;
+
+    DecodeLoop(Host host, SonicPipeline pipeline, Clock clock, Extractor extractor, Decoder decoder) {
+        mHost = host;
+        mPipeline = pipeline;
+        mClock = clock;
+        mExtractor = extractor;
+        mDecoder = decoder;
+        mWavSource = null;
+    }
+
+    DecodeLoop(Host host, SonicPipeline pipeline, Clock clock, WavSource wavSource) {
+        mHost = host;
+        mPipeline = pipeline;
+        mClock = clock;
+        mExtractor = null;
+        mDecoder = null;
+        mWavSource = wavSource;
+    }
+
+    /**
+     * @param preRollUs How far ahead of a seek position decoding has to start, see
+     *                  {@link TrackFormat#getPreRollUs()}. Samples before that are skipped
+     *                  without decoding them after seeks the loop does itself. -1, the
+     *                  default, decodes all from the sync sample the extractor seeks to.
+     */
+    void setPreRollUs(long preRollUs) {
+        mPreRollUs = preRollUs;
+    }
+
+    /**
+     * @return Whether the loop ended because the end of the stream was reached
+     */
+    boolean reachedEnd() {
+        return mReachedEnd;
+    }
+
+    @Override
+    public void run() {
+        if (mWavSource == null) {
+            mDecoder.start();
+        }
+
+        boolean sawInputEOS = false;
+        boolean sawOutputEOS = false;
+        int currHeadPos = 0;
+        final Decoder.BufferInfo info = new Decoder.BufferInfo();
+
+        // The decoder is drained up to the end after the input ended
+        while (!sawOutputEOS && mHost.shouldContinue()) {
+            currHeadPos = mPipeline.getSink().getPlaybackHeadPosition();
+            if (mHost.waitWhilePaused()) {
+                continue;
+            }
+
+            if (mPipeline.needsReconfigure()) {
+                // Downmix was toggled, switch between a mono and a multichannel sink
+                mPipeline.reconfigure(mPipeline.getSampleRate(), mPipeline.getChannelCount(),
+                        mPipeline.isFloatInput());
+            }
+
+            PlaybackTrace.Tracer tracer = PlaybackTrace.getTracer();
+            if (tracer != null) {
+                tracer.beginSection("Decode iteration");
+            }
+            try {
+                if (mWavSource != null) {
+                    try {
+                        sawInputEOS = !mPipeline.write(mWavSource, CHUNK_FRAMES);
+                    } catch (IOException e) {
+                        mHost.onError(e);
+                        break;
+                    }
+                    sawOutputEOS = sawInputEOS;
+                    continue;
+                }
+
+                long seekUs = mPipeline.takePendingSeekUs();
+                if (seekUs >= 0) {
+                    seek(seekUs);
+                    sawInputEOS = false;
+                }
+
+                if (mPipeline.isReplaying()) {
+                    // A seek back into what was decoded already, the decoder goes on
+                    // where it left off once the history has been played. A window that
+                    // was decoded ahead is followed by what is decoded from its end on.
+                    mPipeline.writeReplay(CHUNK_FRAMES);
+                    continue;
+                }
+
+                PlaybackMetrics metrics = mPipeline.getMetrics();
+                long decodeStart = metrics != null ? mClock.nanoTime() : 0;
+                int inputBufIndex = sawInputEOS ? Decoder.INFO_TRY_AGAIN_LATER
+                        : mDecoder.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                if (inputBufIndex >= 0) {
+                    if (tracer != null) {
+                        tracer.beginSection("Extract");
+                    }
+                    long skipUs = mPipeline.skipSilence(mExtractor.getSampleTime());
+                    if (skipUs >= 0) {
+                        // Silence is skipped before it is read and decoded
+                        mExtractor.seekTo(skipUs);
+                    }
+                    ByteBuffer dstBuf = mDecoder.getInputBuffer(inputBufIndex);
+                    int sampleSize = mExtractor.readSampleData(dstBuf, 0);
+                    long presentationTimeUs = 0;
+                    if (sampleSize < 0) {
+                        sawInputEOS = true;
+                        sampleSize = 0;
+                    } else {
+                        presentationTimeUs = mExtractor.getSampleTime();
+                        if (metrics != null) {
+                            metrics.recordExtracted(sampleSize);
+                        }
+                    }
+                    mDecoder.queueInputBuffer(
+                            inputBufIndex,
+                            0,
+                            sampleSize,
+                            presentationTimeUs,
+                            sawInputEOS ? Decoder.BUFFER_FLAG_END_OF_STREAM : 0);
+                    if (!sawInputEOS) {
+                        mExtractor.advance();
+                    }
+                    if (tracer != null) {
+                        tracer.endSection();
+                    }
+                }
+
+                int res;
+                do {
+                    if (tracer != null) {
+                        tracer.beginSection("Decode");
+                    }
+                    res = mDecoder.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US);
+                    if (tracer != null) {
+                        tracer.endSection();
+                    }
+                    if (res >= 0) {
+                        if (metrics != null) {
+                            metrics.recordDecode(mClock.nanoTime() - decodeStart);
+                        }
+                        mPipeline.write(mDecoder.getOutputBuffer(res), info);
+                        mDecoder.releaseOutputBuffer(res);
+                        if (metrics != null) {
+                            decodeStart = mClock.nanoTime();
+                        }
+                        if ((info.flags & Decoder.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                            sawOutputEOS = true;
+                        }
+                    } else if (res == Decoder.INFO_OUTPUT_FORMAT_CHANGED) {
+                        TrackFormat format = mDecoder.getOutputFormat();
+                        if (mPipeline.needsReconfigure(format)) {
+                            mPipeline.reconfigure(format.getSampleRate(), format.getChannelCount(),
+                                    format.isFloatPcm());
+                        }
+                    }
+                } while (res == Decoder.INFO_OUTPUT_BUFFERS_CHANGED ||
+                        res == Decoder.INFO_OUTPUT_FORMAT_CHANGED);
+            } finally {
+                if (tracer != null) {
+                    tracer.endSection();
+                }
+            }
+        }
+        mReachedEnd = sawOutputEOS;
+
+        if (mWavSource == null) {
+            mDecoder.stop();
+        }
+
+        // wait for the sink to finish playing
+        AudioSink sink = mPipeline.getSink();
+        int lastHeadPos;
+        do {
+            lastHeadPos = currHeadPos;
+            try {
+                mClock.sleep(DRAIN_POLL_NANOS);
+                currHeadPos = sink.getPlaybackHeadPosition();
+            } catch (InterruptedException e) { /* ignore */ }
+        } while (currHeadPos != lastHeadPos);
+        sink.stop();
+    }
+
+    // Seeks for the pipeline, which drops what is decoded before the position. Samples that
+    // end before the pre-roll are not decoded at all.
+    private void seek(long timeUs) {
+        mDecoder.flush();
+        mExtractor.seekTo(timeUs);
+        if (mPreRollUs < 0) {
+            return;
+        }
+        long decodeFromUs = timeUs - mPreRollUs;
+        long sampleTimeUs = mExtractor.getSampleTime();
+        while (sampleTimeUs >= 0 && sampleTimeUs < decodeFromUs) {
+            mExtractor.advance();
+            sampleTimeUs = mExtractor.getSampleTime();
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.antennapod.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An audio decoder used synchronously, the part of MediaCodec the decode loop uses. Result codes
+ * and flags have the values MediaCodec gives them. {@link AndroidDecoder} wraps MediaCodec; the
+ * cli module has a stand-in for it on a plain JVM.
+ */
+interface Decoder {
+
+    int INFO_TRY_AGAIN_LATER = -1;
+    int INFO_OUTPUT_FORMAT_CHANGED = -2;
+    int INFO_OUTPUT_BUFFERS_CHANGED = -3;
+
+    int BUFFER_FLAG_END_OF_STREAM = 4;
+
+    /**
+     * Metadata of a decoded buffer, the same as MediaCodec.BufferInfo.
+     */
+    class BufferInfo {
+        public int offset;
+        public int size;
+        public long presentationTimeUs;
+        public int flags;
+
+        public void set(int offset, int size, long presentationTimeUs, int flags) {
+            this.offset = offset;
+            this.size = size;
+            this.presentationTimeUs = presentationTimeUs;
+            this.flags = flags;
+        }
+    }
+
+    void configure(TrackFormat format);
+
+    void start();
+
+    /**
+     * @return The index of a free input buffer, or {@link #INFO_TRY_AGAIN_LATER} if none became
+     * free within <code>timeoutUs</code>
+     */
+    int dequeueInputBuffer(long timeoutUs);
+
+    ByteBuffer getInputBuffer(int index);
+
+    void queueInputBuffer(int index, int offset, int size, long presentationTimeUs, int flags);
+
+    /**
+     * @return The index of a decoded buffer, or one of the <code>INFO_</code> codes
+     */
+    int dequeueOutputBuffer(BufferInfo info, long timeoutUs);
+
+    ByteBuffer getOutputBuffer(int index);
+
+    TrackFormat getOutputFormat();
+
+    void releaseOutputBuffer(int index);
+
+    /**
+     * Drops all queued input and decoded output, e.g. after a seek.
+     */
+    void flush();
+
+    void stop();
+
+    void release();
+
+}
@@ -1,17 +1,163 @@
 package org.antennapod.audio;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Matrix mixer for interleaved 16-bit PCM with 1 to 8 channels, using the channel layouts
+ * {@link SonicAudioPlayer} hands to the AudioTrack. Coefficients follow the ITU-R BS.775
+ * downmix (centre and surrounds at -3 dB, LFE dropped), are normalised per output channel so
+ * the result cannot clip, and are kept as 14 bit fixed point numbers.
+ */
 class DownMixer {
 
-    static void downMix(byte[] modifiedSamples) {
-        for (int i = 0; (i + 3) < modifiedSamples.length; i += 4) {
-            short left = (short) ((modifiedSamples[i] & 0xff) | (modifiedSamples[i + 1] << 8));
-            short right = (short) ((modifiedSamples[i + 2] & 0xff) | (modifiedSamples[i + 3] << 8));
-            short value = (short) (0.5 * left + 0.5 * right);
+    private static final int COEFFICIENT_BITS = 14;
+    private static final int UNITY = 1 << COEFFICIENT_BITS;
+
+    // Weights of a single input channel in the left and the right output channel
+    private static final double[] FRONT_LEFT = {1.0, 0.0};
+    private static final double[] FRONT_RIGHT = {0.0, 1.0};
+    private static final double[] CENTER = {0.7071, 0.7071};
+    private static final double[] LOW_FREQUENCY = {0.0, 0.0};
+    private static final double[] SURROUND_LEFT = {0.7071, 0.0};
+    private static final double[] SURROUND_RIGHT = {0.0, 0.7071};
+    private static final double[] BACK_CENTER = {0.5, 0.5};
+
+    // Channel order for each channel count, matching SonicAudioPlayer.findFormatFromChannels()
+    private static final double[][][] LAYOUTS = {
+            {CENTER},
+            {FRONT_LEFT, FRONT_RIGHT},
+            {FRONT_LEFT, FRONT_RIGHT, CENTER},
+            {FRONT_LEFT, FRONT_RIGHT, SURROUND_LEFT, SURROUND_RIGHT},
+            {FRONT_LEFT, FRONT_RIGHT, CENTER, SURROUND_LEFT, SURROUND_RIGHT},
+            {FRONT_LEFT, FRONT_RIGHT, CENTER, LOW_FREQUENCY, SURROUND_LEFT, SURROUND_RIGHT},
+            {FRONT_LEFT, FRONT_RIGHT, CENTER, LOW_FREQUENCY, SURROUND_LEFT, SURROUND_RIGHT,
+                    BACK_CENTER},
+            {FRONT_LEFT, FRONT_RIGHT, CENTER, LOW_FREQUENCY, SURROUND_LEFT, SURROUND_RIGHT,
+                    SURROUND_LEFT, SURROUND_RIGHT},
+    };
+
+    private final int inputChannels;
+    private final int outputChannels;
+    // outputChannels rows of inputChannels coefficients each
+    private final int[] matrix;
+    // Samples copied out of buffers in one go, so mixing runs on arrays
+    private short[] inputSamples;
+    private short[] outputSamples;
+
+    /**
+     * @param inputChannels  Number of interleaved input channels, 1 to 8
+     * @param outputChannels Number of output channels, 1 (mono) or 2 (stereo)
+     */
+    DownMixer(int inputChannels, int outputChannels) {
+        if (inputChannels < 1 || inputChannels > LAYOUTS.length) {
+            throw new IllegalArgumentException("Unsupported number of input channels: " + inputChannels);
+        }
+        if (outputChannels != 1 && outputChannels != 2) {
+            throw new IllegalArgumentException("Unsupported number of output channels: " + outputChannels);
+        }
+        this.inputChannels = inputChannels;
+        this.outputChannels = outputChannels;
+        this.matrix = createMatrix(LAYOUTS[inputChannels - 1], outputChannels);
+    }
+
+    private static int[] createMatrix(double[][] layout, int outputChannels) {
+        int inputChannels = layout.length;
+        double[] weights = new double[outputChannels * inputChannels];
+        for (int in = 0; in < inputChannels; in++) {
+            if (outputChannels == 1) {
+                weights[in] = layout[in][0] + layout[in][1];
+            } else {
+                weights[in] = layout[in][0];
+                weights[inputChannels + in] = layout[in][1];
+            }
+        }
+        int[] matrix = new int[weights.length];
+        for (int out = 0; out < outputChannels; out++) {
+            double sum = 0;
+            for (int in = 0; in < inputChannels; in++) {
+                sum += weights[out * inputChannels + in];
+            }
+            for (int in = 0; in < inputChannels; in++) {
+                matrix[out * inputChannels + in] = (int) (weights[out * inputChannels + in] / sum * UNITY);
+            }
+        }
+        return matrix;
+    }
 
-            modifiedSamples[i] = (byte) (value & 0xff);
-            modifiedSamples[i + 1] = (byte) (value >> 8);
-            modifiedSamples[i + 2] = (byte) (value & 0xff);
-            modifiedSamples[i + 3] = (byte) (value >> 8);
+    int getInputChannels() {
+        return inputChannels;
+    }
+
+    int getOutputChannels() {
+        return outputChannels;
+    }
+
+    /**
+     * Mixes the frames between position and limit of <code>in</code> into <code>out</code>,
+     * advancing the position of both buffers.  Stops early when <code>out</code> is full.
+     *
+     * @return The number of frames mixed
+     */
+    int mix(ShortBuffer in, ShortBuffer out) {
+        int frames = Math.min(in.remaining() / inputChannels, out.remaining() / outputChannels);
+        int inSamples = frames * inputChannels;
+        int outSamples = frames * outputChannels;
+        if (inputSamples == null || inputSamples.length < inSamples) {
+            inputSamples = new short[inSamples];
+        }
+        in.get(inputSamples, 0, inSamples);
+        if (out.hasArray()) {
+            mix(inputSamples, 0, out.array(), out.arrayOffset() + out.position(), frames);
+            out.position(out.position() + outSamples);
+        } else {
+            if (outputSamples == null || outputSamples.length < outSamples) {
+                outputSamples = new short[outSamples];
+            }
+            mix(inputSamples, 0, outputSamples, 0, frames);
+            out.put(outputSamples, 0, outSamples);
+        }
+        return frames;
+    }
+
+    /**
+     * Mixes 16-bit little-endian samples between position and limit of <code>in</code>, as
+     * delivered by the decoder, into <code>out</code>.
+     *
+     * @return The number of frames mixed
+     */
+    int mix(ByteBuffer in, ShortBuffer out) {
+        ShortBuffer samples = in.order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+        int frames = mix(samples, out);
+        in.position(in.position() + 2 * frames * inputChannels);
+        return frames;
+    }
+
+    /**
+     * Mixes <code>frames</code> frames from <code>in</code> into <code>out</code>.  Unless the
+     * output has more channels than the input, both may be the same array.
+     */
+    void mix(short[] in, int inOffset, short[] out, int outOffset, int frames) {
+        if (inputChannels == 2 && outputChannels == 1) {
+            int left = matrix[0];
+            int right = matrix[1];
+            for (int frame = 0; frame < frames; frame++) {
+                int sum = left * in[inOffset] + right * in[inOffset + 1];
+                out[outOffset++] = (short) ((sum + (UNITY >> 1)) >> COEFFICIENT_BITS);
+                inOffset += 2;
+            }
+            return;
+        }
+        for (int frame = 0; frame < frames; frame++) {
+            for (int row = 0; row < matrix.length; row += inputChannels) {
+                int sum = 0;
+                for (int channel = 0; channel < inputChannels; channel++) {
+                    sum += matrix[row + channel] * in[inOffset + channel];
+                }
+                out[outOffset++] = (short) ((sum + (UNITY >> 1)) >> COEFFICIENT_BITS);
+            }
+            inOffset += inputChannels;
         }
     }
 
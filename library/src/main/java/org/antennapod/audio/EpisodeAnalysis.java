@@ -0,0 +1,189 @@
+package org.antennapod.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Summaries of downloaded episodes that are made once, by decoding the whole file the way
+ * {@link SonicAudioPlayer} does, and kept in a cache directory. Making one blocks for as long
+ * as decoding the file takes, so call these on a background thread, ideally one of low
+ * priority. Interrupting the thread cancels decoding.
+ */
+public class EpisodeAnalysis {
+
+    private static final String TAG = "EpisodeAnalysis";
+
+    private EpisodeAnalysis() {
+    }
+
+    /**
+     * Returns the waveform of <code>audioFile</code>, read from below <code>cacheDir</code> if
+     * it was made before, and made and saved there otherwise.
+     *
+     * @throws java.io.InterruptedIOException If the thread was interrupted while decoding
+     * @throws IOException If the file could not be decoded or the waveform not be saved
+     */
+    public static WaveformPeaks getWaveform(File cacheDir, File audioFile) throws IOException {
+        File cacheFile = WaveformPeaks.getCacheFile(cacheDir, audioFile);
+        if (cacheFile.exists()) {
+            try {
+                return WaveformPeaks.read(cacheFile);
+            } catch (IOException e) {
+                PlayerLog.w(TAG, "Could not read waveform: %s", e.getMessage());
+            }
+        }
+        WaveformAnalyzer analyzer = new WaveformAnalyzer();
+        decode(audioFile, analyzer);
+        analyzer.createPeaks().write(cacheFile);
+        return WaveformPeaks.read(cacheFile);
+    }
+
+    /**
+     * Returns the silences of <code>audioFile</code>, read from below <code>cacheDir</code>
+     * if they were found before with the same settings, and found and saved there otherwise.
+     * The Sonic player skips the silences saved below the app's cache directory, see
+     * {@link MediaPlayer#setSkipSilence(boolean)}, so this is best called once an episode
+     * was downloaded, or while the device charges.
+     *
+     * @param thresholdDb  Level below which audio counts as silent, in dBFS; -50 suits speech
+     * @param minSilenceMs How long audio has to stay silent to be skipped, at least 300 ms
+     * @throws java.io.InterruptedIOException If the thread was interrupted while decoding
+     * @throws IOException If the file could not be decoded or the map not be saved
+     */
+    public static SilenceMap getSilenceMap(File cacheDir, File audioFile, float thresholdDb,
+                                           int minSilenceMs) throws IOException {
+        File cacheFile = SilenceMap.getCacheFile(cacheDir, audioFile);
+        SilenceMap map = readSilenceMap(cacheFile, thresholdDb, minSilenceMs);
+        if (map != null) {
+            return map;
+        }
+        SilenceDetector detector = new SilenceDetector(thresholdDb, minSilenceMs);
+        decode(audioFile, detector);
+        map = detector.createSilenceMap();
+        map.write(cacheFile);
+        return map;
+    }
+
+    /**
+     * Returns the gain table of <code>audioFile</code>, read from below <code>cacheDir</code>
+     * if it was made before for the same loudness, and made and saved there otherwise. The
+     * Sonic player normalises local episodes with the tables saved below the app's cache
+     * directory, see {@link MediaPlayer#normalizeLoudness()}.
+     *
+     * @param targetLoudness Loudness to normalise to, in LUFS; see
+     *                       {@link GainTable#DEFAULT_TARGET_LOUDNESS}
+     * @throws java.io.InterruptedIOException If the thread was interrupted while decoding
+     * @throws IOException If the file could not be decoded or the table not be saved
+     */
+    public static GainTable getGainTable(File cacheDir, File audioFile, float targetLoudness)
+            throws IOException {
+        File cacheFile = GainTable.getCacheFile(cacheDir, audioFile);
+        GainTable table = readGainTable(cacheFile, targetLoudness);
+        if (table != null) {
+            return table;
+        }
+        LoudnessAnalyzer analyzer = new LoudnessAnalyzer();
+        decode(audioFile, analyzer);
+        table = analyzer.createGainTable(targetLoudness);
+        table.write(cacheFile);
+        return table;
+    }
+
+    /**
+     * Makes the waveform, the silence map and the gain table of <code>audioFile</code> that
+     * are not in the cache yet, decoding the file at most once for all of them. The gain table
+     * normalises to {@link GainTable#DEFAULT_TARGET_LOUDNESS}.
+     *
+     * @see #getWaveform(File, File)
+     * @see #getSilenceMap(File, File, float, int)
+     * @see #getGainTable(File, File, float)
+     */
+    public static void prepare(File cacheDir, File audioFile, float thresholdDb, int minSilenceMs)
+            throws IOException {
+        File waveformFile = WaveformPeaks.getCacheFile(cacheDir, audioFile);
+        File silenceFile = SilenceMap.getCacheFile(cacheDir, audioFile);
+        File gainFile = GainTable.getCacheFile(cacheDir, audioFile);
+        List<AnalysisPass.Analyzer> analyzers = new ArrayList<AnalysisPass.Analyzer>();
+        WaveformAnalyzer waveform = null;
+        if (!waveformFile.exists()) {
+            waveform = new WaveformAnalyzer();
+            analyzers.add(waveform);
+        }
+        SilenceDetector detector = null;
+        if (readSilenceMap(silenceFile, thresholdDb, minSilenceMs) == null) {
+            detector = new SilenceDetector(thresholdDb, minSilenceMs);
+            analyzers.add(detector);
+        }
+        LoudnessAnalyzer loudness = null;
+        if (readGainTable(gainFile, GainTable.DEFAULT_TARGET_LOUDNESS) == null) {
+            loudness = new LoudnessAnalyzer();
+            analyzers.add(loudness);
+        }
+        if (analyzers.isEmpty()) {
+            return;
+        }
+        decode(audioFile, analyzers.toArray(new AnalysisPass.Analyzer[analyzers.size()]));
+        if (waveform != null) {
+            waveform.createPeaks().write(waveformFile);
+        }
+        if (detector != null) {
+            detector.createSilenceMap().write(silenceFile);
+        }
+        if (loudness != null) {
+            loudness.createGainTable(GainTable.DEFAULT_TARGET_LOUDNESS).write(gainFile);
+        }
+    }
+
+    // Returns null if there is no map made with these settings
+    private static SilenceMap readSilenceMap(File file, float thresholdDb, int minSilenceMs) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            SilenceMap map = SilenceMap.read(file);
+            if (map.getThresholdDb() == thresholdDb && map.getMinSilenceMs() == minSilenceMs) {
+                return map;
+            }
+        } catch (IOException e) {
+            PlayerLog.w(TAG, "Could not read silence map: %s", e.getMessage());
+        }
+        return null;
+    }
+
+    // Returns null if there is no table made for this loudness
+    private static GainTable readGainTable(File file, float targetLoudness) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            GainTable table = GainTable.read(file);
+            if (table.getTargetLoudness() == targetLoudness) {
+                return table;
+            }
+        } catch (IOException e) {
+            PlayerLog.w(TAG, "Could not read gain table: %s", e.getMessage());
+        }
+        return null;
+    }
+
+    private static void decode(File audioFile, AnalysisPass.Analyzer... analyzers)
+            throws IOException {
+        AndroidExtractor extractor = new AndroidExtractor();
+        Decoder decoder = null;
+        try {
+            extractor.setDataSource(audioFile.getPath(), null);
+            TrackFormat format = extractor.selectAudioTrack();
+            decoder = AndroidDecoder.create(format.getMime());
+            decoder.configure(format);
+            new AnalysisPass(extractor, decoder, format).run(analyzers);
+        } finally {
+            if (decoder != null) {
+                decoder.release();
+            }
+            extractor.release();
+        }
+    }
+
+}
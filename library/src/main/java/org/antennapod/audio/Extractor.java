@@ -0,0 +1,46 @@
+package org.antennapod.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the encoded samples of the audio track of a file or stream, the part of MediaExtractor
+ * the decode loop uses. {@link AndroidExtractor} wraps MediaExtractor; the cli module has a
+ * stand-in that reads WAVE files on a plain JVM.
+ */
+interface Extractor {
+
+    /**
+     * Selects the first audio track, and no other.
+     *
+     * @throws IOException If there is no audio track
+     */
+    TrackFormat selectAudioTrack() throws IOException;
+
+    /**
+     * Copies the current sample to <code>buffer</code>, starting at <code>offset</code>.
+     *
+     * @return The size of the sample in bytes, or -1 at the end of the track
+     */
+    int readSampleData(ByteBuffer buffer, int offset);
+
+    /**
+     * @return The presentation time of the current sample, or -1 at the end of the track
+     */
+    long getSampleTime();
+
+    /**
+     * Moves to the next sample.
+     *
+     * @return false at the end of the track
+     */
+    boolean advance();
+
+    /**
+     * Moves to the last sync sample at or before <code>timeUs</code>.
+     */
+    void seekTo(long timeUs);
+
+    void release();
+
+}
@@ -0,0 +1,135 @@
+package org.antennapod.audio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Gain envelope of an episode, as created by {@link LoudnessAnalyzer}: one gain in 1/100 dB
+ * per interval, interpolated linearly in between. Stored as a small binary file, about 7 kB
+ * per hour of audio.
+ */
+public class GainTable {
+
+    /**
+     * Loudness {@link EpisodeAnalysis#prepare} normalises to, in LUFS, which suits speech on
+     * mobile devices
+     */
+    public static final float DEFAULT_TARGET_LOUDNESS = -16.0f;
+
+    private static final int MAGIC = 0x41474e31; // "AGN1"
+
+    private final float mIntegratedLoudness;
+    private final float mTargetLoudness;
+    private final int mIntervalMs;
+    private final short[] mGains;
+    private final float[] mFactors;
+
+    GainTable(float integratedLoudness, float targetLoudness, int intervalMs, short[] gains) {
+        mIntegratedLoudness = integratedLoudness;
+        mTargetLoudness = targetLoudness;
+        mIntervalMs = intervalMs;
+        mGains = gains;
+        mFactors = new float[gains.length];
+        for (int i = 0; i < gains.length; i++) {
+            mFactors[i] = (float) Math.pow(10.0, gains[i] / 2000.0);
+        }
+    }
+
+    /**
+     * Returns where the gain table of <code>audioFile</code> is kept below
+     * <code>cacheDir</code>. The name includes the length of the file, so a download that
+     * continued or was replaced gets a new table.
+     */
+    public static File getCacheFile(File cacheDir, File audioFile) {
+        String name = Integer.toHexString(audioFile.getAbsolutePath().hashCode()) + "-"
+                + Long.toHexString(audioFile.length()) + ".gain";
+        return new File(new File(cacheDir, "loudness"), name);
+    }
+
+    /**
+     * @return The integrated loudness of the episode, in LUFS
+     */
+    public float getIntegratedLoudness() {
+        return mIntegratedLoudness;
+    }
+
+    /**
+     * @return The loudness the gains normalise to, in LUFS
+     */
+    public float getTargetLoudness() {
+        return mTargetLoudness;
+    }
+
+    /**
+     * @return The gain at <code>timeUs</code> into the episode, as a factor
+     */
+    public float getGain(long timeUs) {
+        if (mFactors.length == 0) {
+            return 1.0f;
+        }
+        // Gains apply to the middle of their interval
+        float position = timeUs / (mIntervalMs * 1000.0f) - 0.5f;
+        if (position <= 0.0f) {
+            return mFactors[0];
+        }
+        int index = (int) position;
+        if (index >= mFactors.length - 1) {
+            return mFactors[mFactors.length - 1];
+        }
+        float fraction = position - index;
+        return mFactors[index] + (mFactors[index + 1] - mFactors[index]) * fraction;
+    }
+
+    public void write(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeFloat(mIntegratedLoudness);
+            out.writeFloat(mTargetLoudness);
+            out.writeInt(mIntervalMs);
+            out.writeInt(mGains.length);
+            for (short gain : mGains) {
+                out.writeShort(gain);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @throws IOException If the file could not be read or is no gain table
+     */
+    public static GainTable read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a gain table: " + file);
+            }
+            float integratedLoudness = in.readFloat();
+            float targetLoudness = in.readFloat();
+            int intervalMs = in.readInt();
+            int count = in.readInt();
+            if (intervalMs <= 0 || count < 0 || count > file.length() / 2) {
+                throw new IOException("Corrupt gain table: " + file);
+            }
+            short[] gains = new short[count];
+            for (int i = 0; i < count; i++) {
+                gains[i] = in.readShort();
+            }
+            return new GainTable(integratedLoudness, targetLoudness, intervalMs, gains);
+        } finally {
+            in.close();
+        }
+    }
+
+}
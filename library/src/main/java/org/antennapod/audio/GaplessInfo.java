@@ -0,0 +1,275 @@
+package org.antennapod.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Encoder delay and padding of an MP3 or MP4/AAC file: the number of frames the decoder
+ * produces before the actual audio starts, and where the actual audio ends. MP3 files carry
+ * them in the LAME extension of the Xing/Info header, MP4 files in the iTunSMPB metadata
+ * entry. Frame numbers count decoded frames from the start of the file.
+ */
+class GaplessInfo {
+
+    // Frames the MP3 decoder itself adds in front of the encoder delay
+    private static final int MP3_DECODER_DELAY = 529;
+    // Bytes read from the start of an MP3 file when looking for its first frame
+    private static final int MP3_SEARCH_LENGTH = 8192;
+    // Bytes read from an MP4 metadata entry at most
+    private static final int MP4_MAX_VALUE_LENGTH = 1024;
+
+    private final long mStartFrame;
+    private final long mEndFrame;
+
+    GaplessInfo(long startFrame, long endFrame) {
+        mStartFrame = startFrame;
+        mEndFrame = endFrame;
+    }
+
+    /**
+     * @return The first frame of actual audio
+     */
+    long getStartFrame() {
+        return mStartFrame;
+    }
+
+    /**
+     * @return The frame after the last frame of actual audio, or -1 if unknown
+     */
+    long getEndFrame() {
+        return mEndFrame;
+    }
+
+    /**
+     * Reads the encoder delay and padding of an MP3 or MP4 file.
+     *
+     * @return The gapless info, or null if the file has none or is of another type
+     */
+    static GaplessInfo read(FileChannel channel) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(MP3_SEARCH_LENGTH);
+        readFully(channel, head, 0);
+        head.flip();
+        if (head.remaining() >= 8 && head.getInt(4) == fourCc("ftyp")) {
+            return readMp4(channel);
+        }
+        return readMp3(channel, head);
+    }
+
+    // MP3
+
+    private static GaplessInfo readMp3(FileChannel channel, ByteBuffer head) throws IOException {
+        long offset = 0;
+        if (head.remaining() >= 10 && head.get(0) == 'I' && head.get(1) == 'D' && head.get(2) == '3') {
+            // Skip the ID3v2 tag, its size is a 28 bit "syncsafe" integer
+            int size = (head.get(6) & 0x7F) << 21 | (head.get(7) & 0x7F) << 14
+                    | (head.get(8) & 0x7F) << 7 | (head.get(9) & 0x7F);
+            offset = 10 + size + ((head.get(5) & 0x10) != 0 ? 10 : 0);
+            head.clear();
+            readFully(channel, head, offset);
+            head.flip();
+        }
+        // Skip anything between the tag and the first frame
+        while (head.remaining() >= 2
+                && ((head.get(head.position()) & 0xFF) != 0xFF || (head.get(head.position() + 1) & 0xE0) != 0xE0)) {
+            head.get();
+        }
+        return parseMp3Frame(head);
+    }
+
+    /**
+     * Parses the first MPEG audio frame in <code>frame</code>, which must start at the frame
+     * header.
+     *
+     * @return The gapless info of its LAME extension, or null if there is none
+     */
+    static GaplessInfo parseMp3Frame(ByteBuffer frame) {
+        frame.order(ByteOrder.BIG_ENDIAN);
+        if (frame.remaining() < 4) {
+            return null;
+        }
+        int header = frame.getInt(frame.position());
+        if ((header & 0xFFE00000) != 0xFFE00000 || ((header >> 17) & 3) != 1) {
+            // No frame sync, or not layer III
+            return null;
+        }
+        boolean mpeg1 = ((header >> 19) & 3) == 3;
+        boolean mono = ((header >> 6) & 3) == 3;
+        int samplesPerFrame = mpeg1 ? 1152 : 576;
+        // The Xing header follows the side information
+        int xing = frame.position() + 4 + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+        if (frame.limit() < xing + 8) {
+            return null;
+        }
+        int tag = frame.getInt(xing);
+        if (tag != fourCc("Xing") && tag != fourCc("Info")) {
+            return null;
+        }
+        int flags = frame.getInt(xing + 4);
+        int position = xing + 8;
+        long frameCount = -1;
+        if ((flags & 1) != 0) {
+            if (frame.limit() < position + 4) {
+                return null;
+            }
+            frameCount = frame.getInt(position) & 0xFFFFFFFFL;
+            position += 4;
+        }
+        if ((flags & 2) != 0) {
+            position += 4;
+        }
+        if ((flags & 4) != 0) {
+            position += 100;
+        }
+        if ((flags & 8) != 0) {
+            position += 4;
+        }
+        // The LAME extension starts with a 9 character encoder name, the delay and padding
+        // are two 12 bit numbers 21 bytes into it
+        if (frame.limit() < position + 24) {
+            return null;
+        }
+        int encoder = frame.getInt(position);
+        if (encoder != fourCc("LAME") && encoder != fourCc("Lavf")
+                && encoder != fourCc("Lavc")) {
+            return null;
+        }
+        int delayAndPadding = (frame.get(position + 21) & 0xFF) << 16
+                | (frame.get(position + 22) & 0xFF) << 8 | (frame.get(position + 23) & 0xFF);
+        int delay = delayAndPadding >> 12;
+        int padding = delayAndPadding & 0xFFF;
+        if (delay == 0 && padding == 0) {
+            return null;
+        }
+        long start = delay + MP3_DECODER_DELAY;
+        long end = -1;
+        if (frameCount > 0) {
+            end = frameCount * samplesPerFrame - delay - padding + start;
+        }
+        return new GaplessInfo(start, end);
+    }
+
+    // MP4
+
+    private static GaplessInfo readMp4(FileChannel channel) throws IOException {
+        // moov/udta/meta/ilst/----, where the "----" entry with name "iTunSMPB" has the value
+        long[] range = {0, channel.size()};
+        String[] path = {"moov", "udta", "meta", "ilst"};
+        for (String box : path) {
+            range = findBox(channel, range[0], range[1], box);
+            if (range == null) {
+                return null;
+            }
+            if (box.equals("meta")) {
+                // meta is a full box, with version and flags before its children
+                range[0] += 4;
+            }
+        }
+        long position = range[0];
+        long end = range[1];
+        long[] entry;
+        while ((entry = findBox(channel, position, end, "----")) != null) {
+            String value = readSmpbEntry(channel, entry[0], entry[1]);
+            if (value != null) {
+                return parseSmpb(value);
+            }
+            position = entry[1];
+        }
+        return null;
+    }
+
+    // Returns the start of the content and the end of the first box of the type in the range,
+    // or null if there is none
+    private static long[] findBox(FileChannel channel, long start, long end, String type)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(16);
+        long position = start;
+        while (position + 8 <= end) {
+            header.clear();
+            readFully(channel, header, position);
+            if (header.position() < 8) {
+                return null;
+            }
+            long size = header.getInt(0) & 0xFFFFFFFFL;
+            int headerLength = 8;
+            if (size == 1) {
+                if (header.position() < 16) {
+                    return null;
+                }
+                size = header.getLong(8);
+                headerLength = 16;
+            } else if (size == 0) {
+                size = end - position;
+            }
+            if (size < headerLength) {
+                return null;
+            }
+            // A corrupt 64 bit size must not overflow the position
+            size = Math.min(size, end - position);
+            if (header.getInt(4) == fourCc(type)) {
+                return new long[]{position + headerLength, position + size};
+            }
+            position += size;
+        }
+        return null;
+    }
+
+    // Returns the value of a "----" entry if its name is iTunSMPB
+    private static String readSmpbEntry(FileChannel channel, long start, long end) throws IOException {
+        long[] name = findBox(channel, start, end, "name");
+        long[] data = findBox(channel, start, end, "data");
+        if (name == null || data == null) {
+            return null;
+        }
+        // Both have version and flags in front, data also a locale
+        if (!"iTunSMPB".equals(readString(channel, name[0] + 4, name[1]))) {
+            return null;
+        }
+        return readString(channel, data[0] + 8, data[1]);
+    }
+
+    private static String readString(FileChannel channel, long start, long end) throws IOException {
+        int length = (int) Math.max(0, Math.min(end - start, MP4_MAX_VALUE_LENGTH));
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer, start);
+        return new String(buffer.array(), 0, buffer.position(), Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Parses an iTunSMPB value, hexadecimal numbers of which the second is the encoder delay,
+     * the third the padding and the fourth the number of frames of actual audio.
+     *
+     * @return The gapless info, or null if the value could not be parsed
+     */
+    static GaplessInfo parseSmpb(String value) {
+        String[] fields = value.trim().split("\\s+");
+        if (fields.length < 4) {
+            return null;
+        }
+        try {
+            long delay = Long.parseLong(fields[1], 16);
+            long frames = Long.parseLong(fields[3], 16);
+            if (delay == 0 && frames == 0) {
+                return null;
+            }
+            return new GaplessInfo(delay, frames > 0 ? delay + frames : -1);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+    }
+
+    private static int fourCc(String id) {
+        return id.charAt(0) << 24 | id.charAt(1) << 16 | id.charAt(2) << 8 | id.charAt(3);
+    }
+
+}
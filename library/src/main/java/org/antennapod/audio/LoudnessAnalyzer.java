@@ -0,0 +1,260 @@
+package org.antennapod.audio;
+
+import java.util.Arrays;
+
+/**
+ * Measures the loudness of an episode the way ITU-R BS.1770 / EBU R128 do: the samples are
+ * K-weighted, their mean square is taken over 400 ms blocks, and the integrated loudness is
+ * the gated average of those blocks. Besides that it keeps the short-term loudness and the
+ * sample peak of every second, from which {@link #createGainTable(float)} derives a gain
+ * envelope. Memory use grows by a few bytes per 100 ms of audio. Runs as part of an
+ * {@link AnalysisPass}, see {@link EpisodeAnalysis#getGainTable}.
+ */
+public class LoudnessAnalyzer implements AnalysisPass.Analyzer {
+
+    // Length of the sub-blocks energies are collected in; gating blocks are four of them
+    private static final int SUB_BLOCK_MS = 100;
+    private static final int GATING_SUB_BLOCKS = 4;
+    // Short-term loudness is measured over 3 s
+    private static final int SHORT_TERM_SUB_BLOCKS = 30;
+    // Gain table entries are one second apart
+    private static final int INTERVAL_SUB_BLOCKS = 10;
+    private static final double ABSOLUTE_GATE = -70.0;
+    private static final double RELATIVE_GATE = -10.0;
+    // Short-term deviations from the integrated loudness are corrected by this share, and
+    // not at all below the gate, so pauses are not pulled up
+    private static final double SHORT_TERM_CORRECTION = 0.5;
+    private static final double SHORT_TERM_GATE = -50.0;
+    private static final double MAX_SHORT_TERM_CORRECTION = 6.0;
+    private static final double MIN_GAIN = -20.0;
+    private static final double MAX_GAIN = 12.0;
+    // Largest gain change between neighbouring entries, in dB
+    private static final double MAX_GAIN_STEP = 2.0;
+
+    private int mSampleRate;
+    private int mChannels;
+    private int mSubBlockFrames;
+    // Per channel: two biquads with two state variables each
+    private double[] mState = new double[0];
+    private double[] mShelf;
+    private double[] mHighPass;
+
+    private double mEnergy;
+    private int mFrames;
+    private float mPeak;
+    private float[] mSubBlocks = new float[1024];
+    private float[] mPeaks = new float[128];
+    private int mNumSubBlocks;
+
+    public LoudnessAnalyzer() {
+    }
+
+    public LoudnessAnalyzer(int sampleRate, int channels) {
+        configure(sampleRate, channels);
+    }
+
+    @Override
+    public void configure(int sampleRate, int channels) {
+        // A codec may change the rate once it decoded the first frames, e.g. for HE-AAC. The
+        // blocks keep their length then, only the filters follow the new rate.
+        if (mNumSubBlocks == 0 && mFrames == 0) {
+            mSubBlockFrames = Math.max(1, sampleRate * SUB_BLOCK_MS / 1000);
+        }
+        mSampleRate = sampleRate;
+        if (channels != mChannels) {
+            mState = new double[channels * 4];
+        }
+        mChannels = channels;
+
+        // Pre-filter, a high shelf of +4 dB above 1.5 kHz
+        double k = Math.tan(Math.PI * 1681.974450955533 / sampleRate);
+        double q = 0.7071752369554196;
+        double vh = Math.pow(10.0, 3.999843853973347 / 20.0);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1.0 + k / q + k * k;
+        mShelf = new double[]{
+                (vh + vb * k / q + k * k) / a0,
+                2.0 * (k * k - vh) / a0,
+                (vh - vb * k / q + k * k) / a0,
+                2.0 * (k * k - 1.0) / a0,
+                (1.0 - k / q + k * k) / a0,
+        };
+        // RLB weighting, a high pass at 38 Hz
+        k = Math.tan(Math.PI * 38.13547087602444 / sampleRate);
+        q = 0.5003270373238773;
+        a0 = 1.0 + k / q + k * k;
+        mHighPass = new double[]{
+                1.0,
+                -2.0,
+                1.0,
+                2.0 * (k * k - 1.0) / a0,
+                (1.0 - k / q + k * k) / a0,
+        };
+    }
+
+    public int getSampleRate() {
+        return mSampleRate;
+    }
+
+    public int getChannels() {
+        return mChannels;
+    }
+
+    /**
+     * @return Duration of the audio analysed so far, in milliseconds
+     */
+    public long getDurationMs() {
+        return (long) mNumSubBlocks * SUB_BLOCK_MS;
+    }
+
+    @Override
+    public void process(short[] samples, int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            for (int channel = 0; channel < mChannels; channel++) {
+                addSample(channel, samples[frame * mChannels + channel] / 32768.0f);
+            }
+            endFrame();
+        }
+    }
+
+    @Override
+    public void process(float[] samples, int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            for (int channel = 0; channel < mChannels; channel++) {
+                addSample(channel, samples[frame * mChannels + channel]);
+            }
+            endFrame();
+        }
+    }
+
+    private void addSample(int channel, float sample) {
+        float magnitude = Math.abs(sample);
+        if (magnitude > mPeak) {
+            mPeak = magnitude;
+        }
+        double[] state = mState;
+        int s = channel * 4;
+        // Both biquads in transposed direct form II
+        double x = sample;
+        double y = mShelf[0] * x + state[s];
+        state[s] = mShelf[1] * x - mShelf[3] * y + state[s + 1];
+        state[s + 1] = mShelf[2] * x - mShelf[4] * y;
+        x = y;
+        y = x + state[s + 2];
+        state[s + 2] = -2.0 * x - mHighPass[3] * y + state[s + 3];
+        state[s + 3] = x - mHighPass[4] * y;
+        mEnergy += y * y;
+    }
+
+    private void endFrame() {
+        if (++mFrames < mSubBlockFrames) {
+            return;
+        }
+        if (mNumSubBlocks == mSubBlocks.length) {
+            mSubBlocks = Arrays.copyOf(mSubBlocks, mNumSubBlocks * 2);
+        }
+        mSubBlocks[mNumSubBlocks] = (float) (mEnergy / mFrames);
+        int interval = mNumSubBlocks / INTERVAL_SUB_BLOCKS;
+        if (interval == mPeaks.length) {
+            mPeaks = Arrays.copyOf(mPeaks, interval * 2);
+        }
+        mPeaks[interval] = Math.max(mPeaks[interval], mPeak);
+        mNumSubBlocks++;
+        mEnergy = 0.0;
+        mFrames = 0;
+        mPeak = 0.0f;
+    }
+
+    private static double loudness(double meanSquare) {
+        return -0.691 + 10.0 * Math.log10(meanSquare);
+    }
+
+    // Mean square of the count sub-blocks from start on
+    private double meanSquare(int start, int count) {
+        double sum = 0.0;
+        for (int i = start; i < start + count; i++) {
+            sum += mSubBlocks[i];
+        }
+        return sum / count;
+    }
+
+    /**
+     * @return The gated integrated loudness in LUFS, or negative infinity if nothing was
+     * loud enough to pass the absolute gate
+     */
+    public double getIntegratedLoudness() {
+        int numBlocks = mNumSubBlocks - GATING_SUB_BLOCKS + 1;
+        if (numBlocks <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double[] blocks = new double[numBlocks];
+        double sum = 0.0;
+        int count = 0;
+        for (int i = 0; i < numBlocks; i++) {
+            blocks[i] = meanSquare(i, GATING_SUB_BLOCKS);
+            if (loudness(blocks[i]) > ABSOLUTE_GATE) {
+                sum += blocks[i];
+                count++;
+            }
+        }
+        if (count == 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        double gate = loudness(sum / count) + RELATIVE_GATE;
+        sum = 0.0;
+        count = 0;
+        for (double block : blocks) {
+            double blockLoudness = loudness(block);
+            if (blockLoudness > ABSOLUTE_GATE && blockLoudness > gate) {
+                sum += block;
+                count++;
+            }
+        }
+        return loudness(sum / count);
+    }
+
+    /**
+     * Derives a gain for every second analysed, which brings the integrated loudness to
+     * <code>targetLoudness</code> and evens out part of the short-term variation. The gain
+     * never lifts a second's peak above full scale, and changes by at most 2 dB per second.
+     *
+     * @param targetLoudness Loudness to normalise to, in LUFS; -16 suits speech on mobile
+     *                       devices
+     */
+    public GainTable createGainTable(float targetLoudness) {
+        double integrated = getIntegratedLoudness();
+        int numIntervals = (mNumSubBlocks + INTERVAL_SUB_BLOCKS - 1) / INTERVAL_SUB_BLOCKS;
+        double[] gains = new double[numIntervals];
+        double base = Double.isInfinite(integrated) ? 0.0 : targetLoudness - integrated;
+        for (int i = 0; i < numIntervals; i++) {
+            int center = i * INTERVAL_SUB_BLOCKS + INTERVAL_SUB_BLOCKS / 2;
+            int start = Math.max(0, center - SHORT_TERM_SUB_BLOCKS / 2);
+            int end = Math.min(mNumSubBlocks, start + SHORT_TERM_SUB_BLOCKS);
+            double shortTerm = loudness(meanSquare(start, end - start));
+            double correction = 0.0;
+            if (shortTerm > SHORT_TERM_GATE && !Double.isInfinite(integrated)) {
+                correction = Math.max(-MAX_SHORT_TERM_CORRECTION, Math.min(MAX_SHORT_TERM_CORRECTION,
+                        (integrated - shortTerm) * SHORT_TERM_CORRECTION));
+            }
+            double gain = Math.max(MIN_GAIN, Math.min(MAX_GAIN, base + correction));
+            if (mPeaks[i] > 0.0f) {
+                gain = Math.min(gain, -20.0 * Math.log10(mPeaks[i]));
+            }
+            gains[i] = gain;
+        }
+        // Lower gains spread to their neighbours, so the peak limit holds while the gain moves
+        for (int i = 1; i < numIntervals; i++) {
+            gains[i] = Math.min(gains[i], gains[i - 1] + MAX_GAIN_STEP);
+        }
+        for (int i = numIntervals - 2; i >= 0; i--) {
+            gains[i] = Math.min(gains[i], gains[i + 1] + MAX_GAIN_STEP);
+        }
+        short[] table = new short[numIntervals];
+        for (int i = 0; i < numIntervals; i++) {
+            table[i] = (short) Math.round(gains[i] * 100.0);
+        }
+        return new GainTable((float) integrated, targetLoudness,
+                INTERVAL_SUB_BLOCKS * SUB_BLOCK_MS, table);
+    }
+
+}
@@ -26,7 +26,6 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Message;
-import android.util.Log;
 
 import java.io.IOException;
 import java.util.List;
@@ -127,10 +126,10 @@ public class MediaPlayer {
                 Intent intent = new Intent();
                 intent.setComponent(new ComponentName(first.serviceInfo.packageName,
                         first.serviceInfo.name));
-                Log.i(TAG, "Returning intent:" + intent.toString());
+                PlayerLog.i(TAG, "Returning intent:%s", intent);
                 return intent;
             } else {
-                Log.e(TAG, "Found service that accepts " + action + ", but serviceInfo was null");
+                PlayerLog.e(TAG, "Found service that accepts %s, but serviceInfo was null", action);
                 return null;
             }
         } else {
@@ -228,11 +227,10 @@ public class MediaPlayer {
                                                       boolean pitchAdjustmentAvailable) {
             lock.lock();
             try {
-                Log.d(MP_TAG, "onPitchAdjustmentAvailableChangedListener.onPitchAdjustmentAvailableChanged being called");
+                PlayerLog.d(MP_TAG, "onPitchAdjustmentAvailableChangedListener.onPitchAdjustmentAvailableChanged being called");
                 if (MediaPlayer.this.pitchAdjustmentAvailable != pitchAdjustmentAvailable) {
-                    Log.d(MP_TAG, "Pitch adjustment state has changed from "
-                            + MediaPlayer.this.pitchAdjustmentAvailable
-                            + " to " + pitchAdjustmentAvailable);
+                    PlayerLog.d(MP_TAG, "Pitch adjustment state has changed from %s to %s",
+                            MediaPlayer.this.pitchAdjustmentAvailable, pitchAdjustmentAvailable);
                     MediaPlayer.this.pitchAdjustmentAvailable = pitchAdjustmentAvailable;
                     if (MediaPlayer.this.pitchAdjustmentAvailableChangedListener != null) {
                         MediaPlayer.this.pitchAdjustmentAvailableChangedListener
@@ -248,13 +246,13 @@ public class MediaPlayer {
 
     final MediaPlayer.OnPreparedListener onPreparedListener = new MediaPlayer.OnPreparedListener() {
         public void onPrepared(MediaPlayer arg0) {
-            Log.d(MP_TAG, "onPreparedListener 242 setting state to PREPARED");
+            PlayerLog.d(MP_TAG, "onPreparedListener 242 setting state to PREPARED");
             MediaPlayer.this.state = State.PREPARED;
             if (MediaPlayer.this.preparedListener != null) {
-                Log.d(MP_TAG, "Calling preparedListener");
+                PlayerLog.d(MP_TAG, "Calling preparedListener");
                 MediaPlayer.this.preparedListener.onPrepared(arg0);
             }
-            Log.d(MP_TAG, "Wrap up onPreparedListener");
+            PlayerLog.d(MP_TAG, "Wrap up onPreparedListener");
         }
     };
 
@@ -269,11 +267,10 @@ public class MediaPlayer {
                                                       boolean speedAdjustmentAvailable) {
             lock.lock();
             try {
-                Log.d(MP_TAG, "onSpeedAdjustmentAvailableChangedListener.onSpeedAdjustmentAvailableChanged being called");
+                PlayerLog.d(MP_TAG, "onSpeedAdjustmentAvailableChangedListener.onSpeedAdjustmentAvailableChanged being called");
                 if (MediaPlayer.this.speedAdjustmentAvailable != speedAdjustmentAvailable) {
-                    Log.d(MP_TAG, "Speed adjustment state has changed from "
-                            + MediaPlayer.this.speedAdjustmentAvailable
-                            + " to " + speedAdjustmentAvailable);
+                    PlayerLog.d(MP_TAG, "Speed adjustment state has changed from %s to %s",
+                            MediaPlayer.this.speedAdjustmentAvailable, speedAdjustmentAvailable);
                     MediaPlayer.this.speedAdjustmentAvailable = speedAdjustmentAvailable;
                     if (MediaPlayer.this.speedAdjustmentAvailableChangedListener != null) {
                         MediaPlayer.this.speedAdjustmentAvailableChangedListener
@@ -300,11 +297,13 @@ public class MediaPlayer {
         if (Build.VERSION.SDK_INT >= 16) {
             this.smp = new SonicAudioPlayer(this, context, userAgent);
             this.smp.setDownMix(downmix());
+            this.smp.setNormalizeLoudness(normalizeLoudness());
+            this.smp.setSkipSilence(skipSilence());
         }
 
         // setupMpi will go get the Service, if it can, then bring that
         // implementation into sync
-        Log.d(MP_TAG, "setupMpi");
+        PlayerLog.d(MP_TAG, "setupMpi");
         setupMpi(context);
     }
 
@@ -316,6 +315,22 @@ public class MediaPlayer {
         return false;
     }
 
+    /**
+     * Whether the Sonic player normalises the loudness of local files, with the gain tables
+     * {@link EpisodeAnalysis#getGainTable} made for them before.
+     */
+    protected boolean normalizeLoudness() {
+        return false;
+    }
+
+    /**
+     * Whether the Sonic player skips the silences of local files, as far as
+     * {@link EpisodeAnalysis#getSilenceMap} found them before.
+     */
+    protected boolean skipSilence() {
+        return false;
+    }
+
     private boolean invalidServiceConnectionConfiguration() {
         if (smp != null) {
             boolean usingSonic = this.mpi instanceof SonicAudioPlayer;
@@ -328,24 +343,24 @@ public class MediaPlayer {
                 // In this case, the Presto library has been installed
                 // or something while playing sound
                 // We could be using the service, but we're not
-                Log.d(MP_TAG, "We could be using the service, but we're not");
+                PlayerLog.d(MP_TAG, "We could be using the service, but we're not");
                 return true;
             }
             // If useService is false, then we shouldn't be using the SBMP
             // If the Presto library isn't installed, ditto
-            Log.d(MP_TAG, "this.mpi is not a ServiceBackedMediaPlayer, but we couldn't use it anyway");
+            PlayerLog.d(MP_TAG, "this.mpi is not a ServiceBackedMediaPlayer, but we couldn't use it anyway");
             return false;
         } else {
             if (BuildConfig.DEBUG && !(this.mpi instanceof ServiceBackedAudioPlayer))
                 throw new AssertionError();
             if (this.useService && isPrestoLibraryInstalled()) {
                 // We should be using the service, and we are. Great!
-                Log.d(MP_TAG, "We could be using a ServiceBackedMediaPlayer and we are");
+                PlayerLog.d(MP_TAG, "We could be using a ServiceBackedMediaPlayer and we are");
                 return false;
             }
             // We're trying to use the service when we shouldn't,
             // that's an invalid configuration
-            Log.d(MP_TAG, "We're trying to use a ServiceBackedMediaPlayer but we shouldn't be");
+            PlayerLog.d(MP_TAG, "We're trying to use a ServiceBackedMediaPlayer but we shouldn't be");
             return true;
         }
     }
@@ -367,26 +382,30 @@ public class MediaPlayer {
 
     private void setupMpi(final Context context) {
         lock.lock();
+        PlaybackTrace.Tracer tracer = PlaybackTrace.getTracer();
+        if (tracer != null) {
+            tracer.beginSection("setupMpi");
+        }
         try {
-            Log.d(MP_TAG, "setupMpi");
+            PlayerLog.d(MP_TAG, "setupMpi");
             // Check if the client wants to use the service at all,
             // then if we're already using the right kind of media player
             if (useSonic() && this.smp != null) {
                 if (mpi != null && mpi instanceof SonicAudioPlayer) {
-                    Log.d(MP_TAG, "Already using SonicMediaPlayer");
+                    PlayerLog.d(MP_TAG, "Already using SonicMediaPlayer");
                     return;
                 } else {
-                    Log.d(MP_TAG, "Switching to SonicMediaPlayer");
+                    PlayerLog.d(MP_TAG, "Switching to SonicMediaPlayer");
                     switchMediaPlayerImpl(mpi, smp);
                     return;
                 }
             } else if (this.useService && isPrestoLibraryInstalled()) {
                 if (mpi != null && mpi instanceof ServiceBackedAudioPlayer) {
-                    Log.d(MP_TAG, "Already using ServiceBackedMediaPlayer");
+                    PlayerLog.d(MP_TAG, "Already using ServiceBackedMediaPlayer");
                     return;
                 }
                 if (this.sbmp == null) {
-                    Log.d(MP_TAG, "Instantiating new ServiceBackedMediaPlayer");
+                    PlayerLog.d(MP_TAG, "Instantiating new ServiceBackedMediaPlayer");
                     this.sbmp = new ServiceBackedAudioPlayer(this, context,
                             new ServiceConnection() {
                                 public void onServiceConnected(ComponentName className, final IBinder service) {
@@ -396,10 +415,10 @@ public class MediaPlayer {
                                             // This lock probably isn't granular
                                             // enough
                                             MediaPlayer.this.lock.lock();
-                                            Log.d(MP_TAG, "onServiceConnected");
+                                            PlayerLog.d(MP_TAG, "onServiceConnected");
                                             try {
                                                 switchMediaPlayerImpl(mpi, sbmp);
-                                                Log.d(MP_TAG, "End onServiceConnected");
+                                                PlayerLog.d(MP_TAG, "End onServiceConnected");
                                             } finally {
                                                 MediaPlayer.this.lock.unlock();
                                             }
@@ -461,29 +480,36 @@ public class MediaPlayer {
                                 }
                             }, userAgent);
                 }
-                Log.d(MP_TAG, "Switching to ServiceBackedMediaPlayer");
+                PlayerLog.d(MP_TAG, "Switching to ServiceBackedMediaPlayer");
                 switchMediaPlayerImpl(mpi, sbmp);
             } else {
                 if (this.mpi != null && this.mpi instanceof AndroidAudioPlayer) {
-                    Log.d(MP_TAG, "Already using AndroidMediaPlayer");
+                    PlayerLog.d(MP_TAG, "Already using AndroidMediaPlayer");
                     return;
                 }
                 if (this.amp == null) {
-                    Log.d(MP_TAG, "Instantiating new AndroidMediaPlayer (this should be impossible)");
+                    PlayerLog.d(MP_TAG, "Instantiating new AndroidMediaPlayer (this should be impossible)");
                     this.amp = new AndroidAudioPlayer(this, context, userAgent);
                 }
                 switchMediaPlayerImpl(mpi, this.amp);
             }
         } finally {
+            if (tracer != null) {
+                tracer.endSection();
+            }
             lock.unlock();
         }
     }
 
     private void switchMediaPlayerImpl(AbstractAudioPlayer from, AbstractAudioPlayer to) {
-        Log.d(TAG, "switchMediaPlayerImpl() called with: " + "from = [" + from + "], to = [" + to + "]");
+        PlayerLog.d(TAG, "switchMediaPlayerImpl() called with: from = [%s], to = [%s]", from, to);
         lock.lock();
+        PlaybackTrace.Tracer tracer = PlaybackTrace.getTracer();
+        if (tracer != null) {
+            tracer.beginSection("switchMediaPlayerImpl");
+        }
         try {
-            Log.d(MP_TAG, "switchMediaPlayerImpl");
+            PlayerLog.d(MP_TAG, "switchMediaPlayerImpl");
             if (from == to
                     // Same object, nothing to synchronize
                     || to == null
@@ -499,7 +525,7 @@ public class MediaPlayer {
             // Extract all that we can from the existing implementation
             // and copy it to the new implementation
 
-            Log.d(MP_TAG, "switchMediaPlayerImpl(), current state is " + this.state.toString());
+            PlayerLog.d(MP_TAG, "switchMediaPlayerImpl(), current state is %s", this.state);
 
             to.reset();
 
@@ -511,27 +537,27 @@ public class MediaPlayer {
             // none of them require prepare() or the like first
             to.setAudioStreamType(this.mAudioStreamType);
             to.setLooping(this.mIsLooping);
-            Log.d(MP_TAG, "Setting playback speed to " + this.mSpeedMultiplier);
+            PlayerLog.d(MP_TAG, "Setting playback speed to %s", this.mSpeedMultiplier);
             to.setVolume(MediaPlayer.this.mLeftVolume, MediaPlayer.this.mRightVolume);
             to.setWakeMode(this.mContext, this.mWakeMode);
 
-            Log.d(MP_TAG, "asserting at least one data source is null");
+            PlayerLog.d(MP_TAG, "asserting at least one data source is null");
             assert ((MediaPlayer.this.stringDataSource == null) || (MediaPlayer.this.uriDataSource == null));
 
             if (uriDataSource != null) {
-                Log.d(MP_TAG, "switchMediaPlayerImpl(): uriDataSource != null");
+                PlayerLog.d(MP_TAG, "switchMediaPlayerImpl(): uriDataSource != null");
                 try {
                     to.setDataSource(this.mContext, uriDataSource);
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    PlayerLog.w(MP_TAG, e);
                 }
             }
             if (stringDataSource != null) {
-                Log.d(MP_TAG, "switchMediaPlayerImpl(): stringDataSource != null");
+                PlayerLog.d(MP_TAG, "switchMediaPlayerImpl(): stringDataSource != null");
                 try {
                     to.setDataSource(stringDataSource);
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    PlayerLog.w(MP_TAG, e);
                 }
             }
 
@@ -545,14 +571,14 @@ public class MediaPlayer {
                     || (this.state == State.STOPPED)
                     || (this.state == State.STARTED)
                     || (this.state == State.PLAYBACK_COMPLETED)) {
-                Log.d(MP_TAG, "switchMediaPlayerImpl(): prepare and seek");
+                PlayerLog.d(MP_TAG, "switchMediaPlayerImpl(): prepare and seek");
                 // Use prepare here instead of prepareAsync so that
                 // we wait for it to be ready before we try to use it
                 try {
                     to.muteNextOnPrepare();
                     to.prepare();
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    PlayerLog.w(MP_TAG, e);
                 }
 
                 int seekPos = 0;
@@ -576,20 +602,20 @@ public class MediaPlayer {
             }
             if (this.state == State.STARTED || this.state == State.PAUSED ||
                     this.state == State.STOPPED) {
-                Log.d(MP_TAG, "switchMediaPlayerImpl(): start");
+                PlayerLog.d(MP_TAG, "switchMediaPlayerImpl(): start");
                 to.start();
             }
 
             if (this.state == State.PAUSED) {
-                Log.d(MP_TAG, "switchMediaPlayerImpl(): paused");
+                PlayerLog.d(MP_TAG, "switchMediaPlayerImpl(): paused");
                 to.pause();
             } else if (this.state == State.STOPPED) {
-                Log.d(MP_TAG, "switchMediaPlayerImpl(): stopped");
+                PlayerLog.d(MP_TAG, "switchMediaPlayerImpl(): stopped");
                 to.stop();
             }
 
             this.mpi = to;
-            Log.d(TAG, "Switched to " + to.getClass().toString());
+            PlayerLog.d(TAG, "Switched to %s", to.getClass());
 
             // Cheating here by relying on the side effect in
             // on(Pitch|Speed)AdjustmentAvailableChanged
@@ -603,8 +629,11 @@ public class MediaPlayer {
                 this.onSpeedAdjustmentAvailableChangedListener.onSpeedAdjustmentAvailableChanged(
                         this, to.canSetSpeed());
             }
-            Log.d(MP_TAG, "switchMediaPlayerImpl() " + this.state.toString());
+            PlayerLog.d(MP_TAG, "switchMediaPlayerImpl() %s", this.state);
         } finally {
+            if (tracer != null) {
+                tracer.endSection();
+            }
             lock.unlock();
         }
     }
@@ -649,7 +678,7 @@ public class MediaPlayer {
     protected void finalize() throws Throwable {
         lock.lock();
         try {
-            Log.d(MP_TAG, "finalize()");
+            PlayerLog.d(MP_TAG, "finalize()");
             this.release();
         } finally {
             lock.unlock();
@@ -854,13 +883,13 @@ public class MediaPlayer {
     public void prepare() throws IllegalStateException, IOException {
         lock.lock();
         try {
-            Log.d(MP_TAG, "prepare() using " + ((this.mpi == null) ? "null (this shouldn't happen)" : this.mpi.getClass().toString()) + " state " + this.state.toString());
-            Log.d(MP_TAG, "onPreparedListener is: " + ((this.onPreparedListener == null) ? "null" : "non-null"));
-            Log.d(MP_TAG, "preparedListener is: " + ((this.preparedListener == null) ? "null" : "non-null"));
+            PlayerLog.d(MP_TAG, "prepare() using %s state %s", (this.mpi == null) ? "null (this shouldn't happen)" : this.mpi.getClass(), this.state);
+            PlayerLog.d(MP_TAG, "onPreparedListener is: %s", (this.onPreparedListener == null) ? "null" : "non-null");
+            PlayerLog.d(MP_TAG, "preparedListener is: %s", (this.preparedListener == null) ? "null" : "non-null");
             checkMpi();
             this.mpi.prepare();
             this.state = State.PREPARED;
-            Log.d(MP_TAG, "prepare() finished");
+            PlayerLog.d(MP_TAG, "prepare() finished");
         } finally {
             lock.unlock();
         }
@@ -873,7 +902,7 @@ public class MediaPlayer {
     public void prepareAsync() {
         lock.lock();
         try {
-            Log.d(MP_TAG, "prepareAsync()");
+            PlayerLog.d(MP_TAG, "prepareAsync()");
             checkMpi();
             this.state = State.PREPARING;
             this.mpi.prepareAsync();
@@ -889,7 +918,7 @@ public class MediaPlayer {
     public void release() {
         lock.lock();
         try {
-            Log.d(MP_TAG, "Releasing MediaPlayer");
+            PlayerLog.d(MP_TAG, "Releasing MediaPlayer");
 
             this.state = State.END;
             if (this.amp != null) {
@@ -906,7 +935,7 @@ public class MediaPlayer {
             this.preparedListener = null;
             this.onPitchAdjustmentAvailableChangedListener = null;
             this.pitchAdjustmentAvailableChangedListener = null;
-            Log.d(MP_TAG, "Setting onSeekCompleteListener to null 871");
+            PlayerLog.d(MP_TAG, "Setting onSeekCompleteListener to null 871");
             this.onSeekCompleteListener = null;
             this.onSpeedAdjustmentAvailableChangedListener = null;
             this.speedAdjustmentAvailableChangedListener = null;
@@ -966,7 +995,7 @@ public class MediaPlayer {
             throws IllegalArgumentException, IllegalStateException, IOException {
         lock.lock();
         try {
-            Log.d(MP_TAG, "In setDataSource(context, " + uri.toString() + "), using " + this.mpi.getClass().toString());
+            PlayerLog.d(MP_TAG, "In setDataSource(context, %s), using %s", uri, this.mpi.getClass());
             checkMpi();
             this.state = State.INITIALIZED;
             this.stringDataSource = null;
@@ -985,7 +1014,7 @@ public class MediaPlayer {
             IllegalStateException, IOException {
         lock.lock();
         try {
-            Log.d(MP_TAG, "In setDataSource(context, " + path + ")");
+            PlayerLog.d(MP_TAG, "In setDataSource(context, %s)", path);
             checkMpi();
             this.state = State.INITIALIZED;
             this.stringDataSource = path;
@@ -1081,6 +1110,116 @@ public class MediaPlayer {
         }
     }
 
+    /**
+     * Sets the processing stages audio runs through after its speed and pitch have been
+     * changed, e.g. an equalizer. Only used by the Sonic player.
+     */
+    public void setAudioProcessors(AudioProcessor... processors) {
+        if (this.smp != null) {
+            this.smp.setAudioProcessors(processors);
+        }
+    }
+
+    /**
+     * Starts or stops marking the stages of playback in system traces: preparing, seeking,
+     * switching players, and each pass of the Sonic player's decode loop, with counters of
+     * how much audio is buffered. Sections need API 18, async sections and counters API 29.
+     * Off by default. Only debug builds of the library trace; in release builds this does
+     * nothing and the markers cost nothing.
+     */
+    public static void setTracingEnabled(boolean enabled) {
+        PlaybackTrace.setTracer(enabled ? new AndroidTracer() : null);
+    }
+
+    /**
+     * Keeps the last <code>seconds</code> of decoded audio in memory, so seeking back into it,
+     * like a rewind by 10 or 30 seconds, plays at once without seeking and decoding the
+     * stream again. Costs about 10 MB per minute of 44.1 kHz stereo. 0, the default, keeps
+     * none. Only used by the Sonic player, and not for WAVE files, which are read directly.
+     */
+    public void setRewindHistorySeconds(float seconds) {
+        if (this.smp != null) {
+            this.smp.setRewindHistorySeconds(seconds);
+        }
+    }
+
+    /**
+     * Decodes ahead, on a low priority thread, the <code>windowMs</code> milliseconds of audio
+     * that start <code>skipForwardMs</code> after the position, and those at the next chapter
+     * marks, see {@link #setPrefetchChapterMarks(long[])}, so skipping ahead or jumping to the
+     * next chapter plays at once. The windows take at most <code>memoryBudgetKb</code>
+     * kilobytes together, and are dropped when memory runs low. A window of 5 seconds of
+     * 44.1 kHz stereo takes about 860 kB. A window of 0, the default, prefetches nothing. Only
+     * used by the Sonic player, and only for local files. Applies from the next file prepared.
+     */
+    public void setForwardPrefetch(int skipForwardMs, int windowMs, int memoryBudgetKb) {
+        if (this.smp != null) {
+            this.smp.setForwardPrefetch(skipForwardMs, windowMs, memoryBudgetKb);
+        }
+    }
+
+    /**
+     * @param chapterMarksMs Start positions of the chapters of the current file, to decode
+     *                       ahead if forward prefetching is on, or null for none
+     */
+    public void setPrefetchChapterMarks(long[] chapterMarksMs) {
+        if (this.smp != null) {
+            this.smp.setPrefetchChapterMarks(chapterMarksMs);
+        }
+    }
+
+    /**
+     * Makes seeks land exactly on the position asked for, e.g. to restore a bookmark or to
+     * start a chapter, instead of on the sync sample before it, which may be several hundred
+     * milliseconds earlier. The audio in between is decoded and dropped, but samples that lie
+     * well before the position are not even decoded for formats whose pre-roll is known. Off
+     * by default. Only used by the Sonic player; WAVE files always seek exactly.
+     */
+    public void setAccurateSeek(boolean accurateSeek) {
+        if (this.smp != null) {
+            this.smp.setAccurateSeek(accurateSeek);
+        }
+    }
+
+    /**
+     * Starts or stops skipping the silences of local files that were found by
+     * {@link EpisodeAnalysis#getSilenceMap} with the app's cache directory. Silences are
+     * skipped before they are read and decoded. Only used by the Sonic player, and not for
+     * WAVE files.
+     */
+    public void setSkipSilence(boolean skipSilence) {
+        if (this.smp != null) {
+            this.smp.setSkipSilence(skipSilence);
+        }
+    }
+
+    /**
+     * @return How much shorter the rest of the current episode plays when its silences are
+     * skipped, in milliseconds at normal speed. Known once the episode is prepared, whether
+     * silences are skipped or not; 0 if they were not found before.
+     */
+    public long getSilenceTimeSavedMs() {
+        return this.smp != null ? this.smp.getSilenceTimeSavedMs() : 0;
+    }
+
+    /**
+     * Starts or stops collecting metrics of the Sonic player's decode loop. Starting again
+     * starts from zero. Only used by the Sonic player.
+     */
+    public void setPlaybackMetricsEnabled(boolean enabled) {
+        if (this.smp != null) {
+            this.smp.setPlaybackMetrics(enabled ? new PlaybackMetrics() : null);
+        }
+    }
+
+    /**
+     * @return The metrics collected by the Sonic player since they were enabled, or null if
+     * they are not enabled
+     */
+    public PlaybackMetrics getPlaybackMetrics() {
+        return this.smp != null ? this.smp.getPlaybackMetrics() : null;
+    }
+
     public void setDownmix(boolean enable) {
         lock.lock();
         try {
@@ -1197,7 +1336,7 @@ public class MediaPlayer {
      */
     public void setOnPreparedListener(OnPreparedListener listener) {
         lock.lock();
-        Log.d(MP_TAG, " ++++++++++++++++++++++++++++++++++++++++++++ setOnPreparedListener");
+        PlayerLog.d(MP_TAG, " ++++++++++++++++++++++++++++++++++++++++++++ setOnPreparedListener");
         try {
             this.preparedListener = listener;
             // For this one, we do not explicitly set the MediaPlayer or the
@@ -1245,7 +1384,7 @@ public class MediaPlayer {
     public void start() {
         lock.lock();
         try {
-            Log.d(MP_TAG, "start()");
+            PlayerLog.d(MP_TAG, "start()");
             checkMpi();
             this.state = State.STARTED;
             this.mpi.start();
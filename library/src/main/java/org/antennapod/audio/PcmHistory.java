@@ -0,0 +1,146 @@
+package org.antennapod.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ring of the most recently decoded samples, in the format the decoder delivers them, so a
+ * short rewind can be played again from memory instead of seeking the extractor and decoding
+ * again. It holds one stretch of time without gaps: samples that do not continue where the
+ * previous ones ended start it anew. Positions are counted in frames from the start of the
+ * stream.
+ */
+class PcmHistory {
+
+    // Presentation times are rounded by the codec, samples this close to the end of the
+    // history still continue it
+    private static final long CONTINUITY_TOLERANCE_US = 2000;
+
+    private final int mSampleRate;
+    private final int mFrameSize;
+    private final byte[] mBuffer;
+    private final int mCapacityFrames;
+    private long mStartFrame;
+    private long mEndFrame;
+
+    /**
+     * @param frameSize Bytes per frame of all channels
+     */
+    PcmHistory(int sampleRate, int frameSize, float seconds) {
+        mSampleRate = sampleRate;
+        mFrameSize = frameSize;
+        mCapacityFrames = Math.max(1, (int) (seconds * sampleRate));
+        mBuffer = new byte[mCapacityFrames * frameSize];
+    }
+
+    int getSampleRate() {
+        return mSampleRate;
+    }
+
+    int getFrameSize() {
+        return mFrameSize;
+    }
+
+    /**
+     * @return Bytes the history takes
+     */
+    int getSize() {
+        return mBuffer.length;
+    }
+
+    synchronized void clear() {
+        mStartFrame = 0;
+        mEndFrame = 0;
+    }
+
+    long toFrame(long timeUs) {
+        return (timeUs * mSampleRate + 500000) / 1000000;
+    }
+
+    long toTimeUs(long frame) {
+        return frame * 1000000 / mSampleRate;
+    }
+
+    /**
+     * @return Whether the history holds the frame at <code>timeUs</code>
+     */
+    synchronized boolean contains(long timeUs) {
+        long frame = toFrame(timeUs);
+        return frame >= mStartFrame && frame < mEndFrame;
+    }
+
+    /**
+     * @return The position of the oldest frame
+     */
+    synchronized long getStartFrame() {
+        return mStartFrame;
+    }
+
+    /**
+     * @return The position after the newest frame
+     */
+    synchronized long getEndFrame() {
+        return mEndFrame;
+    }
+
+    /**
+     * Adds <code>size</code> bytes of whole frames at <code>offset</code> of
+     * <code>buffer</code>, the first of which is to be played at <code>timeUs</code>. Leaves
+     * position and limit of the buffer as they were.
+     */
+    synchronized void append(ByteBuffer buffer, int offset, int size, long timeUs) {
+        int frames = size / mFrameSize;
+        if (frames == 0) {
+            return;
+        }
+        long frame = toFrame(timeUs);
+        if (mEndFrame == mStartFrame
+                || Math.abs(frame - mEndFrame) > toFrame(CONTINUITY_TOLERANCE_US)) {
+            mStartFrame = frame;
+            mEndFrame = frame;
+        }
+        if (frames > mCapacityFrames) {
+            // Only the newest frames fit
+            offset += (frames - mCapacityFrames) * mFrameSize;
+            mEndFrame += frames - mCapacityFrames;
+            mStartFrame = mEndFrame;
+            frames = mCapacityFrames;
+        }
+        int position = buffer.position();
+        int limit = buffer.limit();
+        buffer.limit(offset + frames * mFrameSize);
+        buffer.position(offset);
+        while (frames > 0) {
+            int index = (int) (mEndFrame % mCapacityFrames);
+            int count = Math.min(frames, mCapacityFrames - index);
+            buffer.get(mBuffer, index * mFrameSize, count * mFrameSize);
+            mEndFrame += count;
+            frames -= count;
+        }
+        buffer.limit(limit);
+        buffer.position(position);
+        mStartFrame = Math.max(mStartFrame, mEndFrame - mCapacityFrames);
+    }
+
+    /**
+     * Copies up to <code>maxFrames</code> frames from position <code>frame</code> on to the
+     * start of <code>dst</code>.
+     *
+     * @return The number of frames copied, 0 if the history does not hold the frame
+     */
+    synchronized int read(long frame, byte[] dst, int maxFrames) {
+        if (frame < mStartFrame || frame >= mEndFrame) {
+            return 0;
+        }
+        int frames = (int) Math.min(maxFrames, mEndFrame - frame);
+        int copied = 0;
+        while (copied < frames) {
+            int index = (int) ((frame + copied) % mCapacityFrames);
+            int count = Math.min(frames - copied, mCapacityFrames - index);
+            System.arraycopy(mBuffer, index * mFrameSize, dst, copied * mFrameSize,
+                    count * mFrameSize);
+            copied += count;
+        }
+        return frames;
+    }
+
+}
@@ -0,0 +1,236 @@
+package org.antennapod.audio;
+
+import java.util.Locale;
+
+/**
+ * Counters and histograms of the Sonic player's decode loop, to find out why playback stutters:
+ * how long decoding, Sonic and writes to the AudioTrack take, how much audio waits in Sonic,
+ * and how often the AudioTrack ran empty. Recording does not allocate. Values are written by
+ * the decoder thread only and may be read from any thread, so while playing they may be a
+ * buffer behind each other.
+ *
+ * @see MediaPlayer#setPlaybackMetricsEnabled(boolean)
+ */
+public class PlaybackMetrics {
+
+    /**
+     * Durations counted in fixed buckets.
+     */
+    public static class Histogram {
+
+        // Upper bounds of the buckets in microseconds, the last bucket has none
+        private static final long[] BOUNDS_US = {
+                50, 100, 200, 500, 1000, 2000, 5000, 10000, 20000, 50000, 100000
+        };
+
+        private final long[] mCounts = new long[BOUNDS_US.length + 1];
+        private volatile long mCount;
+        private volatile long mTotalNanos;
+        private volatile long mMaxNanos;
+
+        void record(long nanos) {
+            long us = nanos / 1000;
+            int bucket = 0;
+            while (bucket < BOUNDS_US.length && us > BOUNDS_US[bucket]) {
+                bucket++;
+            }
+            mCounts[bucket]++;
+            mCount++;
+            mTotalNanos += nanos;
+            if (nanos > mMaxNanos) {
+                mMaxNanos = nanos;
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < mCounts.length; i++) {
+                mCounts[i] = 0;
+            }
+            mCount = 0;
+            mTotalNanos = 0;
+            mMaxNanos = 0;
+        }
+
+        public int getBucketCount() {
+            return mCounts.length;
+        }
+
+        /**
+         * @return The longest duration counted in <code>bucket</code>, in microseconds, or
+         * Long.MAX_VALUE for the last bucket
+         */
+        public long getBucketBoundUs(int bucket) {
+            return bucket < BOUNDS_US.length ? BOUNDS_US[bucket] : Long.MAX_VALUE;
+        }
+
+        public long getBucket(int bucket) {
+            return mCounts[bucket];
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getTotalNanos() {
+            return mTotalNanos;
+        }
+
+        public long getMeanUs() {
+            long count = mCount;
+            return count == 0 ? 0 : mTotalNanos / count / 1000;
+        }
+
+        public long getMaxUs() {
+            return mMaxNanos / 1000;
+        }
+
+        /**
+         * @param share Share of the durations, between 0 and 1
+         * @return The bound of the bucket the given share of durations is in, or the longest
+         * duration if that is in the last bucket
+         */
+        public long getPercentileUs(double share) {
+            long remaining = (long) Math.ceil(mCount * share);
+            for (int i = 0; i < BOUNDS_US.length; i++) {
+                remaining -= mCounts[i];
+                if (remaining <= 0) {
+                    return BOUNDS_US[i];
+                }
+            }
+            return getMaxUs();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d, mean %d us, 95%% < %d us, max %d us",
+                    getCount(), getMeanUs(), getPercentileUs(0.95), getMaxUs());
+        }
+
+    }
+
+    private final Histogram mDecodeTime = new Histogram();
+    private final Histogram mSonicTime = new Histogram();
+    private final Histogram mWriteTime = new Histogram();
+    private volatile long mExtractedBytes;
+    private volatile long mWrittenFrames;
+    private volatile int mPendingFrames;
+    private volatile int mMaxPendingFrames;
+    private volatile int mUnderruns = -1;
+    private volatile int mSampleRate;
+
+    void recordExtracted(int bytes) {
+        mExtractedBytes += bytes;
+    }
+
+    void recordDecode(long nanos) {
+        mDecodeTime.record(nanos);
+    }
+
+    void recordSonic(long nanos, int pendingFrames) {
+        mSonicTime.record(nanos);
+        mPendingFrames = pendingFrames;
+        if (pendingFrames > mMaxPendingFrames) {
+            mMaxPendingFrames = pendingFrames;
+        }
+    }
+
+    void recordWrite(long nanos, int frames, int sampleRate, int underruns) {
+        mWriteTime.record(nanos);
+        mWrittenFrames += frames;
+        mSampleRate = sampleRate;
+        mUnderruns = underruns;
+    }
+
+    /**
+     * @return Time it took to get each buffer from the codec, including reading the encoded
+     * samples, or to read each chunk of a WAVE file
+     */
+    public Histogram getDecodeTime() {
+        return mDecodeTime;
+    }
+
+    /**
+     * @return Time Sonic and the processing stages took for each buffer
+     */
+    public Histogram getSonicTime() {
+        return mSonicTime;
+    }
+
+    /**
+     * @return Time each write to the AudioTrack blocked
+     */
+    public Histogram getWriteTime() {
+        return mWriteTime;
+    }
+
+    /**
+     * @return Bytes of encoded samples read from the extractor, or of samples from a WAVE file
+     */
+    public long getExtractedBytes() {
+        return mExtractedBytes;
+    }
+
+    /**
+     * @return Frames written to the AudioTrack
+     */
+    public long getWrittenFrames() {
+        return mWrittenFrames;
+    }
+
+    /**
+     * @return Frames waiting in Sonic after the last buffer: input it has not processed yet,
+     * and output that was not handed on to the sink. Sonic keeps some input back at all times,
+     * because its pitch search looks ahead.
+     */
+    public int getPendingFrames() {
+        return mPendingFrames;
+    }
+
+    public int getMaxPendingFrames() {
+        return mMaxPendingFrames;
+    }
+
+    /**
+     * @return The underrun count of the AudioTrack, or -1 if it has none (before API 24)
+     */
+    public int getUnderruns() {
+        return mUnderruns;
+    }
+
+    /**
+     * @return Time spent decoding and in Sonic divided by the duration of the audio written,
+     * so 0.1 means the decode loop could keep up with ten times the playback speed
+     */
+    public double getRealTimeFactor() {
+        long frames = mWrittenFrames;
+        if (frames == 0 || mSampleRate == 0) {
+            return 0.0;
+        }
+        long nanos = mDecodeTime.getTotalNanos() + mSonicTime.getTotalNanos();
+        return nanos * (double) mSampleRate / (frames * 1000000000.0);
+    }
+
+    /**
+     * Starts counting from zero. Call this from the thread that plays, or while not playing.
+     */
+    public void reset() {
+        mDecodeTime.reset();
+        mSonicTime.reset();
+        mWriteTime.reset();
+        mExtractedBytes = 0;
+        mWrittenFrames = 0;
+        mPendingFrames = 0;
+        mMaxPendingFrames = 0;
+        mUnderruns = -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "decode %s; sonic %s; write %s; extracted %d bytes; "
+                        + "written %d frames; pending %d frames, max %d; underruns %d; "
+                        + "real-time factor %.4f",
+                mDecodeTime, mSonicTime, mWriteTime, getExtractedBytes(), getWrittenFrames(),
+                getPendingFrames(), getMaxPendingFrames(), getUnderruns(), getRealTimeFactor());
+    }
+
+}
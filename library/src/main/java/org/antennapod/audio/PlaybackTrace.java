@@ -0,0 +1,67 @@
+package org.antennapod.audio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Marks the stages of playback in system traces, so captures show how the time of the decoder
+ * thread splits between extracting, decoding, Sonic and writes to the AudioTrack, and what
+ * preparing, seeking and switching players cost. Only debug builds of the library mark
+ * anything: {@link #ENABLED} is a constant, so in release builds {@link #getTracer()} is
+ * always null and the markers are dropped. Debug builds mark nothing until a {@link Tracer} is
+ * set, which {@link MediaPlayer#setTracingEnabled(boolean)} does.
+ * <p>
+ * Callers read the tracer once with {@link #getTracer()} and use that one to begin and end a
+ * section, so sections stay balanced when tracing is switched on or off in between.
+ */
+final class PlaybackTrace {
+
+    interface Tracer {
+
+        /**
+         * Begins a section on the calling thread, which has to end it.
+         */
+        void beginSection(String name);
+
+        void endSection();
+
+        /**
+         * Begins a section that may end on another thread. Sections of the same name are told
+         * apart by their cookie.
+         */
+        void beginAsyncSection(String name, int cookie);
+
+        void endAsyncSection(String name, int cookie);
+
+        void setCounter(String name, long value);
+
+    }
+
+    static final boolean ENABLED = BuildConfig.DEBUG;
+
+    private static final AtomicInteger sNextCookie = new AtomicInteger();
+    private static volatile Tracer sTracer;
+
+    private PlaybackTrace() {
+    }
+
+    /**
+     * @return The tracer to mark sections with, or null while tracing is off
+     */
+    static Tracer getTracer() {
+        return ENABLED ? sTracer : null;
+    }
+
+    static void setTracer(Tracer tracer) {
+        if (ENABLED) {
+            sTracer = tracer;
+        }
+    }
+
+    /**
+     * @return A cookie for an async section that differs from the ones handed out before
+     */
+    static int nextCookie() {
+        return sNextCookie.incrementAndGet();
+    }
+
+}
@@ -0,0 +1,119 @@
+package org.antennapod.audio;
+
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Logging of the library. Verbose and debug messages are only logged by debug builds of the
+ * library: the methods check {@link #VERBOSE} and {@link #DEBUG} first, which are constants, so
+ * release builds drop those calls. Messages are formatted with {@link String#format} only when
+ * they are logged, so callers pass their arguments instead of concatenating strings. Callers
+ * that have to compute an argument, or would box numbers on a path that runs often, check the
+ * constant themselves.
+ */
+final class PlayerLog {
+
+    static final boolean VERBOSE = BuildConfig.DEBUG;
+    static final boolean DEBUG = BuildConfig.DEBUG;
+
+    private PlayerLog() {
+    }
+
+    private static String format(String format, Object... args) {
+        return String.format(Locale.US, format, args);
+    }
+
+    static void v(String tag, String msg) {
+        if (VERBOSE) {
+            Log.v(tag, msg);
+        }
+    }
+
+    static void v(String tag, String format, Object arg) {
+        if (VERBOSE) {
+            Log.v(tag, format(format, arg));
+        }
+    }
+
+    static void v(String tag, String format, Object arg1, Object arg2) {
+        if (VERBOSE) {
+            Log.v(tag, format(format, arg1, arg2));
+        }
+    }
+
+    static void v(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (VERBOSE) {
+            Log.v(tag, format(format, arg1, arg2, arg3));
+        }
+    }
+
+    static void d(String tag, String msg) {
+        if (DEBUG) {
+            Log.d(tag, msg);
+        }
+    }
+
+    static void d(String tag, String format, Object arg) {
+        if (DEBUG) {
+            Log.d(tag, format(format, arg));
+        }
+    }
+
+    static void d(String tag, String format, Object arg1, Object arg2) {
+        if (DEBUG) {
+            Log.d(tag, format(format, arg1, arg2));
+        }
+    }
+
+    static void d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (DEBUG) {
+            Log.d(tag, format(format, arg1, arg2, arg3));
+        }
+    }
+
+    static void i(String tag, String msg) {
+        Log.i(tag, msg);
+    }
+
+    static void i(String tag, String format, Object arg) {
+        Log.i(tag, format(format, arg));
+    }
+
+    static void w(String tag, String msg) {
+        Log.w(tag, msg);
+    }
+
+    static void w(String tag, String format, Object arg) {
+        Log.w(tag, format(format, arg));
+    }
+
+    static void w(String tag, String msg, Throwable tr) {
+        Log.w(tag, msg, tr);
+    }
+
+    static void w(String tag, Throwable tr) {
+        Log.w(tag, tr);
+    }
+
+    static void e(String tag, String msg) {
+        Log.e(tag, msg);
+    }
+
+    static void e(String tag, String format, Object arg) {
+        Log.e(tag, format(format, arg));
+    }
+
+    static void e(String tag, String format, Object arg1, Object arg2) {
+        Log.e(tag, format(format, arg1, arg2));
+    }
+
+    static void e(String tag, String msg, Throwable tr) {
+        Log.e(tag, msg, tr);
+    }
+
+    static void e(String tag, Throwable tr) {
+        Log.e(tag, Log.getStackTraceString(tr));
+    }
+
+}
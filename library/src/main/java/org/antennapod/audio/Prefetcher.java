@@ -0,0 +1,341 @@
+package org.antennapod.audio;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Decodes ahead of playback, on a second extractor and decoder, around the positions the
+ * listener is likely to jump to next: the current position plus the skip interval, and the
+ * next chapter marks. A seek into one of these windows is played from memory at once, see
+ * {@link SonicPipeline#playPrefetched(PcmHistory, long)}. The window ahead of the current
+ * position moves along with playback; windows at chapter marks are decoded once. Windows only
+ * take as much memory as the budget allows, and are held softly, so they are dropped when
+ * memory runs low. Runs on its own thread, which should have a low priority.
+ */
+class Prefetcher implements Runnable {
+
+    interface Source {
+
+        /**
+         * @return A new extractor of the stream being played
+         */
+        Extractor openExtractor() throws IOException;
+
+        /**
+         * @return A new decoder for the format, configured and started
+         */
+        Decoder createDecoder(TrackFormat format) throws IOException;
+
+        /**
+         * @return The position of playback
+         */
+        long getPositionUs();
+
+    }
+
+    // Interval at which the windows are checked once they are filled
+    private static final long POLL_NANOS = 250000000L;
+    private static final long DEQUEUE_TIMEOUT_US = 10000;
+    // Audio decoded at a time before the windows are checked again
+    private static final long SLICE_US = 1000000;
+    // Chapter marks closer than this to the position are not worth decoding ahead
+    private static final long MIN_LEAD_US = 2000000;
+
+    private final Source mSource;
+    private final Clock mClock;
+    private final long mSkipUs;
+    private final long mWindowUs;
+    private final long mBudgetBytes;
+    private volatile long[] mChapterMarksUs = new long[0];
+    private volatile boolean mRunning = true;
+
+    // Guarded by this
+    private SoftReference<PcmHistory> mAheadWindow;
+    private final Map<Long, SoftReference<PcmHistory>> mChapterWindows =
+            new HashMap<Long, SoftReference<PcmHistory>>();
+
+    private Extractor mExtractor;
+    private Decoder mDecoder;
+    private TrackFormat mFormat;
+    private final Decoder.BufferInfo mInfo = new Decoder.BufferInfo();
+    // Position up to which mExtractor and mDecoder have decoded, or -1 after a seek
+    private long mDecodedUntilUs = -1;
+    private boolean mSawInputEOS;
+
+    /**
+     * @param skipUs      How far ahead of the position the moving window starts
+     * @param windowUs    How much audio each window holds
+     * @param budgetBytes How much memory all windows may take together
+     */
+    Prefetcher(Source source, Clock clock, long skipUs, long windowUs, long budgetBytes) {
+        mSource = source;
+        mClock = clock;
+        mSkipUs = skipUs;
+        mWindowUs = windowUs;
+        mBudgetBytes = budgetBytes;
+    }
+
+    /**
+     * @param marksUs Start positions of the chapters, in any order
+     */
+    void setChapterMarks(long[] marksUs) {
+        mChapterMarksUs = marksUs != null ? marksUs.clone() : new long[0];
+    }
+
+    /**
+     * Stops the thread. The extractor and decoder are released by the thread itself.
+     */
+    void release() {
+        mRunning = false;
+    }
+
+    /**
+     * Hands over the window that holds <code>timeUs</code>. The prefetcher does not touch it
+     * afterwards.
+     *
+     * @return The window, or null if no window holds the position
+     */
+    synchronized PcmHistory take(long timeUs) {
+        PcmHistory ahead = mAheadWindow != null ? mAheadWindow.get() : null;
+        if (ahead != null && ahead.contains(timeUs)) {
+            mAheadWindow = null;
+            return ahead;
+        }
+        for (Iterator<SoftReference<PcmHistory>> i = mChapterWindows.values().iterator();
+             i.hasNext(); ) {
+            PcmHistory window = i.next().get();
+            if (window != null && window.contains(timeUs)) {
+                i.remove();
+                return window;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void run() {
+        try {
+            mExtractor = mSource.openExtractor();
+            TrackFormat format = mExtractor.selectAudioTrack();
+            mFormat = format;
+            mDecoder = mSource.createDecoder(format);
+            while (mRunning) {
+                if (!prefetch()) {
+                    mClock.sleep(POLL_NANOS);
+                }
+            }
+        } catch (IOException e) {
+            // Nothing is decoded ahead then, seeks go to the extractor as they would without
+        } catch (InterruptedException e) {
+            // Released
+        } finally {
+            if (mDecoder != null) {
+                mDecoder.stop();
+                mDecoder.release();
+            }
+            if (mExtractor != null) {
+                mExtractor.release();
+            }
+            synchronized (this) {
+                mAheadWindow = null;
+                mChapterWindows.clear();
+            }
+        }
+    }
+
+    // Decodes a slice into the window that needs it most
+    // Returns false if all windows are filled
+    private boolean prefetch() {
+        long positionUs = mSource.getPositionUs();
+        long windowBytes = mWindowUs * mFormat.getSampleRate() / 1000000 * frameSize();
+        if (windowBytes <= 0 || windowBytes > mBudgetBytes) {
+            return false;
+        }
+
+        // The window ahead moves with playback: it is topped up while it still starts at or
+        // before the target, and started anew once the target left it
+        long aheadUs = positionUs + mSkipUs;
+        PcmHistory ahead;
+        synchronized (this) {
+            ahead = mAheadWindow != null ? mAheadWindow.get() : null;
+            if (ahead != null && ahead.getEndFrame() != ahead.getStartFrame()
+                    && (aheadUs < ahead.toTimeUs(ahead.getStartFrame())
+                    || aheadUs > ahead.toTimeUs(ahead.getEndFrame()))) {
+                ahead = null;
+            }
+            if (ahead == null || ahead.getFrameSize() != frameSize()) {
+                ahead = createWindow();
+                mAheadWindow = new SoftReference<PcmHistory>(ahead);
+            }
+        }
+        long aheadEndUs = ahead.getEndFrame() == ahead.getStartFrame() ? aheadUs
+                : ahead.toTimeUs(ahead.getEndFrame());
+        if (ahead.toFrame(aheadEndUs) < ahead.toFrame(aheadUs + mWindowUs)
+                && !endOfStream(aheadEndUs)) {
+            decode(ahead, aheadEndUs, Math.min(aheadEndUs + SLICE_US, aheadUs + mWindowUs),
+                    aheadUs + mWindowUs);
+            return true;
+        }
+
+        // Then the next chapter marks, as many as the budget allows
+        long budget = mBudgetBytes - windowBytes;
+        long[] marks = mChapterMarksUs;
+        synchronized (this) {
+            // Marks that were passed or removed are not needed any more
+            for (Iterator<Map.Entry<Long, SoftReference<PcmHistory>>> i =
+                 mChapterWindows.entrySet().iterator(); i.hasNext(); ) {
+                Map.Entry<Long, SoftReference<PcmHistory>> entry = i.next();
+                if (entry.getKey() < positionUs + MIN_LEAD_US || !contains(marks, entry.getKey())
+                        || entry.getValue().get() == null) {
+                    i.remove();
+                }
+            }
+        }
+        long previousUs = positionUs + MIN_LEAD_US - 1;
+        while (budget >= windowBytes) {
+            long markUs = nextMark(marks, previousUs);
+            if (markUs < 0) {
+                break;
+            }
+            previousUs = markUs;
+            budget -= windowBytes;
+            PcmHistory window;
+            synchronized (this) {
+                SoftReference<PcmHistory> reference = mChapterWindows.get(markUs);
+                window = reference != null ? reference.get() : null;
+                if (window == null) {
+                    window = createWindow();
+                    mChapterWindows.put(markUs, new SoftReference<PcmHistory>(window));
+                }
+            }
+            long endUs = window.getEndFrame() == window.getStartFrame() ? markUs
+                    : window.toTimeUs(window.getEndFrame());
+            if (window.toFrame(endUs) < window.toFrame(markUs + mWindowUs)
+                    && !endOfStream(endUs)) {
+                decode(window, endUs, Math.min(endUs + SLICE_US, markUs + mWindowUs),
+                        markUs + mWindowUs);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A window with two frames to spare, so rounding never pushes its first frame out
+    private PcmHistory createWindow() {
+        return new PcmHistory(mFormat.getSampleRate(), frameSize(),
+                mWindowUs / 1e6f + 2.0f / mFormat.getSampleRate());
+    }
+
+    private int frameSize() {
+        return (mFormat.isFloatPcm() ? 4 : 2) * mFormat.getChannelCount();
+    }
+
+    private boolean endOfStream(long timeUs) {
+        return mSawInputEOS && timeUs >= mDecodedUntilUs;
+    }
+
+    private static boolean contains(long[] values, long value) {
+        for (long v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The first mark after afterUs, or -1
+    private static long nextMark(long[] marks, long afterUs) {
+        long next = -1;
+        for (long mark : marks) {
+            if (mark > afterUs && (next < 0 || mark < next)) {
+                next = mark;
+            }
+        }
+        return next;
+    }
+
+    // Decodes from fromUs up to untilUs into window, which ends at endUs. Seeks only if the
+    // decoder is not at fromUs already, and drops what comes before fromUs after the seek.
+    private void decode(PcmHistory window, long fromUs, long untilUs, long endUs) {
+        if (mDecodedUntilUs < 0 || Math.abs(mDecodedUntilUs - fromUs) > 1000) {
+            mDecoder.flush();
+            mExtractor.seekTo(fromUs);
+            mSawInputEOS = false;
+        }
+        long decodedUs = fromUs;
+        while (mRunning && decodedUs < untilUs) {
+            if (!mSawInputEOS) {
+                int index = mDecoder.dequeueInputBuffer(DEQUEUE_TIMEOUT_US);
+                if (index >= 0) {
+                    int size = mExtractor.readSampleData(mDecoder.getInputBuffer(index), 0);
+                    if (size < 0) {
+                        mSawInputEOS = true;
+                        mDecoder.queueInputBuffer(index, 0, 0, 0,
+                                Decoder.BUFFER_FLAG_END_OF_STREAM);
+                    } else {
+                        mDecoder.queueInputBuffer(index, 0, size, mExtractor.getSampleTime(), 0);
+                        mExtractor.advance();
+                    }
+                }
+            }
+            int res = mDecoder.dequeueOutputBuffer(mInfo, DEQUEUE_TIMEOUT_US);
+            if (res == Decoder.INFO_OUTPUT_FORMAT_CHANGED) {
+                mFormat = mDecoder.getOutputFormat();
+                if (window.getFrameSize() != frameSize()
+                        || window.getSampleRate() != mFormat.getSampleRate()) {
+                    // Decoded by a format the window was not made for, start over
+                    break;
+                }
+            } else if (res >= 0) {
+                ByteBuffer buffer = mDecoder.getOutputBuffer(res);
+                boolean owned;
+                synchronized (this) {
+                    // A window that was taken is played already and must not change
+                    owned = isOwned(window);
+                    if (owned) {
+                        decodedUs = append(window, buffer, fromUs, endUs);
+                    }
+                }
+                mDecoder.releaseOutputBuffer(res);
+                if (!owned || (mInfo.flags & Decoder.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    break;
+                }
+            }
+        }
+        mDecodedUntilUs = decodedUs;
+    }
+
+    // Whether the window was not taken, guarded by this
+    private boolean isOwned(PcmHistory window) {
+        if (mAheadWindow != null && mAheadWindow.get() == window) {
+            return true;
+        }
+        for (SoftReference<PcmHistory> reference : mChapterWindows.values()) {
+            if (reference.get() == window) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Adds the part of a decoded buffer from fromUs to endUs to window, and returns where the
+    // buffer ends. The last buffer of a window reaches past its end, which is left out, as it
+    // would push the first frames out of the window.
+    private long append(PcmHistory window, ByteBuffer buffer, long fromUs, long endUs) {
+        int frameSize = window.getFrameSize();
+        long startFrame = window.toFrame(mInfo.presentationTimeUs);
+        int frames = mInfo.size / frameSize;
+        int skip = (int) Math.max(0, Math.min(frames, window.toFrame(fromUs) - startFrame));
+        int keep = (int) Math.max(0, Math.min(frames, window.toFrame(endUs) - startFrame));
+        if (skip < keep) {
+            window.append(buffer, mInfo.offset + skip * frameSize, (keep - skip) * frameSize,
+                    window.toTimeUs(startFrame + skip));
+        }
+        return window.toTimeUs(startFrame + frames);
+    }
+
+}
@@ -30,7 +30,6 @@ import android.os.IBinder;
 import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 import android.os.RemoteException;
-import android.util.Log;
 
 import com.aocate.presto.service.IDeathCallback_0_8;
 import com.aocate.presto.service.IOnBufferingUpdateListenerCallback_0_8;
@@ -80,14 +79,14 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
     public ServiceBackedAudioPlayer(MediaPlayer owningMediaPlayer, final Context context,
                                     final ServiceConnection serviceConnection, String userAgent) {
         super(owningMediaPlayer, context, userAgent);
-        Log.d(SBMP_TAG, "Instantiating ServiceBackedMediaPlayer 87");
+        PlayerLog.d(SBMP_TAG, "Instantiating ServiceBackedMediaPlayer 87");
         this.playMediaServiceIntent =
                 MediaPlayer.getPrestoServiceIntent(context, INTENT_NAME);
         this.mPlayMediaServiceConnection = new ServiceConnection() {
             public void onServiceConnected(ComponentName name, IBinder service) {
                 IPlayMedia_0_8 tmpPlayMediaInterface = IPlayMedia_0_8.Stub.asInterface(service);
 
-                Log.d(SBMP_TAG, "Setting up pmInterface 94");
+                PlayerLog.d(SBMP_TAG, "Setting up pmInterface 94");
                 if (ServiceBackedAudioPlayer.this.sessionId == 0) {
                     try {
                         // The IDeathCallback isn't a conventional callback.
@@ -98,12 +97,12 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                         });
                         // This is really bad if this fails
                     } catch (RemoteException e) {
-                        e.printStackTrace();
+                        PlayerLog.w(SBMP_TAG, e);
                         ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
                     }
                 }
 
-                Log.d(SBMP_TAG, "Assigning pmInterface");
+                PlayerLog.d(SBMP_TAG, "Assigning pmInterface");
 
                 ServiceBackedAudioPlayer.this.setOnBufferingUpdateCallback(tmpPlayMediaInterface);
                 ServiceBackedAudioPlayer.this.setOnCompletionCallback(tmpPlayMediaInterface);
@@ -117,12 +116,12 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                 // In order to avoid race conditions from the sessionId or listener not being assigned
                 pmInterface = tmpPlayMediaInterface;
 
-                Log.d(SBMP_TAG, "Invoking onServiceConnected");
+                PlayerLog.d(SBMP_TAG, "Invoking onServiceConnected");
                 serviceConnection.onServiceConnected(name, service);
             }
 
             public void onServiceDisconnected(ComponentName name) {
-                Log.d(SBMP_TAG, "onServiceDisconnected 114");
+                PlayerLog.d(SBMP_TAG, "onServiceDisconnected 114");
 
                 pmInterface = null;
 
@@ -132,32 +131,32 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
             }
         };
 
-        Log.d(SBMP_TAG, "Connecting PlayMediaService 124");
+        PlayerLog.d(SBMP_TAG, "Connecting PlayMediaService 124");
         if (!ConnectPlayMediaService()) {
-            Log.e(SBMP_TAG, "bindService failed");
+            PlayerLog.e(SBMP_TAG, "bindService failed");
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
 
     private boolean ConnectPlayMediaService() {
-        Log.d(SBMP_TAG, "ConnectPlayMediaService()");
+        PlayerLog.d(SBMP_TAG, "ConnectPlayMediaService()");
 
         if (MediaPlayer.isIntentAvailable(mContext, INTENT_NAME)) {
-            Log.d(SBMP_TAG, INTENT_NAME + " is available");
+            PlayerLog.d(SBMP_TAG, "%s is available", INTENT_NAME);
             if (pmInterface == null) {
                 try {
-                    Log.d(SBMP_TAG, "Binding service");
+                    PlayerLog.d(SBMP_TAG, "Binding service");
                     return mContext.bindService(playMediaServiceIntent, mPlayMediaServiceConnection, Context.BIND_AUTO_CREATE);
                 } catch (Exception e) {
-                    Log.e(SBMP_TAG, "Could not bind with service", e);
+                    PlayerLog.e(SBMP_TAG, "Could not bind with service", e);
                     return false;
                 }
             } else {
-                Log.d(SBMP_TAG, "Service already bound");
+                PlayerLog.d(SBMP_TAG, "Service already bound");
                 return true;
             }
         } else {
-            Log.d(SBMP_TAG, INTENT_NAME + " is not available");
+            PlayerLog.d(SBMP_TAG, "%s is not available", INTENT_NAME);
             return false;
         }
     }
@@ -174,7 +173,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public boolean canSetPitch() {
-        Log.d(SBMP_TAG, "canSetPitch() 155");
+        PlayerLog.d(SBMP_TAG, "canSetPitch() 155");
 
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
@@ -186,7 +185,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
             try {
                 return pmInterface.canSetPitch(ServiceBackedAudioPlayer.this.sessionId);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
@@ -200,7 +199,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public boolean canSetSpeed() {
-        Log.d(SBMP_TAG, "canSetSpeed() 180");
+        PlayerLog.d(SBMP_TAG, "canSetSpeed() 180");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -211,7 +210,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
             try {
                 return pmInterface.canSetSpeed(ServiceBackedAudioPlayer.this.sessionId);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
@@ -230,7 +229,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
 
     void error(int what, int extra) {
         owningMediaPlayer.lock.lock();
-        Log.e(SBMP_TAG, "error(" + what + ", " + extra + ")");
+        PlayerLog.e(SBMP_TAG, "error(%s, %s)", what, extra);
         stayAwake(false);
         try {
             if (!this.isErroring) {
@@ -254,7 +253,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
     protected void finalize() throws Throwable {
         owningMediaPlayer.lock.lock();
         try {
-            Log.d(SBMP_TAG, "finalize() 224");
+            PlayerLog.d(SBMP_TAG, "finalize() 224");
             this.release();
         } finally {
             owningMediaPlayer.lock.unlock();
@@ -270,7 +269,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public float getCurrentPitchStepsAdjustment() {
-        Log.d(SBMP_TAG, "getCurrentPitchStepsAdjustment() 240");
+        PlayerLog.d(SBMP_TAG, "getCurrentPitchStepsAdjustment() 240");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -282,7 +281,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                 return pmInterface.getCurrentPitchStepsAdjustment(
                         ServiceBackedAudioPlayer.this.sessionId);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
@@ -306,7 +305,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
             return pmInterface.getCurrentPosition(
                     ServiceBackedAudioPlayer.this.sessionId);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
         return 0;
@@ -319,7 +318,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public float getCurrentSpeedMultiplier() {
-        Log.d(SBMP_TAG, "getCurrentSpeedMultiplier() 286");
+        PlayerLog.d(SBMP_TAG, "getCurrentSpeedMultiplier() 286");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -331,7 +330,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                 return pmInterface.getCurrentSpeedMultiplier(
                         ServiceBackedAudioPlayer.this.sessionId);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
@@ -345,7 +344,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public int getDuration() {
-        Log.d(SBMP_TAG, "getDuration() 311");
+        PlayerLog.d(SBMP_TAG, "getDuration() 311");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -354,7 +353,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
         try {
             return pmInterface.getDuration(ServiceBackedAudioPlayer.this.sessionId);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
         return 0;
@@ -367,7 +366,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public float getMaxSpeedMultiplier() {
-        Log.d(SBMP_TAG, "getMaxSpeedMultiplier() 332");
+        PlayerLog.d(SBMP_TAG, "getMaxSpeedMultiplier() 332");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -379,7 +378,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                 return pmInterface.getMaxSpeedMultiplier(
                         ServiceBackedAudioPlayer.this.sessionId);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
@@ -393,7 +392,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public float getMinSpeedMultiplier() {
-        Log.d(SBMP_TAG, "getMinSpeedMultiplier() 357");
+        PlayerLog.d(SBMP_TAG, "getMinSpeedMultiplier() 357");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -405,7 +404,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                 return pmInterface.getMinSpeedMultiplier(
                         ServiceBackedAudioPlayer.this.sessionId);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
@@ -413,7 +412,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
     }
 
     public int getServiceVersionCode() {
-        Log.d(SBMP_TAG, "getVersionCode");
+        PlayerLog.d(SBMP_TAG, "getVersionCode");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -422,14 +421,14 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
         try {
             return pmInterface.getVersionCode();
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
         return 0;
     }
 
     public String getServiceVersionName() {
-        Log.d(SBMP_TAG, "getVersionName");
+        PlayerLog.d(SBMP_TAG, "getVersionName");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -438,7 +437,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
         try {
             return pmInterface.getVersionName();
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
         return "";
@@ -455,7 +454,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public boolean isLooping() {
-        Log.d(SBMP_TAG, "isLooping() 382");
+        PlayerLog.d(SBMP_TAG, "isLooping() 382");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -464,7 +463,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
         try {
             return pmInterface.isLooping(ServiceBackedAudioPlayer.this.sessionId);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
         return false;
@@ -486,7 +485,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
             try {
                 return pmInterface.isPlaying(ServiceBackedAudioPlayer.this.sessionId);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
@@ -499,7 +498,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void pause() {
-        Log.d(SBMP_TAG, "pause() 424");
+        PlayerLog.d(SBMP_TAG, "pause() 424");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -508,7 +507,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
         try {
             pmInterface.pause(ServiceBackedAudioPlayer.this.sessionId);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
         stayAwake(false);
@@ -520,28 +519,28 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void prepare() throws IllegalStateException, IOException {
-        Log.d(SBMP_TAG, "prepare() 444");
-        Log.d(SBMP_TAG, "onPreparedCallback is: " + ((this.mOnPreparedCallback == null) ? "null" : "non-null"));
+        PlayerLog.d(SBMP_TAG, "prepare() 444");
+        PlayerLog.d(SBMP_TAG, "onPreparedCallback is: %s", (this.mOnPreparedCallback == null) ? "null" : "non-null");
         if (pmInterface == null) {
-            Log.d(SBMP_TAG, "prepare: pmInterface is null");
+            PlayerLog.d(SBMP_TAG, "prepare: pmInterface is null");
             if (!ConnectPlayMediaService()) {
-                Log.d(SBMP_TAG, "prepare: Failed to connect play media service");
+                PlayerLog.d(SBMP_TAG, "prepare: Failed to connect play media service");
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
         if (pmInterface != null) {
-            Log.d(SBMP_TAG, "prepare: pmInterface isn't null");
+            PlayerLog.d(SBMP_TAG, "prepare: pmInterface isn't null");
             try {
-                Log.d(SBMP_TAG, "prepare: Remote invoke pmInterface.prepare(" + ServiceBackedAudioPlayer.this.sessionId + ")");
+                PlayerLog.d(SBMP_TAG, "prepare: Remote invoke pmInterface.prepare(%s)", ServiceBackedAudioPlayer.this.sessionId);
                 pmInterface.prepare(ServiceBackedAudioPlayer.this.sessionId);
-                Log.d(SBMP_TAG, "prepare: prepared");
+                PlayerLog.d(SBMP_TAG, "prepare: prepared");
             } catch (RemoteException e) {
-                Log.d(SBMP_TAG, "prepare: RemoteException");
-                e.printStackTrace();
+                PlayerLog.d(SBMP_TAG, "prepare: RemoteException");
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
-        Log.d(SBMP_TAG, "Done with prepare()");
+        PlayerLog.d(SBMP_TAG, "Done with prepare()");
     }
 
     /**
@@ -550,7 +549,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void prepareAsync() {
-        Log.d(SBMP_TAG, "prepareAsync() 469");
+        PlayerLog.d(SBMP_TAG, "prepareAsync() 469");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -559,7 +558,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
         try {
             pmInterface.prepareAsync(ServiceBackedAudioPlayer.this.sessionId);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -570,18 +569,18 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void release() {
-        Log.d(SBMP_TAG, "release() 492");
+        PlayerLog.d(SBMP_TAG, "release() 492");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
         if (pmInterface != null) {
-            Log.d(SBMP_TAG, "release() 500");
+            PlayerLog.d(SBMP_TAG, "release() 500");
             try {
                 pmInterface.release(ServiceBackedAudioPlayer.this.sessionId);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
             mContext.unbindService(this.mPlayMediaServiceConnection);
@@ -592,7 +591,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
         }
 
         if ((this.mWakeLock != null) && this.mWakeLock.isHeld()) {
-            Log.d(SBMP_TAG, "Releasing wakelock");
+            PlayerLog.d(SBMP_TAG, "Releasing wakelock");
             this.mWakeLock.release();
         }
     }
@@ -603,7 +602,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void reset() {
-        Log.d(SBMP_TAG, "reset() 523");
+        PlayerLog.d(SBMP_TAG, "reset() 523");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -612,7 +611,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
         try {
             pmInterface.reset(ServiceBackedAudioPlayer.this.sessionId);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
         stayAwake(false);
@@ -624,7 +623,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void seekTo(int msec) throws IllegalStateException {
-        Log.d(SBMP_TAG, "seekTo(" + msec + ")");
+        PlayerLog.d(SBMP_TAG, "seekTo(%s)", msec);
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -633,7 +632,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
         try {
             pmInterface.seekTo(ServiceBackedAudioPlayer.this.sessionId, msec);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -644,7 +643,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void setAudioStreamType(int streamtype) {
-        Log.d(SBMP_TAG, "setAudioStreamType(" + streamtype + ")");
+        PlayerLog.d(SBMP_TAG, "setAudioStreamType(%s)", streamtype);
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -655,7 +654,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                     ServiceBackedAudioPlayer.this.sessionId,
                     this.mAudioStreamType);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -667,7 +666,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void setDataSource(Context context, Uri uri) throws IllegalArgumentException, IllegalStateException, IOException {
-        Log.d(SBMP_TAG, "setDataSource(context, uri)");
+        PlayerLog.d(SBMP_TAG, "setDataSource(context, uri)");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -678,7 +677,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                     ServiceBackedAudioPlayer.this.sessionId,
                     uri);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -689,7 +688,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void setDataSource(String path) throws IllegalArgumentException, IllegalStateException, IOException {
-        Log.d(SBMP_TAG, "setDataSource(path)");
+        PlayerLog.d(SBMP_TAG, "setDataSource(path)");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -703,7 +702,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                         ServiceBackedAudioPlayer.this.sessionId,
                         path);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
@@ -719,7 +718,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
     public void setEnableSpeedAdjustment(boolean enableSpeedAdjustment) {
         // TODO: This has no business being here, I think
         owningMediaPlayer.lock.lock();
-        Log.d(SBMP_TAG, "setEnableSpeedAdjustment(enableSpeedAdjustment)");
+        PlayerLog.d(SBMP_TAG, "setEnableSpeedAdjustment(enableSpeedAdjustment)");
         try {
             if (pmInterface == null) {
                 if (!ConnectPlayMediaService()) {
@@ -733,7 +732,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                             ServiceBackedAudioPlayer.this.sessionId,
                             enableSpeedAdjustment);
                 } catch (RemoteException e) {
-                    e.printStackTrace();
+                    PlayerLog.w(SBMP_TAG, e);
                     ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
                 }
             }
@@ -749,7 +748,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void setLooping(boolean loop) {
-        Log.d(SBMP_TAG, "setLooping(" + loop + ")");
+        PlayerLog.d(SBMP_TAG, "setLooping(%s)", loop);
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -758,7 +757,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
         try {
             pmInterface.setLooping(ServiceBackedAudioPlayer.this.sessionId, loop);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -772,7 +771,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void setPitchStepsAdjustment(float pitchSteps) {
-        Log.d(SBMP_TAG, "setPitchStepsAdjustment(" + pitchSteps + ")");
+        PlayerLog.d(SBMP_TAG, "setPitchStepsAdjustment(%s)", pitchSteps);
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -785,7 +784,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                         ServiceBackedAudioPlayer.this.sessionId,
                         pitchSteps);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
@@ -800,7 +799,9 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void setPlaybackPitch(float f) {
-        Log.d(SBMP_TAG, "setPlaybackPitch(" + f + ")");
+        if (PlayerLog.DEBUG) {
+            PlayerLog.d(SBMP_TAG, "setPlaybackPitch(%s)", f);
+        }
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -813,7 +814,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                         ServiceBackedAudioPlayer.this.sessionId,
                         f);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
@@ -827,7 +828,9 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void setPlaybackSpeed(float f) {
-        Log.d(SBMP_TAG, "setPlaybackSpeed(" + f + ")");
+        if (PlayerLog.DEBUG) {
+            PlayerLog.d(SBMP_TAG, "setPlaybackSpeed(%s)", f);
+        }
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -840,7 +843,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                         ServiceBackedAudioPlayer.this.sessionId,
                         f);
             } catch (RemoteException e) {
-                e.printStackTrace();
+                PlayerLog.w(SBMP_TAG, e);
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
             }
         }
@@ -852,7 +855,9 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void setVolume(float leftVolume, float rightVolume) {
-        Log.d(SBMP_TAG, "setVolume(" + leftVolume + ", " + rightVolume + ")");
+        if (PlayerLog.DEBUG) {
+            PlayerLog.d(SBMP_TAG, "setVolume(%s, %s)", leftVolume, rightVolume);
+        }
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -864,7 +869,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                     leftVolume,
                     rightVolume);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -879,12 +884,12 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
     // would add a permission requirement to the Service.  Do it here, and it's
     // the client app's responsibility to request that permission
     public void setWakeMode(Context context, int mode) {
-        Log.d(SBMP_TAG, "setWakeMode(context, " + mode + ")");
+        PlayerLog.d(SBMP_TAG, "setWakeMode(context, %s)", mode);
         boolean wasHeld = false;
         if (mWakeLock != null) {
             if (mWakeLock.isHeld()) {
                 wasHeld = true;
-                Log.d(SBMP_TAG, "Releasing wakelock");
+                PlayerLog.d(SBMP_TAG, "Releasing wakelock");
                 mWakeLock.release();
             }
             mWakeLock = null;
@@ -895,7 +900,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
             mWakeLock.setReferenceCounted(false);
 
             if (wasHeld) {
-                Log.d(SBMP_TAG, "Acquiring wakelock");
+                PlayerLog.d(SBMP_TAG, "Acquiring wakelock");
                 mWakeLock.acquire();
             }
         }
@@ -906,13 +911,13 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      * If no WakeLock has been acquired with setWakeMode, this method does nothing.
      */
     private void stayAwake(boolean awake) {
-        if (BuildConfig.DEBUG) Log.d(SBMP_TAG, "stayAwake(" + awake + ")");
+        PlayerLog.d(SBMP_TAG, "stayAwake(%s)", awake);
         if (mWakeLock != null) {
             if (awake && !mWakeLock.isHeld()) {
-                Log.d(SBMP_TAG, "Acquiring wakelock");
+                PlayerLog.d(SBMP_TAG, "Acquiring wakelock");
                 mWakeLock.acquire();
             } else if (!awake && mWakeLock.isHeld()) {
-                Log.d(SBMP_TAG, "Releasing wakelock");
+                PlayerLog.d(SBMP_TAG, "Releasing wakelock");
                 mWakeLock.release();
             }
         }
@@ -942,7 +947,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                     ServiceBackedAudioPlayer.this.sessionId,
                     mOnBufferingUpdateCallback);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -955,7 +960,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                 this.mOnCompletionCallback = new IOnCompletionListenerCallback_0_8.Stub() {
                     public void onCompletion() throws RemoteException {
                         owningMediaPlayer.lock.lock();
-                        Log.d(SBMP_TAG, "onCompletionListener being called");
+                        PlayerLog.d(SBMP_TAG, "onCompletionListener being called");
                         stayAwake(false);
                         try {
                             if (owningMediaPlayer.onCompletionListener != null) {
@@ -971,7 +976,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                     ServiceBackedAudioPlayer.this.sessionId,
                     this.mOnCompletionCallback);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -1000,7 +1005,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                     ServiceBackedAudioPlayer.this.sessionId,
                     this.mOnErrorCallback);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -1029,7 +1034,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                     ServiceBackedAudioPlayer.this.sessionId,
                     this.mOnInfoCallback);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -1058,7 +1063,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                     ServiceBackedAudioPlayer.this.sessionId,
                     this.mOnPitchAdjustmentAvailableChangedCallback);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -1071,10 +1076,10 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                 this.mOnPreparedCallback = new IOnPreparedListenerCallback_0_8.Stub() {
                     public void onPrepared() throws RemoteException {
                         owningMediaPlayer.lock.lock();
-                        Log.d(SBMP_TAG, "setOnPreparedCallback.mOnPreparedCallback.onPrepared 1050");
+                        PlayerLog.d(SBMP_TAG, "setOnPreparedCallback.mOnPreparedCallback.onPrepared 1050");
                         try {
-                            Log.d(SBMP_TAG, "owningMediaPlayer.onPreparedListener is " + ((owningMediaPlayer.onPreparedListener == null) ? "null" : "non-null"));
-                            Log.d(SBMP_TAG, "owningMediaPlayer.mpi is " + ((owningMediaPlayer.mpi == ServiceBackedAudioPlayer.this) ? "this" : "not this"));
+                            PlayerLog.d(SBMP_TAG, "owningMediaPlayer.onPreparedListener is %s", (owningMediaPlayer.onPreparedListener == null) ? "null" : "non-null");
+                            PlayerLog.d(SBMP_TAG, "owningMediaPlayer.mpi is %s", (owningMediaPlayer.mpi == ServiceBackedAudioPlayer.this) ? "this" : "not this");
                             ServiceBackedAudioPlayer.this.lockMuteOnPreparedCount.lock();
                             try {
                                 if (ServiceBackedAudioPlayer.this.muteOnPreparedCount > 0) {
@@ -1098,7 +1103,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                     ServiceBackedAudioPlayer.this.sessionId,
                     this.mOnPreparedCallback);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -1110,17 +1115,17 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
             if (this.mOnSeekCompleteCallback == null) {
                 this.mOnSeekCompleteCallback = new IOnSeekCompleteListenerCallback_0_8.Stub() {
                     public void onSeekComplete() throws RemoteException {
-                        Log.d(SBMP_TAG, "onSeekComplete() 941");
+                        PlayerLog.d(SBMP_TAG, "onSeekComplete() 941");
                         owningMediaPlayer.lock.lock();
                         try {
                             if (ServiceBackedAudioPlayer.this.muteOnSeekCount > 0) {
-                                Log.d(SBMP_TAG, "The next " + ServiceBackedAudioPlayer.this.muteOnSeekCount + " seek events are muted (counting this one)");
+                                PlayerLog.d(SBMP_TAG, "The next %s seek events are muted (counting this one)", ServiceBackedAudioPlayer.this.muteOnSeekCount);
                                 ServiceBackedAudioPlayer.this.muteOnSeekCount--;
                             } else {
                                 ServiceBackedAudioPlayer.this.muteOnSeekCount = 0;
-                                Log.d(SBMP_TAG, "Attempting to invoke next seek event");
+                                PlayerLog.d(SBMP_TAG, "Attempting to invoke next seek event");
                                 if (ServiceBackedAudioPlayer.this.owningMediaPlayer.onSeekCompleteListener != null) {
-                                    Log.d(SBMP_TAG, "Invoking onSeekComplete");
+                                    PlayerLog.d(SBMP_TAG, "Invoking onSeekComplete");
                                     owningMediaPlayer.onSeekCompleteListener.onSeekComplete(owningMediaPlayer);
                                 }
                             }
@@ -1134,7 +1139,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                     ServiceBackedAudioPlayer.this.sessionId,
                     this.mOnSeekCompleteCallback);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -1143,7 +1148,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
 
     private void setOnSpeedAdjustmentAvailableChangedCallback(IPlayMedia_0_8 iface) {
         try {
-            Log.d(SBMP_TAG, "Setting the service of on speed adjustment available changed");
+            PlayerLog.d(SBMP_TAG, "Setting the service of on speed adjustment available changed");
             if (this.mOnSpeedAdjustmentAvailableChangedCallback == null) {
                 this.mOnSpeedAdjustmentAvailableChangedCallback = new IOnSpeedAdjustmentAvailableChangedListenerCallback_0_8.Stub() {
                     public void onSpeedAdjustmentAvailableChanged(
@@ -1164,7 +1169,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
                     ServiceBackedAudioPlayer.this.sessionId,
                     this.mOnSpeedAdjustmentAvailableChangedCallback);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
     }
@@ -1175,7 +1180,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void start() {
-        Log.d(SBMP_TAG, "start()");
+        PlayerLog.d(SBMP_TAG, "start()");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -1184,7 +1189,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
         try {
             pmInterface.start(ServiceBackedAudioPlayer.this.sessionId);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
         stayAwake(true);
@@ -1196,7 +1201,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
      */
     @Override
     public void stop() {
-        Log.d(SBMP_TAG, "stop()");
+        PlayerLog.d(SBMP_TAG, "stop()");
         if (pmInterface == null) {
             if (!ConnectPlayMediaService()) {
                 ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
@@ -1205,7 +1210,7 @@ public class ServiceBackedAudioPlayer extends AbstractAudioPlayer {
         try {
             pmInterface.stop(ServiceBackedAudioPlayer.this.sessionId);
         } catch (RemoteException e) {
-            e.printStackTrace();
+            PlayerLog.w(SBMP_TAG, e);
             ServiceBackedAudioPlayer.this.error(MediaPlayer.MEDIA_ERROR_UNKNOWN, 0);
         }
         stayAwake(false);
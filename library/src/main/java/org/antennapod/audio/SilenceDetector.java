@@ -0,0 +1,121 @@
+package org.antennapod.audio;
+
+import java.util.Arrays;
+
+/**
+ * Finds the silences of an episode for a {@link SilenceMap}: runs of 10 ms blocks whose mean
+ * square over all channels stays below a threshold for long enough. Each silence found is
+ * shortened by 100 ms at both ends, so skipping it leaves a pause of 200 ms and does not clip
+ * the speech around it.
+ */
+class SilenceDetector implements AnalysisPass.Analyzer {
+
+    private static final int BLOCK_MS = 10;
+    private static final int KEPT_MS = 100;
+
+    private final float mThresholdDb;
+    private final int mMinSilenceMs;
+    private final double mThreshold;
+    private int mSampleRate;
+    private int mChannels;
+    private int mBlockFrames;
+
+    private long mFrameCount;
+    private double mEnergy;
+    private int mFrames;
+    // Frame at which the current silence started, or -1 while it is not silent
+    private long mSilenceStart = -1;
+    private int[] mIntervals = new int[256];
+    private int mNumIntervals;
+
+    /**
+     * @param thresholdDb  Level below which audio counts as silent, in dBFS; -50 suits speech
+     * @param minSilenceMs How long audio has to stay silent to be skipped, at least 300 ms
+     */
+    SilenceDetector(float thresholdDb, int minSilenceMs) {
+        mThresholdDb = thresholdDb;
+        mMinSilenceMs = minSilenceMs;
+        mThreshold = Math.pow(10.0, thresholdDb / 10.0);
+    }
+
+    @Override
+    public void configure(int sampleRate, int channels) {
+        // A codec may change the rate once it decoded the first frames, e.g. for HE-AAC
+        if (mFrameCount == 0) {
+            mSampleRate = sampleRate;
+            mBlockFrames = Math.max(1, sampleRate * BLOCK_MS / 1000);
+        }
+        mChannels = channels;
+    }
+
+    @Override
+    public void process(short[] samples, int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            for (int channel = 0; channel < mChannels; channel++) {
+                float sample = samples[frame * mChannels + channel] / 32768.0f;
+                mEnergy += sample * sample;
+            }
+            endFrame();
+        }
+    }
+
+    @Override
+    public void process(float[] samples, int frames) {
+        for (int frame = 0; frame < frames; frame++) {
+            for (int channel = 0; channel < mChannels; channel++) {
+                float sample = samples[frame * mChannels + channel];
+                mEnergy += sample * sample;
+            }
+            endFrame();
+        }
+    }
+
+    private void endFrame() {
+        mFrameCount++;
+        if (++mFrames == mBlockFrames) {
+            endBlock();
+        }
+    }
+
+    private void endBlock() {
+        boolean silent = mEnergy / (mFrames * mChannels) < mThreshold;
+        long blockStart = mFrameCount - mFrames;
+        if (silent && mSilenceStart < 0) {
+            mSilenceStart = blockStart;
+        } else if (!silent && mSilenceStart >= 0) {
+            endSilence(blockStart);
+        }
+        mEnergy = 0.0;
+        mFrames = 0;
+    }
+
+    private void endSilence(long endFrame) {
+        long startMs = mSilenceStart * 1000 / mSampleRate;
+        long endMs = endFrame * 1000 / mSampleRate;
+        mSilenceStart = -1;
+        if (endMs - startMs < Math.max(mMinSilenceMs, 3 * KEPT_MS)) {
+            return;
+        }
+        if (mNumIntervals * 2 == mIntervals.length) {
+            mIntervals = Arrays.copyOf(mIntervals, mIntervals.length * 2);
+        }
+        mIntervals[mNumIntervals * 2] = (int) (startMs + KEPT_MS);
+        mIntervals[mNumIntervals * 2 + 1] = (int) (endMs - KEPT_MS);
+        mNumIntervals++;
+    }
+
+    /**
+     * @return The silences of all audio analysed
+     */
+    SilenceMap createSilenceMap() {
+        if (mFrames > 0) {
+            endBlock();
+        }
+        if (mSilenceStart >= 0) {
+            endSilence(mFrameCount);
+        }
+        return new SilenceMap(mThresholdDb, mMinSilenceMs,
+                Arrays.copyOf(mIntervals, mNumIntervals * 2));
+    }
+
+}
@@ -0,0 +1,145 @@
+package org.antennapod.audio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The silent parts of an episode, as found by {@link EpisodeAnalysis}, which the Sonic player
+ * skips without reading or decoding them. Each silence is shortened at both ends, so some
+ * pause remains. Stored as a small binary file of 8 bytes per silence.
+ */
+public class SilenceMap {
+
+    private static final int MAGIC = 0x41534c31; // "ASL1"
+
+    private final float mThresholdDb;
+    private final int mMinSilenceMs;
+    // Start and end of each silence in milliseconds, in order
+    private final int[] mIntervals;
+
+    SilenceMap(float thresholdDb, int minSilenceMs, int[] intervals) {
+        mThresholdDb = thresholdDb;
+        mMinSilenceMs = minSilenceMs;
+        mIntervals = intervals;
+    }
+
+    /**
+     * Returns where the silence map of <code>audioFile</code> is kept below
+     * <code>cacheDir</code>. The name includes the length of the file, so a download that
+     * continued or was replaced gets a new map.
+     */
+    public static File getCacheFile(File cacheDir, File audioFile) {
+        String name = Integer.toHexString(audioFile.getAbsolutePath().hashCode()) + "-"
+                + Long.toHexString(audioFile.length()) + ".silence";
+        return new File(new File(cacheDir, "silence"), name);
+    }
+
+    /**
+     * @return The level below which audio counts as silent, in dBFS
+     */
+    public float getThresholdDb() {
+        return mThresholdDb;
+    }
+
+    /**
+     * @return How long audio has to stay silent to be skipped, in milliseconds
+     */
+    public int getMinSilenceMs() {
+        return mMinSilenceMs;
+    }
+
+    public int getSilenceCount() {
+        return mIntervals.length / 2;
+    }
+
+    public long getStartUs(int index) {
+        return mIntervals[index * 2] * 1000L;
+    }
+
+    public long getEndUs(int index) {
+        return mIntervals[index * 2 + 1] * 1000L;
+    }
+
+    /**
+     * @return The index of the silence <code>timeUs</code> lies in, or -1 if there is none
+     */
+    public int indexOf(long timeUs) {
+        int low = 0;
+        int high = getSilenceCount() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (timeUs < getStartUs(mid)) {
+                high = mid - 1;
+            } else if (timeUs >= getEndUs(mid)) {
+                low = mid + 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return How much shorter playback from <code>fromUs</code> to the end is when silences
+     * are skipped, in microseconds of the episode; divide by the speed for the time saved in
+     * listening
+     */
+    public long getTimeSavedUs(long fromUs) {
+        long saved = 0;
+        for (int i = 0; i < getSilenceCount(); i++) {
+            saved += Math.max(0, getEndUs(i) - Math.max(fromUs, getStartUs(i)));
+        }
+        return saved;
+    }
+
+    public void write(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeFloat(mThresholdDb);
+            out.writeInt(mMinSilenceMs);
+            out.writeInt(mIntervals.length / 2);
+            for (int value : mIntervals) {
+                out.writeInt(value);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @throws IOException If the file could not be read or is no silence map
+     */
+    public static SilenceMap read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a silence map: " + file);
+            }
+            float thresholdDb = in.readFloat();
+            int minSilenceMs = in.readInt();
+            int count = in.readInt();
+            if (count < 0 || count > file.length() / 8) {
+                throw new IOException("Corrupt silence map: " + file);
+            }
+            int[] intervals = new int[count * 2];
+            for (int i = 0; i < intervals.length; i++) {
+                intervals[i] = in.readInt();
+            }
+            return new SilenceMap(thresholdDb, minSilenceMs, intervals);
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -21,21 +21,13 @@ package org.antennapod.audio;
 
 import android.annotation.TargetApi;
 import android.content.Context;
-import android.media.AudioFormat;
-import android.media.AudioManager;
-import android.media.AudioTrack;
-import android.media.MediaCodec;
-import android.media.MediaExtractor;
-import android.media.MediaFormat;
 import android.net.Uri;
 import android.os.Build;
 import android.os.PowerManager;
-import android.util.Log;
-
-import org.vinuxproject.sonic.Sonic;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -56,11 +48,15 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
     private static final String TAG = SonicAudioPlayer.class.getSimpleName();
     private final static String TAG_TRACK = "SonicTrack";
 
-    private AudioTrack mTrack;
-    private int mBufferSize;
-    private Sonic mSonic;
-    private MediaExtractor mExtractor;
-    private MediaCodec mCodec;
+    private final SonicPipeline mPipeline;
+    private Extractor mExtractor;
+    private Decoder mDecoder;
+    private WavSource mWavSource;
+    private volatile boolean mNormalizeLoudness;
+    private volatile boolean mSkipSilence;
+    private volatile SilenceMap mSilenceMap;
+    private volatile boolean mAccurateSeek;
+    private long mPreRollUs = -1;
     private Thread mDecoderThread;
     private String mPath;
     private Uri mUri;
@@ -71,21 +67,50 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
     private AtomicInteger mSeekingCount = new AtomicInteger(0);
     private boolean mIsDecoding;
     private long mDuration;
-    private float mCurrentSpeed;
-    private float mCurrentPitch;
+    private long mPrefetchSkipUs;
+    private long mPrefetchWindowUs;
+    private long mPrefetchBudgetBytes;
+    private long[] mChapterMarksUs;
+    private volatile Prefetcher mPrefetcher;
 
     private final SonicAudioPlayerState state = new SonicAudioPlayerState();
 
     private final Context mContext;
     private PowerManager.WakeLock mWakeLock = null;
 
-    private boolean mDownMix;
+    private final DecodeLoop.Host mDecoderHost = new DecodeLoop.Host() {
+        @Override
+        public boolean shouldContinue() {
+            return mContinue;
+        }
+
+        @Override
+        public boolean waitWhilePaused() {
+            if (!state.is(PAUSED)) {
+                return false;
+            }
+            PlayerLog.d(TAG_TRACK, "Decoder changed to PAUSED");
+            try {
+                synchronized (mDecoderLock) {
+                    mDecoderLock.wait();
+                    PlayerLog.d(TAG_TRACK, "Done with wait");
+                }
+            } catch (InterruptedException e) {
+                // Purposely not doing anything here
+            }
+            return true;
+        }
 
+        @Override
+        public void onError(IOException e) {
+            PlayerLog.e(TAG_TRACK, "Reading WAVE file failed", e);
+            error();
+        }
+    };
 
     SonicAudioPlayer(MediaPlayer owningMediaPlayer, Context context, String userAgent) {
         super(owningMediaPlayer, context, userAgent);
-        mCurrentSpeed = 1.0f;
-        mCurrentPitch = 1.0f;
+        mPipeline = new SonicPipeline(AndroidAudioSink.FACTORY, Clock.SYSTEM);
         mContinue = false;
         mIsDecoding = false;
         mContext = context;
@@ -93,15 +118,15 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
         mUri = null;
         mLock = new ReentrantLock();
         mDecoderLock = new Object();
-        mDownMix = false;
     }
 
     @Override
     public int getAudioSessionId() {
-        if (mTrack == null) {
+        AudioSink sink = mPipeline.getSink();
+        if (sink == null) {
             return 0;
         }
-        return mTrack.getAudioSessionId();
+        return sink.getAudioSessionId();
     }
 
     @Override
@@ -116,19 +141,23 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
 
     @Override
     public float getCurrentPitchStepsAdjustment() {
-        return mCurrentPitch;
+        return mPipeline.getPitch();
     }
 
     public int getCurrentPosition() {
         if (state.is(INITIALIZED) || state.is(IDLE) || state.is(ERROR)) {
             return 0;
         }
-        return (int) (mExtractor.getSampleTime() / 1000);
+        WavSource wavSource = mWavSource;
+        if (wavSource != null) {
+            return (int) (wavSource.getSampleTime() / 1000);
+        }
+        return (int) (mPipeline.getPositionUs(mExtractor.getSampleTime()) / 1000);
     }
 
     @Override
     public float getCurrentSpeedMultiplier() {
-        return mCurrentSpeed;
+        return mPipeline.getSpeed();
     }
 
     @Override
@@ -138,7 +167,7 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
 
     @Override
     public void setDownmix(boolean enable) {
-        mDownMix = enable;
+        mPipeline.setDownMix(enable);
     }
 
     public int getDuration() {
@@ -173,21 +202,21 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
     }
 
     public void pause() {
-        Log.d(TAG, "pause(), current state: " + state);
+        PlayerLog.d(TAG, "pause(), current state: %s", state);
         if (state.is(PREPARED)) {
-            Log.d(TAG_TRACK, "PREPARED, ignore pause()");
+            PlayerLog.d(TAG_TRACK, "PREPARED, ignore pause()");
             return;
         }
         if (!state.is(STARTED) && !state.is(PAUSED)) {
             error();
             return;
         }
-        mTrack.pause();
+        mPipeline.getSink().pause();
         state.changeTo(PAUSED);
     }
 
     public void prepare() {
-        Log.d(TAG, "prepare(), current state: " + state);
+        PlayerLog.d(TAG, "prepare(), current state: %s", state);
         if (!state.is(INITIALIZED) && !state.is(STOPPED)) {
             error();
             return;
@@ -196,16 +225,27 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
     }
 
     public void prepareAsync() {
-        Log.d(TAG, "prepareAsync(), current state: " + state);
+        PlayerLog.d(TAG, "prepareAsync(), current state: %s", state);
         if (!state.is(INITIALIZED) && !state.is(STOPPED)) {
             error();
             return;
         }
 
+        final PlaybackTrace.Tracer tracer = PlaybackTrace.getTracer();
+        final int cookie = PlaybackTrace.nextCookie();
+        if (tracer != null) {
+            tracer.beginAsyncSection("prepareAsync", cookie);
+        }
         Thread t = new Thread(new Runnable() {
             @Override
             public void run() {
-                doPrepare();
+                try {
+                    doPrepare();
+                } finally {
+                    if (tracer != null) {
+                        tracer.endAsyncSection("prepareAsync", cookie);
+                    }
+                }
             }
         });
         t.setDaemon(true);
@@ -222,7 +262,7 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
         } catch (IOException e) {
             String currentPath = currentPath();
             if (currentPath == null || currentPath.equals(lastPath)) {
-                Log.e(TAG_TRACK, "Failed setting data source!", e);
+                PlayerLog.e(TAG_TRACK, "Failed setting data source!", e);
                 error();
             }
             return;
@@ -238,13 +278,14 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
     public void stop() {
         if (!state.stoppingAllowed()) {
             error();
-            Log.d(TAG_TRACK, "Stopping in current state " + state + " not allowed");
+            PlayerLog.d(TAG_TRACK, "Stopping in current state %s not allowed", state);
             return;
         }
         state.changeTo(STOPPED);
         mContinue = false;
-        mTrack.pause();
-        mTrack.flush();
+        AudioSink sink = mPipeline.getSink();
+        sink.pause();
+        sink.flush();
     }
 
     public void start() {
@@ -256,28 +297,28 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
                 try {
                     initStream();
                 } catch (IOException e) {
-                    Log.e(TAG, "initStream() failed");
+                    PlayerLog.e(TAG, "initStream() failed");
                     error();
                     return;
                 }
             }
             state.changeTo(STARTED);
             mContinue = true;
-            mTrack.play();
+            mPipeline.getSink().play();
             decode();
         } else if (state.is(PAUSED)) {
             state.changeTo(STARTED);
             synchronized (mDecoderLock) {
                 mDecoderLock.notify();
             }
-            mTrack.play();
+            mPipeline.getSink().play();
         } else {
             state.changeTo(ERROR);
-            if (mTrack != null) {
+            if (mPipeline.getSink() != null) {
                 error();
             } else {
-                Log.d("start", "Attempting to start while in idle after construction. " +
-                        "Not allowed by no callbacks called");
+                PlayerLog.d("start", "Attempting to start while in idle after construction. "
+                        + "Not allowed by no callbacks called");
             }
         }
     }
@@ -300,23 +341,24 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
                 }
             }
         } catch (InterruptedException e) {
-            Log.e(TAG_TRACK, "Interrupted in reset while waiting for decoder thread to stop.", e);
+            PlayerLog.e(TAG_TRACK, "Interrupted in reset while waiting for decoder thread to stop.", e);
         }
-        if (mCodec != null) {
-            mCodec.release();
-            mCodec = null;
+        stopPrefetching();
+        if (mDecoder != null) {
+            mDecoder.release();
+            mDecoder = null;
         }
         if (mExtractor != null) {
             mExtractor.release();
             mExtractor = null;
         }
-        if (mTrack != null) {
-            mTrack.release();
-            mTrack = null;
+        if (mWavSource != null) {
+            mWavSource.release();
+            mWavSource = null;
         }
+        mPipeline.release();
         mPath = null;
         mUri = null;
-        mBufferSize = 0;
         state.changeTo(IDLE);
         mLock.unlock();
     }
@@ -326,7 +368,7 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
 
         if (!state.seekingAllowed()) {
             error();
-            Log.d(TAG_TRACK, "Seeking in current state " + state + " is not seekable");
+            PlayerLog.d(TAG_TRACK, "Seeking in current state %s is not seekable", state);
             return;
         }
 
@@ -334,22 +376,48 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
             playing = true;
             pause();
         }
-        if (mTrack == null) {
+        AudioSink sink = mPipeline.getSink();
+        if (sink == null) {
             return;
         }
-        mTrack.flush();
+        sink.flush();
 
         final boolean wasPlaying = playing;
+        final PlaybackTrace.Tracer tracer = PlaybackTrace.getTracer();
+        final int cookie = PlaybackTrace.nextCookie();
+        if (tracer != null) {
+            tracer.beginAsyncSection("seekTo", cookie);
+        }
 
         Runnable seekRunnable = new Runnable() {
 
             @Override
             public void run() {
+                try {
+                    seek();
+                } finally {
+                    if (tracer != null) {
+                        tracer.endAsyncSection("seekTo", cookie);
+                    }
+                }
+            }
+
+            private void seek() {
                 String lastPath = currentPath();
 
                 mSeekingCount.incrementAndGet();
+                mPipeline.flush();
                 try {
-                    mExtractor.seekTo(((long) msec * 1000), MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                    if (mWavSource != null) {
+                        mWavSource.seekTo((long) msec * 1000);
+                    } else if (!mPipeline.replayFrom((long) msec * 1000)
+                            && !playPrefetched((long) msec * 1000)) {
+                        if (mAccurateSeek) {
+                            mPipeline.seekAccurately((long) msec * 1000);
+                        } else {
+                            mExtractor.seekTo((long) msec * 1000);
+                        }
+                    }
                 } catch (Exception e) {
                     error();
                     return;
@@ -358,9 +426,12 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
                 }
 
                 // make sure that the current episode didn't change while seeking
-                if (mExtractor != null && lastPath != null && lastPath.equals(currentPath()) && !state.is(ERROR)) {
+                if ((mExtractor != null || mWavSource != null) && lastPath != null
+                        && lastPath.equals(currentPath()) && !state.is(ERROR)) {
 
-                    Log.d(TAG, "seek completed, position: " + getCurrentPosition());
+                    if (PlayerLog.DEBUG) {
+                        PlayerLog.d(TAG, "seek completed, position: %s", getCurrentPosition());
+                    }
 
                     if (owningMediaPlayer.onSeekCompleteListener != null) {
                         owningMediaPlayer.onSeekCompleteListener.onSeekComplete(owningMediaPlayer);
@@ -393,17 +464,17 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
 
     @Override
     public void setPitchStepsAdjustment(float pitchSteps) {
-        mCurrentPitch += pitchSteps;
+        setPlaybackPitch(mPipeline.getPitch() + pitchSteps);
     }
 
     @Override
     public void setPlaybackPitch(float f) {
-        mCurrentSpeed = f;
+        mPipeline.setPitch(f);
     }
 
     @Override
     public void setPlaybackSpeed(float f) {
-        mCurrentSpeed = f;
+        mPipeline.setSpeed(f);
     }
 
     @Override
@@ -427,17 +498,92 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
     }
 
     void setDownMix(boolean downmix) {
-        mDownMix = downmix;
+        mPipeline.setDownMix(downmix);
+    }
+
+    void setNormalizeLoudness(boolean normalizeLoudness) {
+        mNormalizeLoudness = normalizeLoudness;
+    }
+
+    void setAccurateSeek(boolean accurateSeek) {
+        mAccurateSeek = accurateSeek;
+    }
+
+    void setSkipSilence(boolean skipSilence) {
+        mSkipSilence = skipSilence;
+        mPipeline.setSilenceMap(skipSilence ? mSilenceMap : null);
+    }
+
+    /**
+     * @return How much shorter the rest of the episode plays when its silences are skipped,
+     * in milliseconds of the episode, whether they are skipped or not; 0 if it has no silence
+     * map
+     */
+    long getSilenceTimeSavedMs() {
+        SilenceMap map = mSilenceMap;
+        if (map == null) {
+            return 0;
+        }
+        return map.getTimeSavedUs(Math.max(0, getCurrentPosition() * 1000L)) / 1000;
+    }
+
+    /**
+     * Replaces the processing stages between Sonic and the AudioTrack.
+     */
+    void setAudioProcessors(AudioProcessor... processors) {
+        mPipeline.setAudioProcessors(processors);
+    }
+
+    /**
+     * @param seconds How much decoded audio to keep for seeks back into it, 0 for none
+     */
+    void setRewindHistorySeconds(float seconds) {
+        mPipeline.setHistorySeconds(seconds);
+    }
+
+    /**
+     * @param windowMs How much audio to decode ahead at each likely seek target, 0 for none
+     */
+    void setForwardPrefetch(int skipForwardMs, int windowMs, int memoryBudgetKb) {
+        mPrefetchSkipUs = skipForwardMs * 1000L;
+        mPrefetchWindowUs = windowMs * 1000L;
+        mPrefetchBudgetBytes = memoryBudgetKb * 1024L;
+    }
+
+    void setPrefetchChapterMarks(long[] chapterMarksMs) {
+        long[] marksUs = null;
+        if (chapterMarksMs != null) {
+            marksUs = new long[chapterMarksMs.length];
+            for (int i = 0; i < marksUs.length; i++) {
+                marksUs[i] = chapterMarksMs[i] * 1000;
+            }
+        }
+        mChapterMarksUs = marksUs;
+        Prefetcher prefetcher = mPrefetcher;
+        if (prefetcher != null) {
+            prefetcher.setChapterMarks(marksUs);
+        }
+    }
+
+    PlaybackMetrics getPlaybackMetrics() {
+        return mPipeline.getMetrics();
+    }
+
+    /**
+     * @param metrics Where to record metrics of the decode loop, or null to not record them
+     */
+    void setPlaybackMetrics(PlaybackMetrics metrics) {
+        mPipeline.setMetrics(metrics);
     }
 
-    @SuppressWarnings("deprecation")
     @Override
     public void setVolume(float leftVolume, float rightVolume) {
         // Pass call directly to AudioTrack if available.
-        if (mTrack == null) {
+        AudioSink sink = mPipeline.getSink();
+        if (sink == null) {
             return;
         }
-        mTrack.setStereoVolume(leftVolume, rightVolume);
+        sink.setVolume(leftVolume, rightVolume);
     }
 
     @Override
@@ -489,19 +635,38 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
     }
 
     private boolean initStream() throws IOException {
+        PlaybackTrace.Tracer tracer = PlaybackTrace.getTracer();
+        if (tracer != null) {
+            tracer.beginSection("initStream");
+        }
+        try {
+            return openStream();
+        } finally {
+            if (tracer != null) {
+                tracer.endSection();
+            }
+        }
+    }
+
+    private boolean openStream() throws IOException {
 
         // Since this method could be running in another thread, when "setDataSource" returns
         // we need to check if the media path has changed
         String lastPath = currentPath();
 
+        if (initWavStream()) {
+            return true;
+        }
+
         mInitiatingCount.incrementAndGet();
         try {
-            mExtractor = new MediaExtractor();
+            AndroidExtractor extractor = new AndroidExtractor();
+            mExtractor = extractor;
 
             if (mPath != null) {
-                mExtractor.setDataSource(mPath, getHeaders());
+                extractor.setDataSource(mPath, getHeaders());
             } else if (mUri != null) {
-                mExtractor.setDataSource(mContext, mUri, getHeaders());
+                extractor.setDataSource(mContext, mUri, getHeaders());
             } else {
                 throw new IOException("Neither path nor uri set");
             }
@@ -513,6 +678,8 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
         if (currentPath == null || !currentPath.equals(lastPath) || state.is(ERROR)) {
             return false;
         }
+        GaplessInfo gaplessInfo = readGaplessInfo(localPath());
+        initSilenceMap();
 
         mLock.lock();
 
@@ -521,40 +688,41 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
             throw new IOException("Extractor is null");
         }
 
-        int trackNum = -1;
-        for (int i = 0; i < mExtractor.getTrackCount(); i++) {
-            final MediaFormat oFormat = mExtractor.getTrackFormat(i);
-            String mime = oFormat.getString(MediaFormat.KEY_MIME);
-            if (trackNum < 0 && mime.startsWith("audio/")) {
-                trackNum = i;
-            } else {
-                mExtractor.unselectTrack(i);
-            }
-        }
-
-        if (trackNum < 0) {
+        final TrackFormat format;
+        try {
+            format = mExtractor.selectAudioTrack();
+        } catch (IOException e) {
             mLock.unlock();
-            throw new IOException("No audio track found");
+            throw e;
         }
-
-        final MediaFormat oFormat = mExtractor.getTrackFormat(trackNum);
         try {
-            int sampleRate = oFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
-            int channelCount = oFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
-            final String mime = oFormat.getString(MediaFormat.KEY_MIME);
-            mDuration = oFormat.getLong(MediaFormat.KEY_DURATION);
-
-            Log.v(TAG_TRACK, "Sample rate: " + sampleRate);
-            Log.v(TAG_TRACK, "Channel count: " + channelCount);
-            Log.v(TAG_TRACK, "Mime type: " + mime);
-            Log.v(TAG_TRACK, "Duration: " + mDuration);
-
-            initDevice(sampleRate, channelCount);
-            mExtractor.selectTrack(trackNum);
-            mCodec = MediaCodec.createDecoderByType(mime);
-            mCodec.configure(oFormat, null, null, 0);
+            mDuration = format.getDurationUs();
+            mPreRollUs = format.getPreRollUs();
+
+            if (PlayerLog.VERBOSE) {
+                PlayerLog.v(TAG_TRACK, "Sample rate: %s", format.getSampleRate());
+                PlayerLog.v(TAG_TRACK, "Channel count: %s", format.getChannelCount());
+                PlayerLog.v(TAG_TRACK, "Mime type: %s", format.getMime());
+                PlayerLog.v(TAG_TRACK, "Duration: %s", mDuration);
+            }
+
+            if (format.isTrimmedByDecoder()) {
+                // The extractor found the delay and padding as well, trimming them again
+                // would cut off actual audio
+                PlayerLog.v(TAG_TRACK, "Gapless playback by the decoder");
+                gaplessInfo = null;
+            } else if (PlayerLog.VERBOSE && gaplessInfo != null) {
+                PlayerLog.v(TAG_TRACK, "Gapless playback from frame %s to %s",
+                        gaplessInfo.getStartFrame(), gaplessInfo.getEndFrame());
+            }
+            mPipeline.setGaplessInfo(gaplessInfo);
+            mPipeline.configure(format.getSampleRate(), format.getChannelCount(), false);
+            initLoudness();
+            mDecoder = AndroidDecoder.create(format.getMime());
+            mDecoder.configure(format);
+            startPrefetching();
         } catch (Throwable th) {
-            Log.e(TAG, Log.getStackTraceString(th));
+            PlayerLog.e(TAG, th);
             error();
         }
         mLock.unlock();
@@ -562,220 +730,196 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
         return true;
     }
 
-    private void initDevice(int sampleRate, int numChannels) {
-        mLock.lock();
-        final int format = findFormatFromChannels(numChannels);
-        int oldBufferSize = mBufferSize;
-        mBufferSize = AudioTrack.getMinBufferSize(sampleRate, format, AudioFormat.ENCODING_PCM_16BIT);
-        if (mBufferSize != oldBufferSize) {
-            if (mTrack != null) {
-                mTrack.release();
+    // Decodes ahead on a second extractor and decoder. Streams are not read twice.
+    private void startPrefetching() {
+        stopPrefetching();
+        final String path = localPath();
+        if (mPrefetchWindowUs <= 0 || path == null) {
+            return;
+        }
+        Prefetcher prefetcher = new Prefetcher(new Prefetcher.Source() {
+            @Override
+            public Extractor openExtractor() throws IOException {
+                AndroidExtractor extractor = new AndroidExtractor();
+                extractor.setDataSource(path, null);
+                return extractor;
             }
-            mTrack = createAudioTrack(sampleRate, format, mBufferSize);
+
+            @Override
+            public Decoder createDecoder(TrackFormat format) throws IOException {
+                Decoder decoder = AndroidDecoder.create(format.getMime());
+                decoder.configure(format);
+                decoder.start();
+                return decoder;
+            }
+
+            @Override
+            public long getPositionUs() {
+                // Released while the prefetcher stops
+                Extractor extractor = mExtractor;
+                return mPipeline.getPositionUs(extractor != null ? extractor.getSampleTime() : 0);
+            }
+        }, Clock.SYSTEM, mPrefetchSkipUs, mPrefetchWindowUs, mPrefetchBudgetBytes);
+        prefetcher.setChapterMarks(mChapterMarksUs);
+        mPrefetcher = prefetcher;
+        Thread t = new Thread(prefetcher, "Prefetcher");
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void stopPrefetching() {
+        if (mPrefetcher != null) {
+            mPrefetcher.release();
+            mPrefetcher = null;
         }
-        mSonic = new Sonic(sampleRate, numChannels);
-        mLock.unlock();
     }
 
-    private static int findFormatFromChannels(int numChannels) {
-        switch (numChannels) {
-            case 1:
-                return AudioFormat.CHANNEL_OUT_MONO;
-            case 2:
-                return AudioFormat.CHANNEL_OUT_STEREO;
-            case 3:
-                return AudioFormat.CHANNEL_OUT_STEREO | AudioFormat.CHANNEL_OUT_FRONT_CENTER;
-            case 4:
-                return AudioFormat.CHANNEL_OUT_QUAD;
-            case 5:
-                return AudioFormat.CHANNEL_OUT_QUAD | AudioFormat.CHANNEL_OUT_FRONT_CENTER;
-            case 6:
-                return AudioFormat.CHANNEL_OUT_5POINT1;
-            case 7:
-                return AudioFormat.CHANNEL_OUT_5POINT1 | AudioFormat.CHANNEL_OUT_BACK_CENTER;
-            case 8:
-                if (Build.VERSION.SDK_INT >= 23) {
-                    return AudioFormat.CHANNEL_OUT_7POINT1_SURROUND;
-                } else {
-                    return -1;
-                }
-            default:
-                return -1; // Error
+    // Plays a seek target from a window that was decoded ahead, if there is one
+    private boolean playPrefetched(long timeUs) {
+        Prefetcher prefetcher = mPrefetcher;
+        if (prefetcher == null) {
+            return false;
         }
+        PcmHistory window = prefetcher.take(timeUs);
+        return window != null && mPipeline.playPrefetched(window, timeUs);
     }
 
-    private AudioTrack createAudioTrack(int sampleRate,
-                                        int channelConfig,
-                                        int minBufferSize) {
-        for (int i = 4; i >= 1; i--) {
-            int bufferSize = minBufferSize * i;
+    private String localPath() {
+        if (mPath != null) {
+            return mPath;
+        } else if (mUri != null && "file".equals(mUri.getScheme())) {
+            return mUri.getPath();
+        }
+        return null;
+    }
 
-            AudioTrack audioTrack = null;
+    // Encoder delay and padding are only looked up in local files, streams are not read twice
+    private static GaplessInfo readGaplessInfo(String path) {
+        if (path == null) {
+            return null;
+        }
+        try {
+            FileInputStream in = new FileInputStream(path);
             try {
-                audioTrack = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate,
-                        channelConfig, AudioFormat.ENCODING_PCM_16BIT, bufferSize,
-                        AudioTrack.MODE_STREAM);
-                if (audioTrack.getState() == AudioTrack.STATE_INITIALIZED) {
-                    mBufferSize = bufferSize;
-                    return audioTrack;
-                } else {
-                    audioTrack.release();
-                }
-            } catch (IllegalArgumentException e) {
-                if (audioTrack != null) {
-                    audioTrack.release();
+                return GaplessInfo.read(in.getChannel());
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            PlayerLog.d(TAG_TRACK, "Could not read gapless info: %s", e.getMessage());
+            return null;
+        }
+    }
+
+    // Loads the silence map of a local episode, if it was made. Playback does not make one.
+    private void initSilenceMap() {
+        mSilenceMap = null;
+        String path = localPath();
+        if (path != null) {
+            File file = SilenceMap.getCacheFile(mContext.getCacheDir(), new File(path));
+            if (file.exists()) {
+                try {
+                    mSilenceMap = SilenceMap.read(file);
+                    if (PlayerLog.VERBOSE) {
+                        PlayerLog.v(TAG_TRACK, "%s silences", mSilenceMap.getSilenceCount());
+                    }
+                } catch (IOException e) {
+                    PlayerLog.w(TAG_TRACK, "Could not read silence map: %s", e.getMessage());
                 }
             }
         }
-        throw new IllegalStateException("Could not create buffer for AudioTrack");
+        mPipeline.setSilenceMap(mSkipSilence ? mSilenceMap : null);
+    }
+
+    // Loads the gain table EpisodeAnalysis made for a local episode. Episodes without one
+    // play as they are.
+    private void initLoudness() {
+        mPipeline.setGainTable(null);
+        String path = localPath();
+        if (!mNormalizeLoudness || path == null) {
+            return;
+        }
+        File file = GainTable.getCacheFile(mContext.getCacheDir(), new File(path));
+        if (!file.exists()) {
+            PlayerLog.v(TAG_TRACK, "No gain table");
+            return;
+        }
+        try {
+            GainTable gainTable = GainTable.read(file);
+            if (PlayerLog.VERBOSE) {
+                PlayerLog.v(TAG_TRACK, "Loudness %s LUFS", gainTable.getIntegratedLoudness());
+            }
+            mPipeline.setGainTable(gainTable);
+        } catch (IOException e) {
+            PlayerLog.w(TAG_TRACK, "Could not read gain table: %s", e.getMessage());
+        }
+    }
+
+    // Local WAVE files only need their samples copied, so they are read straight from the file
+    // instead of going through a MediaExtractor and a MediaCodec.
+    private boolean initWavStream() {
+        String path = localPath();
+        if (path == null) {
+            return false;
+        }
+        WavSource wavSource;
+        try {
+            wavSource = WavSource.open(path);
+        } catch (IOException e) {
+            PlayerLog.d(TAG_TRACK, "Not reading %s directly: %s", path, e.getMessage());
+            return false;
+        }
+        if (wavSource == null) {
+            return false;
+        }
+        WavHeader header = wavSource.getHeader();
+        if (PlayerLog.VERBOSE) {
+            PlayerLog.v(TAG_TRACK, "WAVE file, %s Hz, %s channels, %s bits",
+                    header.getSampleRate(), header.getChannels(), header.getBitsPerSample());
+        }
+        mLock.lock();
+        if (mWavSource != null) {
+            mWavSource.release();
+        }
+        mWavSource = wavSource;
+        mPipeline.setGaplessInfo(null);
+        // WAVE files are read directly, without an extractor to skip in
+        mSilenceMap = null;
+        mPipeline.setSilenceMap(null);
+        mDuration = header.getDurationUs();
+        // Anything but 16 bit samples is converted to float, and mixed like float decoder output
+        mPipeline.configure(header.getSampleRate(), header.getChannels(), !header.is16Bit());
+        initLoudness();
+        mLock.unlock();
+        return true;
     }
 
-    @SuppressWarnings("deprecation")
     private void decode() {
+        final DecodeLoop loop;
+        if (mWavSource != null) {
+            loop = new DecodeLoop(mDecoderHost, mPipeline, Clock.SYSTEM, mWavSource);
+        } else {
+            loop = new DecodeLoop(mDecoderHost, mPipeline, Clock.SYSTEM, mExtractor, mDecoder);
+            loop.setPreRollUs(mPreRollUs);
+        }
         mDecoderThread = new Thread(new Runnable() {
 
-            private int currHeadPos;
-
             @Override
             public void run() {
 
                 mIsDecoding = true;
-                mCodec.start();
-
-                ByteBuffer[] inputBuffers = mCodec.getInputBuffers();
-                ByteBuffer[] outputBuffers = mCodec.getOutputBuffers();
-
-                boolean sawInputEOS = false;
-                boolean sawOutputEOS = false;
-
-                while (!sawInputEOS && !sawOutputEOS && mContinue) {
-                    currHeadPos = mTrack.getPlaybackHeadPosition();
-                    if (state.is(PAUSED)) {
-                        System.out.println("Decoder changed to PAUSED");
-                        try {
-                            synchronized (mDecoderLock) {
-                                mDecoderLock.wait();
-                                System.out.println("Done with wait");
-                            }
-                        } catch (InterruptedException e) {
-                            // Purposely not doing anything here
-                        }
-                        continue;
-                    }
-
-                    if (null != mSonic) {
-                        mSonic.setSpeed(mCurrentSpeed);
-                        mSonic.setPitch(mCurrentPitch);
-                    }
+                loop.run();
+                PlayerLog.d(TAG_TRACK, "Decoding loop exited, stopped codec and track");
 
-                    int inputBufIndex = mCodec.dequeueInputBuffer(200);
-                    if (inputBufIndex >= 0) {
-                        ByteBuffer dstBuf = inputBuffers[inputBufIndex];
-                        int sampleSize = mExtractor.readSampleData(dstBuf, 0);
-                        long presentationTimeUs = 0;
-                        if (sampleSize < 0) {
-                            sawInputEOS = true;
-                            sampleSize = 0;
-                        } else {
-                            presentationTimeUs = mExtractor.getSampleTime();
-                        }
-                        mCodec.queueInputBuffer(
-                                inputBufIndex,
-                                0,
-                                sampleSize,
-                                presentationTimeUs,
-                                sawInputEOS ? MediaCodec.BUFFER_FLAG_END_OF_STREAM : 0);
-                        if (!sawInputEOS) {
-                            mExtractor.advance();
-                        }
+                if (PlayerLog.DEBUG) {
+                    PlayerLog.d(TAG_TRACK, "Duration: %s", (int) (mDuration / 1000));
+                    if (!((mInitiatingCount.get() > 0) || (mSeekingCount.get() > 0))) {
+                        PlayerLog.d(TAG_TRACK, "Current position: %s", getCurrentPosition());
                     }
-
-                    final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
-                    byte[] modifiedSamples = new byte[info.size];
-
-                    int res;
-                    do {
-                        res = mCodec.dequeueOutputBuffer(info, 200);
-                        if (res >= 0) {
-                            int outputBufIndex = res;
-                            final byte[] chunk = new byte[info.size];
-                            outputBuffers[res].get(chunk);
-                            outputBuffers[res].clear();
-
-                            if (chunk.length > 0) {
-                                mSonic.writeBytesToStream(chunk, chunk.length);
-                            } else {
-                                mSonic.flushStream();
-                            }
-                            int available = mSonic.samplesAvailable();
-                            if (available > 0) {
-                                if (modifiedSamples.length < available) {
-                                    modifiedSamples = new byte[available];
-                                }
-                                if (mDownMix && mSonic.getNumChannels() == 2) {
-                                    int maxBytes = (available / 4) * 4;
-                                    mSonic.readBytesFromStream(modifiedSamples, maxBytes);
-                                    DownMixer.downMix(modifiedSamples);
-                                    mTrack.write(modifiedSamples, 0, maxBytes);
-                                } else {
-                                    mSonic.readBytesFromStream(modifiedSamples, available);
-                                    mTrack.write(modifiedSamples, 0, available);
-                                }
-                            }
-
-                            mCodec.releaseOutputBuffer(outputBufIndex, false);
-
-                            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                                sawOutputEOS = true;
-                            }
-                        } else if (res == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
-                            outputBuffers = mCodec.getOutputBuffers();
-                            Log.d("PCM", "Output buffers changed");
-                        } else if (res == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
-                            final MediaFormat oFormat = mCodec.getOutputFormat();
-                            Log.d("PCM", "Output format has changed to " + oFormat);
-                            int sampleRate = oFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
-                            int channelCount = oFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
-                            if (sampleRate != mSonic.getSampleRate() ||
-                                    channelCount != mSonic.getNumChannels()) {
-                                mTrack.stop();
-                                mLock.lock();
-                                mTrack.release();
-                                initDevice(sampleRate, channelCount);
-                                outputBuffers = mCodec.getOutputBuffers();
-                                mTrack.play();
-                                mLock.unlock();
-                            }
-                        }
-                    } while (res == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED ||
-                            res == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED);
-                }
-                Log.d(TAG_TRACK, "Decoding loop exited. Stopping codec and track");
-                Log.d(TAG_TRACK, "Duration: " + (int) (mDuration / 1000));
-
-                if (!((mInitiatingCount.get() > 0) || (mSeekingCount.get() > 0))) {
-                    Log.d(TAG_TRACK, "Current position: " + getCurrentPosition());
-                }
-                mCodec.stop();
-
-                // wait for track to finish playing
-                int lastHeadPos;
-                do {
-                    lastHeadPos = currHeadPos;
-                    try {
-                        Thread.sleep(100);
-                        currHeadPos = mTrack.getPlaybackHeadPosition();
-                    } catch (InterruptedException e) { /* ignore */ }
-                } while (currHeadPos != lastHeadPos);
-                mTrack.stop();
-
-                Log.d(TAG_TRACK, "Stopped codec and track");
-
-                if (!((mInitiatingCount.get() > 0) || (mSeekingCount.get() > 0))) {
-                    Log.d(TAG_TRACK, "Current position: " + getCurrentPosition());
                 }
                 mIsDecoding = false;
-                if (mContinue && (sawInputEOS || sawOutputEOS)) {
+                if (mContinue && loop.reachedEnd()) {
                     state.changeTo(PLAYBACK_COMPLETED);
                     if (owningMediaPlayer.onCompletionListener != null) {
                         Thread t = new Thread(new Runnable() {
@@ -789,9 +933,7 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
                         t.start();
                     }
                 } else {
-                    Log.d(TAG_TRACK, "Loop ended before saw input eos or output eos");
-                    Log.d(TAG_TRACK, "sawInputEOS: " + sawInputEOS);
-                    Log.d(TAG_TRACK, "sawOutputEOS: " + sawOutputEOS);
+                    PlayerLog.d(TAG_TRACK, "Loop ended before saw input eos or output eos");
                 }
                 synchronized (mDecoderLock) {
                     mDecoderLock.notifyAll();
@@ -801,7 +943,7 @@ public class SonicAudioPlayer extends AbstractAudioPlayer {
         mDecoderThread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
             @Override
             public void uncaughtException(Thread thread, Throwable ex) {
-                Log.e(TAG_TRACK, Log.getStackTraceString(ex));
+                PlayerLog.e(TAG_TRACK, ex);
                 error();
             }
         });
@@ -1,7 +1,5 @@
 package org.antennapod.audio;
 
-import android.util.Log;
-
 class SonicAudioPlayerState {
 
     private static final String TAG = "SonicAudioPlayerState";
@@ -25,7 +23,7 @@ class SonicAudioPlayerState {
 
     void changeTo(int state) {
         currentState = state;
-        Log.d(TAG, "Changed to " + toString());
+        PlayerLog.d(TAG, "Changed to %s", this);
     }
 
     @Override
@@ -0,0 +1,804 @@
+package org.antennapod.audio;
+
+import org.vinuxproject.sonic.Sonic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Everything between decoded samples and the {@link AudioSink}: gapless trimming, loudness
+ * normalisation, downmixing, Sonic and the processing stages. Does not depend on
+ * Android, so {@link SonicAudioPlayer} and simulations on a plain JVM run the same code.
+ * Float samples stay floats through Sonic and the stages if the sink plays floats.
+ * Samples are written from the decoder thread only; speed, pitch, downmix and the processing
+ * stages may be changed from any thread.
+ */
+class SonicPipeline {
+
+    // Number of pitch periods over which speed and pitch changes are spread during playback
+    private static final int PARAMETER_RAMP_PERIODS = 20;
+
+    private final AudioSink.Factory mSinkFactory;
+    private final Clock mClock;
+    private volatile AudioSink mSink;
+    // Whether the sink was asked for float samples. It may not play them anyway.
+    private boolean mFloatSinkRequested;
+    private volatile Sonic mSonic;
+    private volatile float mSpeed = 1.0f;
+    private volatile float mPitch = 1.0f;
+    private volatile boolean mDownMix;
+    private DownMixer mDownMixer;
+    private ShortBuffer mDownMixBuffer;
+    private int mChannelCount;
+    private boolean mFloatInput;
+    private float[] mFloatBuffer;
+    private short[] mShortBuffer;
+    private byte[] mSonicInput;
+    private byte[] mSonicOutput;
+    private volatile AudioProcessorChain mProcessorChain = new AudioProcessorChain();
+    private ShortBuffer mProcessorBuffer;
+    private FloatBuffer mFloatOutput;
+    // Set by flush(), the stages are flushed on the decoder thread before the next buffer
+    private volatile boolean mFlushProcessors;
+    private final SonicQualityGovernor mQualityGovernor =
+            new SonicQualityGovernor(Sonic.QUALITY_DOWNSAMPLED);
+    private GaplessInfo mGaplessInfo;
+    private volatile GainTable mGainTable;
+    private volatile PlaybackMetrics mMetrics;
+    // Frames written to the sink since it was set up or flushed, and its playback position
+    // then, for the trace counter of how much it buffers
+    private long mSinkWrittenFrames;
+    private int mSinkStartPosition;
+    private volatile float mHistorySeconds;
+    private volatile PcmHistory mHistory;
+    // What is replayed, the history or a window of the prefetcher, and the position in it that
+    // is played next, or -1 while playing what is decoded
+    private volatile PcmHistory mReplaySource;
+    private volatile long mReplayFrame = -1;
+    // Where the decode loop has to seek the extractor to, after a prefetched window or for an
+    // accurate seek, or -1
+    private volatile long mPendingSeekUs = -1;
+    // Position of an accurate seek until decoding reached it, or -1
+    private volatile long mSeekTargetUs = -1;
+    // Decoded samples between these positions are dropped: what was played from a prefetched
+    // window already, or a silence that is skipped
+    private long mDiscardFromUs = -1;
+    private long mDiscardUntilUs = -1;
+    private volatile SilenceMap mSilenceMap;
+    // The silence skipped last, which is not skipped again until the next seek
+    private int mSkippedSilence = -1;
+    private byte[] mReplayBytes;
+    private ByteBuffer mReplayBuffer;
+    private final Decoder.BufferInfo mReplayInfo = new Decoder.BufferInfo();
+
+    /**
+     * @param clock Clock the time Sonic takes and writes to the sink block are measured with
+     */
+    SonicPipeline(AudioSink.Factory sinkFactory, Clock clock) {
+        mSinkFactory = sinkFactory;
+        mClock = clock;
+    }
+
+    /**
+     * Sets up Sonic and the sink for decoded samples of the given format. The sink is only
+     * created anew if its format changes. For float samples, the sink is asked to play floats.
+     *
+     * @param floatInput Whether samples are floats instead of 16 bit integers
+     */
+    synchronized void configure(int sampleRate, int numChannels, boolean floatInput) {
+        PlaybackTrace.Tracer tracer = PlaybackTrace.getTracer();
+        if (tracer != null) {
+            tracer.beginSection("Configure sink");
+        }
+        try {
+            // Downmixed audio is mixed to mono before it is time-stretched, so Sonic and the
+            // AudioTrack only have to deal with a single channel. Stereo is averaged by Sonic
+            // itself while it copies its input, surround layouts go through the DownMixer.
+            final int outputChannels = shouldDownMix(numChannels) ? 1 : numChannels;
+            AudioSink sink = mSink;
+            if (sink == null || sink.getSampleRate() != sampleRate
+                    || sink.getChannelCount() != outputChannels
+                    || mFloatSinkRequested != floatInput) {
+                mSink = null;
+                if (sink != null) {
+                    sink.release();
+                }
+                mSink = mSinkFactory.createSink(sampleRate, outputChannels, floatInput);
+                mFloatSinkRequested = floatInput;
+            }
+            mSinkWrittenFrames = 0;
+            mSinkStartPosition = mSink.getPlaybackHeadPosition();
+            mFloatInput = floatInput;
+            Sonic sonic = new Sonic(sampleRate, outputChannels);
+            sonic.setSpeed(mSpeed);
+            sonic.setPitch(mPitch);
+            sonic.setRampPeriods(PARAMETER_RAMP_PERIODS);
+            sonic.setQuality(mQualityGovernor.getQuality());
+            mQualityGovernor.reset();
+            mProcessorChain.configure(sampleRate, outputChannels);
+            mSonic = sonic;
+            // Pick up a speed or pitch that was set while the stream was being created
+            sonic.setTargetSpeed(mSpeed);
+            sonic.setTargetPitch(mPitch);
+            mChannelCount = numChannels;
+            mReplayFrame = -1;
+            mHistory = null;
+            mDownMixer = null;
+            if (outputChannels != numChannels) {
+                // The DownMixer only deals with 16 bit samples, float input is always mixed
+                // by Sonic
+                if (numChannels == 2 || floatInput) {
+                    sonic.setNumInputChannels(numChannels);
+                } else {
+                    mDownMixer = new DownMixer(numChannels, outputChannels);
+                }
+            }
+        } finally {
+            if (tracer != null) {
+                tracer.endSection();
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #configure(int, int, boolean)} while playing: the sink is stopped while
+     * things change, and played again afterwards.
+     */
+    void reconfigure(int sampleRate, int numChannels, boolean floatInput) {
+        mSink.stop();
+        configure(sampleRate, numChannels, floatInput);
+        mSink.play();
+    }
+
+    /**
+     * @return Whether the format of the decoded samples differs from what the pipeline was
+     * configured for, or downmixing was switched on or off since
+     */
+    boolean needsReconfigure(TrackFormat format) {
+        return format.getSampleRate() != getSampleRate() || format.getChannelCount() != mChannelCount
+                || format.isFloatPcm() != mFloatInput;
+    }
+
+    boolean needsReconfigure() {
+        return shouldDownMix(mChannelCount) != isDownMixing();
+    }
+
+    private boolean shouldDownMix(int numChannels) {
+        return mDownMix && numChannels > 1;
+    }
+
+    private boolean isDownMixing() {
+        return mSonic.getNumChannels() != mChannelCount;
+    }
+
+    /**
+     * @return The sink, or null before the pipeline was configured and after it was released
+     */
+    AudioSink getSink() {
+        return mSink;
+    }
+
+    int getSampleRate() {
+        return mSonic.getSampleRate();
+    }
+
+    /**
+     * @return The number of channels of the decoded samples
+     */
+    int getChannelCount() {
+        return mChannelCount;
+    }
+
+    boolean isFloatInput() {
+        return mFloatInput;
+    }
+
+    float getSpeed() {
+        return mSpeed;
+    }
+
+    void setSpeed(float speed) {
+        mSpeed = speed;
+        Sonic sonic = mSonic;
+        if (sonic != null) {
+            sonic.setTargetSpeed(speed);
+        }
+    }
+
+    float getPitch() {
+        return mPitch;
+    }
+
+    void setPitch(float pitch) {
+        mPitch = pitch;
+        Sonic sonic = mSonic;
+        if (sonic != null) {
+            sonic.setTargetPitch(pitch);
+        }
+    }
+
+    /**
+     * Takes effect with the next {@link #configure(int, int, boolean)}, see
+     * {@link #needsReconfigure()}.
+     */
+    void setDownMix(boolean downmix) {
+        mDownMix = downmix;
+    }
+
+    /**
+     * Replaces the processing stages between Sonic and the sink.
+     */
+    synchronized void setAudioProcessors(AudioProcessor... processors) {
+        AudioProcessorChain chain = new AudioProcessorChain(processors);
+        Sonic sonic = mSonic;
+        if (sonic != null) {
+            chain.configure(sonic.getSampleRate(), sonic.getNumChannels());
+        }
+        mProcessorChain = chain;
+    }
+
+    /**
+     * Keeps the last <code>seconds</code> of decoded samples, so seeks back into them need no
+     * decoding, see {@link #replayFrom(long)}. 0 keeps none.
+     */
+    void setHistorySeconds(float seconds) {
+        mHistorySeconds = seconds;
+        mReplayFrame = -1;
+        // Created anew with the next decoded buffer
+        mHistory = null;
+    }
+
+    /**
+     * Plays from <code>timeUs</code> on out of the history of decoded samples, if it holds
+     * that position, and then goes on with what is decoded next. Otherwise the history is
+     * dropped, as the caller has to seek the extractor.
+     *
+     * @return Whether the position is played from the history
+     */
+    boolean replayFrom(long timeUs) {
+        PcmHistory history = mHistory;
+        if (history == null) {
+            return false;
+        }
+        if (!history.contains(timeUs)) {
+            mReplayFrame = -1;
+            history.clear();
+            return false;
+        }
+        mReplaySource = history;
+        mReplayFrame = history.toFrame(timeUs);
+        return true;
+    }
+
+    /**
+     * Plays from <code>timeUs</code> on out of a window decoded ahead by a {@link Prefetcher}.
+     * The decode loop then seeks the extractor to the end of the window, see
+     * {@link #takePendingSeekUs()}, and goes on with what is decoded from there.
+     *
+     * @return Whether the window suits the format played and holds the position
+     */
+    boolean playPrefetched(PcmHistory window, long timeUs) {
+        if (window.getSampleRate() != mSonic.getSampleRate()
+                || window.getFrameSize() != (mFloatInput ? 4 : 2) * mChannelCount
+                || !window.contains(timeUs)) {
+            return false;
+        }
+        PcmHistory history = mHistory;
+        if (history != null) {
+            // Playback goes on somewhere else, the window is kept instead as it is played
+            history.clear();
+        }
+        mReplaySource = window;
+        mReplayFrame = window.toFrame(timeUs);
+        mPendingSeekUs = window.toTimeUs(window.getEndFrame());
+        return true;
+    }
+
+    /**
+     * Seeks to exactly <code>timeUs</code>: the decode loop seeks the extractor to the sync
+     * sample before it, and what is decoded before the position is dropped, without going
+     * through Sonic or the sink. Until then, {@link #getPositionUs(long)} tells the position.
+     */
+    void seekAccurately(long timeUs) {
+        mSeekTargetUs = timeUs;
+        mPendingSeekUs = timeUs;
+    }
+
+    /**
+     * @return The position the extractor has to be seeked to, once, or -1 if it stays where it
+     * is. Decoded samples before the position are dropped.
+     */
+    long takePendingSeekUs() {
+        long seekUs = mPendingSeekUs;
+        if (seekUs >= 0) {
+            mPendingSeekUs = -1;
+            mDiscardFromUs = 0;
+            mDiscardUntilUs = seekUs;
+        }
+        return seekUs;
+    }
+
+    /**
+     * @return Whether samples come from the history, see {@link #writeReplay(int)}
+     */
+    boolean isReplaying() {
+        return mReplayFrame >= 0;
+    }
+
+    /**
+     * @return The position played next from the history, or -1 if not replaying
+     */
+    long getReplayPositionUs() {
+        long frame = mReplayFrame;
+        PcmHistory source = mReplaySource;
+        return frame < 0 || source == null ? -1 : source.toTimeUs(frame);
+    }
+
+    /**
+     * @param extractorTimeUs Sample time of the extractor that is decoded from
+     * @return The position of playback: in the history or the window being replayed, the
+     * target of an accurate seek while decoding has not reached it, or else the extractor's
+     */
+    long getPositionUs(long extractorTimeUs) {
+        long replayUs = getReplayPositionUs();
+        if (replayUs >= 0) {
+            return replayUs;
+        }
+        long seekUs = mSeekTargetUs;
+        // The extractor is still before the position an accurate seek goes to
+        return seekUs >= 0 ? seekUs : extractorTimeUs;
+    }
+
+    /**
+     * Plays up to <code>frames</code> frames from the history, or the prefetched window.
+     * Replaying ends once it has been played up to its end, where decoding goes on.
+     */
+    void writeReplay(int frames) {
+        PcmHistory source = mReplaySource;
+        long frame = mReplayFrame;
+        if (source == null || frame < 0) {
+            return;
+        }
+        int size = frames * source.getFrameSize();
+        if (mReplayBytes == null || mReplayBytes.length < size) {
+            mReplayBytes = new byte[size];
+            mReplayBuffer = ByteBuffer.wrap(mReplayBytes);
+        }
+        int read = source.read(frame, mReplayBytes, frames);
+        mReplayFrame = read > 0 && frame + read < source.getEndFrame() ? frame + read : -1;
+        if (read > 0) {
+            long timeUs = source.toTimeUs(frame);
+            mReplayBuffer.clear();
+            PcmHistory history = mHistory;
+            if (history != null && history != source) {
+                history.append(mReplayBuffer, 0, read * source.getFrameSize(), timeUs);
+            }
+            mReplayInfo.set(0, read * source.getFrameSize(), timeUs, 0);
+            writeDecoded(mReplayBuffer, mReplayInfo, mClock.nanoTime());
+        }
+    }
+
+    /**
+     * @param silenceMap Silences to skip, see {@link #skipSilence(long)}, or null to skip none
+     */
+    void setSilenceMap(SilenceMap silenceMap) {
+        mSilenceMap = silenceMap;
+    }
+
+    /**
+     * Checks whether the sample the extractor is at lies in a silence. If so, the samples up to
+     * its end are not to be read, and what the decoder still gives out of them is dropped.
+     * Each silence is skipped once, so samples before its end the extractor seeks back to
+     * are decoded, and then dropped.
+     *
+     * @return The position to seek the extractor to, or -1 to read on
+     */
+    long skipSilence(long sampleTimeUs) {
+        SilenceMap map = mSilenceMap;
+        int index = map != null && sampleTimeUs >= 0 ? map.indexOf(sampleTimeUs) : -1;
+        if (index < 0 || index == mSkippedSilence) {
+            return -1;
+        }
+        mSkippedSilence = index;
+        // The sample before may reach into the silence, its end is dropped as well
+        mDiscardFromUs = map.getStartUs(index);
+        mDiscardUntilUs = map.getEndUs(index);
+        return mDiscardUntilUs;
+    }
+
+    void setGaplessInfo(GaplessInfo gaplessInfo) {
+        mGaplessInfo = gaplessInfo;
+    }
+
+    void setGainTable(GainTable gainTable) {
+        mGainTable = gainTable;
+    }
+
+    /**
+     * @return Where the pipeline and the decode loop record their metrics, or null if they do
+     * not
+     */
+    PlaybackMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    void setMetrics(PlaybackMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    /**
+     * Drops what belongs to the position before a seek. Called on the thread that seeks; the
+     * processing stages are flushed by the decoder thread, before they get the next buffer.
+     */
+    void flush() {
+        mReplayFrame = -1;
+        mPendingSeekUs = -1;
+        mSeekTargetUs = -1;
+        mDiscardFromUs = -1;
+        mDiscardUntilUs = -1;
+        mSkippedSilence = -1;
+        mFlushProcessors = true;
+        AudioSink sink = mSink;
+        if (sink != null) {
+            mSinkWrittenFrames = 0;
+            mSinkStartPosition = sink.getPlaybackHeadPosition();
+        }
+    }
+
+    synchronized void release() {
+        AudioSink sink = mSink;
+        mSink = null;
+        if (sink != null) {
+            sink.release();
+        }
+    }
+
+    /**
+     * Plays a decoded buffer. At the end of the stream, Sonic is flushed as well.
+     */
+    void write(ByteBuffer buffer, Decoder.BufferInfo info) {
+        final long sonicStart = mClock.nanoTime();
+        if (info.size > 0 && mGaplessInfo != null) {
+            trimGapless(info);
+        }
+        if (info.size > 0 && mDiscardUntilUs >= 0) {
+            discard(info);
+        }
+        PcmHistory history = mHistory;
+        if (history == null && mHistorySeconds > 0) {
+            history = new PcmHistory(mSonic.getSampleRate(), (mFloatInput ? 4 : 2) * mChannelCount,
+                    mHistorySeconds);
+            mHistory = history;
+        }
+        if (info.size > 0 && history != null) {
+            history.append(buffer, info.offset, info.size, info.presentationTimeUs);
+        }
+        writeDecoded(buffer, info, sonicStart);
+    }
+
+    // Hands decoded samples to Sonic, from the decoder or the history
+    private void writeDecoded(ByteBuffer buffer, Decoder.BufferInfo info, long sonicStart) {
+        PlaybackTrace.Tracer tracer = PlaybackTrace.getTracer();
+        if (tracer != null) {
+            tracer.beginSection("Sonic");
+        }
+        applyGain(info.presentationTimeUs);
+        if (info.size > 0 && mFloatInput) {
+            writeFloatToSonic(buffer, info);
+        } else if (info.size > 0 && mDownMixer != null) {
+            writeDownMixedToSonic(buffer, info);
+        } else if (info.size > 0) {
+            if (mSonicInput == null || mSonicInput.length < info.size) {
+                mSonicInput = new byte[info.size];
+            }
+            buffer.position(info.offset);
+            buffer.get(mSonicInput, 0, info.size);
+            mSonic.writeBytesToStream(mSonicInput, info.size);
+        }
+        // Buffers may be empty after trimming, only the end of the stream flushes Sonic
+        if ((info.flags & Decoder.BUFFER_FLAG_END_OF_STREAM) != 0) {
+            mSonic.flushStream();
+        }
+        writeSonicToSink(sonicStart, tracer);
+    }
+
+    // Cuts the encoder delay and padding off a decoded buffer, going by its presentation time
+    private void trimGapless(Decoder.BufferInfo info) {
+        int frameSize = (mFloatInput ? 4 : 2) * mChannelCount;
+        long firstFrame = (info.presentationTimeUs * mSonic.getSampleRate() + 500000) / 1000000;
+        long frames = info.size / frameSize;
+        long start = Math.max(0, Math.min(frames, mGaplessInfo.getStartFrame() - firstFrame));
+        long end = frames;
+        if (mGaplessInfo.getEndFrame() >= 0) {
+            end = Math.max(start, Math.min(frames, mGaplessInfo.getEndFrame() - firstFrame));
+        }
+        info.offset += start * frameSize;
+        info.size = (int) ((end - start) * frameSize);
+        info.presentationTimeUs += start * 1000000 / mSonic.getSampleRate();
+    }
+
+    // Cuts what lies between mDiscardFromUs and mDiscardUntilUs out of a decoded buffer.
+    // Buffers the decoder still had from before that span are kept.
+    private void discard(Decoder.BufferInfo info) {
+        int frameSize = (mFloatInput ? 4 : 2) * mChannelCount;
+        int sampleRate = mSonic.getSampleRate();
+        long frames = info.size / frameSize;
+        long from = ((mDiscardFromUs - info.presentationTimeUs) * sampleRate + 500000) / 1000000;
+        long until = ((mDiscardUntilUs - info.presentationTimeUs) * sampleRate + 500000)
+                / 1000000;
+        if (until < frames) {
+            // Decoding reached the end of the span
+            mDiscardFromUs = -1;
+            mDiscardUntilUs = -1;
+            mSeekTargetUs = -1;
+        }
+        from = Math.max(0, Math.min(frames, from));
+        until = Math.max(from, Math.min(frames, until));
+        if (from > 0) {
+            // The span starts within the buffer, its rest is dropped
+            info.size = (int) (from * frameSize);
+        } else {
+            info.offset += until * frameSize;
+            info.size -= until * frameSize;
+            info.presentationTimeUs += until * 1000000 / sampleRate;
+        }
+    }
+
+    // Sets the gain of the samples Sonic gets next, which start at timeUs
+    private void applyGain(long timeUs) {
+        GainTable gainTable = mGainTable;
+        if (gainTable != null) {
+            mSonic.setTargetVolume(gainTable.getGain(timeUs));
+        }
+    }
+
+    // Codecs may decode to float PCM instead of 16 bit. Hand the samples to Sonic as floats,
+    // so they keep their precision, and out of range samples are not misread as pairs of 16
+    // bit samples. They are clipped by a sink that plays floats, or by Sonic when read out
+    // as 16 bits.
+    private void writeFloatToSonic(ByteBuffer buffer, Decoder.BufferInfo info) {
+        int samples = info.size / 4;
+        if (mFloatBuffer == null || mFloatBuffer.length < samples) {
+            mFloatBuffer = new float[samples];
+        }
+        buffer.position(info.offset);
+        buffer.limit(info.offset + info.size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(mFloatBuffer, 0, samples);
+        mSonic.writeFloatToStream(mFloatBuffer, samples / mChannelCount);
+    }
+
+    private void writeDownMixedToSonic(ByteBuffer buffer, Decoder.BufferInfo info) {
+        int frames = info.size / (2 * mDownMixer.getInputChannels());
+        int samples = frames * mDownMixer.getOutputChannels();
+        if (mDownMixBuffer == null || mDownMixBuffer.capacity() < samples) {
+            mDownMixBuffer = ShortBuffer.allocate(samples);
+        }
+        buffer.position(info.offset);
+        buffer.limit(info.offset + info.size);
+        mDownMixBuffer.clear();
+        mDownMixer.mix(buffer, mDownMixBuffer);
+        mSonic.writeShortToStream(mDownMixBuffer.array(), frames);
+    }
+
+    /**
+     * Hands the next <code>frames</code> frames of a WAVE file to Sonic and plays what comes
+     * out. At the end of the file, Sonic is flushed.
+     *
+     * @return false at the end of the file
+     */
+    boolean write(WavSource wavSource, int frames) throws IOException {
+        applyGain(wavSource.getSampleTime());
+        long readStart = mClock.nanoTime();
+        ByteBuffer chunk = wavSource.read(frames);
+        long sonicStart = mClock.nanoTime();
+        PlaybackTrace.Tracer tracer = PlaybackTrace.getTracer();
+        if (tracer != null) {
+            tracer.beginSection("Sonic");
+        }
+        PlaybackMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.recordDecode(sonicStart - readStart);
+            if (chunk != null) {
+                metrics.recordExtracted(chunk.remaining());
+            }
+        }
+        if (chunk == null) {
+            mSonic.flushStream();
+            writeSonicToSink(sonicStart, tracer);
+            return false;
+        }
+        WavHeader header = wavSource.getHeader();
+        frames = chunk.remaining() / header.getFrameSize();
+        if (!header.is16Bit()) {
+            int samples = frames * mChannelCount;
+            if (mFloatBuffer == null || mFloatBuffer.length < samples) {
+                mFloatBuffer = new float[samples];
+            }
+            header.toFloat(chunk, mFloatBuffer, frames);
+            mSonic.writeFloatToStream(mFloatBuffer, frames);
+        } else if (mDownMixer != null) {
+            int samples = frames * mDownMixer.getOutputChannels();
+            if (mDownMixBuffer == null || mDownMixBuffer.capacity() < samples) {
+                mDownMixBuffer = ShortBuffer.allocate(samples);
+            }
+            mDownMixBuffer.clear();
+            mDownMixer.mix(chunk, mDownMixBuffer);
+            mSonic.writeShortToStream(mDownMixBuffer.array(), frames);
+        } else {
+            int samples = frames * mChannelCount;
+            if (mShortBuffer == null || mShortBuffer.length < samples) {
+                mShortBuffer = new short[samples];
+            }
+            chunk.asShortBuffer().get(mShortBuffer, 0, samples);
+            mSonic.writeShortToStream(mShortBuffer, frames);
+        }
+        writeSonicToSink(sonicStart, tracer);
+        return true;
+    }
+
+    // Moves the output of Sonic to the sink, and lets the quality governor know how long
+    // Sonic took since sonicStart. Ends the Sonic section the caller began with tracer.
+    private void writeSonicToSink(long sonicStart, PlaybackTrace.Tracer tracer) {
+        AudioProcessorChain chain = mProcessorChain;
+        if (mSink.isFloatPcm()) {
+            writeFloatSonicToSink(sonicStart, chain, tracer);
+            return;
+        }
+        if (!chain.isEmpty()) {
+            writeProcessedSonicToSink(sonicStart, chain, tracer);
+            return;
+        }
+        int available = mSonic.samplesAvailable() * 2 * mSonic.getNumChannels();
+        if (available > 0) {
+            if (mSonicOutput == null || mSonicOutput.length < available) {
+                mSonicOutput = new byte[available];
+            }
+            mSonic.readBytesFromStream(mSonicOutput, available);
+        }
+        int frames = available / (2 * mSonic.getNumChannels());
+        PlaybackMetrics metrics = finishSonic(sonicStart, frames, tracer);
+        if (available > 0) {
+            long writeStart = beginWrite(metrics, tracer);
+            mSink.write(mSonicOutput, 0, available);
+            finishWrite(metrics, writeStart, frames, tracer);
+        }
+        mSinkWrittenFrames += frames;
+        if (tracer != null) {
+            setCounters(tracer);
+        }
+    }
+
+    // Same as writeSonicToSink(), with the processing stages run on the output of Sonic.
+    // They count towards the time the quality governor sees. The stages may give out fewer
+    // or more frames than Sonic did, the sink gets what they leave in the buffer.
+    private void writeProcessedSonicToSink(long sonicStart, AudioProcessorChain chain,
+                                           PlaybackTrace.Tracer tracer) {
+        flushProcessorsIfNeeded(chain);
+        int channels = mSonic.getNumChannels();
+        int frames = mSonic.samplesAvailable();
+        int samples = 0;
+        int offset = 0;
+        if (frames > 0) {
+            int capacity = (frames + chain.getLatencyFrames()) * channels;
+            if (mProcessorBuffer == null || mProcessorBuffer.capacity() < capacity) {
+                mProcessorBuffer = ShortBuffer.allocate(capacity);
+            }
+            mSonic.readShortFromStream(mProcessorBuffer.array(), frames);
+            mProcessorBuffer.clear();
+            mProcessorBuffer.limit(frames * channels);
+            chain.process(mProcessorBuffer);
+            offset = mProcessorBuffer.position();
+            samples = mProcessorBuffer.remaining();
+        }
+        PlaybackMetrics metrics = finishSonic(sonicStart, frames, tracer);
+        if (samples > 0) {
+            long writeStart = beginWrite(metrics, tracer);
+            mSink.write(mProcessorBuffer.array(), offset, samples);
+            finishWrite(metrics, writeStart, samples / channels, tracer);
+        }
+        mSinkWrittenFrames += samples / channels;
+        if (tracer != null) {
+            setCounters(tracer);
+        }
+    }
+
+    // Same as writeProcessedSonicToSink() for a sink that plays floats: the output of Sonic is
+    // read as floats, so the stages and the sink get it unclipped and at full precision.
+    private void writeFloatSonicToSink(long sonicStart, AudioProcessorChain chain,
+                                       PlaybackTrace.Tracer tracer) {
+        flushProcessorsIfNeeded(chain);
+        int channels = mSonic.getNumChannels();
+        int frames = mSonic.samplesAvailable();
+        int samples = 0;
+        int offset = 0;
+        if (frames > 0) {
+            int capacity = (frames + chain.getLatencyFrames()) * channels;
+            if (mFloatOutput == null || mFloatOutput.capacity() < capacity) {
+                mFloatOutput = FloatBuffer.allocate(capacity);
+            }
+            mSonic.readFloatFromStream(mFloatOutput.array(), frames);
+            mFloatOutput.clear();
+            mFloatOutput.limit(frames * channels);
+            if (!chain.isEmpty()) {
+                chain.process(mFloatOutput);
+            }
+            offset = mFloatOutput.position();
+            samples = mFloatOutput.remaining();
+        }
+        PlaybackMetrics metrics = finishSonic(sonicStart, frames, tracer);
+        if (samples > 0) {
+            long writeStart = beginWrite(metrics, tracer);
+            mSink.write(mFloatOutput.array(), offset, samples);
+            finishWrite(metrics, writeStart, samples / channels, tracer);
+        }
+        mSinkWrittenFrames += samples / channels;
+        if (tracer != null) {
+            setCounters(tracer);
+        }
+    }
+
+    private void flushProcessorsIfNeeded(AudioProcessorChain chain) {
+        if (mFlushProcessors) {
+            mFlushProcessors = false;
+            chain.flush();
+        }
+    }
+
+    // Lets the quality governor and the metrics know how long Sonic took since sonicStart for
+    // frames frames, and ends the Sonic section. Writing to the sink blocks until there is
+    // room, so it is not part of the time Sonic takes.
+    private PlaybackMetrics finishSonic(long sonicStart, int frames, PlaybackTrace.Tracer tracer) {
+        long sonicNanos = mClock.nanoTime() - sonicStart;
+        if (mQualityGovernor.update(sonicNanos, frames, mSonic.getSampleRate(), mSpeed)) {
+            mSonic.setQuality(mQualityGovernor.getQuality());
+        }
+        PlaybackMetrics metrics = mMetrics;
+        if (metrics != null) {
+            metrics.recordSonic(sonicNanos, getSonicPendingFrames());
+        }
+        if (tracer != null) {
+            tracer.endSection();
+        }
+        return metrics;
+    }
+
+    // Begins the Write section, and returns when the write starts if metrics are recorded
+    private long beginWrite(PlaybackMetrics metrics, PlaybackTrace.Tracer tracer) {
+        if (tracer != null) {
+            tracer.beginSection("Write");
+        }
+        return metrics != null ? mClock.nanoTime() : 0;
+    }
+
+    private void finishWrite(PlaybackMetrics metrics, long writeStart, int frames,
+                             PlaybackTrace.Tracer tracer) {
+        if (metrics != null) {
+            recordWrite(metrics, writeStart, frames);
+        }
+        if (tracer != null) {
+            tracer.endSection();
+        }
+    }
+
+    private void recordWrite(PlaybackMetrics metrics, long writeStart, int frames) {
+        metrics.recordWrite(mClock.nanoTime() - writeStart, frames, mSonic.getSampleRate(),
+                mSink.getUnderrunCount());
+    }
+
+    // Frames in Sonic's input that it has not processed yet, and in its output that has not
+    // been read yet. The output is read out after each buffer, so it is mostly empty.
+    private int getSonicPendingFrames() {
+        return mSonic.samplesPending() + mSonic.samplesAvailable();
+    }
+
+    // Frames waiting in Sonic and in the sink, as counter tracks next to the sections
+    private void setCounters(PlaybackTrace.Tracer tracer) {
+        tracer.setCounter("Sonic pending frames", getSonicPendingFrames());
+        long played = mSink.getPlaybackHeadPosition() - mSinkStartPosition;
+        tracer.setCounter("Sink buffered frames", Math.max(0, mSinkWrittenFrames - played));
+    }
+
+}
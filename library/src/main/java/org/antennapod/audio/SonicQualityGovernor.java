@@ -0,0 +1,161 @@
+package org.antennapod.audio;
+
+import org.vinuxproject.sonic.Sonic;
+
+/**
+ * Picks the {@link Sonic} quality setting from how much of the real time budget Sonic uses.
+ * The decoder thread reports the time spent in Sonic together with the number of frames it
+ * produced. When Sonic takes too large a share of the playback time of its output, the
+ * governor steps down to a cheaper pitch search, and when there is plenty of headroom it
+ * steps back up. A faster speed is acted on at once, as Sonic then takes about that much longer
+ * per frame of output. Not thread safe, meant to be used by the decoder thread only.
+ */
+class SonicQualityGovernor {
+
+    // Quality tiers, from best to cheapest
+    private static final int[] TIERS = {
+            Sonic.QUALITY_FULL,
+            Sonic.QUALITY_DOWNSAMPLED,
+            Sonic.QUALITY_PREDICTED,
+    };
+
+    // Share of the output duration Sonic may take before quality is lowered
+    private static final float STEP_DOWN_LOAD = 0.4f;
+    // Share below which quality is raised again. The better tiers cost several times as much,
+    // so this is far below STEP_DOWN_LOAD to keep the governor from flip-flopping.
+    private static final float STEP_UP_LOAD = 0.08f;
+    // Weight of the newest measurement in the moving average
+    private static final float SMOOTHING = 0.25f;
+    // Measurements to wait after a change before the next one, so the average can settle
+    private static final int HOLD_MEASUREMENTS = 8;
+
+    private int mTier;
+    private float mLoad;
+    private boolean mHasLoad;
+    // Tier mLoad was measured at. It differs from mTier after a change, until the new tier is
+    // measured.
+    private int mLoadTier;
+    private float mSpeed = 1.0f;
+    private int mHold;
+    private long mPendingNanos;
+    private int mPendingFrames;
+
+    /**
+     * @param quality The Sonic quality to start with
+     */
+    SonicQualityGovernor(int quality) {
+        mTier = tierOf(quality);
+        mLoadTier = mTier;
+    }
+
+    private static int tierOf(int quality) {
+        for (int tier = 0; tier < TIERS.length; tier++) {
+            if (TIERS[tier] == quality) {
+                return tier;
+            }
+        }
+        throw new IllegalArgumentException("Unknown quality: " + quality);
+    }
+
+    /**
+     * @return The Sonic quality setting to use
+     */
+    int getQuality() {
+        return TIERS[mTier];
+    }
+
+    /**
+     * @return The smoothed share of real time Sonic takes, 0 until the first measurement
+     */
+    float getLoad() {
+        return mLoad;
+    }
+
+    /**
+     * Forgets the measurements, but keeps the quality.  Used when a new Sonic stream is set up.
+     */
+    void reset() {
+        mLoad = 0.0f;
+        mHasLoad = false;
+        mLoadTier = mTier;
+        mHold = 0;
+        mPendingNanos = 0;
+        mPendingFrames = 0;
+    }
+
+    /**
+     * Records one call into Sonic.  Calls are summed up until they produced a quarter of a
+     * second of audio, so buffers Sonic only collects input from don't skew the average.  A
+     * change of the speed is taken into account right away.
+     *
+     * @param nanos      Time spent writing to and reading from Sonic
+     * @param frames     Number of frames read from Sonic
+     * @param sampleRate Sample rate of the stream
+     * @param speed      Speed Sonic plays at
+     * @return Whether {@link #getQuality()} changed
+     */
+    boolean update(long nanos, int frames, int sampleRate, float speed) {
+        boolean changed = speed != mSpeed && changeSpeed(speed);
+        mPendingNanos += nanos;
+        mPendingFrames += frames;
+        if (mPendingFrames < sampleRate / 4) {
+            return changed;
+        }
+        float load = (float) (mPendingNanos * (double) sampleRate / (mPendingFrames * 1000000000.0));
+        mPendingNanos = 0;
+        mPendingFrames = 0;
+        if (mHasLoad) {
+            mLoad += SMOOTHING * (load - mLoad);
+        } else {
+            mLoad = load;
+            mHasLoad = true;
+            mLoadTier = mTier;
+        }
+        if (mHold > 0) {
+            mHold--;
+            return changed;
+        }
+        if (mLoad > STEP_DOWN_LOAD && mTier < TIERS.length - 1) {
+            mTier++;
+        } else if (mLoad < STEP_UP_LOAD && mTier > 0) {
+            mTier--;
+        } else {
+            return changed;
+        }
+        // Measurements of the old tier say little about the new one
+        mHasLoad = false;
+        mHold = HOLD_MEASUREMENTS;
+        return true;
+    }
+
+    // Sonic gets speed times as much input per frame of output, and takes about that much
+    // longer for it.  Waiting for measurements at the new speed could take the tier too
+    // expensive for it long enough to underrun, so the load is scaled by the change of the
+    // speed, and quality lowered at once if that is too high.  If the quality was raised and
+    // the better tier has not been measured yet, its load is unknown, so on a faster speed it
+    // goes back to the tier that was measured first.
+    private boolean changeSpeed(float speed) {
+        boolean faster = speed > mSpeed;
+        mLoad *= speed / mSpeed;
+        mSpeed = speed;
+        // Calls summed up at the old speed would skew the next measurement
+        mPendingNanos = 0;
+        mPendingFrames = 0;
+        if (!faster) {
+            return false;
+        }
+        int tier = Math.max(mTier, mLoadTier);
+        if (mLoad > STEP_DOWN_LOAD && tier < TIERS.length - 1) {
+            tier++;
+        }
+        if (tier == mTier) {
+            return false;
+        }
+        mTier = tier;
+        mHasLoad = false;
+        // If one tier is not enough, the next measurement may lower quality further
+        mHold = 0;
+        return true;
+    }
+
+}
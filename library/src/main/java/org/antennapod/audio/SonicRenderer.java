@@ -0,0 +1,251 @@
+package org.antennapod.audio;
+
+import org.vinuxproject.sonic.Sonic;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Renders a WAVE or raw PCM file through {@link Sonic} into a 16 bit WAVE file, e.g. to export
+ * a sped up or trimmed episode. The file is streamed through a fixed set of buffers, so memory
+ * use does not depend on its length. Does not depend on Android and can be used from plain
+ * Java.
+ */
+public class SonicRenderer {
+
+    // Frames read from the input at a time
+    private static final int CHUNK_FRAMES = 8192;
+
+    private float mSpeed = 1.0f;
+    private float mPitch = 1.0f;
+    private float mRate = 1.0f;
+    private float mVolume = 1.0f;
+    private boolean mDownMix;
+    private long mStartMs;
+    private long mEndMs = -1;
+    private int mRawSampleRate;
+    private int mRawChannels;
+
+    /**
+     * Statistics of a finished render.
+     */
+    public static class Result {
+        private final long mInputFrames;
+        private final long mOutputFrames;
+        private final int mSampleRate;
+        private final long mElapsedNanos;
+
+        Result(long inputFrames, long outputFrames, int sampleRate, long elapsedNanos) {
+            mInputFrames = inputFrames;
+            mOutputFrames = outputFrames;
+            mSampleRate = sampleRate;
+            mElapsedNanos = elapsedNanos;
+        }
+
+        public long getInputFrames() {
+            return mInputFrames;
+        }
+
+        public long getOutputFrames() {
+            return mOutputFrames;
+        }
+
+        /**
+         * @return Duration of the input that was rendered, in milliseconds
+         */
+        public long getInputDurationMs() {
+            return mInputFrames * 1000 / mSampleRate;
+        }
+
+        /**
+         * @return Duration of the rendered output, in milliseconds
+         */
+        public long getOutputDurationMs() {
+            return mOutputFrames * 1000 / mSampleRate;
+        }
+
+        public long getElapsedMs() {
+            return mElapsedNanos / 1000000;
+        }
+
+        /**
+         * @return Processing time divided by the duration of the input, so 0.1 means the
+         * render took a tenth of the time it takes to listen to the input
+         */
+        public double getRealTimeFactor() {
+            return mInputFrames == 0 ? 0.0 : mElapsedNanos * (double) mSampleRate / (mInputFrames * 1000000000.0);
+        }
+    }
+
+    public void setSpeed(float speed) {
+        mSpeed = speed;
+    }
+
+    public void setPitch(float pitch) {
+        mPitch = pitch;
+    }
+
+    public void setRate(float rate) {
+        mRate = rate;
+    }
+
+    public void setVolume(float volume) {
+        mVolume = volume;
+    }
+
+    /**
+     * Mixes multichannel input down to mono, the way {@link SonicAudioPlayer} does.
+     */
+    public void setDownMix(boolean downMix) {
+        mDownMix = downMix;
+    }
+
+    /**
+     * Renders only part of the input.
+     *
+     * @param startMs Position in the input to start at
+     * @param endMs   Position in the input to stop at, or -1 for the end of the input
+     */
+    public void setRange(long startMs, long endMs) {
+        mStartMs = startMs;
+        mEndMs = endMs;
+    }
+
+    /**
+     * Treats input files as headerless 16 bit little-endian PCM instead of WAVE files.
+     * Pass 0 channels to expect WAVE files again.
+     */
+    public void setRawInput(int sampleRate, int channels) {
+        mRawSampleRate = sampleRate;
+        mRawChannels = channels;
+    }
+
+    /**
+     * Renders <code>input</code> into the WAVE file <code>output</code>, replacing it if it
+     * exists.
+     *
+     * @throws IOException If reading or writing fails, or the input is no supported WAVE file
+     */
+    public Result render(File input, File output) throws IOException {
+        FileInputStream in = new FileInputStream(input);
+        try {
+            RandomAccessFile out = new RandomAccessFile(output, "rw");
+            try {
+                out.setLength(0);
+                return render(in.getChannel(), out.getChannel());
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Renders from the <code>input</code> channel into the <code>output</code> channel. Both
+     * channels are accessed by absolute position, the output is written from its start.
+     */
+    public Result render(FileChannel input, FileChannel output) throws IOException {
+        long startNanos = System.nanoTime();
+        WavHeader header;
+        if (mRawChannels > 0) {
+            header = new WavHeader(WavHeader.FORMAT_PCM, mRawChannels, mRawSampleRate, 16, 0,
+                    input.size() - input.size() % (2 * mRawChannels));
+        } else {
+            header = WavHeader.read(input);
+            if (header == null) {
+                throw new IOException("Not a WAVE file");
+            }
+        }
+        int channels = header.getChannels();
+        int sampleRate = header.getSampleRate();
+        int frameSize = header.getFrameSize();
+        int outputChannels = mDownMix ? 1 : channels;
+
+        long firstFrame = Math.min(header.getFrameCount(), mStartMs * sampleRate / 1000);
+        long endFrame = header.getFrameCount();
+        if (mEndMs >= 0) {
+            endFrame = Math.max(firstFrame, Math.min(endFrame, mEndMs * sampleRate / 1000));
+        }
+
+        Sonic sonic = new Sonic(sampleRate, outputChannels);
+        sonic.setSpeed(mSpeed);
+        sonic.setPitch(mPitch);
+        sonic.setRate(mRate);
+        sonic.setVolume(mVolume);
+        DownMixer downMixer = null;
+        if (outputChannels != channels) {
+            if (header.is16Bit() && channels > 2) {
+                downMixer = new DownMixer(channels, outputChannels);
+            } else {
+                sonic.setNumInputChannels(channels);
+            }
+        }
+
+        ByteBuffer inBuffer = ByteBuffer.allocateDirect(CHUNK_FRAMES * frameSize).order(ByteOrder.LITTLE_ENDIAN);
+        short[] samples = new short[CHUNK_FRAMES * channels];
+        float[] floatSamples = header.is16Bit() ? null : new float[CHUNK_FRAMES * channels];
+        ByteBuffer outBuffer = ByteBuffer.allocateDirect(CHUNK_FRAMES * outputChannels * 2).order(ByteOrder.LITTLE_ENDIAN);
+        short[] outSamples = new short[CHUNK_FRAMES * outputChannels];
+
+        long readPosition = header.getDataOffset() + firstFrame * frameSize;
+        long readEnd = header.getDataOffset() + endFrame * frameSize;
+        long writePosition = WavHeader.CANONICAL_LENGTH;
+        // Reserve room for the header, it is written once the data length is known
+        WavHeader.write(output, outputChannels, sampleRate, 0);
+        while (readPosition < readEnd) {
+            inBuffer.clear();
+            inBuffer.limit((int) Math.min(inBuffer.capacity(), readEnd - readPosition));
+            while (inBuffer.hasRemaining()) {
+                if (input.read(inBuffer, readPosition + inBuffer.position()) < 0) {
+                    throw new IOException("Unexpected end of input");
+                }
+            }
+            readPosition += inBuffer.position();
+            inBuffer.flip();
+            int frames = inBuffer.remaining() / frameSize;
+            if (floatSamples != null) {
+                header.toFloat(inBuffer, floatSamples, frames);
+                sonic.writeFloatToStream(floatSamples, frames);
+            } else {
+                inBuffer.asShortBuffer().get(samples, 0, frames * channels);
+                if (downMixer != null) {
+                    downMixer.mix(samples, 0, samples, 0, frames);
+                }
+                sonic.writeShortToStream(samples, frames);
+            }
+            writePosition = drain(sonic, output, writePosition, outBuffer, outSamples);
+        }
+        sonic.flushStream();
+        writePosition = drain(sonic, output, writePosition, outBuffer, outSamples);
+        long dataLength = writePosition - WavHeader.CANONICAL_LENGTH;
+        WavHeader.write(output, outputChannels, sampleRate, dataLength);
+        return new Result(endFrame - firstFrame, dataLength / (2 * outputChannels), sampleRate,
+                System.nanoTime() - startNanos);
+    }
+
+    private static long drain(Sonic sonic, FileChannel output, long position, ByteBuffer buffer,
+                              short[] samples) throws IOException {
+        int channels = sonic.getNumChannels();
+        buffer.clear();
+        ShortBuffer shortView = buffer.asShortBuffer();
+        int frames;
+        while ((frames = sonic.readShortFromStream(samples, samples.length / channels)) > 0) {
+            shortView.clear();
+            shortView.put(samples, 0, frames * channels);
+            buffer.position(0);
+            buffer.limit(frames * channels * 2);
+            while (buffer.hasRemaining()) {
+                position += output.write(buffer, position);
+            }
+        }
+        return position;
+    }
+
+}
@@ -0,0 +1,180 @@
+package org.antennapod.audio;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Light downward compressor for spoken word, which makes quiet passages easier to follow in
+ * noisy places. The level is taken from the peaks of all channels together, so the stereo
+ * image stays put. The gain is computed once per block of 32 frames and moves linearly within
+ * the block, which keeps logarithms out of the per-sample loop.
+ */
+public class SpeechCompressor implements AudioProcessor {
+
+    private static final int BLOCK_FRAMES = 32;
+    private static final float DEFAULT_THRESHOLD_DB = -24.0f;
+    private static final float DEFAULT_RATIO = 3.0f;
+    private static final float DEFAULT_MAKEUP_GAIN_DB = 6.0f;
+    private static final float ATTACK_MS = 5.0f;
+    private static final float RELEASE_MS = 150.0f;
+
+    private final float mThresholdDb;
+    private final float mRatio;
+    private final float mMakeupGainDb;
+    private int mChannels;
+    private float mAttack;
+    private float mRelease;
+    private float mEnvelope;
+    private float mGain = 1.0f;
+    private short[] mCopy = new short[0];
+    private float[] mFloatCopy = new float[0];
+
+    public SpeechCompressor() {
+        this(DEFAULT_THRESHOLD_DB, DEFAULT_RATIO, DEFAULT_MAKEUP_GAIN_DB);
+    }
+
+    /**
+     * @param thresholdDb  Level above which the signal is compressed, in dB below full scale
+     * @param ratio        Input level change above the threshold per dB of output level change
+     * @param makeupGainDb Gain applied after compression
+     */
+    public SpeechCompressor(float thresholdDb, float ratio, float makeupGainDb) {
+        mThresholdDb = thresholdDb;
+        mRatio = ratio;
+        mMakeupGainDb = makeupGainDb;
+    }
+
+    @Override
+    public void configure(int sampleRate, int channels) {
+        mChannels = channels;
+        float blockMs = BLOCK_FRAMES * 1000.0f / sampleRate;
+        mAttack = (float) (1.0 - Math.exp(-blockMs / ATTACK_MS));
+        mRelease = (float) (1.0 - Math.exp(-blockMs / RELEASE_MS));
+        flush();
+    }
+
+    @Override
+    public void process(ShortBuffer samples) {
+        if (mChannels < 1) {
+            throw new IllegalStateException("Not configured");
+        }
+        if (samples.hasArray()) {
+            int offset = samples.arrayOffset();
+            process(samples.array(), offset + samples.position(), offset + samples.limit());
+            return;
+        }
+        // Direct buffers have no array to work on, so their samples are copied out and back
+        int length = samples.remaining();
+        if (mCopy.length < length) {
+            mCopy = new short[length];
+        }
+        samples.duplicate().get(mCopy, 0, length);
+        process(mCopy, 0, length);
+        samples.duplicate().put(mCopy, 0, length);
+    }
+
+    @Override
+    public void process(FloatBuffer samples) {
+        if (mChannels < 1) {
+            throw new IllegalStateException("Not configured");
+        }
+        if (samples.hasArray()) {
+            int offset = samples.arrayOffset();
+            process(samples.array(), offset + samples.position(), offset + samples.limit());
+            return;
+        }
+        int length = samples.remaining();
+        if (mFloatCopy.length < length) {
+            mFloatCopy = new float[length];
+        }
+        samples.duplicate().get(mFloatCopy, 0, length);
+        process(mFloatCopy, 0, length);
+        samples.duplicate().put(mFloatCopy, 0, length);
+    }
+
+    private void process(short[] data, int start, int end) {
+        int blockLength = BLOCK_FRAMES * mChannels;
+        for (int blockStart = start; blockStart < end; blockStart += blockLength) {
+            int blockEnd = Math.min(end, blockStart + blockLength);
+            int peak = 0;
+            for (int i = blockStart; i < blockEnd; i++) {
+                int magnitude = Math.abs(data[i]);
+                if (magnitude > peak) {
+                    peak = magnitude;
+                }
+            }
+            float gain = nextGain(peak / 32768.0f);
+            float step = (gain - mGain) * mChannels / (blockEnd - blockStart);
+            float current = mGain;
+            for (int i = blockStart; i < blockEnd; i += mChannels) {
+                current += step;
+                for (int j = i; j < i + mChannels; j++) {
+                    float value = data[j] * current;
+                    if (value > 32767.0f) {
+                        value = 32767.0f;
+                    } else if (value < -32768.0f) {
+                        value = -32768.0f;
+                    }
+                    data[j] = (short) value;
+                }
+            }
+            mGain = gain;
+        }
+    }
+
+    private void process(float[] data, int start, int end) {
+        int blockLength = BLOCK_FRAMES * mChannels;
+        for (int blockStart = start; blockStart < end; blockStart += blockLength) {
+            int blockEnd = Math.min(end, blockStart + blockLength);
+            float peak = 0.0f;
+            for (int i = blockStart; i < blockEnd; i++) {
+                float magnitude = Math.abs(data[i]);
+                if (magnitude > peak) {
+                    peak = magnitude;
+                }
+            }
+            float gain = nextGain(peak);
+            float step = (gain - mGain) * mChannels / (blockEnd - blockStart);
+            float current = mGain;
+            for (int i = blockStart; i < blockEnd; i += mChannels) {
+                current += step;
+                for (int j = i; j < i + mChannels; j++) {
+                    float value = data[j] * current;
+                    if (value > 1.0f) {
+                        value = 1.0f;
+                    } else if (value < -1.0f) {
+                        value = -1.0f;
+                    }
+                    data[j] = value;
+                }
+            }
+            mGain = gain;
+        }
+    }
+
+    // Follows the envelope to the peak of the next block, between 0 and 1, and returns the
+    // gain the block ramps to
+    private float nextGain(float level) {
+        mEnvelope += (level > mEnvelope ? mAttack : mRelease) * (level - mEnvelope);
+        float gainDb = mMakeupGainDb;
+        if (mEnvelope > 0.0f) {
+            float over = (float) (20.0 * Math.log10(mEnvelope)) - mThresholdDb;
+            if (over > 0.0f) {
+                gainDb -= over * (1.0f - 1.0f / mRatio);
+            }
+        }
+        return (float) Math.pow(10.0, gainDb / 20.0);
+    }
+
+    @Override
+    public void flush() {
+        mEnvelope = 0.0f;
+        mGain = (float) Math.pow(10.0, mMakeupGainDb / 20.0);
+    }
+
+    @Override
+    public int getLatencyFrames() {
+        return 0;
+    }
+
+}
@@ -0,0 +1,181 @@
+package org.antennapod.audio;
+
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Equalizer for spoken word: a high pass that removes rumble and handling noise below the
+ * voice, followed by a peaking filter that lifts the presence range where consonants carry
+ * most of their energy. Both are second order filters from the RBJ audio EQ cookbook, run in
+ * single precision float.
+ */
+public class SpeechEqualizer implements AudioProcessor {
+
+    private static final float HIGH_PASS_FREQUENCY = 100.0f;
+    private static final float HIGH_PASS_Q = 0.7071f;
+    private static final float PRESENCE_FREQUENCY = 3000.0f;
+    private static final float PRESENCE_Q = 0.9f;
+    private static final float DEFAULT_PRESENCE_GAIN_DB = 4.0f;
+
+    private final float mPresenceGainDb;
+    private int mChannels;
+    // b0, b1, b2, a1, a2 of each filter
+    private final float[] mHighPass = new float[5];
+    private final float[] mPresence = new float[5];
+    // Two state variables per filter and channel
+    private float[] mState = new float[0];
+    private short[] mCopy = new short[0];
+    private float[] mFloatCopy = new float[0];
+
+    public SpeechEqualizer() {
+        this(DEFAULT_PRESENCE_GAIN_DB);
+    }
+
+    /**
+     * @param presenceGainDb Boost of the presence range around 3 kHz, in dB
+     */
+    public SpeechEqualizer(float presenceGainDb) {
+        mPresenceGainDb = presenceGainDb;
+    }
+
+    @Override
+    public void configure(int sampleRate, int channels) {
+        mChannels = channels;
+        mState = new float[channels * 4];
+
+        double w0 = 2.0 * Math.PI * HIGH_PASS_FREQUENCY / sampleRate;
+        double alpha = Math.sin(w0) / (2.0 * HIGH_PASS_Q);
+        double cos = Math.cos(w0);
+        setCoefficients(mHighPass, (1.0 + cos) / 2.0, -(1.0 + cos), (1.0 + cos) / 2.0,
+                1.0 + alpha, -2.0 * cos, 1.0 - alpha);
+
+        double a = Math.pow(10.0, mPresenceGainDb / 40.0);
+        w0 = 2.0 * Math.PI * PRESENCE_FREQUENCY / sampleRate;
+        alpha = Math.sin(w0) / (2.0 * PRESENCE_Q);
+        cos = Math.cos(w0);
+        setCoefficients(mPresence, 1.0 + alpha * a, -2.0 * cos, 1.0 - alpha * a,
+                1.0 + alpha / a, -2.0 * cos, 1.0 - alpha / a);
+    }
+
+    private static void setCoefficients(float[] filter, double b0, double b1, double b2,
+                                        double a0, double a1, double a2) {
+        filter[0] = (float) (b0 / a0);
+        filter[1] = (float) (b1 / a0);
+        filter[2] = (float) (b2 / a0);
+        filter[3] = (float) (a1 / a0);
+        filter[4] = (float) (a2 / a0);
+    }
+
+    @Override
+    public void process(ShortBuffer samples) {
+        if (mChannels < 1) {
+            throw new IllegalStateException("Not configured");
+        }
+        if (samples.hasArray()) {
+            int offset = samples.arrayOffset();
+            process(samples.array(), offset + samples.position(), offset + samples.limit());
+            return;
+        }
+        // Direct buffers have no array to work on, so their samples are copied out and back
+        int length = samples.remaining();
+        if (mCopy.length < length) {
+            mCopy = new short[length];
+        }
+        samples.duplicate().get(mCopy, 0, length);
+        process(mCopy, 0, length);
+        samples.duplicate().put(mCopy, 0, length);
+    }
+
+    private void process(short[] data, int start, int end) {
+        float[] hp = mHighPass;
+        float[] pr = mPresence;
+        for (int channel = 0; channel < mChannels; channel++) {
+            int s = channel * 4;
+            float hp1 = mState[s];
+            float hp2 = mState[s + 1];
+            float pr1 = mState[s + 2];
+            float pr2 = mState[s + 3];
+            for (int i = start + channel; i < end; i += mChannels) {
+                // Transposed direct form II
+                float x = data[i];
+                float y = hp[0] * x + hp1;
+                hp1 = hp[1] * x - hp[3] * y + hp2;
+                hp2 = hp[2] * x - hp[4] * y;
+                x = y;
+                y = pr[0] * x + pr1;
+                pr1 = pr[1] * x - pr[3] * y + pr2;
+                pr2 = pr[2] * x - pr[4] * y;
+                if (y > 32767.0f) {
+                    y = 32767.0f;
+                } else if (y < -32768.0f) {
+                    y = -32768.0f;
+                }
+                data[i] = (short) y;
+            }
+            mState[s] = hp1;
+            mState[s + 1] = hp2;
+            mState[s + 2] = pr1;
+            mState[s + 3] = pr2;
+        }
+    }
+
+    @Override
+    public void process(FloatBuffer samples) {
+        if (mChannels < 1) {
+            throw new IllegalStateException("Not configured");
+        }
+        if (samples.hasArray()) {
+            int offset = samples.arrayOffset();
+            process(samples.array(), offset + samples.position(), offset + samples.limit());
+            return;
+        }
+        int length = samples.remaining();
+        if (mFloatCopy.length < length) {
+            mFloatCopy = new float[length];
+        }
+        samples.duplicate().get(mFloatCopy, 0, length);
+        process(mFloatCopy, 0, length);
+        samples.duplicate().put(mFloatCopy, 0, length);
+    }
+
+    // Same filters on floats, which are not clipped; the sink clips them
+    private void process(float[] data, int start, int end) {
+        float[] hp = mHighPass;
+        float[] pr = mPresence;
+        for (int channel = 0; channel < mChannels; channel++) {
+            int s = channel * 4;
+            float hp1 = mState[s];
+            float hp2 = mState[s + 1];
+            float pr1 = mState[s + 2];
+            float pr2 = mState[s + 3];
+            for (int i = start + channel; i < end; i += mChannels) {
+                float x = data[i];
+                float y = hp[0] * x + hp1;
+                hp1 = hp[1] * x - hp[3] * y + hp2;
+                hp2 = hp[2] * x - hp[4] * y;
+                x = y;
+                y = pr[0] * x + pr1;
+                pr1 = pr[1] * x - pr[3] * y + pr2;
+                pr2 = pr[2] * x - pr[4] * y;
+                data[i] = y;
+            }
+            mState[s] = hp1;
+            mState[s + 1] = hp2;
+            mState[s + 2] = pr1;
+            mState[s + 3] = pr2;
+        }
+    }
+
+    @Override
+    public void flush() {
+        for (int i = 0; i < mState.length; i++) {
+            mState[i] = 0.0f;
+        }
+    }
+
+    @Override
+    public int getLatencyFrames() {
+        return 0;
+    }
+
+}
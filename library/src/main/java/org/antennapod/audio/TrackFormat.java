@@ -0,0 +1,103 @@
+package org.antennapod.audio;
+
+/**
+ * Format of an audio track or of decoded audio, as far as the decode loop needs to know it.
+ * Takes the place of MediaFormat, so the loop does not depend on Android.
+ */
+class TrackFormat {
+
+    private final String mMime;
+    private final int mSampleRate;
+    private final int mChannelCount;
+    private final long mDurationUs;
+    private final boolean mFloatPcm;
+    private final Object mPlatformFormat;
+    private final boolean mDecoderTrims;
+
+    /**
+     * @param durationUs     Duration of the track, or -1 if unknown or not applicable
+     * @param floatPcm       Whether decoded samples are floats instead of 16 bit integers
+     * @param platformFormat The format this was read from, for a decoder of the same platform
+     *                       to be configured with, or null
+     */
+    TrackFormat(String mime, int sampleRate, int channelCount, long durationUs, boolean floatPcm,
+                Object platformFormat) {
+        this(mime, sampleRate, channelCount, durationUs, floatPcm, platformFormat, false);
+    }
+
+    /**
+     * @param decoderTrims Whether the decoder cuts off the encoder delay and padding itself
+     */
+    TrackFormat(String mime, int sampleRate, int channelCount, long durationUs, boolean floatPcm,
+                Object platformFormat, boolean decoderTrims) {
+        mMime = mime;
+        mSampleRate = sampleRate;
+        mChannelCount = channelCount;
+        mDurationUs = durationUs;
+        mFloatPcm = floatPcm;
+        mPlatformFormat = platformFormat;
+        mDecoderTrims = decoderTrims;
+    }
+
+    String getMime() {
+        return mMime;
+    }
+
+    int getSampleRate() {
+        return mSampleRate;
+    }
+
+    int getChannelCount() {
+        return mChannelCount;
+    }
+
+    long getDurationUs() {
+        return mDurationUs;
+    }
+
+    boolean isFloatPcm() {
+        return mFloatPcm;
+    }
+
+    Object getPlatformFormat() {
+        return mPlatformFormat;
+    }
+
+    /**
+     * @return Whether the decoder cuts off the encoder delay and padding itself, so decoded
+     * samples must not be trimmed by {@link GaplessInfo} again
+     */
+    boolean isTrimmedByDecoder() {
+        return mDecoderTrims;
+    }
+
+    /**
+     * Returns how far ahead of a position decoding has to start for the position to come out
+     * right, with the length of a sample on top, as samples are dropped whole. Samples before
+     * that need not be decoded after a seek.
+     *
+     * @return The pre-roll in microseconds, or -1 if it is not known for the format
+     */
+    long getPreRollUs() {
+        if ("audio/raw".equals(mMime) || "audio/flac".equals(mMime)) {
+            // Samples decode on their own, FLAC frames are up to 4096 frames long
+            return 100000;
+        } else if ("audio/mp4a-latm".equals(mMime)) {
+            // AAC frames overlap with the frame before, HE-AAC frames are 2048 frames long
+            return 150000;
+        } else if ("audio/mpeg".equals(mMime) || "audio/opus".equals(mMime)
+                || "audio/vorbis".equals(mMime)) {
+            // MP3's bit reservoir reaches back up to about five frames at low bitrates, Opus
+            // recommends 80 ms and has samples of up to 120 ms, Vorbis overlaps long blocks
+            return 200000;
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return mMime + ", " + mSampleRate + " Hz, " + mChannelCount + " channels"
+                + (mFloatPcm ? ", float" : "");
+    }
+
+}
@@ -0,0 +1,244 @@
+package org.antennapod.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Format and location of the sample data of a RIFF/WAVE file. Only plain PCM is supported:
+ * 8, 16, 24 and 32 bit integer samples and 32 bit float samples, also when they are wrapped in
+ * WAVE_FORMAT_EXTENSIBLE.
+ */
+class WavHeader {
+
+    static final int FORMAT_PCM = 1;
+    static final int FORMAT_IEEE_FLOAT = 3;
+    private static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    // Size of the header written by write(): RIFF chunk header, "fmt " chunk and "data" chunk header
+    static final int CANONICAL_LENGTH = 44;
+    private static final long MAX_DATA_LENGTH = 0xFFFFFFFFL - CANONICAL_LENGTH + 8;
+
+    private final int mFormat;
+    private final int mChannels;
+    private final int mSampleRate;
+    private final int mBitsPerSample;
+    private final long mDataOffset;
+    private final long mDataLength;
+
+    WavHeader(int format, int channels, int sampleRate, int bitsPerSample, long dataOffset, long dataLength) {
+        mFormat = format;
+        mChannels = channels;
+        mSampleRate = sampleRate;
+        mBitsPerSample = bitsPerSample;
+        mDataOffset = dataOffset;
+        mDataLength = dataLength;
+    }
+
+    /**
+     * Reads the header at the start of <code>channel</code>, without changing the position of
+     * the channel.
+     *
+     * @return The header, or null if the file is no RIFF/WAVE file
+     * @throws IOException If the file could not be read, or is a WAVE file in a format that
+     *                     is not supported
+     */
+    static WavHeader read(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(CANONICAL_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        if (readFully(channel, buffer, 0, 12) < 12
+                || buffer.getInt(0) != fourCc("RIFF") || buffer.getInt(8) != fourCc("WAVE")) {
+            return null;
+        }
+        long fileLength = channel.size();
+        long position = 12;
+        int format = 0;
+        int channels = 0;
+        int sampleRate = 0;
+        int bitsPerSample = 0;
+        while (readFully(channel, buffer, position, 8) == 8) {
+            int id = buffer.getInt(0);
+            long length = buffer.getInt(4) & 0xFFFFFFFFL;
+            position += 8;
+            if (id == fourCc("fmt ")) {
+                if (length < 16 || readFully(channel, buffer, position, (int) Math.min(length, 40)) < 16) {
+                    throw new IOException("Truncated WAVE format chunk");
+                }
+                format = buffer.getShort(0) & 0xFFFF;
+                channels = buffer.getShort(2) & 0xFFFF;
+                sampleRate = buffer.getInt(4);
+                bitsPerSample = buffer.getShort(14) & 0xFFFF;
+                if (format == FORMAT_EXTENSIBLE && length >= 26) {
+                    // The first two bytes of the sub format GUID are the actual format
+                    format = buffer.getShort(24) & 0xFFFF;
+                }
+            } else if (id == fourCc("data")) {
+                if (format == 0) {
+                    throw new IOException("WAVE data chunk before the format chunk");
+                }
+                if (!isSupported(format, bitsPerSample) || channels < 1 || sampleRate < 1) {
+                    throw new IOException("Unsupported WAVE format " + format + " with "
+                            + bitsPerSample + " bits, " + channels + " channels, " + sampleRate + " Hz");
+                }
+                // Recorders that were cut off leave a length that is too large, or 0
+                if (length == 0 || position + length > fileLength) {
+                    length = fileLength - position;
+                }
+                int frameSize = channels * bitsPerSample / 8;
+                return new WavHeader(format, channels, sampleRate, bitsPerSample, position,
+                        length - length % frameSize);
+            }
+            // Chunks are padded to an even length
+            position += length + (length & 1);
+        }
+        throw new IOException("No data chunk in WAVE file");
+    }
+
+    private static boolean isSupported(int format, int bitsPerSample) {
+        if (format == FORMAT_PCM) {
+            return bitsPerSample == 8 || bitsPerSample == 16 || bitsPerSample == 24 || bitsPerSample == 32;
+        }
+        return format == FORMAT_IEEE_FLOAT && bitsPerSample == 32;
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position, int length)
+            throws IOException {
+        buffer.clear();
+        buffer.limit(length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    private static int fourCc(String id) {
+        return id.charAt(0) | id.charAt(1) << 8 | id.charAt(2) << 16 | id.charAt(3) << 24;
+    }
+
+    /**
+     * Writes a canonical 44 byte header for 16 bit PCM at the start of <code>channel</code>,
+     * without changing the position of the channel.
+     *
+     * @param dataLength Length of the sample data following the header, in bytes
+     */
+    static void write(FileChannel channel, int channels, int sampleRate, long dataLength)
+            throws IOException {
+        if (dataLength > MAX_DATA_LENGTH) {
+            throw new IOException("Too much data for a WAVE file: " + dataLength + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(CANONICAL_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(fourCc("RIFF"));
+        buffer.putInt((int) (dataLength + CANONICAL_LENGTH - 8));
+        buffer.putInt(fourCc("WAVE"));
+        buffer.putInt(fourCc("fmt "));
+        buffer.putInt(16);
+        buffer.putShort((short) FORMAT_PCM);
+        buffer.putShort((short) channels);
+        buffer.putInt(sampleRate);
+        buffer.putInt(sampleRate * channels * 2);
+        buffer.putShort((short) (channels * 2));
+        buffer.putShort((short) 16);
+        buffer.putInt(fourCc("data"));
+        buffer.putInt((int) dataLength);
+        buffer.flip();
+        long position = 0;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * @return Whether the samples are 16 bit integers, which Sonic takes as they are
+     */
+    boolean is16Bit() {
+        return mFormat == FORMAT_PCM && mBitsPerSample == 16;
+    }
+
+    /**
+     * Converts up to <code>frames</code> whole frames between position and limit of
+     * <code>in</code> to floats between -1 and 1, advancing the position of <code>in</code>.
+     *
+     * @return The number of frames converted
+     */
+    int toFloat(ByteBuffer in, float[] out, int frames) {
+        frames = Math.min(frames, in.remaining() / getFrameSize());
+        int samples = frames * mChannels;
+        in.order(ByteOrder.LITTLE_ENDIAN);
+        if (mFormat == FORMAT_IEEE_FLOAT) {
+            in.asFloatBuffer().get(out, 0, samples);
+            in.position(in.position() + samples * 4);
+            return frames;
+        }
+        for (int i = 0; i < samples; i++) {
+            switch (mBitsPerSample) {
+                case 8:
+                    out[i] = ((in.get() & 0xFF) - 128) / 128.0f;
+                    break;
+                case 16:
+                    out[i] = in.getShort() / 32768.0f;
+                    break;
+                case 24:
+                    int low = in.get() & 0xFF;
+                    int middle = in.get() & 0xFF;
+                    out[i] = (in.get() << 16 | middle << 8 | low) / 8388608.0f;
+                    break;
+                default:
+                    out[i] = in.getInt() / 2147483648.0f;
+                    break;
+            }
+        }
+        return frames;
+    }
+
+    int getFormat() {
+        return mFormat;
+    }
+
+    int getChannels() {
+        return mChannels;
+    }
+
+    int getSampleRate() {
+        return mSampleRate;
+    }
+
+    int getBitsPerSample() {
+        return mBitsPerSample;
+    }
+
+    /**
+     * @return The size of one frame, i.e. one sample for each channel, in bytes
+     */
+    int getFrameSize() {
+        return mChannels * mBitsPerSample / 8;
+    }
+
+    /**
+     * @return Offset of the first sample from the start of the file
+     */
+    long getDataOffset() {
+        return mDataOffset;
+    }
+
+    /**
+     * @return Length of the sample data in bytes, a multiple of the frame size
+     */
+    long getDataLength() {
+        return mDataLength;
+    }
+
+    long getFrameCount() {
+        return mDataLength / getFrameSize();
+    }
+
+    /**
+     * @return Duration of the sample data in microseconds
+     */
+    long getDurationUs() {
+        return getFrameCount() * 1000000L / mSampleRate;
+    }
+
+}
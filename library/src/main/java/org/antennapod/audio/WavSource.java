@@ -0,0 +1,113 @@
+package org.antennapod.audio;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the samples of a local WAVE file straight from memory mapped windows of the file, for
+ * {@link SonicAudioPlayer} to play it without a MediaExtractor and MediaCodec. Positions are
+ * exact to the frame. The file is mapped a window at a time, so long recordings don't need
+ * gigabytes of address space. Reads on the decoder thread and seeks from the thread that
+ * handles them are serialised, so a seek is never overwritten by the read it overlaps.
+ */
+class WavSource {
+
+    // Size of the mapped windows
+    private static final int WINDOW_BYTES = 1 << 20;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final WavHeader mHeader;
+    private final int mWindowLength;
+    private MappedByteBuffer mWindow;
+    private long mWindowStart;
+    // Read position, as a byte offset into the sample data. Only changed while holding the
+    // lock, but read without it for the position of the player.
+    private volatile long mPosition;
+
+    private WavSource(RandomAccessFile file, WavHeader header) {
+        mFile = file;
+        mChannel = file.getChannel();
+        mHeader = header;
+        mWindowLength = WINDOW_BYTES - WINDOW_BYTES % header.getFrameSize();
+    }
+
+    /**
+     * @return A source for the file at <code>path</code>, or null if it is no WAVE file
+     * @throws IOException If the file could not be read, or is a WAVE file in a format that
+     *                     is not supported
+     */
+    static WavSource open(String path) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        WavHeader header = null;
+        try {
+            header = WavHeader.read(file.getChannel());
+        } finally {
+            if (header == null) {
+                file.close();
+            }
+        }
+        return header != null ? new WavSource(file, header) : null;
+    }
+
+    WavHeader getHeader() {
+        return mHeader;
+    }
+
+    /**
+     * Returns up to <code>frames</code> frames from the current position on, and moves the
+     * position past them. The buffer is a view of the mapped file and only valid until the
+     * next call.
+     *
+     * @return Little-endian samples, or null at the end of the data
+     */
+    synchronized ByteBuffer read(int frames) throws IOException {
+        long position = mPosition;
+        long dataLength = mHeader.getDataLength();
+        if (position >= dataLength) {
+            return null;
+        }
+        if (mWindow == null || position < mWindowStart || position >= mWindowStart + mWindow.capacity()) {
+            mWindowStart = position;
+            mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, mHeader.getDataOffset() + position,
+                    Math.min(mWindowLength, dataLength - position));
+        }
+        int offset = (int) (position - mWindowStart);
+        int length = Math.min(frames * mHeader.getFrameSize(), mWindow.capacity() - offset);
+        ByteBuffer chunk = mWindow.duplicate();
+        chunk.position(offset);
+        chunk.limit(offset + length);
+        mPosition = position + length;
+        return chunk.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Moves the read position to the frame at <code>timeUs</code>, or to the end of the data.
+     */
+    synchronized void seekTo(long timeUs) {
+        long frame = Math.max(0, Math.min(mHeader.getFrameCount(),
+                timeUs * mHeader.getSampleRate() / 1000000L));
+        mPosition = frame * mHeader.getFrameSize();
+    }
+
+    /**
+     * @return The read position in microseconds
+     */
+    long getSampleTime() {
+        return mPosition / mHeader.getFrameSize() * 1000000L / mHeader.getSampleRate();
+    }
+
+    synchronized void release() {
+        mWindow = null;
+        try {
+            mFile.close();
+        } catch (IOException e) {
+            // Nothing left to do with the file
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+package org.antennapod.audio;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Waveform of an episode for display, as created by {@link EpisodeAnalysis}: the lowest and
+ * highest sample of every 512 frames, and coarser levels of two, four, eight and so on times
+ * as many frames, down to about a thousand peaks for the whole episode. Samples are stored in
+ * 8 bits, in a binary file of about 4 MB for three hours of 44.1 kHz audio. Files are read
+ * by memory mapping, so a waveform is ready at once and only the parts shown are loaded.
+ */
+public class WaveformPeaks {
+
+    static final int MAGIC = 0x41504b31; // "APK1"
+
+    private final ByteBuffer mBuffer;
+    private final int mSampleRate;
+    private final int mFramesPerPeak;
+    private final long mFrameCount;
+    private final int[] mCounts;
+    private final int[] mOffsets;
+
+    /**
+     * @param buffer The file's content, from its start to its end
+     * @throws IllegalArgumentException If the buffer holds no valid waveform
+     */
+    WaveformPeaks(ByteBuffer buffer) {
+        mBuffer = buffer;
+        if (buffer.remaining() < headerSize(0) || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a waveform");
+        }
+        mSampleRate = buffer.getInt(4);
+        mFramesPerPeak = buffer.getInt(8);
+        mFrameCount = buffer.getLong(12);
+        int numLevels = buffer.getInt(20);
+        if (mSampleRate <= 0 || mFramesPerPeak <= 0 || numLevels < 1 || numLevels > 31
+                || buffer.remaining() < headerSize(numLevels)) {
+            throw new IllegalArgumentException("Corrupt waveform");
+        }
+        mCounts = new int[numLevels];
+        mOffsets = new int[numLevels];
+        long offset = headerSize(numLevels);
+        for (int level = 0; level < numLevels; level++) {
+            mCounts[level] = buffer.getInt(headerSize(0) + level * 4);
+            mOffsets[level] = (int) offset;
+            offset += mCounts[level] * 2L;
+            if (mCounts[level] < 0 || offset > buffer.remaining()) {
+                throw new IllegalArgumentException("Corrupt waveform");
+            }
+        }
+    }
+
+    static int headerSize(int numLevels) {
+        return 24 + numLevels * 4;
+    }
+
+    /**
+     * Returns where the waveform of <code>audioFile</code> is kept below
+     * <code>cacheDir</code>. The name includes the length of the file, so a download that
+     * continued or was replaced gets a new waveform.
+     */
+    public static File getCacheFile(File cacheDir, File audioFile) {
+        String name = Integer.toHexString(audioFile.getAbsolutePath().hashCode()) + "-"
+                + Long.toHexString(audioFile.length()) + ".peaks";
+        return new File(new File(cacheDir, "waveform"), name);
+    }
+
+    /**
+     * @return The duration of the episode, in microseconds
+     */
+    public long getDurationUs() {
+        return mFrameCount * 1000000 / mSampleRate;
+    }
+
+    /**
+     * @return The number of levels, level 0 being the finest
+     */
+    public int getLevelCount() {
+        return mCounts.length;
+    }
+
+    public int getPeakCount(int level) {
+        return mCounts[level];
+    }
+
+    /**
+     * @return How long a peak of <code>level</code> is, in microseconds
+     */
+    public long getPeakDurationUs(int level) {
+        return ((long) mFramesPerPeak << level) * 1000000 / mSampleRate;
+    }
+
+    /**
+     * @return The lowest sample of a peak, between -1 and 0
+     */
+    public float getMin(int level, int index) {
+        return mBuffer.get(mOffsets[level] + index * 2) / 127.0f;
+    }
+
+    /**
+     * @return The highest sample of a peak, between 0 and 1
+     */
+    public float getMax(int level, int index) {
+        return mBuffer.get(mOffsets[level] + index * 2 + 1) / 127.0f;
+    }
+
+    /**
+     * Fills <code>mins</code> and <code>maxs</code> with one peak per column of a waveform
+     * that shows the audio from <code>startUs</code> to <code>endUs</code>. Peaks are taken
+     * from the coarsest level that still has one per column, so any zoom costs about the same.
+     * Columns beyond the end of the episode are 0.
+     */
+    public void getPeaks(long startUs, long endUs, float[] mins, float[] maxs) {
+        int columns = Math.min(mins.length, maxs.length);
+        if (columns == 0) {
+            return;
+        }
+        double framesPerColumn = (endUs - startUs) * (double) mSampleRate / 1000000 / columns;
+        int level = getLevel(framesPerColumn);
+        long framesPerPeak = (long) mFramesPerPeak << level;
+        double startFrame = startUs * (double) mSampleRate / 1000000;
+        for (int column = 0; column < columns; column++) {
+            long first = (long) Math.floor((startFrame + column * framesPerColumn) / framesPerPeak);
+            long end = (long) Math.ceil((startFrame + (column + 1) * framesPerColumn)
+                    / framesPerPeak);
+            first = Math.max(0, first);
+            end = Math.max(first + 1, Math.min(mCounts[level], end));
+            float min = 0.0f;
+            float max = 0.0f;
+            for (long i = first; i < end && i < mCounts[level]; i++) {
+                min = Math.min(min, getMin(level, (int) i));
+                max = Math.max(max, getMax(level, (int) i));
+            }
+            mins[column] = min;
+            maxs[column] = max;
+        }
+    }
+
+    /**
+     * @return The coarsest level that still has a peak for every <code>framesPerColumn</code>
+     * frames, or the finest level if none has
+     */
+    int getLevel(double framesPerColumn) {
+        int level = 0;
+        while (level + 1 < mCounts.length
+                && ((long) mFramesPerPeak << (level + 1)) <= framesPerColumn) {
+            level++;
+        }
+        return level;
+    }
+
+    public void write(File file) throws IOException {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create " + dir);
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            ByteBuffer content = mBuffer.duplicate();
+            content.position(0);
+            FileChannel channel = out.getChannel();
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Maps a waveform file into memory.
+     *
+     * @throws IOException If the file could not be read or is no waveform
+     */
+    public static WaveformPeaks read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            // The mapping stays valid once the file is closed
+            ByteBuffer buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, in.length());
+            return new WaveformPeaks(buffer);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage() + ": " + file);
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,284 @@
+/* Sonic library
+   Copyright 2010, 2011
+   Bill Cox
+   This file is part of the Sonic Library.
+
+   This file is licensed under the Apache 2.0 license.
+*/
+
+package org.vinuxproject.sonic;
+
+import android.annotation.TargetApi;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* Offline speed change of a whole buffer, spread over the threads of a ForkJoinPool.  The
+   input is cut into segments at quiet spots, each segment is run through its own Sonic
+   stream together with a little of its neighbours, and the overlapping ends are lined up by
+   their pitch periods and cross-faded.  Away from the cuts the result is what
+   Sonic.sonicChangeShortSpeed() produces, give or take the choice of pitch periods and a shift of
+   less than a pitch period; the length matches to within a few milliseconds.
+   ForkJoinPool is available on Android from API level 21 on, so callers check
+   Build.VERSION.SDK_INT first and use Sonic.sonicChangeShortSpeed() on older devices. */
+@TargetApi(21)
+public class ParallelSonic {
+
+    /* Segments are at least this many seconds long, so the cross-fades stay rare */
+    private static final int MIN_SEGMENT_SECONDS = 2;
+    /* Segments per pool thread, so threads that finish early can take over the rest */
+    private static final int SEGMENTS_PER_THREAD = 4;
+    /* A cut is placed at the quietest block within this fraction of a second of the
+       nominal split point */
+    private static final int CUT_SEARCH_DIVISOR = 10;
+    /* Length of the blocks compared when looking for a quiet spot, as a fraction of a second */
+    private static final int CUT_BLOCK_DIVISOR = 200;
+    /* Input frames on either side of a cut that both neighbouring segments process, as a
+       fraction of a second */
+    private static final int OVERLAP_DIVISOR = 20;
+    /* A segment is moved by up to the longest pitch period Sonic looks for, as a fraction of a
+       second, to line it up with the one before */
+    private static final int ALIGN_DIVISOR = 65;
+
+    // Change the speed of the first numSamples frames of samples on the threads of pool, and
+    // return the new frames.  The parameters are those of Sonic.sonicChangeShortSpeed().
+    public static short[] changeShortSpeed(short samples[],
+                                           int numSamples,
+                                           float speed,
+                                           float pitch,
+                                           float rate,
+                                           float volume,
+                                           boolean useChordPitch,
+                                           int sampleRate,
+                                           int numChannels,
+                                           ForkJoinPool pool) {
+        int minSegment = MIN_SEGMENT_SECONDS * sampleRate;
+        int numSegments = Math.min(pool.getParallelism() * SEGMENTS_PER_THREAD, numSamples / minSegment);
+        if (numSegments < 1) {
+            numSegments = 1;
+        }
+        int cuts[] = findCuts(samples, numSamples, numChannels, sampleRate, numSegments);
+        int overlap = sampleRate / OVERLAP_DIVISOR;
+        short outputs[][] = new short[numSegments][];
+
+        pool.invoke(new StretchTask(samples, numSamples, cuts, overlap, outputs, 0, numSegments,
+                speed, pitch, rate, volume, useChordPitch, sampleRate, numChannels));
+        return stitch(outputs, cuts, overlap, numChannels, sampleRate / ALIGN_DIVISOR,
+                useChordPitch ? pitch / (speed * rate) : 1.0f / (speed * rate));
+    }
+
+    // Same as above, on a pool with one thread per processor.
+    public static short[] changeShortSpeed(short samples[],
+                                           int numSamples,
+                                           float speed,
+                                           float pitch,
+                                           float rate,
+                                           float volume,
+                                           boolean useChordPitch,
+                                           int sampleRate,
+                                           int numChannels) {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return changeShortSpeed(samples, numSamples, speed, pitch, rate, volume, useChordPitch,
+                    sampleRate, numChannels, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Find numSegments + 1 frame positions, starting at 0 and ending at numSamples, that split
+    // the input into segments of about equal length.  The inner cuts are moved to the quietest
+    // spot nearby, which in speech is usually a pause, so no pitch period is cut in two.
+    private static int[] findCuts(short samples[],
+                                  int numSamples,
+                                  int numChannels,
+                                  int sampleRate,
+                                  int numSegments) {
+        int cuts[] = new int[numSegments + 1];
+        int block = Math.max(1, sampleRate / CUT_BLOCK_DIVISOR);
+        int range = Math.min(sampleRate / CUT_SEARCH_DIVISOR, numSamples / numSegments / 4);
+
+        for (int i = 1; i < numSegments; i++) {
+            int nominal = (int) ((long) numSamples * i / numSegments);
+            long minEnergy = Long.MAX_VALUE;
+            int best = nominal;
+            for (int start = nominal - range; start + block <= nominal + range; start += block >> 1) {
+                long energy = 0;
+                for (int xSample = start * numChannels; xSample < (start + block) * numChannels; xSample++) {
+                    energy += Math.abs(samples[xSample]);
+                }
+                if (energy < minEnergy) {
+                    minEnergy = energy;
+                    best = start + (block >> 1);
+                }
+            }
+            cuts[i] = best;
+        }
+        cuts[numSegments] = numSamples;
+        return cuts;
+    }
+
+    // Change the speed of segments from to to - 1, splitting the work in halves until a
+    // single segment is left.
+    private static class StretchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final short samples[];
+        private final int numSamples;
+        private final int cuts[];
+        private final int overlap;
+        private final short outputs[][];
+        private final int from;
+        private final int to;
+        private final float speed;
+        private final float pitch;
+        private final float rate;
+        private final float volume;
+        private final boolean useChordPitch;
+        private final int sampleRate;
+        private final int numChannels;
+
+        StretchTask(short samples[],
+                    int numSamples,
+                    int cuts[],
+                    int overlap,
+                    short outputs[][],
+                    int from,
+                    int to,
+                    float speed,
+                    float pitch,
+                    float rate,
+                    float volume,
+                    boolean useChordPitch,
+                    int sampleRate,
+                    int numChannels) {
+            this.samples = samples;
+            this.numSamples = numSamples;
+            this.cuts = cuts;
+            this.overlap = overlap;
+            this.outputs = outputs;
+            this.from = from;
+            this.to = to;
+            this.speed = speed;
+            this.pitch = pitch;
+            this.rate = rate;
+            this.volume = volume;
+            this.useChordPitch = useChordPitch;
+            this.sampleRate = sampleRate;
+            this.numChannels = numChannels;
+        }
+
+        private StretchTask split(int from,
+                                  int to) {
+            return new StretchTask(samples, numSamples, cuts, overlap, outputs, from, to,
+                    speed, pitch, rate, volume, useChordPitch, sampleRate, numChannels);
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(split(from, middle), split(middle, to));
+                return;
+            }
+            int start = Math.max(0, cuts[from] - overlap);
+            int end = Math.min(numSamples, cuts[from + 1] + overlap);
+            Sonic stream = new Sonic(sampleRate, numChannels);
+            stream.setSpeed(speed);
+            stream.setPitch(pitch);
+            stream.setRate(rate);
+            stream.setVolume(volume);
+            stream.setChordPitch(useChordPitch);
+            short segment[] = new short[(end - start) * numChannels];
+            System.arraycopy(samples, start * numChannels, segment, 0, segment.length);
+            stream.writeShortToStream(segment, end - start);
+            stream.flushStream();
+            short output[] = new short[stream.samplesAvailable() * numChannels];
+            stream.readShortFromStream(output, stream.samplesAvailable());
+            outputs[from] = output;
+        }
+    }
+
+    // Put the segment outputs one after another.  Each segment starts where its first input
+    // frame ends up in the output, moved by up to maxShift frames so its pitch periods line
+    // up with those of the previous segment, and the stretch where a segment overlaps the
+    // previous one is cross-faded.  The two segments chose their pitch periods apart, so
+    // without lining them up the cross-fade would mix two copies of the voice up to a period
+    // apart, which sounds hollow.
+    private static short[] stitch(short outputs[][],
+                                  int cuts[],
+                                  int overlap,
+                                  int numChannels,
+                                  int maxShift,
+                                  float factor) {
+        int numSegments = outputs.length;
+        int starts[] = new int[numSegments];
+        int numOutputSamples = 0;
+
+        for (int i = 0; i < numSegments; i++) {
+            starts[i] = i == 0 ? 0 : Math.max(0, Math.round((cuts[i] - overlap) * factor));
+            numOutputSamples = Math.max(numOutputSamples, starts[i] + outputs[i].length / numChannels);
+        }
+        short result[] = new short[(numOutputSamples + maxShift) * numChannels];
+        int written = 0;
+        for (int i = 0; i < numSegments; i++) {
+            short output[] = outputs[i];
+            int length = output.length / numChannels;
+            int start = align(result, written, output, length, starts[i], maxShift, numChannels);
+            int fade = Math.min(Math.max(0, written - start), length);
+            for (int frame = 0; frame < fade; frame++) {
+                int position = (start + frame) * numChannels;
+                for (int channel = 0; channel < numChannels; channel++) {
+                    int oldSample = result[position + channel];
+                    int newSample = output[frame * numChannels + channel];
+                    result[position + channel] = (short) (oldSample + (newSample - oldSample) * (frame + 1) / (fade + 1));
+                }
+            }
+            System.arraycopy(output, fade * numChannels, result, (start + fade) * numChannels,
+                    (length - fade) * numChannels);
+            written = start + length;
+        }
+        // The output ends where the last segment would have without the shift: cut off or
+        // padded with silence by less than a pitch period.
+        int end = starts[numSegments - 1] + outputs[numSegments - 1].length / numChannels;
+        short trimmed[] = new short[end * numChannels];
+        System.arraycopy(result, 0, trimmed, 0, Math.min(end, written) * numChannels);
+        return trimmed;
+    }
+
+    // Find the start near nominalStart, at most maxShift frames away, where output matches
+    // the frames written to result best, by the average magnitude difference of the first
+    // channel like Sonic's pitch search.  The frames compared are those that overlap for every
+    // start tried; cuts lie in quiet spots, so this reaches into the voice.  Of equal
+    // matches, as in silence, the one closest to nominalStart wins.
+    private static int align(short result[],
+                             int written,
+                             short output[],
+                             int length,
+                             int nominalStart,
+                             int maxShift,
+                             int numChannels) {
+        int window = Math.min(length, written - nominalStart - maxShift);
+        if (window < maxShift || nominalStart < maxShift) {
+            return nominalStart;
+        }
+        long minDiff = Long.MAX_VALUE;
+        int best = nominalStart;
+
+        for (int shift = 0; shift <= 2 * maxShift; shift++) {
+            // Try 0, 1, -1, 2, -2 and so on
+            int start = nominalStart + ((shift & 1) == 0 ? -(shift >> 1) : (shift + 1) >> 1);
+            long diff = 0;
+            for (int frame = 0; frame < window && diff < minDiff; frame++) {
+                int difference = result[(start + frame) * numChannels] - output[frame * numChannels];
+                diff += difference >= 0 ? difference : -difference;
+            }
+            if (diff < minDiff) {
+                minDiff = diff;
+                best = start;
+            }
+        }
+        return best;
+    }
+}
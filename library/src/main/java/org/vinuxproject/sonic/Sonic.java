@@ -14,26 +14,65 @@
 
 package org.vinuxproject.sonic;
 
+// Samples are kept as floats between -1 and 1 inside the stream, so float input keeps its
+// precision, and samples beyond full scale survive until they are read out.  16 bit samples
+// are converted on the way in and out, and clipped on the way out.  The pitch search works on
+// a 16 bit copy of the input it looks at.
 public class Sonic {
 
+    /* Quality settings, selecting how pitch periods are searched.  The default down-samples
+       the input for a coarse search, full quality searches every candidate period of the
+       input, and predicted quality looks around the previous period first. */
+    public static final int QUALITY_DOWNSAMPLED = 0;
+    public static final int QUALITY_FULL = 1;
+    public static final int QUALITY_PREDICTED = 2;
+
     private static final int SONIC_MIN_PITCH = 65;
     private static final int SONIC_MAX_PITCH = 400;
     /* This is used to down-sample some inputs to improve speed */
     private static final int SONIC_AMDF_FREQ = 4000;
-
-    private short inputBuffer[];
-    private short outputBuffer[];
-    private short pitchBuffer[];
+    /* With QUALITY_PREDICTED, the most pitch periods in a row that are only looked for
+       around the previous one */
+    private static final int PREDICTED_PERIODS = 8;
+    /* Windowed-sinc filter used for high quality rate changes: the number of input samples
+       contributing to each output sample, and the number of fractional positions tabulated */
+    private static final int SINC_TAPS = 8;
+    private static final int SINC_PHASE_BITS = 6;
+
+    // Samples are kept as floats whichever API they are written and read with; the short API
+    // converts at its edges.  So the sinc table and the cross-fade ramps are floats as well,
+    // and there is no separate fixed-point path for 16 bit samples.
+    private float inputBuffer[];
+    private float outputBuffer[];
+    private float pitchBuffer[];
+    // Input of the pitch search: maxRequired frames, mixed to one channel, in 16 bits
+    private short analysisBuffer[];
     private short downSampleBuffer[];
     private float speed;
     private float volume;
+    private float appliedVolume;
     private float pitch;
+    // Speed and pitch may be changed from another thread while the stream is being processed
+    private volatile float targetSpeed;
+    private volatile float targetPitch;
+    private float rampStartTargetSpeed;
+    private float rampStartTargetPitch;
+    private float speedStep;
+    private float pitchStep;
+    private int rampPeriods;
     private float rate;
     private int oldRatePosition;
-    private int newRatePosition;
     private boolean useChordPitch;
+    private boolean useSincInterpolation;
+    private float sincTable[];
+    private double sincWeights[];
+    // Cutoff the sinc table was built for, as a share of the input Nyquist frequency
+    private double sincTableCutoff;
+    private int numRateHistorySamples;
+    private float rampTables[][];
     private int quality;
     private int numChannels;
+    private int numInputChannels;
     private int inputBufferSize;
     private int pitchBufferSize;
     private int outputBufferSize;
@@ -44,15 +83,21 @@ public class Sonic {
     private int maxPeriod;
     private int maxRequired;
     private int remainingInputToCopy;
+    // Part of a sample the lengths of skipped or inserted periods were rounded down by
+    private float lengthFraction;
     private int sampleRate;
     private int prevPeriod;
+    // Periods found by prediction since the last regular search
+    private int predictedPeriods;
+    // Differences found around half the predicted period
+    private final int[] halfPeriodDiffs = {0, 0};
     private int prevMinDiff;
 
     // Resize the array.
-    private short[] resize(short[] oldArray,
+    private float[] resize(float[] oldArray,
                            int newLength) {
         newLength *= numChannels;
-        short[] newArray = new short[newLength];
+        float[] newArray = new float[newLength];
         int length = oldArray.length <= newLength ? oldArray.length : newLength;
 
         System.arraycopy(oldArray, 0, newArray, 0, length);
@@ -61,31 +106,36 @@ public class Sonic {
     }
 
     // Move samples from one array to another.  May move samples down within an array, but not up.
-    private void move(short dest[], int destPos,
-                      short source[],
+    private void move(float dest[], int destPos,
+                      float source[],
                       int sourcePos,
                       int numSamples) {
         System.arraycopy(source, sourcePos * numChannels + 0, dest, destPos * numChannels + 0,
                 numSamples * numChannels);
     }
 
-    // Scale the samples by the factor.
-    private void scaleSamples(short samples[],
+    // Scale the samples by a factor that moves linearly from startVolume to volume.
+    private void scaleSamples(float samples[],
                               int position,
                               int numSamples,
+                              float startVolume,
                               float volume) {
-        int fixedPointVolume = (int) (volume * 4096.0f);
         int start = position * numChannels;
         int stop = start + numSamples * numChannels;
 
-        for (int xSample = start; xSample < stop; xSample++) {
-            int value = (samples[xSample] * fixedPointVolume) >> 12;
-            if (value > 32767) {
-                value = 32767;
-            } else if (value < -32767) {
-                value = -32767;
+        if (startVolume != volume && numSamples > 0) {
+            float rampVolume = startVolume;
+            float step = (volume - startVolume) / numSamples;
+            for (int xSample = start; xSample < stop; xSample += numChannels) {
+                for (int i = 0; i < numChannels; i++) {
+                    samples[xSample + i] *= rampVolume;
+                }
+                rampVolume += step;
             }
-            samples[xSample] = (short) value;
+            return;
+        }
+        for (int xSample = start; xSample < stop; xSample++) {
+            samples[xSample] *= volume;
         }
     }
 
@@ -97,6 +147,20 @@ public class Sonic {
     // Set the speed of the stream.
     public void setSpeed(float speed) {
         this.speed = speed;
+        this.targetSpeed = speed;
+        this.rampStartTargetSpeed = speed;
+    }
+
+    // Get the speed the stream is ramping towards.
+    public float getTargetSpeed() {
+        return targetSpeed;
+    }
+
+    // Change the speed gradually: the stream moves to the new speed in getRampPeriods() steps,
+    // taken at pitch period boundaries.  Safe to call from another thread than the one
+    // processing the stream.
+    public void setTargetSpeed(float speed) {
+        this.targetSpeed = speed;
     }
 
     // Get the pitch of the stream.
@@ -107,6 +171,29 @@ public class Sonic {
     // Set the pitch of the stream.
     public void setPitch(float pitch) {
         this.pitch = pitch;
+        this.targetPitch = pitch;
+        this.rampStartTargetPitch = pitch;
+    }
+
+    // Get the pitch the stream is ramping towards.
+    public float getTargetPitch() {
+        return targetPitch;
+    }
+
+    // Change the pitch gradually, like setTargetSpeed().
+    public void setTargetPitch(float pitch) {
+        this.targetPitch = pitch;
+    }
+
+    // Get the number of pitch periods a speed or pitch ramp takes.
+    public int getRampPeriods() {
+        return rampPeriods;
+    }
+
+    // Set the number of pitch periods a speed or pitch ramp takes.  Default 1 applies new
+    // targets at the next period boundary.
+    public void setRampPeriods(int rampPeriods) {
+        this.rampPeriods = rampPeriods < 1 ? 1 : rampPeriods;
     }
 
     // Get the rate of the stream.
@@ -118,7 +205,6 @@ public class Sonic {
     public void setRate(float rate) {
         this.rate = rate;
         this.oldRatePosition = 0;
-        this.newRatePosition = 0;
     }
 
     // Get the vocal chord pitch setting.
@@ -132,12 +218,26 @@ public class Sonic {
         this.useChordPitch = useChordPitch;
     }
 
+    // Get the interpolation used for rate changes.
+    public boolean getSincInterpolation() {
+        return useSincInterpolation;
+    }
+
+    // Use a windowed-sinc filter instead of linear interpolation for rate changes.  Default is
+    // off, which is faster, but lets through more aliasing.
+    public void setSincInterpolation(
+            boolean useSincInterpolation) {
+        this.useSincInterpolation = useSincInterpolation;
+    }
+
     // Get the quality setting.
     public int getQuality() {
         return quality;
     }
 
-    // Set the "quality".  Default 0 is virtually as good as 1, but very much faster.
+    // Set the "quality".  Default 0 is virtually as good as 1, but very much faster.  2 is faster
+    // still for voiced speech, where the pitch drifts slowly: it only searches a narrow window
+    // around the previous pitch period, and falls back to the search of 0 when that fails.
     public void setQuality(int quality) {
         this.quality = quality;
     }
@@ -150,6 +250,13 @@ public class Sonic {
     // Set the scaling factor of the stream.
     public void setVolume(float volume) {
         this.volume = volume;
+        this.appliedVolume = volume;
+    }
+
+    // Change the scaling factor gradually: the next block of output ramps from the current
+    // factor to the new one.  Meant for gain envelopes, like loudness normalisation.
+    public void setTargetVolume(float volume) {
+        this.volume = volume;
     }
 
     // Allocate stream buffers.
@@ -159,31 +266,36 @@ public class Sonic {
         maxPeriod = sampleRate / SONIC_MIN_PITCH;
         maxRequired = 2 * maxPeriod;
         inputBufferSize = maxRequired;
-        inputBuffer = new short[maxRequired * numChannels];
+        inputBuffer = new float[maxRequired * numChannels];
         outputBufferSize = maxRequired;
-        outputBuffer = new short[maxRequired * numChannels];
+        outputBuffer = new float[maxRequired * numChannels];
         pitchBufferSize = maxRequired;
-        pitchBuffer = new short[maxRequired * numChannels];
+        pitchBuffer = new float[maxRequired * numChannels];
+        analysisBuffer = new short[maxRequired];
         downSampleBuffer = new short[maxRequired];
+        rampTables = new float[maxPeriod + 1][];
         this.sampleRate = sampleRate;
         this.numChannels = numChannels;
         oldRatePosition = 0;
-        newRatePosition = 0;
+        numRateHistorySamples = 0;
         prevPeriod = 0;
+        predictedPeriods = 0;
     }
 
     // Create a sonic stream.
     public Sonic(int sampleRate,
                  int numChannels) {
         allocateStreamBuffers(sampleRate, numChannels);
-        speed = 1.0f;
-        pitch = 1.0f;
-        volume = 1.0f;
+        numInputChannels = numChannels;
+        setSpeed(1.0f);
+        setPitch(1.0f);
+        rampPeriods = 1;
+        setVolume(1.0f);
         rate = 1.0f;
         oldRatePosition = 0;
-        newRatePosition = 0;
         useChordPitch = false;
-        quality = 0;
+        useSincInterpolation = false;
+        quality = QUALITY_DOWNSAMPLED;
     }
 
     // Get the sample rate of the stream.
@@ -204,6 +316,22 @@ public class Sonic {
     // Set the num channels of the stream.  This will cause samples buffered in the stream to be lost.
     public void setNumChannels(int numChannels) {
         allocateStreamBuffers(sampleRate, numChannels);
+        numInputChannels = numChannels;
+    }
+
+    // Get the number of interleaved channels expected in data written to the stream.
+    public int getNumInputChannels() {
+        return numInputChannels;
+    }
+
+    // Set the number of interleaved channels in data written to the stream.  If this differs
+    // from the number of channels of the stream, the stream must be mono, and the input is
+    // mixed down as it is added, so only a single channel is ever time-stretched.
+    public void setNumInputChannels(int numInputChannels) {
+        if (numInputChannels != numChannels && numChannels != 1) {
+            throw new IllegalArgumentException("Input can only be mixed down to a mono stream");
+        }
+        this.numInputChannels = numInputChannels;
     }
 
     // Enlarge the output buffer if needed.
@@ -222,6 +350,19 @@ public class Sonic {
         }
     }
 
+    // Convert a sample to 16 bits.  Samples may exceed full scale, from decoders producing
+    // float PCM or from the volume, so clip them instead of letting them wrap around.
+    private static short floatToShort(float sample) {
+        int value = (int) (sample * 32768.0f);
+
+        if (value > 32767) {
+            value = 32767;
+        } else if (value < -32768) {
+            value = -32768;
+        }
+        return (short) value;
+    }
+
     // Add the input samples to the input buffer.
     private void addFloatSamplesToInputBuffer(float samples[],
                                               int numSamples) {
@@ -229,9 +370,18 @@ public class Sonic {
             return;
         }
         enlargeInputBufferIfNeeded(numSamples);
-        int xBuffer = numInputSamples * numChannels;
-        for (int xSample = 0; xSample < numSamples * numChannels; xSample++) {
-            inputBuffer[xBuffer++] = (short) (samples[xSample] * 32767.0f);
+        if (numInputChannels != numChannels) {
+            int xBuffer = numInputSamples;
+            int xSample = 0;
+            for (int i = 0; i < numSamples; i++) {
+                float sum = 0.0f;
+                for (int j = 0; j < numInputChannels; j++) {
+                    sum += samples[xSample++];
+                }
+                inputBuffer[xBuffer++] = sum / numInputChannels;
+            }
+        } else {
+            move(inputBuffer, numInputSamples, samples, 0, numSamples);
         }
         numInputSamples += numSamples;
     }
@@ -243,20 +393,46 @@ public class Sonic {
             return;
         }
         enlargeInputBufferIfNeeded(numSamples);
-        move(inputBuffer, numInputSamples, samples, 0, numSamples);
+        int xBuffer = numInputSamples * numChannels;
+        if (numInputChannels != numChannels) {
+            float scale = 1.0f / (32768.0f * numInputChannels);
+            int xSample = 0;
+            for (int i = 0; i < numSamples; i++) {
+                int sum = 0;
+                for (int j = 0; j < numInputChannels; j++) {
+                    sum += samples[xSample++];
+                }
+                inputBuffer[xBuffer++] = sum * scale;
+            }
+        } else {
+            for (int xSample = 0; xSample < numSamples * numChannels; xSample++) {
+                inputBuffer[xBuffer++] = samples[xSample] * (1.0f / 32768.0f);
+            }
+        }
         numInputSamples += numSamples;
     }
 
     // Add the input samples to the input buffer.
     private void addUnsignedByteSamplesToInputBuffer(byte samples[],
                                                      int numSamples) {
-        short sample;
-
         enlargeInputBufferIfNeeded(numSamples);
         int xBuffer = numInputSamples * numChannels;
+        if (numInputChannels != numChannels) {
+            float scale = 1.0f / (128.0f * numInputChannels);
+            int xSample = 0;
+            for (int i = 0; i < numSamples; i++) {
+                int sum = 0;
+                for (int j = 0; j < numInputChannels; j++) {
+                    sum += (samples[xSample++] & 0xff) - 128;
+                }
+                inputBuffer[xBuffer++] = sum * scale;
+            }
+            numInputSamples += numSamples;
+            return;
+        }
         for (int xSample = 0; xSample < numSamples * numChannels; xSample++) {
-            sample = (short) ((samples[xSample] & 0xff) - 128); // Convert from unsigned to signed
-            inputBuffer[xBuffer++] = (short) (sample << 8);
+            // Convert from unsigned to signed
+            inputBuffer[xBuffer++] = ((samples[xSample] & 0xff) - 128) * (1.0f / 128.0f);
         }
         numInputSamples += numSamples;
     }
@@ -264,6 +440,10 @@ public class Sonic {
     // Add the input samples to the input buffer.  They must be 16-bit little-endian encoded in a byte array.
     private void addBytesToInputBuffer(byte inBuffer[],
                                        int numBytes) {
+        if (numInputChannels != numChannels) {
+            addDownMixedBytesToInputBuffer(inBuffer, numBytes);
+            return;
+        }
         int numSamples = numBytes / (2 * numChannels);
         short sample;
 
@@ -271,7 +451,38 @@ public class Sonic {
         int xBuffer = numInputSamples * numChannels;
         for (int xByte = 0; xByte + 1 < numBytes; xByte += 2) {
             sample = (short) ((inBuffer[xByte] & 0xff) | (inBuffer[xByte + 1] << 8));
-            inputBuffer[xBuffer++] = sample;
+            inputBuffer[xBuffer++] = sample * (1.0f / 32768.0f);
+        }
+        numInputSamples += numSamples;
+    }
+
+    // Add 16-bit little-endian input samples with numInputChannels interleaved channels, mixing
+    // them down to the single channel of the stream.  Stereo input is by far the most common
+    // case, so it gets a loop of its own.
+    private void addDownMixedBytesToInputBuffer(byte inBuffer[],
+                                                int numBytes) {
+        int numSamples = numBytes / (2 * numInputChannels);
+        int xBuffer = numInputSamples;
+        int xByte = 0;
+
+        enlargeInputBufferIfNeeded(numSamples);
+        if (numInputChannels == 2) {
+            for (int i = 0; i < numSamples; i++) {
+                int left = (short) ((inBuffer[xByte] & 0xff) | (inBuffer[xByte + 1] << 8));
+                int right = (short) ((inBuffer[xByte + 2] & 0xff) | (inBuffer[xByte + 3] << 8));
+                inputBuffer[xBuffer++] = (left + right) * (1.0f / 65536.0f);
+                xByte += 4;
+            }
+        } else {
+            float scale = 1.0f / (32768.0f * numInputChannels);
+            for (int i = 0; i < numSamples; i++) {
+                int sum = 0;
+                for (int j = 0; j < numInputChannels; j++) {
+                    sum += (short) ((inBuffer[xByte] & 0xff) | (inBuffer[xByte + 1] << 8));
+                    xByte += 2;
+                }
+                inputBuffer[xBuffer++] = sum * scale;
+            }
         }
         numInputSamples += numSamples;
     }
@@ -285,7 +496,7 @@ public class Sonic {
     }
 
     // Just copy from the array to the output buffer
-    private void copyToOutput(short samples[],
+    private void copyToOutput(float samples[],
                               int position,
                               int numSamples) {
         enlargeOutputBufferIfNeeded(numSamples);
@@ -306,7 +517,7 @@ public class Sonic {
     }
 
     // Read data out of the stream.  Sometimes no data will be available, and zero
-    // is returned, which is not an error condition.
+    // is returned, which is not an error condition.  The samples are not clipped.
     public int readFloatFromStream(float samples[],
                                    int maxSamples) {
         int numSamples = numOutputSamples;
@@ -319,9 +530,7 @@ public class Sonic {
             remainingSamples = numSamples - maxSamples;
             numSamples = maxSamples;
         }
-        for (int xSample = 0; xSample < numSamples * numChannels; xSample++) {
-            samples[xSample++] = (outputBuffer[xSample]) / 32767.0f;
-        }
+        move(samples, 0, outputBuffer, 0, numSamples);
         move(outputBuffer, 0, outputBuffer, numSamples, remainingSamples);
         numOutputSamples = remainingSamples;
         return numSamples;
@@ -341,7 +550,9 @@ public class Sonic {
             remainingSamples = numSamples - maxSamples;
             numSamples = maxSamples;
         }
-        move(samples, 0, outputBuffer, 0, numSamples);
+        for (int xSample = 0; xSample < numSamples * numChannels; xSample++) {
+            samples[xSample] = floatToShort(outputBuffer[xSample]);
+        }
         move(outputBuffer, 0, outputBuffer, numSamples, remainingSamples);
         numOutputSamples = remainingSamples;
         return numSamples;
@@ -362,7 +573,7 @@ public class Sonic {
             numSamples = maxSamples;
         }
         for (int xSample = 0; xSample < numSamples * numChannels; xSample++) {
-            samples[xSample] = (byte) ((outputBuffer[xSample] >> 8) + 128);
+            samples[xSample] = (byte) ((floatToShort(outputBuffer[xSample]) >> 8) + 128);
         }
         move(outputBuffer, 0, outputBuffer, numSamples, remainingSamples);
         numOutputSamples = remainingSamples;
@@ -385,7 +596,7 @@ public class Sonic {
             numSamples = maxSamples;
         }
         for (int xSample = 0; xSample < numSamples * numChannels; xSample++) {
-            short sample = outputBuffer[xSample];
+            short sample = floatToShort(outputBuffer[xSample]);
             outBuffer[xSample << 1] = (byte) (sample & 0xff);
             outBuffer[(xSample << 1) + 1] = (byte) (sample >> 8);
         }
@@ -399,6 +610,9 @@ public class Sonic {
     // words could introduce distortion.
     public void flushStream() {
         int remainingSamples = numInputSamples;
+        // Don't let the remaining input change speed half way, or the expected length is wrong.
+        setSpeed(targetSpeed);
+        setPitch(targetPitch);
         float s = speed / pitch;
         float r = rate * pitch;
         int expectedOutputSamples = numOutputSamples + (int) ((remainingSamples / s + numPitchSamples) / r + 0.5f);
@@ -406,7 +620,7 @@ public class Sonic {
         // Add enough silence to flush both input and pitch buffers.
         enlargeInputBufferIfNeeded(remainingSamples + 2 * maxRequired);
         for (int xSample = 0; xSample < 2 * maxRequired * numChannels; xSample++) {
-            inputBuffer[remainingSamples * numChannels + xSample] = 0;
+            inputBuffer[remainingSamples * numChannels + xSample] = 0.0f;
         }
         numInputSamples += 2 * maxRequired;
         writeShortToStream(null, 0);
@@ -417,7 +631,9 @@ public class Sonic {
         // Empty input and pitch buffers.
         numInputSamples = 0;
         remainingInputToCopy = 0;
+        lengthFraction = 0.0f;
         numPitchSamples = 0;
+        numRateHistorySamples = 0;
     }
 
     // Return the number of samples in the output buffer
@@ -425,30 +641,50 @@ public class Sonic {
         return numOutputSamples;
     }
 
-    // If skip is greater than one, average skip samples together and write them to
-    // the down-sample buffer.  If numChannels is greater than one, mix the channels
-    // together as we down sample.
-    private void downSampleInput(short samples[],
-                                 int position,
-                                 int skip) {
+    // Return the number of samples in the input buffer that have not been processed yet
+    public int samplesPending() {
+        return numInputSamples;
+    }
+
+    // Copy the maxRequired frames from position on to the analysis buffer, mixing the
+    // channels together and converting them to 16 bits, which is all the pitch search needs.
+    private void fillAnalysisBuffer(float samples[],
+                                    int position) {
+        int xSample = position * numChannels;
+
+        if (numChannels == 1) {
+            for (int i = 0; i < maxRequired; i++) {
+                analysisBuffer[i] = floatToShort(samples[xSample++]);
+            }
+            return;
+        }
+        float scale = 1.0f / numChannels;
+        for (int i = 0; i < maxRequired; i++) {
+            float sum = 0.0f;
+            for (int j = 0; j < numChannels; j++) {
+                sum += samples[xSample++];
+            }
+            analysisBuffer[i] = floatToShort(sum * scale);
+        }
+    }
+
+    // Average skip samples of the analysis buffer together and write them to the down-sample
+    // buffer.
+    private void downSampleInput(int skip) {
         int numSamples = maxRequired / skip;
-        int samplesPerValue = numChannels * skip;
         int value;
 
-        position *= numChannels;
         for (int i = 0; i < numSamples; i++) {
             value = 0;
-            for (int j = 0; j < samplesPerValue; j++) {
-                value += samples[position + i * samplesPerValue + j];
+            for (int j = 0; j < skip; j++) {
+                value += analysisBuffer[i * skip + j];
             }
-            value /= samplesPerValue;
-            downSampleBuffer[i] = (short) value;
+            downSampleBuffer[i] = (short) (value / skip);
         }
     }
 
-    // Find the best frequency match in the range, and given a sample skip multiple.
-    // For now, just find the pitch of the first channel. Note that the contents of retDiffs
-    // will be overwritten.
+    // Find the best frequency match in the range, in the analysis or the down-sample buffer.
+    // Note that the contents of retDiffs will be overwritten.
     private int findPitchPeriodInRange(short samples[],
                                        int position,
                                        int minPeriod,
@@ -457,7 +693,6 @@ public class Sonic {
         int bestPeriod = 0, worstPeriod = 255;
         int minDiff = 1, maxDiff = 0;
 
-        position *= numChannels;
         for (int period = minPeriod; period <= maxPeriod; period++) {
             int diff = 0;
             for (int i = 0; i < period; i++) {
@@ -465,14 +700,14 @@ public class Sonic {
                 short pVal = samples[position + period + i];
                 diff += sVal >= pVal ? sVal - pVal : pVal - sVal;
             }
-            /* Note that the highest number of samples we add into diff will be less
-               than 256, since we skip samples.  Thus, diff is a 24 bit number, and
-               we can safely multiply by numSamples without overflow */
-            if (diff * bestPeriod < minDiff * period) {
+            /* With skipped samples, the highest number of samples we add into diff
+               will be less than 256, and diff is a 24 bit number.  Without skipping,
+               at 44.1KHz and above, multiplying it by the period can overflow an int. */
+            if ((long) diff * bestPeriod < (long) minDiff * period) {
                 minDiff = diff;
                 bestPeriod = period;
             }
-            if (diff * worstPeriod > maxDiff * period) {
+            if ((long) diff * worstPeriod > (long) maxDiff * period) {
                 maxDiff = diff;
                 worstPeriod = period;
             }
@@ -482,6 +717,110 @@ public class Sonic {
         return bestPeriod;
     }
 
+    // Same as findPitchPeriodInRange, but stop summing up the differences for a period as soon as
+    // it is clear that it cannot beat the best period found so far.  The differences of abandoned
+    // periods are only partial sums, so for the maximum difference they are scaled up to the
+    // whole period; prevPeriodBetter() would take a partial sum for a poor match.
+    private int findPitchPeriodInRangeWithEarlyExit(short samples[],
+                                                    int position,
+                                                    int minPeriod,
+                                                    int maxPeriod,
+                                                    int[] retDiffs) {
+        int bestPeriod = 0, worstPeriod = 255;
+        int minDiff = 1, maxDiff = 0;
+
+        for (int period = minPeriod; period <= maxPeriod; period++) {
+            // A period is worse than the best one once diff * bestPeriod >= minDiff * period
+            long maxUsefulDiff = bestPeriod == 0 ? Long.MAX_VALUE : (long) minDiff * period / bestPeriod;
+            int diff = 0;
+            int i;
+            for (i = 0; i < period && diff <= maxUsefulDiff; i++) {
+                short sVal = samples[position + i];
+                short pVal = samples[position + period + i];
+                diff += sVal >= pVal ? sVal - pVal : pVal - sVal;
+            }
+            if (i == period && (long) diff * bestPeriod < (long) minDiff * period) {
+                minDiff = diff;
+                bestPeriod = period;
+            }
+            if (i < period) {
+                diff = (int) Math.min((long) diff * period / i, Integer.MAX_VALUE);
+            }
+            if ((long) diff * worstPeriod > (long) maxDiff * period) {
+                maxDiff = diff;
+                worstPeriod = period;
+            }
+        }
+        retDiffs[0] = minDiff / bestPeriod;
+        retDiffs[1] = maxDiff / worstPeriod;
+        return bestPeriod;
+    }
+
+    // Look for the pitch period only in a window around the previous one, using the early exit
+    // search.  Return 0 if there is no previous period, or if the result looks like the pitch
+    // has moved on: the best match is at the edge of the window, or is much worse than the
+    // previous match.  The caller then has to do the regular search.  A prediction that
+    // locked onto a wrong period keeps finding it in its window, so every PREDICTED_PERIODS
+    // periods the regular search runs regardless.
+    private int findPredictedPitchPeriod(int skip,
+                                         int[] diffs) {
+        if (prevPeriod == 0 || ++predictedPeriods >= PREDICTED_PERIODS) {
+            predictedPeriods = 0;
+            return 0;
+        }
+        int period = findPitchPeriodAround(skip, prevPeriod, diffs);
+        if (period == 0) {
+            predictedPeriods = 0;
+            return 0;
+        }
+        int half = period >> 1;
+        if (half - 2 >= minPeriod) {
+            // A prediction that locked onto twice the period only finds it again, so try half
+            // of it too.  The period is exact, a couple of candidates around half of it are
+            // enough.
+            half = findPitchPeriodInRangeWithEarlyExit(analysisBuffer, 0, half - 2, half + 2,
+                    halfPeriodDiffs);
+            if (halfPeriodDiffs[0] < diffs[0]) {
+                period = half;
+                diffs[0] = halfPeriodDiffs[0];
+                diffs[1] = Math.max(diffs[1], halfPeriodDiffs[1]);
+            }
+        }
+        if (diffs[0] > 2 * prevMinDiff + 1) {
+            predictedPeriods = 0;
+            return 0;
+        }
+        return period;
+    }
+
+    // Look for the pitch period in a window of +/- 1/8 around the given period.  Return 0 if
+    // the best match is at the edge of the window.
+    private int findPitchPeriodAround(int skip,
+                                      int around,
+                                      int[] diffs) {
+        int period;
+        int window = Math.max(around >> 3, skip << 1);
+        int minP = Math.max(around - window, minPeriod);
+        int maxP = Math.min(around + window, maxPeriod);
+        if (skip == 1) {
+            period = findPitchPeriodInRangeWithEarlyExit(analysisBuffer, 0, minP, maxP, diffs);
+        } else {
+            downSampleInput(skip);
+            period = findPitchPeriodInRangeWithEarlyExit(downSampleBuffer, 0, minP / skip, maxP / skip, diffs);
+            if ((period == minP / skip && minP > minPeriod) || (period == maxP / skip && maxP < maxPeriod)) {
+                return 0;
+            }
+            period *= skip;
+            minP = Math.max(period - (skip << 2), minPeriod);
+            maxP = Math.min(period + (skip << 2), maxPeriod);
+            return findPitchPeriodInRangeWithEarlyExit(analysisBuffer, 0, minP, maxP, diffs);
+        }
+        if ((period == minP && minP > minPeriod) || (period == maxP && maxP < maxPeriod)) {
+            return 0;
+        }
+        return period;
+    }
+
     // At abrupt ends of voiced words, we can have pitch periods that are better
     // approximated by the previous pitch period estimate.  Try to detect this case.
     private boolean prevPeriodBetter(int period,
@@ -511,24 +850,29 @@ public class Sonic {
     // Find the pitch period.  This is a critical step, and we may have to try
     // multiple ways to get a good answer.  This version uses AMDF.  To improve
     // speed, we down sample by an integer factor get in the 11KHz range, and then
-    // do it again with a narrower frequency range without down sampling
-    private int findPitchPeriod(short samples[],
-                                int position,
-                                boolean preferNewPeriod) {
+    // do it again with a narrower frequency range without down sampling.  Package private, so
+    // tests can compare the search qualities.
+    int findPitchPeriod(float samples[],
+                        int position,
+                        boolean preferNewPeriod) {
         int[] diffs = {0, 0}; // 0: minDiff, 1: maxDiff; for mutability
-        int period, retPeriod;
+        int period = 0, retPeriod;
         int skip = 1;
 
-        if (sampleRate > SONIC_AMDF_FREQ && quality == 0) {
+        if (sampleRate > SONIC_AMDF_FREQ && quality != QUALITY_FULL) {
             skip = sampleRate / SONIC_AMDF_FREQ;
         }
-        if (numChannels == 1 && skip == 1) {
-            period = findPitchPeriodInRange(samples, position, minPeriod, maxPeriod, diffs);
-        } else {
-            downSampleInput(samples, position, skip);
-            period = findPitchPeriodInRange(downSampleBuffer, 0, minPeriod / skip,
-                    maxPeriod / skip, diffs);
-            if (skip != 1) {
+        fillAnalysisBuffer(samples, position);
+        if (quality == QUALITY_PREDICTED) {
+            period = findPredictedPitchPeriod(skip, diffs);
+        }
+        if (period == 0) {
+            if (skip == 1) {
+                period = findPitchPeriodInRange(analysisBuffer, 0, minPeriod, maxPeriod, diffs);
+            } else {
+                downSampleInput(skip);
+                period = findPitchPeriodInRange(downSampleBuffer, 0, minPeriod / skip,
+                        maxPeriod / skip, diffs);
                 period *= skip;
                 int minP = period - (skip << 2);
                 int maxP = period + (skip << 2);
@@ -538,12 +882,7 @@ public class Sonic {
                 if (maxP > maxPeriod) {
                     maxP = maxPeriod;
                 }
-                if (numChannels == 1) {
-                    period = findPitchPeriodInRange(samples, position, minP, maxP, diffs);
-                } else {
-                    downSampleInput(samples, position, 1);
-                    period = findPitchPeriodInRange(downSampleBuffer, 0, minP, maxP, diffs);
-                }
+                period = findPitchPeriodInRange(analysisBuffer, 0, minP, maxP, diffs);
             }
         }
         if (prevPeriodBetter(period, diffs[0], diffs[1], preferNewPeriod)) {
@@ -556,58 +895,91 @@ public class Sonic {
         return retPeriod;
     }
 
-    // Overlap two sound segments, ramp the volume of one down, while ramping the
-    // other one from zero up, and add them, storing the result at the output.
-    private void overlapAdd(int numSamples,
-                            int numChannels,
-                            short out[],
-                            int outPos,
-                            short rampDown[],
-                            int rampDownPos,
-                            short rampUp[],
-                            int rampUpPos) {
-        for (int i = 0; i < numChannels; i++) {
-            int o = outPos * numChannels + i;
-            int u = rampUpPos * numChannels + i;
-            int d = rampDownPos * numChannels + i;
+    // Get the cross-fade ramp for a segment of numSamples samples.  Entry t * numChannels + c
+    // holds t / numSamples, repeated for each channel, so a segment can be faded in one pass
+    // over its interleaved samples, without any division.  Pitch periods only take a few
+    // hundred distinct lengths, so the ramps are kept once computed.  The cross-fades are
+    // package private for the benchmark in the cli module.
+    float[] getRamp(int numSamples) {
+        if (numSamples >= rampTables.length) {
+            float[][] newTables = new float[numSamples + 1][];
+            System.arraycopy(rampTables, 0, newTables, 0, rampTables.length);
+            rampTables = newTables;
+        }
+        float[] ramp = rampTables[numSamples];
+        if (ramp == null) {
+            ramp = new float[numSamples * numChannels];
+            int xRamp = 0;
             for (int t = 0; t < numSamples; t++) {
-                out[o] = (short) ((rampDown[d] * (numSamples - t) + rampUp[u] * t) / numSamples);
-                o += numChannels;
-                d += numChannels;
-                u += numChannels;
+                float value = (float) t / numSamples;
+                for (int i = 0; i < numChannels; i++) {
+                    ramp[xRamp++] = value;
+                }
             }
+            rampTables[numSamples] = ramp;
         }
+        return ramp;
     }
 
     // Overlap two sound segments, ramp the volume of one down, while ramping the
     // other one from zero up, and add them, storing the result at the output.
-    private void overlapAddWithSeparation(int numSamples,
-                                          int numChannels,
-                                          int separation,
-                                          short out[],
-                                          int outPos,
-                                          short rampDown[],
-                                          int rampDownPos,
-                                          short rampUp[],
-                                          int rampUpPos) {
-        for (int i = 0; i < numChannels; i++) {
-            int o = outPos * numChannels + i;
-            int u = rampUpPos * numChannels + i;
-            int d = rampDownPos * numChannels + i;
-            for (int t = 0; t < numSamples + separation; t++) {
-                if (t < separation) {
-                    out[o] = (short) (rampDown[d] * (numSamples - t) / numSamples);
-                    d += numChannels;
-                } else if (t < numSamples) {
-                    out[o] = (short) ((rampDown[d] * (numSamples - t) + rampUp[u] * (t - separation)) / numSamples);
-                    d += numChannels;
-                    u += numChannels;
-                } else {
-                    out[o] = (short) (rampUp[u] * (t - separation) / numSamples);
-                    u += numChannels;
-                }
-                o += numChannels;
-            }
+    void overlapAdd(int numSamples,
+                    int numChannels,
+                    float out[],
+                    int outPos,
+                    float rampDown[],
+                    int rampDownPos,
+                    float rampUp[],
+                    int rampUpPos) {
+        float[] ramp = getRamp(numSamples);
+        int o = outPos * numChannels;
+        int d = rampDownPos * numChannels;
+        int u = rampUpPos * numChannels;
+        int length = numSamples * numChannels;
+
+        for (int i = 0; i < length; i++) {
+            float down = rampDown[d + i];
+            out[o + i] = down + (rampUp[u + i] - down) * ramp[i];
+        }
+    }
+
+    // Overlap two sound segments, ramp the volume of one down, while ramping the
+    // other one from zero up, and add them, storing the result at the output.
+    void overlapAddWithSeparation(int numSamples,
+                                  int numChannels,
+                                  int separation,
+                                  float out[],
+                                  int outPos,
+                                  float rampDown[],
+                                  int rampDownPos,
+                                  float rampUp[],
+                                  int rampUpPos) {
+        float[] ramp = getRamp(numSamples);
+        int o = outPos * numChannels;
+        int d = rampDownPos * numChannels;
+        int u = rampUpPos * numChannels - separation * numChannels;
+        int length = numSamples * numChannels;
+        int rampUpStart = separation * numChannels;
+        int rampDownEnd = Math.min(rampUpStart, length);
+        int i;
+
+        // Only the first segment, fading out
+        for (i = 0; i < rampDownEnd; i++) {
+            float down = rampDown[d + i];
+            out[o + i] = down - down * ramp[i];
+        }
+        // Both segments
+        for (; i < length; i++) {
+            float down = rampDown[d + i];
+            out[o + i] = down - down * ramp[i] + rampUp[u + i] * ramp[i - rampUpStart];
+        }
+        // Silence between the segments, if they are separated by more than a period
+        for (; i < rampUpStart; i++) {
+            out[o + i] = 0.0f;
+        }
+        // Only the second segment, fading in
+        for (; i < length + rampUpStart; i++) {
+            out[o + i] = rampUp[u + i] * ramp[i - rampUpStart];
         }
     }
 
@@ -661,28 +1033,73 @@ public class Sonic {
         removePitchSamples(position);
     }
 
-    // Interpolate the new output sample.
-    private short interpolate(short in[],
-                              int inPos,
-                              int oldSampleRate,
-                              int newSampleRate) {
-        short left = in[inPos * numChannels];
-        short right = in[inPos * numChannels + numChannels];
-        int position = newRatePosition * oldSampleRate;
-        int leftPosition = oldRatePosition * newSampleRate;
-        int rightPosition = (oldRatePosition + 1) * newSampleRate;
-        int ratio = rightPosition - position;
-        int width = rightPosition - leftPosition;
+    // Cutoff of the windowed-sinc filter for a rate change by rate, as a share of the input
+    // Nyquist frequency.  When down-sampling, the cutoff is lowered to avoid aliasing.
+    private static double sincCutoff(float rate) {
+        return 0.95 * Math.min(1.0, 1.0 / rate);
+    }
+
+    // Make sure the sinc table suits a rate change by rate.  While the pitch ramps, the rate
+    // changes with every call, so the table is only rebuilt if it would let through more
+    // than the lower of the current and the target rate allow; a table that cuts off a little
+    // low only dulls the few periods of the ramp.  Once the ramp settles, it is built for the
+    // rate reached.  So a rate change builds the table at most twice, and up-sampling, which
+    // always uses the same cutoff, builds it once.
+    private void updateSincTable(float rate) {
+        double cutoff = sincCutoff(rate);
+        if (pitch != targetPitch && !useChordPitch) {
+            cutoff = Math.min(cutoff, sincCutoff(this.rate * targetPitch));
+            if (sincTable != null && cutoff >= sincTableCutoff) {
+                return;
+            }
+        } else if (sincTable != null && cutoff == sincTableCutoff) {
+            return;
+        }
+        buildSincTable(cutoff);
+    }
+
+    // Build the polyphase table of the windowed-sinc filter.  Each of the 1 << SINC_PHASE_BITS
+    // phases holds SINC_TAPS coefficients for an interpolation point that far past an input
+    // sample.
+    private void buildSincTable(double cutoff) {
+        int numPhases = 1 << SINC_PHASE_BITS;
+        int halfTaps = SINC_TAPS / 2;
 
-        return (short) ((ratio * left + (width - ratio) * right) / width);
+        if (sincTable == null) {
+            sincTable = new float[numPhases * SINC_TAPS];
+            sincWeights = new double[SINC_TAPS];
+        }
+        double weights[] = sincWeights;
+        for (int phase = 0; phase < numPhases; phase++) {
+            double sum = 0.0;
+            for (int tap = 0; tap < SINC_TAPS; tap++) {
+                double x = tap - (halfTaps - 1) - (double) phase / numPhases;
+                double window = 0.5 * (1.0 + Math.cos(Math.PI * x / halfTaps));
+                double sinc = x == 0.0 ? 1.0 : Math.sin(Math.PI * cutoff * x) / (Math.PI * cutoff * x);
+                weights[tap] = sinc * window;
+                sum += weights[tap];
+            }
+            // Normalize each phase to unity gain
+            for (int tap = 0; tap < SINC_TAPS; tap++) {
+                sincTable[phase * SINC_TAPS + tap] = (float) (weights[tap] / sum);
+            }
+        }
+        sincTableCutoff = cutoff;
     }
 
-    // Change the rate.
+    // Change the rate.  Output sample n lies between input samples o and o + 1, where
+    // o = n * oldSampleRate / newSampleRate.  The number of output samples is worked out once
+    // for all the buffered pitch samples, and the position is then stepped forward without any
+    // division, computing all channels of an output sample at once.  With sinc interpolation,
+    // the filter needs a few samples on both sides of the position, so some already used
+    // samples are kept at the start of the pitch buffer as history.
     private void adjustRate(float rate,
                             int originalNumOutputSamples) {
         int newSampleRate = (int) (sampleRate / rate);
         int oldSampleRate = sampleRate;
-        int position;
+        int history = useSincInterpolation ? SINC_TAPS / 2 - 1 : 0;
+        int lookahead = useSincInterpolation ? SINC_TAPS / 2 : 1;
+        int start = useSincInterpolation ? history : numRateHistorySamples;
 
         // Set these values to help with the integer math
         while (newSampleRate > (1 << 14) || oldSampleRate > (1 << 14)) {
@@ -693,43 +1110,80 @@ public class Sonic {
             return;
         }
         moveNewSamplesToPitchBuffer(originalNumOutputSamples);
-        // Leave at least one pitch sample in the buffer
-        for (position = 0; position < numPitchSamples - 1; position++) {
-            while ((oldRatePosition + 1) * newSampleRate > newRatePosition * oldSampleRate) {
-                enlargeOutputBufferIfNeeded(1);
-                for (int i = 0; i < numChannels; i++) {
-                    outputBuffer[numOutputSamples * numChannels + i] = interpolate(pitchBuffer, position + i,
-                            oldSampleRate, newSampleRate);
+        // Leave at least lookahead pitch samples in the buffer
+        int numPositions = numPitchSamples - lookahead - start;
+        if (numPositions <= 0) {
+            return;
+        }
+        long firstOld = oldRatePosition;
+        long endOld = firstOld + numPositions;
+        long firstNew = (firstOld * newSampleRate + oldSampleRate - 1) / oldSampleRate;
+        long endNew = (endOld * newSampleRate + oldSampleRate - 1) / oldSampleRate;
+        int numNewSamples = (int) (endNew - firstNew);
+        long offset = firstNew * oldSampleRate - firstOld * newSampleRate;
+        int position = start + (int) (offset / newSampleRate);
+        int fraction = (int) (offset % newSampleRate);
+        // fraction / newSampleRate in 32 bit fixed point is fraction * reciprocal
+        long reciprocal = ((1L << 32) + newSampleRate - 1) / newSampleRate;
+        float scale = 1.0f / newSampleRate;
+        int out = numOutputSamples * numChannels;
+
+        enlargeOutputBufferIfNeeded(numNewSamples);
+        if (useSincInterpolation) {
+            updateSincTable(rate);
+            for (int i = 0; i < numNewSamples; i++) {
+                int coefficients = (int) ((fraction * reciprocal) >> (32 - SINC_PHASE_BITS)) * SINC_TAPS;
+                int in = (position - history) * numChannels;
+                for (int channel = 0; channel < numChannels; channel++) {
+                    float value = 0.0f;
+                    int xSample = in + channel;
+                    for (int tap = 0; tap < SINC_TAPS; tap++) {
+                        value += sincTable[coefficients + tap] * pitchBuffer[xSample];
+                        xSample += numChannels;
+                    }
+                    outputBuffer[out++] = value;
+                }
+                fraction += oldSampleRate;
+                while (fraction >= newSampleRate) {
+                    fraction -= newSampleRate;
+                    position++;
                 }
-                newRatePosition++;
-                numOutputSamples++;
             }
-            oldRatePosition++;
-            if (oldRatePosition == oldSampleRate) {
-                oldRatePosition = 0;
-                if (newRatePosition != newSampleRate) {
-                    System.out.printf("Assertion failed: newRatePosition != newSampleRate\n");
-                    assert false;
+        } else {
+            for (int i = 0; i < numNewSamples; i++) {
+                float weight = fraction * scale;
+                int left = position * numChannels;
+                int right = left + numChannels;
+                for (int channel = 0; channel < numChannels; channel++) {
+                    float leftValue = pitchBuffer[left + channel];
+                    outputBuffer[out++] = leftValue + (pitchBuffer[right + channel] - leftValue) * weight;
+                }
+                fraction += oldSampleRate;
+                while (fraction >= newSampleRate) {
+                    fraction -= newSampleRate;
+                    position++;
                 }
-                newRatePosition = 0;
             }
         }
-        removePitchSamples(position);
+        numOutputSamples += numNewSamples;
+        oldRatePosition = (int) (endOld % oldSampleRate);
+        numRateHistorySamples = history;
+        removePitchSamples(start + numPositions - history);
     }
 
 
     // Skip over a pitch period, and copy period/speed samples to the output
-    private int skipPitchPeriod(short samples[],
+    private int skipPitchPeriod(float samples[],
                                 int position,
                                 float speed,
                                 int period) {
         int newSamples;
 
         if (speed >= 2.0f) {
-            newSamples = (int) (period / (speed - 1.0f));
+            newSamples = carryFraction(period / (speed - 1.0f));
         } else {
             newSamples = period;
-            remainingInputToCopy = (int) (period * (2.0f - speed) / (speed - 1.0f));
+            remainingInputToCopy = copyLength(period, (2.0f - speed) / (speed - 1.0f));
         }
         enlargeOutputBufferIfNeeded(newSamples);
         overlapAdd(newSamples, numChannels, outputBuffer, numOutputSamples, samples, position,
@@ -738,18 +1192,38 @@ public class Sonic {
         return newSamples;
     }
 
+    // Get how much input to copy directly after a pitch period, given in periods.  Speeds that
+    // hasNormalSpeed() accepts never get here, so no more than 100000 periods are copied; the
+    // bound keeps a speed of exactly 1.0 from turning into an endless copy.
+    private int copyLength(int period,
+                           float periods) {
+        if (!(periods < 100000.0f)) {
+            periods = 100000.0f;
+        }
+        return carryFraction(period * periods);
+    }
+
+    // Round a number of samples down, and add what was cut off to the next one, so the output
+    // length doesn't drift away from the input length over the speed.
+    private int carryFraction(float samples) {
+        samples += lengthFraction;
+        int whole = (int) samples;
+        lengthFraction = samples - whole;
+        return whole;
+    }
+
     // Insert a pitch period, and determine how much input to copy directly.
-    private int insertPitchPeriod(short samples[],
+    private int insertPitchPeriod(float samples[],
                                   int position,
                                   float speed,
                                   int period) {
         int newSamples;
 
         if (speed < 0.5f) {
-            newSamples = (int) (period * speed / (1.0f - speed));
+            newSamples = carryFraction(period * speed / (1.0f - speed));
         } else {
             newSamples = period;
-            remainingInputToCopy = (int) (period * (2.0f * speed - 1.0f) / (1.0f - speed));
+            remainingInputToCopy = copyLength(period, (2.0f * speed - 1.0f) / (1.0f - speed));
         }
         enlargeOutputBufferIfNeeded(period + newSamples);
         move(outputBuffer, numOutputSamples, samples, position, period);
@@ -773,6 +1247,21 @@ public class Sonic {
                 newSamples = copyInputToOutput(position);
                 position += newSamples;
             } else {
+                if (isRamping()) {
+                    rampParameters();
+                    speed = this.speed / this.pitch;
+                    if (hasNormalSpeed()) {
+                        if (!isRamping()) {
+                            // The ramp ended at normal speed, the rest of the input is copied
+                            // as it is.
+                            break;
+                        }
+                        // Passing through normal speed, where there is nothing to skip or
+                        // insert: copy a period's worth and carry on ramping after it.
+                        remainingInputToCopy = maxPeriod;
+                        continue;
+                    }
+                }
                 period = findPitchPeriod(inputBuffer, position, true);
                 if (speed > 1.0) {
                     newSamples = skipPitchPeriod(inputBuffer, position, speed, period);
@@ -786,30 +1275,80 @@ public class Sonic {
         removeInputSamples(position);
     }
 
+    // Check if speed or pitch still have to move towards their targets.
+    private boolean isRamping() {
+        return speed != targetSpeed || pitch != targetPitch;
+    }
+
+    // Take one step of a speed and pitch ramp.  A target that changes half way through a
+    // ramp starts a new ramp from the current values.
+    private void rampParameters() {
+        float newSpeed = targetSpeed;
+        float newPitch = targetPitch;
+
+        if (newSpeed != rampStartTargetSpeed || newPitch != rampStartTargetPitch) {
+            speedStep = (newSpeed - speed) / rampPeriods;
+            pitchStep = (newPitch - pitch) / rampPeriods;
+            rampStartTargetSpeed = newSpeed;
+            rampStartTargetPitch = newPitch;
+        }
+        speed = stepTowards(speed, newSpeed, speedStep);
+        pitch = stepTowards(pitch, newPitch, pitchStep);
+    }
+
+    // Add step to value, without going past target.
+    private static float stepTowards(float value,
+                                     float target,
+                                     float step) {
+        value += step;
+        if ((step >= 0.0f && value >= target) || (step <= 0.0f && value <= target)) {
+            return target;
+        }
+        return value;
+    }
+
+    // Check if the current speed and pitch leave the length of the input unchanged.
+    private boolean hasNormalSpeed() {
+        float s = speed / pitch;
+        return s <= 1.00001 && s >= 0.99999;
+    }
+
     // Resample as many pitch periods as we have buffered on the input.  Scale the output by the volume.
     private void processStreamInput() {
         int originalNumOutputSamples = numOutputSamples;
+        if (isRamping() && hasNormalSpeed()) {
+            // No pitch periods get processed at normal speed, so step the ramp once for every
+            // maximum period of input instead.
+            int steps = numInputSamples / maxPeriod;
+            do {
+                rampParameters();
+            } while (--steps > 0 && isRamping() && hasNormalSpeed());
+        }
         float s = speed / pitch;
-        float r = rate;
 
-        if (!useChordPitch) {
-            r *= pitch;
-        }
         if (s > 1.00001 || s < 0.99999) {
             changeSpeed(s);
-        } else {
+        }
+        if (hasNormalSpeed()) {
+            // Also after a ramp in changeSpeed() ended at normal speed.
             copyToOutput(inputBuffer, 0, numInputSamples);
             numInputSamples = 0;
         }
+        // The rate goes by the pitch the ramp got to.
+        float r = rate;
+        if (!useChordPitch) {
+            r *= pitch;
+        }
         if (useChordPitch && pitch != 1.0f) {
             adjustPitch(originalNumOutputSamples);
         } else if (r != 1.0f) {
             adjustRate(r, originalNumOutputSamples);
         }
-        if (volume != 1.0f) {
+        if ((volume != 1.0f || appliedVolume != 1.0f) && numOutputSamples > originalNumOutputSamples) {
             // Adjust output volume.
             scaleSamples(outputBuffer, originalNumOutputSamples, numOutputSamples - originalNumOutputSamples,
-                    volume);
+                    appliedVolume, volume);
+            appliedVolume = volume;
         }
     }
 
@@ -867,15 +1406,15 @@ public class Sonic {
     }
 
     /* This is a non-stream oriented interface to just change the speed of a sound sample */
-    public int sonicChangeShortSpeed(short samples[],
-                                     int numSamples,
-                                     float speed,
-                                     float pitch,
-                                     float rate,
-                                     float volume,
-                                     boolean useChordPitch,
-                                     int sampleRate,
-                                     int numChannels) {
+    public static int sonicChangeShortSpeed(short samples[],
+                                            int numSamples,
+                                            float speed,
+                                            float pitch,
+                                            float rate,
+                                            float volume,
+                                            boolean useChordPitch,
+                                            int sampleRate,
+                                            int numChannels) {
         Sonic stream = new Sonic(sampleRate, numChannels);
 
         stream.setSpeed(speed);